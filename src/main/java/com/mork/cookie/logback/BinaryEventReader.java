@@ -0,0 +1,263 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ClassPackagingData;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.KeyValuePair;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads events written by {@link BinaryEventWriter} back into {@link BufferedLoggingEvent}s.
+ * Messages are formatted from their template and arguments; stack traces are rebuilt as
+ * throwable proxies that render like the originals.
+ */
+final class BinaryEventReader {
+
+    private final InputStream in;
+    private final List<String> dictionary;
+    private final Map<String, Marker> markers = new HashMap<>();
+    private final SymbolTable names = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+
+    /**
+     * @param in the input, positioned at an event
+     * @param useDictionary whether the events were written with a dictionary
+     */
+    BinaryEventReader(InputStream in, boolean useDictionary) {
+        this.in = in;
+        this.dictionary = useDictionary ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Forgets the dictionary, at a point where the writer started a fresh one.
+     */
+    void resetDictionary() {
+        if (dictionary != null) {
+            dictionary.clear();
+        }
+    }
+
+    /**
+     * Adds a name to the dictionary, under the next number.
+     */
+    void define(String name) {
+        dictionary.add(name);
+    }
+
+    /**
+     * Reads an event written by {@link BinaryEventWriter#writeEvent}.
+     */
+    ILoggingEvent readEvent(long timeStamp, LoggerContextVO loggerContextVO) throws IOException {
+        int levelInt = (int) readVarLong() * 1000;
+        SymbolTable.Symbol logger = names.intern(readSymbol());
+        SymbolTable.Symbol thread = names.intern(readSymbol());
+        String message = readMessage();
+
+        int mdcSize = (int) readVarLong();
+        Map<String, String> mdc = mdcSize == 0 ? Map.of() : new LinkedHashMap<>(mdcSize * 2);
+        for (int i = 0; i < mdcSize; i++) {
+            mdc.put(readSymbol(), readString());
+        }
+
+        int markerCount = (int) readVarLong();
+        List<Marker> markerList = null;
+        if (markerCount > 0) {
+            markerList = new ArrayList<>(markerCount);
+            for (int i = 0; i < markerCount; i++) {
+                markerList.add(markers.computeIfAbsent(readSymbol(), MarkerFactory::getDetachedMarker));
+            }
+        }
+
+        int pairCount = (int) readVarLong();
+        List<KeyValuePair> keyValuePairs = null;
+        if (pairCount > 0) {
+            keyValuePairs = new ArrayList<>(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+                keyValuePairs.add(new KeyValuePair(readSymbol(), readString()));
+            }
+        }
+
+        IThrowableProxy throwableProxy = readThrowable();
+        return new BufferedLoggingEvent(timeStamp, 0, 0, levelInt, logger, thread, message,
+                throwableProxy, mdc, markerList, keyValuePairs, null, loggerContextVO);
+    }
+
+    private String readMessage() throws IOException {
+        int argCount = (int) readVarLong();
+        if (argCount == 0) {
+            return readString();
+        }
+        String template = readSymbol();
+        Object[] args = new Object[argCount];
+        for (int i = 0; i < argCount; i++) {
+            args[i] = readString();
+        }
+        return MessageFormatter.arrayFormat(template, args).getMessage();
+    }
+
+    private IThrowableProxy readThrowable() throws IOException {
+        int kind = readByte();
+        if (kind == 0) {
+            return null;
+        }
+        String className = readSymbol();
+        String message = readString();
+        int commonFrames = (int) readVarLong();
+        int frameCount = (int) readVarLong();
+        StackTraceElementProxy[] frames = new StackTraceElementProxy[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = readFrame();
+        }
+        IThrowableProxy cause = readThrowable();
+        int suppressedCount = (int) readVarLong();
+        IThrowableProxy[] suppressed = new IThrowableProxy[suppressedCount];
+        for (int i = 0; i < suppressedCount; i++) {
+            suppressed[i] = readThrowable();
+        }
+        return new DecodedThrowableProxy(className, message, frames, commonFrames, cause, suppressed, kind == 2);
+    }
+
+    private StackTraceElementProxy readFrame() throws IOException {
+        int flags = readByte();
+        StackTraceElement element = new StackTraceElement(readSymbol(), readSymbol(), readSymbol(), (int) readZigZagLong());
+        String text = (flags & BinaryEventWriter.FRAME_TEXT) != 0 ? readSymbol() : null;
+        StackTraceElementProxy frame = text == null ? new StackTraceElementProxy(element) : new DecodedFrame(element, text);
+        if ((flags & BinaryEventWriter.FRAME_PACKAGING) != 0) {
+            setPackagingData(frame, readSymbol(), readSymbol(), (flags & BinaryEventWriter.FRAME_PACKAGING_EXACT) != 0);
+        }
+        return frame;
+    }
+
+    // The whole class is deprecated, yet it is still what StackTraceElementProxy carries
+    @SuppressWarnings("deprecation")
+    private static void setPackagingData(StackTraceElementProxy frame, String codeLocation, String version, boolean exact) {
+        frame.setClassPackagingData(new ClassPackagingData(codeLocation, version, exact));
+    }
+
+    private String readSymbol() throws IOException {
+        if (dictionary == null) {
+            return readString();
+        }
+        long id = readVarLong();
+        if (id == 0) {
+            return null;
+        }
+        if (id <= dictionary.size()) {
+            return dictionary.get((int) id - 1);
+        }
+        // Version 1 files define a name inline at its first use
+        if (id != dictionary.size() + 1) {
+            throw new IOException("Corrupt record (symbol " + id + " of " + dictionary.size() + ")");
+        }
+        String s = readString();
+        dictionary.add(s);
+        return s;
+    }
+
+    String readString() throws IOException {
+        long length = readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes((int) (length - 1));
+        if (bytes.length != length - 1) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt record (varint too long)");
+    }
+
+    long readZigZagLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    /**
+     * Frame whose rendered text carries module or class loader prefixes that a rebuilt
+     * StackTraceElement would not print.
+     */
+    private static final class DecodedFrame extends StackTraceElementProxy {
+        private final String text;
+
+        DecodedFrame(StackTraceElement element, String text) {
+            super(element);
+            this.text = text;
+        }
+
+        @Override
+        public String getSTEAsString() {
+            return text;
+        }
+    }
+
+    private record DecodedThrowableProxy(String className, String message, StackTraceElementProxy[] frames,
+                                         int commonFrames, IThrowableProxy cause, IThrowableProxy[] suppressed,
+                                         boolean cyclic) implements IThrowableProxy {
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public StackTraceElementProxy[] getStackTraceElementProxyArray() {
+            return frames;
+        }
+
+        @Override
+        public int getCommonFrames() {
+            return commonFrames;
+        }
+
+        @Override
+        public IThrowableProxy getCause() {
+            return cause;
+        }
+
+        @Override
+        public IThrowableProxy[] getSuppressed() {
+            return suppressed;
+        }
+
+        @Override
+        public boolean isCyclic() {
+            return cyclic;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary encoding of a log event, shared by the {@link BinaryRequestLogWriter} files and the
+ * {@link FlightRecorder} ring; {@link BinaryEventReader} is the other side.
+ * <p>
+ * Numbers are varints, strings are length-prefixed UTF-8. With a {@link Dictionary}, names
+ * (logger, thread, message templates, MDC keys, markers, stack frames) are written as numbers,
+ * and the owner of the dictionary writes their definitions ahead of the events that use them;
+ * without one, every event is self-contained. The writer holds no other state, so several
+ * threads can encode with it at the same time.
+ */
+final class BinaryEventWriter {
+
+    // Frame flags
+    static final int FRAME_TEXT = 1;
+    static final int FRAME_PACKAGING = 2;
+    static final int FRAME_PACKAGING_EXACT = 4;
+
+    private final Dictionary dictionary;
+
+    /**
+     * @param dictionary the dictionary names are coded with, or null for self-contained events
+     */
+    BinaryEventWriter(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    Dictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Writes everything but the timestamp, which callers encode relative to their own context.
+     */
+    void writeEvent(ILoggingEvent event, ByteOutput out) {
+        out.writeVarLong(event.getLevel().toInt() / 1000);
+        writeSymbol(event.getLoggerName(), out);
+        writeSymbol(event.getThreadName(), out);
+        writeMessage(event, out);
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc == null || mdc.isEmpty()) {
+            out.writeVarLong(0);
+        } else {
+            out.writeVarLong(mdc.size());
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                writeSymbol(entry.getKey(), out);
+                writeString(entry.getValue(), out);
+            }
+        }
+
+        List<Marker> markers = event.getMarkerList();
+        if (markers == null || markers.isEmpty()) {
+            out.writeVarLong(0);
+        } else {
+            out.writeVarLong(markers.size());
+            for (Marker marker : markers) {
+                writeSymbol(marker.getName(), out);
+            }
+        }
+
+        List<KeyValuePair> keyValuePairs = event.getKeyValuePairs();
+        if (keyValuePairs == null || keyValuePairs.isEmpty()) {
+            out.writeVarLong(0);
+        } else {
+            out.writeVarLong(keyValuePairs.size());
+            for (KeyValuePair pair : keyValuePairs) {
+                writeSymbol(pair.key, out);
+                writeString(pair.value == null ? null : String.valueOf(pair.value), out);
+            }
+        }
+
+        writeThrowable(event.getThrowableProxy(), out);
+    }
+
+    /**
+     * Writes the message as its template and arguments when they format back to the same
+     * text: with a dictionary, the template is coded once, so a repeated message costs a few
+     * bytes for its arguments. Otherwise (no arguments, or arrays and throwables, which the formatter treats
+     * specially) the formatted message is written, after an argument count of 0.
+     */
+    private void writeMessage(ILoggingEvent event, ByteOutput out) {
+        Object[] args = event.getArgumentArray();
+        String template = event.getMessage();
+        if (args == null || args.length == 0 || template == null || !formatsAsText(args)) {
+            out.writeVarLong(0);
+            writeString(event.getFormattedMessage(), out);
+            return;
+        }
+        out.writeVarLong(args.length);
+        writeSymbol(template, out);
+        for (Object arg : args) {
+            writeString(arg == null ? null : arg.toString(), out);
+        }
+    }
+
+    private static boolean formatsAsText(Object[] args) {
+        for (Object arg : args) {
+            if (arg == null || arg instanceof String || arg instanceof Number || arg instanceof Boolean
+                    || arg instanceof Character || arg instanceof Enum<?>) {
+                continue;
+            }
+            // toString() of other types may throw or change over time: use the formatted message
+            return false;
+        }
+        return true;
+    }
+
+    private void writeThrowable(IThrowableProxy proxy, ByteOutput out) {
+        if (proxy == null) {
+            out.write((byte) 0);
+            return;
+        }
+        out.write((byte) (proxy.isCyclic() ? 2 : 1));
+        writeSymbol(proxy.getClassName(), out);
+        writeString(proxy.getMessage(), out);
+        out.writeVarLong(proxy.getCommonFrames());
+        StackTraceElementProxy[] frames = proxy.getStackTraceElementProxyArray();
+        int frameCount = frames == null ? 0 : frames.length;
+        out.writeVarLong(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            writeFrame(frames[i], out);
+        }
+        writeThrowable(proxy.getCause(), out);
+        IThrowableProxy[] suppressed = proxy.getSuppressed();
+        int suppressedCount = suppressed == null ? 0 : suppressed.length;
+        out.writeVarLong(suppressedCount);
+        for (int i = 0; i < suppressedCount; i++) {
+            writeThrowable(suppressed[i], out);
+        }
+    }
+
+    /**
+     * Writes a frame as its class, method, file and line. The rendered text is only written
+     * as well when it differs from what the reader rebuilds from those (module or class
+     * loader prefixes, as in {@code java.base/java.lang.Thread.run}).
+     */
+    private void writeFrame(StackTraceElementProxy frame, ByteOutput out) {
+        StackTraceElement element = frame.getStackTraceElement();
+        String text = frame.getSTEAsString();
+        String plainText = "at " + new StackTraceElement(element.getClassName(), element.getMethodName(),
+                element.getFileName(), element.getLineNumber());
+        boolean explicitText = !text.equals(plainText);
+        int flags = explicitText ? FRAME_TEXT : 0;
+        if (frame.getClassPackagingData() != null) {
+            flags |= FRAME_PACKAGING;
+            if (frame.getClassPackagingData().isExact()) {
+                flags |= FRAME_PACKAGING_EXACT;
+            }
+        }
+        out.write((byte) flags);
+        writeSymbol(element.getClassName(), out);
+        writeSymbol(element.getMethodName(), out);
+        writeSymbol(element.getFileName(), out);
+        out.writeZigZagLong(element.getLineNumber());
+        if (explicitText) {
+            writeSymbol(text, out);
+        }
+        if (frame.getClassPackagingData() != null) {
+            writeSymbol(frame.getClassPackagingData().getCodeLocation(), out);
+            writeSymbol(frame.getClassPackagingData().getVersion(), out);
+        }
+    }
+
+    /**
+     * Writes a dictionary-coded string: 0 for null, otherwise its number. Without a dictionary,
+     * writes the string itself.
+     */
+    private void writeSymbol(String s, ByteOutput out) {
+        if (dictionary == null || s == null) {
+            writeString(s, out);
+            return;
+        }
+        out.writeVarLong(dictionary.idOf(s));
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string: 0 for null, otherwise the byte length plus one.
+     */
+    static void writeString(String s, ByteOutput out) {
+        if (s == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(ByteOutput.utf8Length(s) + 1L);
+        out.writeString(s, CharsetKind.UTF_8);
+    }
+
+    /**
+     * Numbers the names of a file section, shared by the threads encoding events for it.
+     * Numbers are given in order from 1; the section's owner writes the definitions of the
+     * numbers given since its last write ({@link #takeDefinitions}) ahead of the events using
+     * them, so that a reader learns each name before its first use.
+     */
+    static final class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> names = new ArrayList<>(); // guarded by this
+        private int defined; // guarded by this
+
+        int idOf(String s) {
+            Integer id = ids.get(s);
+            if (id != null) {
+                return id;
+            }
+            synchronized (this) {
+                id = ids.get(s);
+                if (id == null) {
+                    names.add(s);
+                    id = names.size();
+                    ids.put(s, id);
+                }
+                return id;
+            }
+        }
+
+        synchronized int size() {
+            return names.size();
+        }
+
+        /**
+         * Gets the names numbered since the previous call, in number order.
+         */
+        synchronized List<String> takeDefinitions() {
+            if (defined == names.size()) {
+                return List.of();
+            }
+            List<String> definitions = new ArrayList<>(names.subList(defined, names.size()));
+            defined = names.size();
+            return definitions;
+        }
+    }
+}
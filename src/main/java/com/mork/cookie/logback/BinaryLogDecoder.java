@@ -0,0 +1,233 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads files written by {@link BinaryRequestLogWriter} and renders them back to text with a
+ * pattern, using the same banners as the console output of the ConditionalBufferAppender.
+ * <p>
+ * Command line usage:
+ * <pre>
+ * java -cp ... com.mork.cookie.logback.BinaryLogDecoder [--pattern &lt;pattern&gt;] &lt;file&gt;...
+ * </pre>
+ */
+public class BinaryLogDecoder {
+
+    public static final String DEFAULT_PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+
+    private static final RequestLog.Outcome[] OUTCOMES = RequestLog.Outcome.values();
+    private static final RouteRule.FlushPolicy[] FLUSH_POLICIES = RouteRule.FlushPolicy.values();
+
+    private final LoggerContext loggerContext;
+    private final LoggerContextVO loggerContextVO;
+    private final PatternLayout layout;
+
+    /**
+     * Creates a decoder rendering events with the given pattern.
+     *
+     * @param pattern the PatternLayout pattern
+     */
+    public BinaryLogDecoder(String pattern) {
+        loggerContext = new LoggerContext();
+        loggerContextVO = new LoggerContextVO(loggerContext);
+        layout = new PatternLayout();
+        layout.setContext(loggerContext);
+        layout.setPattern(pattern);
+        layout.start();
+        if (!layout.isStarted()) {
+            throw new IllegalArgumentException("Invalid pattern: " + pattern);
+        }
+    }
+
+    /**
+     * Decodes a stream and renders every request in it.
+     *
+     * @param in the binary log
+     * @param out where the text goes
+     * @throws IOException if reading or writing fails, or the stream is not a binary request log
+     */
+    public void render(InputStream in, Writer out) throws IOException {
+        IOException[] writeFailure = new IOException[1];
+        decode(in, loggerContextVO, requestLog -> {
+            if (writeFailure[0] == null) {
+                try {
+                    out.write(render(requestLog));
+                } catch (IOException e) {
+                    writeFailure[0] = e;
+                }
+            }
+        });
+        if (writeFailure[0] != null) {
+            throw writeFailure[0];
+        }
+        out.flush();
+    }
+
+    /**
+     * Renders one request, between the banners the console output uses for its outcome.
+     *
+     * @param requestLog the request
+     * @return the rendered text
+     */
+    public String render(RequestLog requestLog) {
+        StringBuilder text = new StringBuilder();
+        String requestId = requestLog.requestId();
+        int count = requestLog.events().size();
+        // Successes and checkpoints of ALWAYS routes hold events of every level
+        String selected = requestLog.flushPolicy() == RouteRule.FlushPolicy.ALWAYS ? " logs" : " INFO logs";
+        // ERROR events logged outside a request are written without banners
+        if (requestId != null) {
+            switch (requestLog.outcome()) {
+                case ERROR -> text.append("=== REQUEST COMPLETED WITH ERROR - Flushing ").append(count)
+                        .append(" logs for request: ").append(requestId).append(" ===").append(System.lineSeparator());
+                case SUCCESS -> text.append("=== REQUEST COMPLETED SUCCESSFULLY - Showing ").append(count)
+                        .append(selected).append(" for request: ").append(requestId).append(" ===").append(System.lineSeparator());
+                case CHECKPOINT -> text.append("=== REQUEST CHECKPOINT - Showing ").append(count)
+                        .append(selected).append(" for request: ").append(requestId).append(" ===").append(System.lineSeparator());
+                case EVICTED -> text.append("=== HEAP PRESSURE - Dumping ").append(count)
+                        .append(" logs for request: ").append(requestId).append(" ===").append(System.lineSeparator());
+            }
+        }
+        for (ILoggingEvent event : requestLog.events()) {
+            text.append(layout.doLayout(event));
+        }
+        if (requestId != null) {
+            text.append(requestLog.outcome() == RequestLog.Outcome.CHECKPOINT
+                    ? "=== End of checkpoint logs for: " : "=== End of request logs for: ")
+                    .append(requestId).append(" ===").append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Decodes a stream into requests.
+     *
+     * @param in the binary log
+     * @param consumer receives each request, in file order
+     * @throws EOFException if the stream ends in the middle of a record
+     * @throws IOException if reading fails or the stream is not a binary request log
+     */
+    public static void decode(InputStream in, Consumer<RequestLog> consumer) throws IOException {
+        decode(in, new LoggerContextVO(new LoggerContext()), consumer);
+    }
+
+    private static void decode(InputStream in, LoggerContextVO loggerContextVO, Consumer<RequestLog> consumer) throws IOException {
+        Reader reader = new Reader(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 64 * 1024), loggerContextVO);
+        boolean headerSeen = false;
+        int tag;
+        while ((tag = reader.in.read()) != -1) {
+            if (tag == BinaryRequestLogWriter.MAGIC[0]) {
+                reader.readHeader();
+                headerSeen = true;
+            } else if (tag == BinaryRequestLogWriter.RECORD && headerSeen) {
+                consumer.accept(reader.readRecord());
+            } else if (tag == BinaryRequestLogWriter.DEFINITIONS && headerSeen) {
+                reader.readDefinitions();
+            } else {
+                throw new IOException("Not a binary request log (unexpected byte " + tag + ")");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String pattern = DEFAULT_PATTERN;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pattern") && i + 1 < args.length) {
+                pattern = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: BinaryLogDecoder [--pattern <pattern>] <file>...");
+            System.exit(2);
+        }
+        BinaryLogDecoder decoder = new BinaryLogDecoder(pattern);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        for (String file : files) {
+            try (InputStream in = new FileInputStream(file)) {
+                decoder.render(in, out);
+            } catch (EOFException e) {
+                // The writer was stopped in the middle of a record, e.g. by a crash
+                out.flush();
+                System.err.println(file + ": truncated record at end of file");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Stateful reader: holds the dictionary of the current file section.
+     */
+    private static final class Reader {
+        private final InputStream in;
+        private final LoggerContextVO loggerContextVO;
+        private final BinaryEventReader events;
+
+        Reader(InputStream in, LoggerContextVO loggerContextVO) {
+            this.in = in;
+            this.loggerContextVO = loggerContextVO;
+            this.events = new BinaryEventReader(in, true);
+        }
+
+        void readHeader() throws IOException {
+            for (int i = 1; i < BinaryRequestLogWriter.MAGIC.length; i++) {
+                if (events.readByte() != BinaryRequestLogWriter.MAGIC[i]) {
+                    throw new IOException("Not a binary request log (bad header)");
+                }
+            }
+            int version = events.readByte();
+            // Version 1 had no definitions, its names are defined at their first use
+            if (version != 1 && version != BinaryRequestLogWriter.VERSION) {
+                throw new IOException("Unsupported binary request log version " + version);
+            }
+            events.resetDictionary();
+        }
+
+        void readDefinitions() throws IOException {
+            int count = (int) events.readVarLong();
+            for (int i = 0; i < count; i++) {
+                events.define(events.readString());
+            }
+        }
+
+        RequestLog readRecord() throws IOException {
+            int outcomeAndPolicy = events.readByte();
+            int outcome = outcomeAndPolicy & 0x0F;
+            int flushPolicy = outcomeAndPolicy >> 4;
+            if (outcome >= OUTCOMES.length || flushPolicy >= FLUSH_POLICIES.length) {
+                throw new IOException("Corrupt record (outcome " + outcomeAndPolicy + ")");
+            }
+            String requestId = events.readString();
+            long startTime = events.readVarLong();
+            long endTime = startTime + events.readZigZagLong();
+            int bufferedEvents = (int) events.readVarLong();
+            int eventCount = (int) events.readVarLong();
+            List<ILoggingEvent> decoded = new ArrayList<>(eventCount);
+            long timeStamp = startTime;
+            for (int i = 0; i < eventCount; i++) {
+                timeStamp += events.readZigZagLong();
+                decoded.add(events.readEvent(timeStamp, loggerContextVO));
+            }
+            return new RequestLog(requestId, OUTCOMES[outcome], startTime, endTime, bufferedEvents, decoded,
+                    FLUSH_POLICIES[flushPolicy]);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes flushed requests to a file in a compact binary format, to be rendered back to text
+ * with {@link BinaryLogDecoder} when somebody needs to read them.
+ * <p>
+ * Each record holds the request metadata (the outcome and route flush policy share a byte)
+ * followed by its events. Timestamps are zigzag
+ * varint deltas from the previous event (the first from the request start), logger names,
+ * thread names, message templates, MDC keys, marker names and stack frames are
+ * dictionary-coded (each distinct string is defined once per dictionary and then referred to
+ * by number), and message arguments and values are length-prefixed UTF-8. Nothing is
+ * formatted at write time: the decoder formats messages from their template and arguments.
+ * <p>
+ * File layout: a header ({@code CBLG} and a version byte) followed by records, each preceded
+ * by the definitions of the names numbered since the previous record. A header is written each
+ * time the file is opened and whenever the dictionary reaches its size limit; the decoder
+ * starts a fresh dictionary at each header.
+ * <p>
+ * Records are encoded by the flushing threads in per-thread buffers, concurrently; the lock
+ * shared by all flushes only covers the definitions and the write of the encoded record.
+ */
+public class BinaryRequestLogWriter extends ContextAwareBase implements RequestLogWriter {
+
+    static final byte[] MAGIC = {'C', 'B', 'L', 'G'};
+    static final int VERSION = 2;
+    static final int RECORD = 1;
+    static final int DEFINITIONS = 2;
+    static final int MAX_DICTIONARY_SIZE = 65536;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final ThreadLocal<ByteOutput> buffers = ThreadLocal.withInitial(ByteOutput::new);
+    // Definitions, headers and records are written under this lock, so definitions precede their uses
+    private final Object writeLock = new Object();
+    // Replaced, under the write lock, whenever a fresh dictionary starts
+    private volatile BinaryEventWriter eventWriter = new BinaryEventWriter(new BinaryEventWriter.Dictionary());
+    private final ByteOutput definitions = new ByteOutput(); // guarded by writeLock
+    private OutputStream outputStream;
+    private volatile boolean started;
+
+    private String file;
+    private boolean immediateFlush = true;
+
+    @Override
+    public void write(RequestLog requestLog) {
+        if (!started) {
+            return;
+        }
+        ByteOutput buffer = buffers.get();
+        buffer.reset();
+        BinaryEventWriter writer = eventWriter;
+        encode(requestLog, writer, buffer);
+        synchronized (writeLock) {
+            if (outputStream == null) {
+                return;
+            }
+            try {
+                if (eventWriter.dictionary().size() >= MAX_DICTIONARY_SIZE) {
+                    eventWriter = new BinaryEventWriter(new BinaryEventWriter.Dictionary());
+                    definitions.reset();
+                    writeHeader(definitions);
+                    definitions.writeTo(outputStream);
+                }
+                if (writer != eventWriter) {
+                    // Encoded with the dictionary of a previous section, rare enough to redo here
+                    writer = eventWriter;
+                    buffer.reset();
+                    encode(requestLog, writer, buffer);
+                }
+                definitions.reset();
+                writeDefinitions(writer.dictionary(), definitions);
+                definitions.writeTo(outputStream);
+                buffer.writeTo(outputStream);
+                if (immediateFlush) {
+                    outputStream.flush();
+                }
+            } catch (IOException e) {
+                addError("Failed to write logs of request " + requestLog.requestId() + " to " + file, e);
+            }
+        }
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+    }
+
+    static void writeHeader(ByteOutput out) {
+        out.write(MAGIC);
+        out.write((byte) VERSION);
+    }
+
+    /**
+     * Writes the definitions of the names numbered since the previous call, if any. Must be
+     * called under the write lock, right before a record using them.
+     */
+    static void writeDefinitions(BinaryEventWriter.Dictionary dictionary, ByteOutput out) {
+        List<String> names = dictionary.takeDefinitions();
+        if (names.isEmpty()) {
+            return;
+        }
+        out.write((byte) DEFINITIONS);
+        out.writeVarLong(names.size());
+        for (String name : names) {
+            BinaryEventWriter.writeString(name, out);
+        }
+    }
+
+    /**
+     * Encodes one record, numbering its names with the writer's dictionary. Safe to call from
+     * several threads at once.
+     */
+    static void encode(RequestLog requestLog, BinaryEventWriter eventWriter, ByteOutput out) {
+        out.write((byte) RECORD);
+        // Policy in the high bits: files without it read as CONDITIONAL
+        out.write((byte) (requestLog.outcome().ordinal() | requestLog.flushPolicy().ordinal() << 4));
+        BinaryEventWriter.writeString(requestLog.requestId(), out);
+        out.writeVarLong(requestLog.startTime());
+        out.writeZigZagLong(requestLog.endTime() - requestLog.startTime());
+        out.writeVarLong(requestLog.bufferedEvents());
+        List<ILoggingEvent> events = requestLog.events();
+        out.writeVarLong(events.size());
+        long previousTimeStamp = requestLog.startTime();
+        for (ILoggingEvent event : events) {
+            out.writeZigZagLong(event.getTimeStamp() - previousTimeStamp);
+            previousTimeStamp = event.getTimeStamp();
+            eventWriter.writeEvent(event, out);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (file == null) {
+            addError("No file set for the binary request log writer");
+            return;
+        }
+        synchronized (writeLock) {
+            try {
+                File target = new File(file);
+                File parent = target.getAbsoluteFile().getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                    addError("Failed to create directory " + parent);
+                    return;
+                }
+                outputStream = new BufferedOutputStream(new FileOutputStream(target, true), 64 * 1024);
+                eventWriter = new BinaryEventWriter(new BinaryEventWriter.Dictionary());
+                definitions.reset();
+                writeHeader(definitions);
+                definitions.writeTo(outputStream);
+                outputStream.flush();
+            } catch (IOException e) {
+                addError("Failed to open binary request log " + file, e);
+                return;
+            }
+            started = true;
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (writeLock) {
+            started = false;
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    addError("Failed to close binary request log " + file, e);
+                }
+                outputStream = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started;
+    }
+
+    // Configuration getters and setters
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public boolean isImmediateFlush() {
+        return immediateFlush;
+    }
+
+    public void setImmediateFlush(boolean immediateFlush) {
+        this.immediateFlush = immediateFlush;
+    }
+}
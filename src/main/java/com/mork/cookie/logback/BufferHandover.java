@@ -0,0 +1,92 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.spi.ConfigurationEvent;
+import ch.qos.logback.core.spi.ConfigurationEventListener;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands the buffers of a ConditionalBufferAppender over to the instance replacing it when
+ * Logback reconfigures itself ({@code scan="true"}), so that requests in flight keep their
+ * logs across the reset.
+ * <p>
+ * Logback announces a detected configuration change before resetting the context, which
+ * stops every appender, and announces the end of the new configuration afterwards. An
+ * appender stopped in between parks itself here with its buffers and its outputs still
+ * open; the new instance of the same name claims it when it starts. Whatever is still
+ * parked when the configuration ends (the appender was removed from the configuration)
+ * is drained by the parked appender itself.
+ * <p>
+ * There is one instance per logger context: configuration event listeners survive resets
+ * and cannot be removed, so each appender instance registering its own would leak.
+ */
+final class BufferHandover implements ConfigurationEventListener {
+
+    private static final Map<Context, BufferHandover> BY_CONTEXT = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, ConditionalBufferAppender> parked = new ConcurrentHashMap<>();
+    private volatile boolean reconfiguring;
+
+    private BufferHandover() {
+    }
+
+    /**
+     * Gets the handover of a logger context, registering it on first use.
+     */
+    static BufferHandover of(Context context) {
+        synchronized (BY_CONTEXT) {
+            BufferHandover handover = BY_CONTEXT.get(context);
+            if (handover == null) {
+                handover = new BufferHandover();
+                context.addConfigurationEventListener(handover);
+                BY_CONTEXT.put(context, handover);
+            }
+            return handover;
+        }
+    }
+
+    @Override
+    public void listen(ConfigurationEvent event) {
+        switch (event.getEventType()) {
+            case CHANGE_DETECTED -> reconfiguring = true;
+            case CONFIGURATION_ENDED -> {
+                reconfiguring = false;
+                for (String name : parked.keySet()) {
+                    ConditionalBufferAppender appender = parked.remove(name);
+                    if (appender != null) {
+                        appender.finishStop();
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Whether the context is being reset for a new configuration.
+     */
+    boolean isReconfiguring() {
+        return reconfiguring;
+    }
+
+    void park(ConditionalBufferAppender appender) {
+        ConditionalBufferAppender previous = parked.put(String.valueOf(appender.getName()), appender);
+        if (previous != null && previous != appender) {
+            previous.finishStop();
+        }
+    }
+
+    /**
+     * Takes the parked appender of the given name.
+     *
+     * @return the appender, or null if none is parked
+     */
+    ConditionalBufferAppender claim(String name) {
+        return parked.remove(String.valueOf(name));
+    }
+}
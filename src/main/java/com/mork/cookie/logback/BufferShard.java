@@ -0,0 +1,93 @@
+package com.mork.cookie.logback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One slice of a {@link ConditionalBufferAppender}'s state, chosen by the hash of the request
+ * ID: the buffers of its requests, the earliest time one of them can expire, and the staging
+ * buffer its requests' console output is assembled in. Requests of different shards share no
+ * map and no lock, and the cleanup visits one shard at a time.
+ */
+final class BufferShard {
+
+    // Staging buffers that grew past this are not kept for the next request
+    private static final int MAX_RETAINED_STAGING = 1024 * 1024;
+    private static final int INITIAL_STAGING = 8 * 1024;
+
+    private final Map<String, ConditionalBufferAppender.RequestLogBuffer> buffers = new ConcurrentHashMap<>();
+    // Lower bound of the expiry times of the buffers, Long.MAX_VALUE if none can expire
+    private final AtomicLong nextExpiry = new AtomicLong(Long.MAX_VALUE);
+    private final Object stagingLock = new Object();
+    private ByteArrayOutputStream staging; // guarded by stagingLock
+
+    Map<String, ConditionalBufferAppender.RequestLogBuffer> buffers() {
+        return buffers;
+    }
+
+    /**
+     * Notes that a buffer of this shard expires no earlier than the given time. Must be called
+     * after the buffer is in the registry, so that a cleanup running meanwhile either sees the
+     * buffer or keeps the bound.
+     */
+    void expiresNoEarlierThan(long time) {
+        if (time < nextExpiry.get()) {
+            nextExpiry.accumulateAndGet(time, Math::min);
+        }
+    }
+
+    /**
+     * Checks whether a buffer of this shard may have expired.
+     */
+    boolean isExpiryDue(long now) {
+        return now >= nextExpiry.get();
+    }
+
+    /**
+     * Starts a cleanup pass: the bound is recomputed from the buffers the pass keeps (see
+     * {@link #expiresNoEarlierThan}) and from those created meanwhile.
+     */
+    void beginExpiryScan() {
+        nextExpiry.set(Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes console output of a request of this shard in a single write, so that requests
+     * flushed at the same time never interleave. The output is assembled in the shard's staging
+     * buffer; the only lock shared with other shards is the console stream's own.
+     *
+     * @param output writes the request's lines
+     */
+    void writeToConsole(StagedOutput output) throws IOException {
+        synchronized (stagingLock) {
+            if (staging == null) {
+                staging = new ByteArrayOutputStream(INITIAL_STAGING);
+            }
+            try {
+                output.writeTo(staging);
+                PrintStream console = System.out;
+                staging.writeTo(console);
+                console.flush();
+            } finally {
+                if (staging.size() > MAX_RETAINED_STAGING) {
+                    staging = null;
+                } else {
+                    staging.reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Console output of a request, written to the staging buffer.
+     */
+    @FunctionalInterface
+    interface StagedOutput {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
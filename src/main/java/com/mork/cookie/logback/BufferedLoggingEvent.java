@@ -0,0 +1,322 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of a log event held in a request buffer.
+ * <p>
+ * Everything that depends on the logging thread (thread name, MDC, stack trace) is captured
+ * when the snapshot is taken. The message is kept as its template plus an immutable copy of
+ * the arguments and is only formatted when {@link #getFormattedMessage()} is first called,
+ * i.e. when the event is actually written. Arguments of well-known immutable types are kept
+ * as they are; any other argument is rendered to its string form at log time, so later
+ * changes to a mutable object do not leak into the output.
+ * <p>
+ * In compact form the message is formatted up front (the arguments are dropped) and the MDC
+ * can be reduced to a selected set of keys, so that the snapshot retains as little heap as
+ * possible.
+ * <p>
+ * The logger and thread names are held as symbols of the appender's {@link SymbolTable}: one
+ * canonical instance per name, with its encoded bytes ready for the encoders.
+ */
+public final class BufferedLoggingEvent implements ILoggingEvent {
+
+    private final long timeStamp;
+    private final int nanoseconds;
+    private final long sequenceNumber;
+    private final int levelInt;
+    private final SymbolTable.Symbol logger;
+    private final SymbolTable.Symbol thread;
+    private final String message;
+    private final Object[] argumentArray;
+    private final IThrowableProxy throwableProxy;
+    private final Map<String, String> mdcPropertyMap;
+    private final List<Marker> markerList;
+    private final List<KeyValuePair> keyValuePairs;
+    private final StackTraceElement[] callerData;
+    private final LoggerContextVO loggerContextVO;
+
+    private volatile String formattedMessage;
+
+    private static final ThreadLocal<MdcSelection> LAST_MDC_SELECTION = new ThreadLocal<>();
+
+    private BufferedLoggingEvent(ILoggingEvent event, String message, Object[] argumentArray,
+                                 Map<String, String> mdcPropertyMap, SymbolTable symbols) {
+        this.timeStamp = event.getTimeStamp();
+        this.nanoseconds = event.getNanoseconds();
+        this.sequenceNumber = event.getSequenceNumber();
+        this.levelInt = event.getLevel().toInt();
+        this.logger = symbols.intern(event.getLoggerName());
+        this.thread = symbols.intern(event.getThreadName());
+        this.message = message;
+        this.argumentArray = argumentArray;
+        this.throwableProxy = event.getThrowableProxy();
+        this.mdcPropertyMap = mdcPropertyMap;
+        this.markerList = event.getMarkerList();
+        this.keyValuePairs = event.getKeyValuePairs();
+        // Caller data is expensive to compute: only keep it if something already asked for it,
+        // such as the appender's includeCallerData
+        this.callerData = event.hasCallerData() ? event.getCallerData() : null;
+        this.loggerContextVO = event.getLoggerContextVO();
+    }
+
+    /**
+     * Rebuilds a formatted snapshot from its parts, e.g. when inflating a compressed block.
+     */
+    BufferedLoggingEvent(long timeStamp, int nanoseconds, long sequenceNumber, int levelInt,
+                         SymbolTable.Symbol logger, SymbolTable.Symbol thread, String formattedMessage,
+                         IThrowableProxy throwableProxy, Map<String, String> mdcPropertyMap,
+                         List<Marker> markerList, List<KeyValuePair> keyValuePairs,
+                         StackTraceElement[] callerData, LoggerContextVO loggerContextVO) {
+        this.timeStamp = timeStamp;
+        this.nanoseconds = nanoseconds;
+        this.sequenceNumber = sequenceNumber;
+        this.levelInt = levelInt;
+        this.logger = logger;
+        this.thread = thread;
+        this.message = formattedMessage;
+        this.argumentArray = null;
+        this.throwableProxy = throwableProxy;
+        this.mdcPropertyMap = mdcPropertyMap;
+        this.markerList = markerList;
+        this.keyValuePairs = keyValuePairs;
+        this.callerData = callerData;
+        this.loggerContextVO = loggerContextVO;
+    }
+
+    /**
+     * Creates a snapshot that defers message formatting until the event is written.
+     * Must be called on the logging thread.
+     *
+     * @param event the event to snapshot
+     * @return the immutable snapshot
+     */
+    public static BufferedLoggingEvent deferred(ILoggingEvent event) {
+        return of(event, true, null);
+    }
+
+    /**
+     * Creates a snapshot of an event. Must be called on the logging thread.
+     *
+     * @param event the event to snapshot
+     * @param deferFormatting keep the template and frozen arguments instead of the formatted message
+     * @param mdcKeys the MDC keys to keep, or null to keep the whole MDC map
+     * @return the immutable snapshot
+     */
+    public static BufferedLoggingEvent of(ILoggingEvent event, boolean deferFormatting, Set<String> mdcKeys) {
+        return of(event, deferFormatting, mdcKeys, SymbolTable.SHARED);
+    }
+
+    /**
+     * Creates a snapshot of an event, interning its logger and thread names in the given table.
+     * Must be called on the logging thread.
+     */
+    static BufferedLoggingEvent of(ILoggingEvent event, boolean deferFormatting, Set<String> mdcKeys, SymbolTable symbols) {
+        Map<String, String> mdc = selectMdc(event.getMDCPropertyMap(), mdcKeys);
+        if (deferFormatting) {
+            return new BufferedLoggingEvent(event, event.getMessage(), freezeArguments(event.getArgumentArray()), mdc, symbols);
+        }
+        return new BufferedLoggingEvent(event, event.getFormattedMessage(), null, mdc, symbols);
+    }
+
+    private static Map<String, String> selectMdc(Map<String, String> mdc, Set<String> keys) {
+        if (keys == null || mdc == null || mdc.isEmpty()) {
+            return mdc;
+        }
+        // MDC maps are copy-on-write and shared by all events logged until the MDC changes,
+        // so the selection is reused as long as the thread keeps logging with the same map
+        MdcSelection last = LAST_MDC_SELECTION.get();
+        if (last != null && last.source == mdc && last.keys == keys) {
+            return last.selected;
+        }
+        Map<String, String> selected = null;
+        for (String key : keys) {
+            String value = mdc.get(key);
+            if (value != null) {
+                if (selected == null) {
+                    selected = new HashMap<>(4);
+                }
+                selected.put(key, value);
+            }
+        }
+        Map<String, String> result = selected == null ? Collections.emptyMap() : Collections.unmodifiableMap(selected);
+        LAST_MDC_SELECTION.set(new MdcSelection(mdc, keys, result));
+        return result;
+    }
+
+    private record MdcSelection(Map<String, String> source, Set<String> keys, Map<String, String> selected) {
+    }
+
+    static Object[] freezeArguments(Object[] arguments) {
+        if (arguments == null || arguments.length == 0) {
+            return arguments;
+        }
+        Object[] frozen = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            frozen[i] = freeze(arguments[i]);
+        }
+        return frozen;
+    }
+
+    private static Object freeze(Object argument) {
+        if (argument == null || isImmutable(argument)) {
+            return argument;
+        }
+        // Render exactly the way the message formatter would (arrays, failing toString())
+        return MessageFormatter.format("{}", argument).getMessage();
+    }
+
+    private static boolean isImmutable(Object argument) {
+        return argument instanceof String
+                || argument instanceof Integer
+                || argument instanceof Long
+                || argument instanceof Boolean
+                || argument instanceof Double
+                || argument instanceof Float
+                || argument instanceof Short
+                || argument instanceof Byte
+                || argument instanceof Character
+                || argument instanceof BigDecimal
+                || argument instanceof BigInteger
+                || argument instanceof Enum<?>
+                || argument instanceof UUID
+                || argument instanceof Class<?>
+                || argument instanceof ConditionalLogger.LazyArgument
+                || argument.getClass().getPackageName().equals("java.time");
+    }
+
+    @Override
+    public String getThreadName() {
+        return thread == null ? null : thread.name();
+    }
+
+    @Override
+    public Level getLevel() {
+        return Level.toLevel(levelInt);
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public Object[] getArgumentArray() {
+        return argumentArray;
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        String result = formattedMessage;
+        if (result == null) {
+            result = argumentArray == null
+                    ? message
+                    : MessageFormatter.arrayFormat(message, argumentArray).getMessage();
+            formattedMessage = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String getLoggerName() {
+        return logger == null ? null : logger.name();
+    }
+
+    SymbolTable.Symbol getLoggerSymbol() {
+        return logger;
+    }
+
+    SymbolTable.Symbol getThreadSymbol() {
+        return thread;
+    }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() {
+        return loggerContextVO;
+    }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() {
+        return throwableProxy;
+    }
+
+    @Override
+    public StackTraceElement[] getCallerData() {
+        return callerData;
+    }
+
+    @Override
+    public boolean hasCallerData() {
+        return callerData != null;
+    }
+
+    @Override
+    public List<Marker> getMarkerList() {
+        return markerList;
+    }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() {
+        return mdcPropertyMap;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Map<String, String> getMdc() {
+        return mdcPropertyMap;
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    @Override
+    public int getNanoseconds() {
+        return nanoseconds;
+    }
+
+    @Override
+    public Instant getInstant() {
+        if (nanoseconds < 0) {
+            return Instant.ofEpochMilli(timeStamp);
+        }
+        return Instant.ofEpochSecond(Math.floorDiv(timeStamp, 1000L), nanoseconds);
+    }
+
+    @Override
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    @Override
+    public List<KeyValuePair> getKeyValuePairs() {
+        return keyValuePairs;
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+        // Everything thread-bound was captured when the snapshot was taken
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getLevel() + "] " + getFormattedMessage();
+    }
+}
@@ -0,0 +1,229 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.core.pattern.FormatInfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Growable byte buffer reused by the encoding thread, with direct single-byte charset and
+ * UTF-8 encoding of strings.
+ */
+final class ByteOutput {
+    private byte[] buf = new byte[256];
+    private int count;
+
+    void reset() {
+        count = 0;
+    }
+
+    int capacity() {
+        return buf.length;
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    /**
+     * Copies the bytes into a buffer at an absolute index, leaving its position unchanged.
+     */
+    void writeTo(ByteBuffer target, int index) {
+        target.put(index, buf, 0, count);
+    }
+
+    void updateChecksum(Checksum checksum) {
+        checksum.update(buf, 0, count);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+        }
+    }
+
+    void write(byte b) {
+        ensureCapacity(1);
+        buf[count++] = b;
+    }
+
+    /**
+     * Writes the decimal digits of a number.
+     */
+    void writeDecimal(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeString(Long.toString(value), CharsetKind.US_ASCII);
+                return;
+            }
+            write((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    /**
+     * Writes an unsigned LEB128 variable-length number (7 bits per byte, low bits first).
+     */
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed number as a zigzag-encoded variable-length number, so that small
+     * negative values stay short.
+     */
+    void writeZigZagLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Computes the number of bytes {@link #writeString(String, CharsetKind)} produces in UTF-8.
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                continue;
+            }
+            if (ch < 0x800) {
+                bytes += 1;
+            } else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // Four bytes for the two chars of the pair
+                    bytes += 2;
+                    i++;
+                }
+                // An unpaired surrogate is written as '?'
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    /**
+     * Writes a value the way FormattingConverter does: "null" without modifiers, padding
+     * and truncation according to the format info otherwise.
+     */
+    void writeFormatted(String s, FormatInfo formatInfo, CharsetKind kind) {
+        if (formatInfo == null) {
+            writeString(s == null ? "null" : s, kind);
+            return;
+        }
+        int min = formatInfo.getMin();
+        int max = formatInfo.getMax();
+        if (s == null) {
+            writeSpaces(min);
+            return;
+        }
+        int length = s.length();
+        if (length > max) {
+            writeString(formatInfo.isLeftTruncate() ? s.substring(length - max) : s.substring(0, max), kind);
+        } else if (length < min) {
+            if (formatInfo.isLeftPad()) {
+                writeSpaces(min - length);
+                writeString(s, kind);
+            } else {
+                writeString(s, kind);
+                writeSpaces(min - length);
+            }
+        } else {
+            writeString(s, kind);
+        }
+    }
+
+    private void writeSpaces(int n) {
+        if (n <= 0) {
+            return;
+        }
+        ensureCapacity(n);
+        Arrays.fill(buf, count, count + n, (byte) ' ');
+        count += n;
+    }
+
+    /**
+     * Encodes a string, replacing unmappable characters with '?' like String.getBytes.
+     */
+    void writeString(String s, CharsetKind kind) {
+        writeString(s, 0, s.length(), kind);
+    }
+
+    /**
+     * Encodes the characters of a string between {@code start} (inclusive) and {@code end}
+     * (exclusive).
+     */
+    void writeString(String s, int start, int end, CharsetKind kind) {
+        int length = end;
+        ensureCapacity(kind == CharsetKind.UTF_8 ? (end - start) * 3 : end - start);
+        byte[] b = buf;
+        int c = count;
+        for (int i = start; i < length; i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                b[c++] = (byte) ch;
+            } else if (kind != CharsetKind.UTF_8) {
+                if (kind == CharsetKind.ISO_8859_1 && ch < 0x100) {
+                    b[c++] = (byte) ch;
+                } else {
+                    // A surrogate pair is one unmappable character
+                    b[c++] = (byte) '?';
+                    if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        i++;
+                    }
+                }
+            } else if (ch < 0x800) {
+                b[c++] = (byte) (0xC0 | (ch >> 6));
+                b[c++] = (byte) (0x80 | (ch & 0x3F));
+            } else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(ch, s.charAt(++i));
+                    b[c++] = (byte) (0xF0 | (cp >> 18));
+                    b[c++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[c++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[c++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[c++] = (byte) '?';
+                }
+            } else {
+                b[c++] = (byte) (0xE0 | (ch >> 12));
+                b[c++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                b[c++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+        count = c;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mork.cookie.logback;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Charsets that encode one character at a time, which the byte writer handles directly.
+ */
+enum CharsetKind {
+    UTF_8, ISO_8859_1, US_ASCII;
+
+    static CharsetKind of(Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return UTF_8;
+        }
+        if (StandardCharsets.ISO_8859_1.equals(charset)) {
+            return ISO_8859_1;
+        }
+        if (StandardCharsets.US_ASCII.equals(charset)) {
+            return US_ASCII;
+        }
+        return null;
+    }
+
+    byte[] encode(String text) {
+        ByteOutput out = new ByteOutput();
+        out.writeString(text, this);
+        return out.toByteArray();
+    }
+}
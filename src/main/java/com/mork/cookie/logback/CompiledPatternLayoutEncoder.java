@@ -0,0 +1,326 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.pattern.Abbreviator;
+import ch.qos.logback.classic.pattern.ClassNameOnlyAbbreviator;
+import ch.qos.logback.classic.pattern.ExtendedThrowableProxyConverter;
+import ch.qos.logback.classic.pattern.TargetLengthBasedClassNameAbbreviator;
+import ch.qos.logback.classic.pattern.ThrowableHandlingConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.pattern.FormatInfo;
+import ch.qos.logback.core.util.CachingDateFormatter;
+
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link PatternLayoutEncoder} that compiles simple patterns into direct byte writes.
+ * <p>
+ * Patterns made of literals, {@code %d}, {@code %thread}, {@code %level}, {@code %logger},
+ * {@code %msg} and {@code %n} (with the usual format modifiers) are compiled into a list of
+ * segments that write straight into a reusable per-thread byte buffer, without going through
+ * the converter chain and an intermediate String. Abbreviated logger names and the
+ * per-second prefix of the timestamp are cached as encoded bytes, and the names of buffered
+ * snapshots are written from their pre-encoded symbols. The output is
+ * byte-identical to {@link PatternLayoutEncoder}, which is used as is for any pattern (or
+ * charset) this encoder cannot compile.
+ */
+public class CompiledPatternLayoutEncoder extends PatternLayoutEncoder {
+
+    private static final Pattern TOKEN = Pattern.compile("%(-?\\d*(?:\\.-?\\d+)?)([a-zA-Z]+)(?:\\{([^}]*)\\})?");
+    private static final int MAX_CACHED_LOGGER_NAMES = 4096;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private Segment[] segments;
+    private ThrowableHandlingConverter throwableConverter;
+    private CharsetKind charsetKind;
+    private final ThreadLocal<ByteOutput> buffers = ThreadLocal.withInitial(ByteOutput::new);
+
+    /**
+     * Checks whether the pattern was compiled, or whether encoding falls back to the layout.
+     *
+     * @return true if the compiled fast path is used
+     */
+    public boolean isCompiled() {
+        return segments != null;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        if (!isStarted()) {
+            return;
+        }
+        Charset charset = getCharset() == null ? Charset.defaultCharset() : getCharset();
+        charsetKind = CharsetKind.of(charset);
+        List<Segment> compiled = charsetKind == null ? null : compile(getPattern());
+        if (compiled == null) {
+            addInfo("Pattern [" + getPattern() + "] cannot be compiled, using the pattern layout.");
+            return;
+        }
+        boolean packagingData = getContext() instanceof LoggerContext loggerContext && loggerContext.isPackagingDataEnabled();
+        // Same converter as the one PatternLayout appends when the pattern has no throwable word
+        throwableConverter = packagingData ? new ExtendedThrowableProxyConverter() : new ThrowableProxyConverter();
+        throwableConverter.setContext(getContext());
+        throwableConverter.start();
+        segments = compiled.toArray(new Segment[0]);
+    }
+
+    @Override
+    public void stop() {
+        segments = null;
+        if (throwableConverter != null) {
+            throwableConverter.stop();
+            throwableConverter = null;
+        }
+        super.stop();
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        Segment[] compiled = segments;
+        if (compiled == null) {
+            return super.encode(event);
+        }
+        ByteOutput out = buffers.get();
+        out.reset();
+        for (Segment segment : compiled) {
+            segment.write(event, out);
+        }
+        if (event.getThrowableProxy() != null) {
+            out.writeString(throwableConverter.convert(event), charsetKind);
+        }
+        byte[] bytes = out.toByteArray();
+        if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        return bytes;
+    }
+
+    private List<Segment> compile(String pattern) {
+        if (pattern == null || pattern.indexOf('\\') >= 0 || pattern.indexOf('(') >= 0 || pattern.indexOf(')') >= 0) {
+            return null;
+        }
+        Map<String, String> effectiveConverters = getLayout() instanceof PatternLayout layout
+                ? layout.getEffectiveConverterMap() : Map.of();
+        List<Segment> compiled = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(pattern);
+        int position = 0;
+        while (matcher.find()) {
+            if (matcher.start() > position) {
+                String text = pattern.substring(position, matcher.start());
+                if (text.indexOf('%') >= 0) {
+                    return null;
+                }
+                compiled.add(literal(text));
+            }
+            String keyword = matcher.group(2);
+            // A conversion rule may have replaced the standard converter for this word
+            if (!String.valueOf(effectiveConverters.get(keyword)).equals(PatternLayout.DEFAULT_CONVERTER_MAP.get(keyword))) {
+                return null;
+            }
+            Segment segment;
+            try {
+                segment = segment(keyword, formatInfo(matcher.group(1)), matcher.group(3));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (segment == null) {
+                return null;
+            }
+            compiled.add(segment);
+            position = matcher.end();
+        }
+        String rest = pattern.substring(position);
+        if (rest.indexOf('%') >= 0) {
+            return null;
+        }
+        if (!rest.isEmpty()) {
+            compiled.add(literal(rest));
+        }
+        return compiled;
+    }
+
+    private static FormatInfo formatInfo(String modifier) {
+        return modifier == null || modifier.isEmpty() ? null : FormatInfo.valueOf(modifier);
+    }
+
+    private Segment literal(String text) {
+        byte[] bytes = charsetKind.encode(text);
+        return (event, out) -> out.write(bytes);
+    }
+
+    private Segment segment(String keyword, FormatInfo formatInfo, String option) {
+        switch (keyword) {
+            case "d":
+            case "date":
+                return formatInfo == null ? dateSegment(option) : null;
+            case "t":
+            case "thread":
+                return threadSegment(formatInfo);
+            case "le":
+            case "level":
+            case "p":
+                return option == null ? levelSegment(formatInfo) : null;
+            case "lo":
+            case "logger":
+            case "c":
+                return loggerSegment(formatInfo, option);
+            case "m":
+            case "msg":
+            case "message":
+                return option == null
+                        ? (event, out) -> out.writeFormatted(event.getFormattedMessage(), formatInfo, charsetKind)
+                        : null;
+            case "n":
+                return formatInfo == null && option == null ? literal(CoreConstants.LINE_SEPARATOR) : null;
+            default:
+                return null;
+        }
+    }
+
+    private Segment dateSegment(String option) {
+        if (option != null && (option.indexOf(',') >= 0 || option.indexOf('"') >= 0 || option.indexOf('\'') >= 0)) {
+            return null;
+        }
+        String datePattern = option == null || option.isEmpty() || option.equals("ISO8601")
+                ? CoreConstants.ISO8601_PATTERN : option;
+        int millis = datePattern.indexOf("SSS");
+        if (millis >= 0 && millis == datePattern.length() - 3 && datePattern.indexOf('S') == millis) {
+            return new SecondCachingDateSegment(datePattern.substring(0, millis), charsetKind);
+        }
+        CachingDateFormatter formatter = new CachingDateFormatter(datePattern, ZoneId.systemDefault());
+        return (event, out) -> out.writeString(formatter.format(event.getTimeStamp()), charsetKind);
+    }
+
+    private Segment levelSegment(FormatInfo formatInfo) {
+        // TRACE, DEBUG, INFO, WARN, ERROR map to levelInt / 10000 = 0..4
+        Level[] levels = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+        byte[][] encoded = new byte[levels.length][];
+        for (int i = 0; i < levels.length; i++) {
+            encoded[i] = formatted(levels[i].toString(), formatInfo);
+        }
+        return (event, out) -> {
+            Level level = event.getLevel();
+            int index = level.toInt() / 10000;
+            if (index < encoded.length && levels[index] == level) {
+                out.write(encoded[index]);
+            } else {
+                out.writeFormatted(level.toString(), formatInfo, charsetKind);
+            }
+        };
+    }
+
+    private Segment threadSegment(FormatInfo formatInfo) {
+        if (formatInfo != null) {
+            return (event, out) -> out.writeFormatted(event.getThreadName(), formatInfo, charsetKind);
+        }
+        return (event, out) -> {
+            if (!(event instanceof BufferedLoggingEvent snapshot) || !writeSymbol(snapshot.getThreadSymbol(), out)) {
+                out.writeFormatted(event.getThreadName(), null, charsetKind);
+            }
+        };
+    }
+
+    // Writes the pre-encoded bytes of a buffered snapshot's name, if they fit the charset
+    private boolean writeSymbol(SymbolTable.Symbol symbol, ByteOutput out) {
+        if (symbol == null || (charsetKind != CharsetKind.UTF_8 && !symbol.isAscii())) {
+            return false;
+        }
+        out.write(symbol.utf8());
+        return true;
+    }
+
+    private Segment loggerSegment(FormatInfo formatInfo, String option) {
+        Abbreviator abbreviator = null;
+        if (option != null && !option.isEmpty()) {
+            int length = Integer.parseInt(option.trim());
+            if (length < 0) {
+                return null;
+            }
+            abbreviator = length == 0 ? new ClassNameOnlyAbbreviator() : new TargetLengthBasedClassNameAbbreviator(length);
+        }
+        Abbreviator finalAbbreviator = abbreviator;
+        Map<String, byte[]> cache = new ConcurrentHashMap<>();
+        boolean plain = abbreviator == null && formatInfo == null;
+        return (event, out) -> {
+            if (plain && event instanceof BufferedLoggingEvent snapshot && writeSymbol(snapshot.getLoggerSymbol(), out)) {
+                return;
+            }
+            String name = event.getLoggerName();
+            if (name == null) {
+                out.writeFormatted(null, formatInfo, charsetKind);
+                return;
+            }
+            byte[] bytes = cache.get(name);
+            if (bytes == null) {
+                String abbreviated = finalAbbreviator == null ? name : finalAbbreviator.abbreviate(name);
+                bytes = formatted(abbreviated, formatInfo);
+                if (cache.size() < MAX_CACHED_LOGGER_NAMES) {
+                    cache.put(name, bytes);
+                }
+            }
+            out.write(bytes);
+        };
+    }
+
+    private byte[] formatted(String text, FormatInfo formatInfo) {
+        ByteOutput out = new ByteOutput();
+        out.writeFormatted(text, formatInfo, charsetKind);
+        return out.toByteArray();
+    }
+
+    /**
+     * One compiled piece of the pattern.
+     */
+    private interface Segment {
+        void write(ILoggingEvent event, ByteOutput out);
+    }
+
+    /**
+     * Date segment for patterns ending in milliseconds: the part up to the seconds is
+     * formatted and encoded once per second, then the three millisecond digits are appended.
+     */
+    private static final class SecondCachingDateSegment implements Segment {
+        private final DateTimeFormatter prefixFormatter;
+        private final CharsetKind charsetKind;
+        private volatile CachedSecond cached = new CachedSecond(Long.MIN_VALUE, null);
+
+        SecondCachingDateSegment(String prefixPattern, CharsetKind charsetKind) {
+            this.prefixFormatter = DateTimeFormatter.ofPattern(prefixPattern).withZone(ZoneId.systemDefault());
+            this.charsetKind = charsetKind;
+        }
+
+        @Override
+        public void write(ILoggingEvent event, ByteOutput out) {
+            long timeStamp = event.getTimeStamp();
+            long second = Math.floorDiv(timeStamp, 1000L);
+            CachedSecond current = cached;
+            if (current.second != second) {
+                current = new CachedSecond(second, charsetKind.encode(prefixFormatter.format(Instant.ofEpochSecond(second))));
+                cached = current;
+            }
+            out.write(current.prefix);
+            int millis = (int) Math.floorMod(timeStamp, 1000L);
+            out.write((byte) ('0' + millis / 100));
+            out.write((byte) ('0' + (millis / 10) % 10));
+            out.write((byte) ('0' + millis % 10));
+        }
+
+        private record CachedSecond(long second, byte[] prefix) {
+        }
+    }
+}
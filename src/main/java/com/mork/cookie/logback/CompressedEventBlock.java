@@ -0,0 +1,313 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A run of buffered events encoded into a compact binary form and deflated into one byte array.
+ * <p>
+ * Messages are formatted when the block is built. Logger and thread names are written as the
+ * IDs of the appender's {@link SymbolTable}, so inflated events share the canonical names;
+ * MDC keys and values are written once per block and referenced afterwards. Parts that are rare and already shared
+ * between events (throwables, markers, key/value pairs, caller data, logger context) are not
+ * encoded but kept as object references next to the compressed bytes. Inflating a block yields
+ * {@link BufferedLoggingEvent}s carrying the same data as the original events.
+ */
+final class CompressedEventBlock {
+
+    private static final int NULL = -1;
+    // A name the symbol table had no room for, written as text
+    private static final int UNINTERNED = -2;
+
+    private final byte[] data;
+    private final Object[] references;
+    private final int eventCount;
+    private final SymbolTable symbols;
+    private final CompressionMetrics metrics;
+
+    private CompressedEventBlock(byte[] data, Object[] references, int eventCount, SymbolTable symbols,
+                                 CompressionMetrics metrics) {
+        this.data = data;
+        this.references = references;
+        this.eventCount = eventCount;
+        this.symbols = symbols;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Encodes and compresses a run of events.
+     *
+     * @param events the events, in order
+     * @param level the Deflater compression level
+     * @param symbols the table logger and thread names are interned in
+     * @param metrics receives the compression ratio and CPU time
+     * @return the compressed block
+     */
+    static CompressedEventBlock compress(List<ILoggingEvent> events, int level, SymbolTable symbols,
+                                         CompressionMetrics metrics) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(level);
+        Writer writer = new Writer(symbols);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater, 8192), 8192))) {
+            for (ILoggingEvent event : events) {
+                writer.write(out, event);
+            }
+            out.flush();
+            out.close();
+            byte[] data = bytes.toByteArray();
+            metrics.recordCompression(events.size(), out.size(), data.length, System.nanoTime() - start);
+            return new CompressedEventBlock(data, writer.references.toArray(), events.size(), symbols, metrics);
+        } catch (IOException e) {
+            // Only in-memory streams are involved
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Inflates the block back into events.
+     *
+     * @return the events, in their original order
+     */
+    List<ILoggingEvent> inflate() {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        List<ILoggingEvent> events = new ArrayList<>(eventCount);
+        Reader reader = new Reader(references, symbols);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(data), inflater, 8192), 8192))) {
+            for (int i = 0; i < eventCount; i++) {
+                events.add(reader.read(in));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted compressed log block", e);
+        } finally {
+            inflater.end();
+        }
+        metrics.recordInflation(System.nanoTime() - start);
+        return events;
+    }
+
+    int getEventCount() {
+        return eventCount;
+    }
+
+    int getCompressedSize() {
+        return data.length;
+    }
+
+    private static final class Writer {
+        private final SymbolTable symbols;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<Map<String, String>, Integer> mdcMaps = new IdentityHashMap<>();
+        private final Map<Object, Integer> referenceIds = new IdentityHashMap<>();
+        private final List<Object> references = new ArrayList<>();
+
+        Writer(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        void write(DataOutputStream out, ILoggingEvent event) throws IOException {
+            out.writeLong(event.getTimeStamp());
+            out.writeInt(event.getNanoseconds());
+            out.writeLong(event.getSequenceNumber());
+            out.writeInt(event.getLevel().toInt());
+            if (event instanceof BufferedLoggingEvent snapshot) {
+                writeSymbol(out, snapshot.getLoggerSymbol());
+                writeSymbol(out, snapshot.getThreadSymbol());
+            } else {
+                writeSymbol(out, symbols.intern(event.getLoggerName()));
+                writeSymbol(out, symbols.intern(event.getThreadName()));
+            }
+            writeText(out, event.getFormattedMessage());
+            writeMdc(out, event.getMDCPropertyMap());
+            writeReference(out, event.getThrowableProxy());
+            writeReference(out, event.getMarkerList());
+            writeReference(out, event.getKeyValuePairs());
+            writeReference(out, event.hasCallerData() ? event.getCallerData() : null);
+            writeReference(out, event.getLoggerContextVO());
+        }
+
+        private void writeSymbol(DataOutputStream out, SymbolTable.Symbol symbol) throws IOException {
+            if (symbol == null) {
+                out.writeInt(NULL);
+            } else if (symbol.id() == SymbolTable.NO_ID) {
+                out.writeInt(UNINTERNED);
+                writeText(out, symbol.name());
+            } else {
+                out.writeInt(symbol.id());
+            }
+        }
+
+        // A known name is written as its id; a new one as the next id followed by the text
+        private void writeName(DataOutputStream out, String name) throws IOException {
+            if (name == null) {
+                out.writeInt(NULL);
+                return;
+            }
+            Integer id = names.get(name);
+            if (id != null) {
+                out.writeInt(id);
+                return;
+            }
+            out.writeInt(names.size());
+            names.put(name, names.size());
+            writeText(out, name);
+        }
+
+        private void writeMdc(DataOutputStream out, Map<String, String> mdc) throws IOException {
+            if (mdc == null) {
+                out.writeInt(NULL);
+                return;
+            }
+            // MDC maps are shared by consecutive events until the MDC changes
+            Integer id = mdcMaps.get(mdc);
+            if (id != null) {
+                out.writeInt(id);
+                return;
+            }
+            out.writeInt(mdcMaps.size());
+            mdcMaps.put(mdc, mdcMaps.size());
+            out.writeInt(mdc.size());
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                writeName(out, entry.getKey());
+                writeName(out, entry.getValue());
+            }
+        }
+
+        private void writeReference(DataOutputStream out, Object reference) throws IOException {
+            if (reference == null) {
+                out.writeInt(NULL);
+                return;
+            }
+            Integer id = referenceIds.get(reference);
+            if (id == null) {
+                id = references.size();
+                referenceIds.put(reference, id);
+                references.add(reference);
+            }
+            out.writeInt(id);
+        }
+
+        private static void writeText(DataOutputStream out, String text) throws IOException {
+            if (text == null) {
+                out.writeInt(NULL);
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Reader {
+        private final List<String> names = new ArrayList<>();
+        private final List<Map<String, String>> mdcMaps = new ArrayList<>();
+        private final Object[] references;
+        private final SymbolTable symbols;
+
+        Reader(Object[] references, SymbolTable symbols) {
+            this.references = references;
+            this.symbols = symbols;
+        }
+
+        @SuppressWarnings("unchecked")
+        ILoggingEvent read(DataInputStream in) throws IOException {
+            long timeStamp = in.readLong();
+            int nanoseconds = in.readInt();
+            long sequenceNumber = in.readLong();
+            int levelInt = in.readInt();
+            SymbolTable.Symbol logger = readSymbol(in);
+            SymbolTable.Symbol thread = readSymbol(in);
+            String message = readText(in);
+            Map<String, String> mdc = readMdc(in);
+            IThrowableProxy throwableProxy = (IThrowableProxy) readReference(in);
+            List<Marker> markerList = (List<Marker>) readReference(in);
+            List<KeyValuePair> keyValuePairs = (List<KeyValuePair>) readReference(in);
+            StackTraceElement[] callerData = (StackTraceElement[]) readReference(in);
+            LoggerContextVO loggerContextVO = (LoggerContextVO) readReference(in);
+            return new BufferedLoggingEvent(timeStamp, nanoseconds, sequenceNumber, levelInt, logger, thread,
+                    message, throwableProxy, mdc, markerList, keyValuePairs, callerData, loggerContextVO);
+        }
+
+        private SymbolTable.Symbol readSymbol(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            if (id == NULL) {
+                return null;
+            }
+            // The block was written after the symbol was added, so its slot is visible
+            return id == UNINTERNED ? symbols.intern(readText(in)) : symbols.get(id);
+        }
+
+        private String readName(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            if (id == NULL) {
+                return null;
+            }
+            if (id < names.size()) {
+                return names.get(id);
+            }
+            String name = readText(in);
+            names.add(name);
+            return name;
+        }
+
+        private Map<String, String> readMdc(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            if (id == NULL) {
+                return null;
+            }
+            if (id < mdcMaps.size()) {
+                return mdcMaps.get(id);
+            }
+            int size = in.readInt();
+            Map<String, String> mdc = new HashMap<>(Math.max(4, size * 2));
+            for (int i = 0; i < size; i++) {
+                String key = readName(in);
+                mdc.put(key, readName(in));
+            }
+            Map<String, String> result = mdc.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(mdc);
+            mdcMaps.add(result);
+            return result;
+        }
+
+        private Object readReference(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            return id == NULL ? null : references[id];
+        }
+
+        private static String readText(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length == NULL) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
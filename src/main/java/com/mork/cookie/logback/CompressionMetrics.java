@@ -0,0 +1,80 @@
+package com.mork.cookie.logback;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the compression of cold request buffers: how much was compressed, how well,
+ * and how much CPU time was spent compressing and inflating blocks.
+ */
+public class CompressionMetrics {
+
+    private final LongAdder blocksCompressed = new LongAdder();
+    private final LongAdder eventsCompressed = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final LongAdder blocksInflated = new LongAdder();
+    private final LongAdder inflationNanos = new LongAdder();
+
+    void recordCompression(int events, int rawLength, int compressedLength, long nanos) {
+        blocksCompressed.increment();
+        eventsCompressed.add(events);
+        uncompressedBytes.add(rawLength);
+        compressedBytes.add(compressedLength);
+        compressionNanos.add(nanos);
+    }
+
+    void recordInflation(long nanos) {
+        blocksInflated.increment();
+        inflationNanos.add(nanos);
+    }
+
+    public long getBlocksCompressed() {
+        return blocksCompressed.sum();
+    }
+
+    public long getEventsCompressed() {
+        return eventsCompressed.sum();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    public long getCompressionNanos() {
+        return compressionNanos.sum();
+    }
+
+    public long getBlocksInflated() {
+        return blocksInflated.sum();
+    }
+
+    public long getInflationNanos() {
+        return inflationNanos.sum();
+    }
+
+    /**
+     * Gets the ratio of encoded bytes to compressed bytes over all blocks so far.
+     *
+     * @return the compression ratio, or 0 if nothing was compressed yet
+     */
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.sum();
+        return compressed == 0 ? 0 : (double) uncompressedBytes.sum() / compressed;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionMetrics{blocksCompressed=" + getBlocksCompressed()
+                + ", eventsCompressed=" + getEventsCompressed()
+                + ", uncompressedBytes=" + getUncompressedBytes()
+                + ", compressedBytes=" + getCompressedBytes()
+                + ", compressionMillis=" + getCompressionNanos() / 1_000_000
+                + ", blocksInflated=" + getBlocksInflated()
+                + ", inflationMillis=" + getInflationNanos() / 1_000_000 + "}";
+    }
+}
@@ -1,70 +1,542 @@
 package com.mork.cookie.logback;
 
 import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.pattern.ExtendedThrowableProxyConverter;
+import ch.qos.logback.classic.pattern.ThrowableHandlingConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import ch.qos.logback.core.spi.ContextAware;
 import ch.qos.logback.core.status.ErrorStatus;
 import ch.qos.logback.core.status.InfoStatus;
 import ch.qos.logback.core.status.WarnStatus;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 /**
  * A Logback appender that buffers log events per request and conditionally displays them
  * based on request outcome. For successful requests, only INFO-level logs are shown.
  * For requests with errors, all log levels are displayed for debugging purposes.
+ * <p>
+ * Selected events are written to the console through the configured encoder, unless
+ * child appenders are attached (via {@code <appender-ref>}), in which case the events
+ * are handed to those appenders in a batch at flush time.
  */
-public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
+public class ConditionalBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
 
     private Encoder<ILoggingEvent> encoder;
-    private final Map<String, RequestLogBuffer> requestBuffers = new ConcurrentHashMap<>();
-    private final Object consoleLock = new Object();
+    private final AppenderAttachableImpl<ILoggingEvent> attachedAppenders = new AppenderAttachableImpl<>();
+    // Request buffers, split by request ID hash into shards (see BufferShard)
+    private volatile BufferShard[] shards = newShards(DEFAULT_SHARD_COUNT);
+    private final Map<String, RequestLogBuffer> allRequestBuffers = Collections.unmodifiableMap(new AllRequestBuffers());
 
     // Configuration properties
     private int maxBufferSize = 1000; // Maximum logs per request
     private int bufferTimeoutMinutes = 10; // Buffer cleanup timeout in minutes
     private int cleanupIntervalMinutes = 5; // Cleanup task interval in minutes
+    private boolean turboFilterEnabled = true; // Deny sub-ERROR events outside requests up front
+    private boolean deferredFormatting = false; // Buffer template + frozen arguments, format at flush
+    private boolean compactEvents = false; // Buffer slim immutable snapshots instead of LoggingEvents
+    private Set<String> mdcKeys = null; // MDC keys kept by compact snapshots (null = all)
+    private boolean includeCallerData = false; // Capture caller data (%L, %M, %F, %caller) on the logging thread
+    private int stackTraceCacheSize = 100; // Rendered stack traces kept for repeats (0 = disabled)
+    private boolean compressionEnabled = false; // Deflate buffers of long-running requests
+    private int compressionIdleSeconds = 30; // Compress buffers without new events for this long
+    private int compressionThreshold = 200; // Compress buffers holding this many uncompressed events
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private boolean checkpointEnabled = false; // Periodically write and trim long-running requests
+    private int checkpointIntervalSeconds = 60; // Checkpoint requests running for this long
+    private int checkpointSize = 500; // Checkpoint buffers reaching this many events
+    private int checkpointWindowSize = 100; // Recent non-INFO events kept at a checkpoint
+    private String flightRecorderFile = null; // Memory-mapped ring of recent buffered events (null = disabled)
+    private int flightRecorderSizeMb = 64; // Size of the flight recorder ring
+    private boolean adaptiveBufferSizing = false; // Presize new buffers from the event counts of their route
+    private int bufferSizePercentile = 90; // Percentile of a route's event counts new buffers are sized for
+    private boolean heapPressureEnabled = false; // Degrade when the heap fills up
+    private int heapPressureThresholdPercent = 85; // Heap occupancy (after GC) entering the degraded mode
+    private int heapRecoveryThresholdPercent = 70; // Heap occupancy leaving the degraded mode
+    private int degradedMaxBufferSize = 100; // Per-request limit in degraded mode
+    private int evictLargestBuffers = 0; // Buffers evicted on entering the degraded mode
+    private boolean dumpEvictedBuffers = false; // Write evicted buffers instead of dropping them
+    private int drainTimeoutMillis = 5000; // Time budget for writing in-flight buffers on stop (0 = drop them)
+    private int flushQueueSize = 256; // Buffers queued for the writer thread, further flushes are written inline
+    private int shardCount = DEFAULT_SHARD_COUNT; // Independent buffer registries, rounded up to a power of two
+
+    private static final int DEFAULT_SHARD_COUNT = 16;
+    private static final int MAX_SHARD_COUNT = 1024;
+    // Recovery is detected by polling the heap pools
+    private static final int HEAP_PRESSURE_POLL_SECONDS = 5;
+    // Buffers smaller than this are not worth a compressed block when they go idle
+    private static final int MIN_EVENTS_TO_COMPRESS = 16;
+    private final CompressionMetrics compressionMetrics = new CompressionMetrics();
+    // Logger and thread names of buffered snapshots and compressed blocks
+    private final SymbolTable symbols = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+    // Event counts of completed requests per route, used to presize new buffers
+    private final RouteBufferSizes routeBufferSizes = new RouteBufferSizes(bufferSizePercentile);
+    // Per-route overrides, compiled into a matcher whenever a rule is added
+    private final List<RouteRule> routeRules = new ArrayList<>();
+    private volatile RouteMatcher routeMatcher = RouteMatcher.EMPTY;
+
+    // Conversion words that place the stack trace explicitly inside a pattern
+    private static final Pattern THROWABLE_CONVERSION_WORD = Pattern.compile(
+            "%[-.\\d]*(ex|exception|throwable|xEx|xException|xThrowable|rEx|rootException|nopex|nopexception)(?![A-Za-z])");
+
+    // Stack trace cache, only used when the encoder renders the stack trace last
+    private StackTraceCache stackTraceCache;
+    private ThrowableHandlingConverter throwableConverter;
+    private Charset encoderCharset;
+
+    // Writes each flushed request as one unit, replacing console banners and attached appenders
+    private RequestLogWriter requestLogWriter;
+
+    // Keeps every buffered event, whatever the outcome, in a crash-surviving file
+    private FlightRecorder flightRecorder;
+
+    // Switches to the degraded mode under heap pressure (null when disabled)
+    private volatile HeapPressureMonitor heapPressureMonitor;
+    private DoubleSupplier heapPressureProbe;
+
+    // Companion filter installed on the logger context while the appender runs
+    private RequestContextTurboFilter turboFilter;
 
     // Scheduled cleanup
     private ScheduledExecutorService cleanupExecutor;
 
+    // Writes the buffers handed over by flushRequestLogsIfErrorAsync
+    private volatile ExecutorService flushExecutor;
+
+    // Executors still writing after their stop deadline, the outputs are stopped once they end
+    private final List<ExecutorService> stragglers = Collections.synchronizedList(new ArrayList<>());
+
+    // The instance that took over the buffers on reconfiguration, receives flushes of stale references
+    private volatile ConditionalBufferAppender successor;
+
+    // Events logged for requests whose logs had been flushed already
+    private final LongAdder lateEvents = new LongAdder();
+
+    // Asynchronous flushes written by the calling thread because the writer's queue was full
+    private final LongAdder inlineFlushes = new LongAdder();
+
     /**
      * Inner class to hold buffer with metadata
      */
     public static class RequestLogBuffer {
+        private static final Comparator<ILoggingEvent> BY_TIMESTAMP = Comparator.comparingLong(ILoggingEvent::getTimeStamp);
+
+        // Recent events, plus older runs of events compressed into blocks (guarded by this)
         private final List<ILoggingEvent> events;
+        // Resolved to the handler's template once the framework knows it (see resolveRoute)
+        private volatile String route;
+        private final RouteRule rule;
+        private final int initialCapacity;
+        // Events of other threads working for the request, one list per thread (guarded by the list)
+        private final Thread ownerThread;
+        private final Map<Thread, List<ILoggingEvent>> workerEvents = new ConcurrentHashMap<>();
+        // Total number of buffered events plus reservations, read without locking on every append
+        private final AtomicInteger eventCount = new AtomicInteger();
+        // Shared with the threads working for the request, marked completed on flush (may be null)
+        private final RequestLoggingContext.RequestState requestState;
+        private volatile boolean error;
+        private volatile boolean truncated;
+        // Set before the buffer leaves the registry, refuses further events
+        private volatile boolean closed;
+        private final List<CompressedEventBlock> compressedBlocks = new ArrayList<>(0);
+        private volatile int compressedEventCount;
+        // Bumped whenever events are removed or reordered, so that a concurrent compression can tell
+        private int rewriteCount;
         private final long createdTime;
         private volatile long lastAccessTime;
+        private volatile long lastAppendTime;
+        private volatile long lastCheckpointTime;
 
         public RequestLogBuffer() {
-            this.events = new CopyOnWriteArrayList<>();
+            this(null, null, 0);
+        }
+
+        /**
+         * Creates a buffer for a request of a route, with room for the given number of events.
+         *
+         * @param route the route of the request, may be null
+         * @param rule the route rule overriding the appender's configuration, may be null
+         * @param initialCapacity the initial capacity of the event list (0 for the default)
+         */
+        RequestLogBuffer(String route, RouteRule rule, int initialCapacity) {
+            this(route, rule, initialCapacity, null);
+        }
+
+        RequestLogBuffer(String route, RouteRule rule, int initialCapacity, RequestLoggingContext.RequestState requestState) {
+            this.events = initialCapacity > 0 ? new ArrayList<>(initialCapacity) : new ArrayList<>();
+            this.route = route;
+            this.rule = rule;
+            this.initialCapacity = initialCapacity;
+            this.requestState = requestState;
+            this.ownerThread = Thread.currentThread();
             this.createdTime = System.currentTimeMillis();
             this.lastAccessTime = createdTime;
+            this.lastAppendTime = createdTime;
+            this.lastCheckpointTime = createdTime;
         }
 
         public void addEvent(ILoggingEvent event) {
-            events.add(event);
+            eventCount.incrementAndGet();
+            addReserved(event);
+        }
+
+        /**
+         * Reserves room for one event, so that concurrent appends never take the buffer past its
+         * limit. A successful reservation must be followed by {@link #addReserved}.
+         *
+         * @param limit the maximum number of events
+         * @return false if the buffer is full or closed
+         */
+        boolean reserve(int limit) {
+            for (;;) {
+                int size = eventCount.get();
+                if (size >= limit || closed) {
+                    return false;
+                }
+                if (eventCount.compareAndSet(size, size + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Adds an event room was reserved for.
+         *
+         * @return false if the buffer was closed in the meantime, in which case the reservation
+         *         is released and the event not added
+         */
+        boolean addReserved(ILoggingEvent event) {
+            Thread current = Thread.currentThread();
+            if (current == ownerThread) {
+                synchronized (this) {
+                    if (closed) {
+                        eventCount.decrementAndGet();
+                        return false;
+                    }
+                    events.add(event);
+                }
+            } else {
+                // Worker threads append to their own list, so they do not contend with each other
+                List<ILoggingEvent> segment = workerEvents.get(current);
+                if (segment == null) {
+                    segment = workerEvents.computeIfAbsent(current, t -> new ArrayList<>());
+                }
+                synchronized (segment) {
+                    if (closed) {
+                        eventCount.decrementAndGet();
+                        return false;
+                    }
+                    segment.add(event);
+                }
+            }
             lastAccessTime = System.currentTimeMillis();
+            lastAppendTime = lastAccessTime;
+            return true;
+        }
+
+        /**
+         * Closes the buffer before it is taken out of the registry. Events are refused from then
+         * on, so whoever writes the buffer out sees every event it accepted.
+         *
+         * @param completed whether the request is complete, i.e. its logs are being flushed:
+         *                  threads still working for it will not start a new buffer either
+         */
+        void close(boolean completed) {
+            if (completed && requestState != null) {
+                requestState.markCompleted();
+            }
+            synchronized (this) {
+                closed = true;
+                // Takes every segment lock, so no worker thread can still add behind the flag
+                mergeWorkerEvents();
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
         }
 
+        /**
+         * Gets all buffered events in order, inflating compressed blocks if there are any.
+         *
+         * @return a snapshot of the buffered events
+         */
         public List<ILoggingEvent> getEvents() {
             lastAccessTime = System.currentTimeMillis();
-            return events;
+            synchronized (this) {
+                mergeWorkerEvents();
+                List<ILoggingEvent> all = new ArrayList<>(compressedEventCount + events.size());
+                for (CompressedEventBlock block : compressedBlocks) {
+                    all.addAll(block.inflate());
+                }
+                all.addAll(events);
+                return all;
+            }
+        }
+
+        /**
+         * Gets the buffered INFO events in order. Compressed blocks are inflated to pick theirs,
+         * so that compression frees the memory of all levels.
+         *
+         * @return a snapshot of the buffered INFO events
+         */
+        public List<ILoggingEvent> getInfoEvents() {
+            lastAccessTime = System.currentTimeMillis();
+            synchronized (this) {
+                mergeWorkerEvents();
+                List<ILoggingEvent> info = new ArrayList<>();
+                for (CompressedEventBlock block : compressedBlocks) {
+                    for (ILoggingEvent event : block.inflate()) {
+                        if (event.getLevel().equals(Level.INFO)) {
+                            info.add(event);
+                        }
+                    }
+                }
+                for (ILoggingEvent event : events) {
+                    if (event.getLevel().equals(Level.INFO)) {
+                        info.add(event);
+                    }
+                }
+                return info;
+            }
+        }
+
+        /**
+         * Compresses the events buffered so far into a block. Events logged while the block
+         * is being built stay uncompressed.
+         *
+         * @param level the Deflater compression level
+         * @param symbols the table logger and thread names are interned in
+         * @param metrics receives the compression ratio and CPU time
+         * @return the number of events compressed
+         */
+        int compress(int level, SymbolTable symbols, CompressionMetrics metrics) {
+            List<ILoggingEvent> cold;
+            int rewriteCountBefore;
+            synchronized (this) {
+                mergeWorkerEvents();
+                cold = new ArrayList<>(events);
+                rewriteCountBefore = rewriteCount;
+            }
+            if (cold.isEmpty()) {
+                return 0;
+            }
+            // Encoding and deflating happen outside the lock, appends carry on meanwhile
+            CompressedEventBlock block = CompressedEventBlock.compress(cold, level, symbols, metrics);
+            synchronized (this) {
+                if (rewriteCount != rewriteCountBefore) {
+                    // A checkpoint or merge rewrote the buffer in the meantime, the block is stale
+                    return 0;
+                }
+                compressedBlocks.add(block);
+                compressedEventCount += cold.size();
+                // Nothing was removed meanwhile, so the compressed events are still at the head
+                events.subList(0, cold.size()).clear();
+            }
+            return cold.size();
+        }
+
+        /**
+         * Removes the INFO events buffered so far, which the caller writes out, and keeps only
+         * the most recent {@code window} events of the other levels for a possible error flush.
+         *
+         * @param window the number of conditional events to keep
+         * @return the removed INFO events, in order
+         */
+        synchronized List<ILoggingEvent> checkpoint(int window) {
+            mergeWorkerEvents();
+            List<ILoggingEvent> visible = new ArrayList<>();
+            List<ILoggingEvent> conditional = new ArrayList<>();
+            for (CompressedEventBlock block : compressedBlocks) {
+                for (ILoggingEvent event : block.inflate()) {
+                    if (event.getLevel().equals(Level.INFO)) {
+                        visible.add(event);
+                    } else {
+                        conditional.add(event);
+                    }
+                }
+            }
+            for (ILoggingEvent event : events) {
+                if (event.getLevel().equals(Level.INFO)) {
+                    visible.add(event);
+                } else {
+                    conditional.add(event);
+                }
+            }
+            int from = Math.max(0, conditional.size() - window);
+            eventCount.addAndGet(-(compressedEventCount + events.size()) + conditional.size() - from);
+            events.clear();
+            events.addAll(conditional.subList(from, conditional.size()));
+            compressedBlocks.clear();
+            compressedEventCount = 0;
+            rewriteCount++;
+            lastCheckpointTime = System.currentTimeMillis();
+            return visible;
+        }
+
+        /**
+         * Removes all events buffered so far, which the caller writes out. Used instead of
+         * {@link #checkpoint(int)} for routes that show all their events on success.
+         *
+         * @return the removed events, in order
+         */
+        synchronized List<ILoggingEvent> checkpointAll() {
+            List<ILoggingEvent> all = getEvents();
+            eventCount.addAndGet(-(compressedEventCount + events.size()));
+            events.clear();
+            compressedBlocks.clear();
+            compressedEventCount = 0;
+            rewriteCount++;
+            lastCheckpointTime = System.currentTimeMillis();
+            return all;
+        }
+
+        /**
+         * Moves the events of worker threads into the main list, ordered by timestamp. Events
+         * with the same timestamp keep the order they had on their thread. Must hold this lock.
+         */
+        private void mergeWorkerEvents() {
+            if (workerEvents.isEmpty()) {
+                return;
+            }
+            boolean merged = false;
+            for (List<ILoggingEvent> segment : workerEvents.values()) {
+                synchronized (segment) {
+                    if (!segment.isEmpty()) {
+                        events.addAll(segment);
+                        segment.clear();
+                        merged = true;
+                    }
+                }
+            }
+            if (merged) {
+                // Stable sort: nearly sorted input, so close to linear
+                events.sort(BY_TIMESTAMP);
+                rewriteCount++;
+            }
+        }
+
+        void markError() {
+            error = true;
+        }
+
+        void markTruncated() {
+            truncated = true;
+        }
+
+        /**
+         * Checks whether events were dropped because the buffer was full.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Replaces the route the buffer was created with, once the request's route is known
+         * better, e.g. the URI template of the handler that served it.
+         */
+        void resolveRoute(String route) {
+            if (route != null) {
+                this.route = route;
+            }
+        }
+
+        /**
+         * Gets the route rule of the request, or null if the appender's configuration applies.
+         */
+        public RouteRule getRule() {
+            return rule;
+        }
+
+        int getInitialCapacity() {
+            return initialCapacity;
+        }
+
+        int maxSize(int defaultMaxSize) {
+            return rule != null && rule.getMaxBufferSize() > 0 ? rule.getMaxBufferSize() : defaultMaxSize;
+        }
+
+        long timeoutMs(int defaultTimeoutMinutes) {
+            int minutes = rule != null && rule.getBufferTimeoutMinutes() > 0 ? rule.getBufferTimeoutMinutes() : defaultTimeoutMinutes;
+            return minutes * 60 * 1000L;
+        }
+
+        RouteRule.FlushPolicy flushPolicy() {
+            return rule != null ? rule.getFlushPolicy() : RouteRule.FlushPolicy.CONDITIONAL;
+        }
+
+        /**
+         * Checks whether an ERROR event was buffered, from any thread working for the request.
+         */
+        public boolean hasError() {
+            return error;
         }
 
         public boolean isExpired(long timeoutMs) {
             return (System.currentTimeMillis() - lastAccessTime) > timeoutMs;
         }
 
+        boolean isIdle(long idleMs) {
+            return (System.currentTimeMillis() - lastAppendTime) > idleMs;
+        }
+
+        boolean isCheckpointDue(long intervalMs) {
+            return (System.currentTimeMillis() - lastCheckpointTime) >= intervalMs;
+        }
+
         public int size() {
-            return events.size();
+            return eventCount.get();
+        }
+
+        /**
+         * Gets the number of events not compressed yet.
+         */
+        public int uncompressedSize() {
+            return size() - compressedEventCount;
+        }
+
+        public int compressedSize() {
+            return compressedEventCount;
         }
 
         public long getCreatedTime() {
@@ -76,8 +548,99 @@ public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
         }
     }
 
+    /**
+     * Gets the buffers of the requests in flight, keyed by request ID: a read-only view across
+     * all shards.
+     */
     public Map<String, RequestLogBuffer> getRequestBuffers() {
-        return requestBuffers;
+        return allRequestBuffers;
+    }
+
+    private BufferShard shardFor(String requestId) {
+        BufferShard[] current = shards;
+        if (current.length == 1 || requestId == null) {
+            return current[0];
+        }
+        int hash = requestId.hashCode();
+        return current[(hash ^ (hash >>> 16)) & (current.length - 1)];
+    }
+
+    private static BufferShard[] newShards(int count) {
+        BufferShard[] shards = new BufferShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new BufferShard();
+        }
+        return shards;
+    }
+
+    /**
+     * The buffers of every shard as one map, for reading.
+     */
+    private final class AllRequestBuffers extends AbstractMap<String, RequestLogBuffer> {
+
+        @Override
+        public RequestLogBuffer get(Object key) {
+            return key instanceof String requestId ? shardFor(requestId).buffers().get(requestId) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (BufferShard shard : shards) {
+                size += shard.buffers().size();
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            for (BufferShard shard : shards) {
+                if (!shard.buffers().isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Set<Entry<String, RequestLogBuffer>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, RequestLogBuffer>> iterator() {
+                    BufferShard[] current = shards;
+                    return new Iterator<>() {
+                        private int shard;
+                        private Iterator<Entry<String, RequestLogBuffer>> entries = current[0].buffers().entrySet().iterator();
+
+                        @Override
+                        public boolean hasNext() {
+                            while (!entries.hasNext() && shard + 1 < current.length) {
+                                entries = current[++shard].buffers().entrySet().iterator();
+                            }
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, RequestLogBuffer> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            return entries.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return AllRequestBuffers.this.size();
+                }
+            };
+        }
     }
 
     @Override
@@ -87,139 +650,685 @@ public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
         if (requestId == null) {
             // No request context, log normally if it's ERROR level
             if (event.getLevel().isGreaterOrEqual(Level.ERROR)) {
-                writeToConsole(event);
+                writeUnbuffered(null, event);
             }
             return;
         }
 
-        // Get or create buffer for this request
-        RequestLogBuffer buffer = requestBuffers.computeIfAbsent(requestId, k -> new RequestLogBuffer());
-
-        // Check buffer size limit
-        if (buffer.size() >= maxBufferSize) {
-            // Buffer is full, drop the event and log a warning
-            addStatus(new WarnStatus("Buffer full for request " + requestId +
-                    ", dropping log event: " + event.getMessage(), this));
+        // Under heap pressure, only WARN and ERROR events are buffered
+        HeapPressureMonitor monitor = heapPressureMonitor;
+        boolean degraded = monitor != null && monitor.isDegraded();
+        if (degraded && !event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            monitor.recordDroppedEvent();
             return;
         }
 
-        // Buffer the event for this request
-        buffer.addEvent(event);
+        BufferShard shard = shardFor(requestId);
+        RequestLogBuffer buffer;
+        ILoggingEvent bufferedEvent;
+        for (;;) {
+            // Get or create buffer for this request
+            buffer = shard.buffers().get(requestId);
+            if (buffer == null) {
+                RequestLoggingContext.RequestState state = RequestLoggingContext.currentState();
+                // Checked under the map's lock: a flush marks the request completed before removing its buffer
+                buffer = shard.buffers().computeIfAbsent(requestId,
+                        k -> state != null && state.isCompleted() ? null : newBuffer(state));
+                if (buffer == null) {
+                    appendLate(requestId, event);
+                    return;
+                }
+                shard.expiresNoEarlierThan(buffer.getLastAccessTime() + buffer.timeoutMs(bufferTimeoutMinutes));
+            }
+
+            // Check buffer size limit, reserving room for the event
+            int limit = buffer.maxSize(maxBufferSize);
+            if (!buffer.reserve(degraded ? Math.min(limit, degradedMaxBufferSize) : limit)) {
+                if (buffer.isClosed()) {
+                    if (reopen(requestId, buffer, event)) {
+                        continue;
+                    }
+                    return;
+                }
+                // Buffer is full, drop the event and log a warning
+                buffer.markTruncated();
+                addStatus(new WarnStatus("Buffer full for request " + requestId +
+                        ", dropping log event: " + event.getMessage(), this));
+                return;
+            }
+
+            // Buffer the event for this request
+            bufferedEvent = snapshot(event);
+            if (buffer.addReserved(bufferedEvent)) {
+                break;
+            }
+            if (!reopen(requestId, buffer, event)) {
+                return;
+            }
+        }
+        FlightRecorder recorder = flightRecorder;
+        if (recorder != null) {
+            recorder.record(requestId, bufferedEvent);
+        }
+
+        if (checkpointEnabled && buffer.size() >= checkpointSize) {
+            checkpoint(requestId, buffer);
+        }
 
         // If this is an error, mark the request as having an error but DON'T flush yet
         if (event.getLevel().isGreaterOrEqual(Level.ERROR)) {
             RequestLoggingContext.markError();
+            buffer.markError();
+        }
+    }
+
+    private RequestLogBuffer newBuffer(RequestLoggingContext.RequestState state) {
+        RouteRule rule = RequestLoggingContext.getRouteRule();
+        if (!adaptiveBufferSizing) {
+            return new RequestLogBuffer(null, rule, 0, state);
+        }
+        String route = RequestLoggingContext.getRoute();
+        int maxSize = rule != null && rule.getMaxBufferSize() > 0 ? rule.getMaxBufferSize() : maxBufferSize;
+        return new RequestLogBuffer(route, rule, Math.min(routeBufferSizes.initialCapacity(route), maxSize), state);
+    }
+
+    /**
+     * Called when the buffer an event was meant for was closed in the meantime. A buffer closed
+     * by a flush of the current request takes no more events; one removed by a cleanup or a
+     * flush of an earlier request with the same ID is replaced by a new buffer.
+     *
+     * @return true to append the event to a new buffer, false if it was handled as late
+     */
+    private boolean reopen(String requestId, RequestLogBuffer buffer, ILoggingEvent event) {
+        RequestLoggingContext.RequestState state = RequestLoggingContext.currentState();
+        if (state != null && state.isCompleted()) {
+            appendLate(requestId, event);
+            return false;
+        }
+        shardFor(requestId).buffers().remove(requestId, buffer);
+        return true;
+    }
+
+    /**
+     * Handles an event logged by a thread still working for a request whose logs have been
+     * flushed: errors are written at once, the rest is dropped.
+     */
+    private void appendLate(String requestId, ILoggingEvent event) {
+        lateEvents.increment();
+        if (event.getLevel().isGreaterOrEqual(Level.ERROR)) {
+            writeUnbuffered(requestId, event);
+        }
+    }
+
+    private void writeUnbuffered(String requestId, ILoggingEvent event) {
+        if (requestLogWriter != null) {
+            writeRequestLog(requestId, RequestLog.Outcome.ERROR, event.getTimeStamp(), 1, List.of(event), null);
+        } else if (hasAttachedAppenders()) {
+            attachedAppenders.appendLoopOnAppenders(event);
+        } else {
+            writeToConsole(event);
+        }
+    }
+
+    /**
+     * Captures the thread-bound state of an event before it is buffered, since the buffer may
+     * be flushed from another thread. In deferred formatting or compact mode the event is
+     * replaced by an immutable {@link BufferedLoggingEvent}.
+     */
+    private ILoggingEvent snapshot(ILoggingEvent event) {
+        if (includeCallerData) {
+            // Computed lazily from the current stack, which is only the caller's right now
+            event.getCallerData();
+        }
+        if (deferredFormatting || compactEvents) {
+            return BufferedLoggingEvent.of(event, deferredFormatting, compactEvents ? mdcKeys : null, symbols);
         }
+        event.getThreadName();
+        event.getMDCPropertyMap();
+        return event;
     }
 
     /**
      * Method to be called when request is finished
      */
     public void flushRequestLogsIfError(String requestId) {
-        RequestLogBuffer buffer = requestBuffers.remove(requestId);
+        RequestLogBuffer buffer = complete(requestId);
         if (buffer == null) {
+            // Filters keep their reference to this instance after a reconfiguration replaced it
+            ConditionalBufferAppender next = successor;
+            if (next != null) {
+                next.flushRequestLogsIfError(requestId);
+            }
             return;
         }
-
-        List<ILoggingEvent> bufferedEvents = buffer.getEvents();
-        
         if (RequestLoggingContext.hasError()) {
-            // Error occurred - display ALL logs regardless of level
-            synchronized (consoleLock) {
-                System.out.println("=== REQUEST COMPLETED WITH ERROR - Flushing " +
-                        bufferedEvents.size() + " logs for request: " + requestId + " ===");
-                for (ILoggingEvent bufferedEvent : bufferedEvents) {
-                    writeToConsole(bufferedEvent);
-                }
-                System.out.println("=== End of request logs for: " + requestId + " ===");
-            }
-        } else {
-            // No error occurred - only display INFO level logs
-            List<ILoggingEvent> infoLogs = bufferedEvents.stream()
-                    .filter(event -> event.getLevel().equals(Level.INFO))
-                    .toList();
-            
-            if (!infoLogs.isEmpty()) {
-                synchronized (consoleLock) {
-                    System.out.println("=== REQUEST COMPLETED SUCCESSFULLY - Showing " +
-                            infoLogs.size() + " INFO logs for request: " + requestId + " ===");
-                    for (ILoggingEvent infoEvent : infoLogs) {
-                        writeToConsole(infoEvent);
-                    }
-                    System.out.println("=== End of request logs for: " + requestId + " ===");
-                }
-            }
+            buffer.markError();
         }
+        buffer.resolveRoute(RequestLoggingContext.getRoute());
+        flush(requestId, buffer);
     }
 
-    private void writeToConsole(ILoggingEvent event) {
-        try {
-            synchronized (consoleLock) {
-                System.out.write(encoder.encode(event));
-                System.out.flush();
+    /**
+     * Like {@link #flushRequestLogsIfError(String)}, but only takes the request's buffer on the
+     * calling thread and leaves the writing to the appender's writer thread. Meant for threads
+     * that must not block, such as Netty event loops: the caller does a map removal and a queue
+     * offer, whatever the size of the buffer and however slow the output.
+     * <p>
+     * The writer's queue holds at most flushQueueSize buffers. When it is full, the calling
+     * thread writes the request itself, which slows down the producers of an error storm
+     * instead of letting the queued buffers fill the heap (see {@link #getInlineFlushCount()}).
+     *
+     * @param requestId the request ID
+     */
+    public void flushRequestLogsIfErrorAsync(String requestId) {
+        RequestLogBuffer buffer = complete(requestId);
+        if (buffer == null) {
+            ConditionalBufferAppender next = successor;
+            if (next != null) {
+                next.flushRequestLogsIfErrorAsync(requestId);
+            }
+            return;
+        }
+        // The error flag and route are thread-local, so they have to be read here
+        if (RequestLoggingContext.hasError()) {
+            buffer.markError();
+        }
+        buffer.resolveRoute(RequestLoggingContext.getRoute());
+        ExecutorService executor = flushExecutor;
+        if (executor != null) {
+            try {
+                executor.execute(() -> flush(requestId, buffer));
+                return;
+            } catch (RejectedExecutionException e) {
+                // Queue full or stopping: write on the calling thread rather than losing the request
+                if (!executor.isShutdown()) {
+                    inlineFlushes.increment();
+                }
             }
-        } catch (Exception e) {
-            addStatus(new ErrorStatus("Failed to write log event", this, e));
         }
+        flush(requestId, buffer);
     }
 
-    public void cleanupRequest(String requestId) {
-        requestBuffers.remove(requestId);
+    /**
+     * Marks a request completed and takes its buffer out of the registry, closed, so that
+     * threads still working for the request neither add events the flush would miss nor start
+     * a new buffer for it.
+     *
+     * @return the buffer, or null if there is none or another flush took it
+     */
+    private RequestLogBuffer complete(String requestId) {
+        // Covers requests that have not buffered anything yet
+        RequestLoggingContext.RequestState current = RequestLoggingContext.currentState();
+        if (current != null && requestId.equals(RequestLoggingContext.getRequestId())) {
+            current.markCompleted();
+        }
+        Map<String, RequestLogBuffer> buffers = shardFor(requestId).buffers();
+        RequestLogBuffer buffer = buffers.get(requestId);
+        if (buffer == null) {
+            return null;
+        }
+        buffer.close(true);
+        return buffers.remove(requestId, buffer) ? buffer : null;
     }
 
     /**
-     * Enhanced cleanup method with time-based logic
+     * Takes a buffer out of the registry without completing its request, closed, so that
+     * appends in progress move on to a new buffer instead of adding to this one.
+     *
+     * @return true if the buffer was still registered
      */
-    public void cleanupExpiredRequests() {
-        long timeoutMs = bufferTimeoutMinutes * 60 * 1000L;
-        int removedCount = 0;
+    private boolean detach(String requestId, RequestLogBuffer buffer) {
+        buffer.close(false);
+        return shardFor(requestId).buffers().remove(requestId, buffer);
+    }
 
-        var iterator = requestBuffers.entrySet().iterator();
-        while (iterator.hasNext()) {
-            var entry = iterator.next();
-            RequestLogBuffer buffer = entry.getValue();
+    private void flush(String requestId, RequestLogBuffer buffer) {
+        if (adaptiveBufferSizing) {
+            routeBufferSizes.record(buffer.getRoute(), buffer.size(), buffer.isTruncated());
+        }
+
+        if (buffer.hasError()) {
+            writeErroredRequest(requestId, buffer);
+        } else {
+            RouteRule.FlushPolicy flushPolicy = buffer.flushPolicy();
+            if (flushPolicy == RouteRule.FlushPolicy.ERRORS_ONLY) {
+                return;
+            }
+            // No error occurred - only display INFO level logs (compressed blocks are inflated to find them)
+            boolean all = flushPolicy == RouteRule.FlushPolicy.ALWAYS;
+            List<ILoggingEvent> infoLogs = all ? buffer.getEvents() : buffer.getInfoEvents();
 
-            if (buffer.isExpired(timeoutMs)) {
-                iterator.remove();
-                removedCount++;
+            if (infoLogs.isEmpty()) {
+                return;
+            }
+            if (requestLogWriter != null) {
+                writeRequestLog(requestId, RequestLog.Outcome.SUCCESS, buffer.getCreatedTime(), buffer.size(), infoLogs, flushPolicy);
+            } else if (hasAttachedAppenders()) {
+                appendToAttachedAppenders(infoLogs);
+            } else {
+                writeToConsole(requestId, "=== REQUEST COMPLETED SUCCESSFULLY - Showing " +
+                        infoLogs.size() + (all ? " logs" : " INFO logs") + " for request: " + requestId + " ===",
+                        infoLogs, "=== End of request logs for: " + requestId + " ===");
             }
         }
+    }
 
-        if (removedCount > 0) {
-            addStatus(new InfoStatus("Cleanup completed: removed " + removedCount + " expired buffers", this));
+    private void writeErroredRequest(String requestId, RequestLogBuffer buffer) {
+        List<ILoggingEvent> bufferedEvents = buffer.getEvents();
+        // Error occurred - display ALL logs regardless of level
+        if (requestLogWriter != null) {
+            writeRequestLog(requestId, RequestLog.Outcome.ERROR, buffer.getCreatedTime(), bufferedEvents.size(), bufferedEvents,
+                    buffer.flushPolicy());
+        } else if (hasAttachedAppenders()) {
+            appendToAttachedAppenders(bufferedEvents);
+        } else {
+            writeToConsole(requestId, "=== REQUEST COMPLETED WITH ERROR - Flushing " +
+                    bufferedEvents.size() + " logs for request: " + requestId + " ===",
+                    bufferedEvents, "=== End of request logs for: " + requestId + " ===");
         }
     }
 
     /**
-     * Force cleanup of all buffers (emergency cleanup)
+     * Writes the INFO events a long-running request has buffered so far and trims its buffer
+     * down to the most recent checkpointWindowSize conditional events. Does nothing if the
+     * request has been flushed in the meantime, or if its route only shows errors.
      */
-    public void forceCleanupAll() {
-        int buffersRemoved = requestBuffers.size();
-        requestBuffers.clear();
+    private void checkpoint(String requestId, RequestLogBuffer buffer) {
+        if (buffer.flushPolicy() == RouteRule.FlushPolicy.ERRORS_ONLY) {
+            // Trimming would drop events the error dump needs, the buffer limit bounds it instead
+            return;
+        }
+        synchronized (buffer) {
+            // The flush closes the buffer before reading it: once closed, leave it alone
+            if (buffer.isClosed() || shardFor(requestId).buffers().get(requestId) != buffer) {
+                return;
+            }
+            // A window as large as the size threshold would checkpoint on every event
+            writeCheckpoint(requestId, buffer, Math.min(checkpointWindowSize, checkpointSize / 2));
+        }
+    }
 
-        if (buffersRemoved > 0) {
-            addStatus(new InfoStatus("Force cleanup: removed " + buffersRemoved + " buffers", this));
+    /**
+     * Writes what the flush policy of a request shows on success and trims its buffer
+     * accordingly: the INFO events, keeping the most recent {@code window} conditional events,
+     * or all events for ALWAYS routes. ERRORS_ONLY routes write nothing. Must hold the buffer's
+     * lock.
+     */
+    private void writeCheckpoint(String requestId, RequestLogBuffer buffer, int window) {
+        RouteRule.FlushPolicy flushPolicy = buffer.flushPolicy();
+        if (flushPolicy == RouteRule.FlushPolicy.ERRORS_ONLY) {
+            return;
+        }
+        int bufferedEvents = buffer.size();
+        boolean all = flushPolicy == RouteRule.FlushPolicy.ALWAYS;
+        List<ILoggingEvent> infoLogs = all ? buffer.checkpointAll() : buffer.checkpoint(window);
+        if (infoLogs.isEmpty()) {
+            return;
+        }
+        if (requestLogWriter != null) {
+            writeRequestLog(requestId, RequestLog.Outcome.CHECKPOINT, buffer.getCreatedTime(), bufferedEvents, infoLogs, flushPolicy);
+        } else if (hasAttachedAppenders()) {
+            appendToAttachedAppenders(infoLogs);
+        } else {
+            writeToConsole(requestId, "=== REQUEST CHECKPOINT - Showing " +
+                    infoLogs.size() + (all ? " logs" : " INFO logs") + " for request: " + requestId + " ===",
+                    infoLogs, "=== End of checkpoint logs for: " + requestId + " ===");
         }
     }
 
-    // Configuration getters and setters
-    public int getMaxBufferSize() {
-        return maxBufferSize;
+    /**
+     * Checkpoints the buffers of requests that have been running for checkpointIntervalSeconds
+     * since their start or their last checkpoint.
+     */
+    public void checkpointLongRunningRequests() {
+        long intervalMs = checkpointIntervalSeconds * 1000L;
+        for (Map.Entry<String, RequestLogBuffer> entry : allRequestBuffers.entrySet()) {
+            if (entry.getValue().isCheckpointDue(intervalMs)) {
+                checkpoint(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
-    public void setMaxBufferSize(int maxBufferSize) {
-        this.maxBufferSize = Math.max(1, maxBufferSize);
+    /**
+     * Removes the largest buffers to relieve the heap, writing all their events first if
+     * dumpEvictedBuffers is set. Called on entering the degraded mode.
+     */
+    void evictLargestBuffers() {
+        HeapPressureMonitor monitor = heapPressureMonitor;
+        List<Map.Entry<String, RequestLogBuffer>> largest = new ArrayList<>(allRequestBuffers.entrySet());
+        largest.sort(Comparator.comparingInt((Map.Entry<String, RequestLogBuffer> entry) -> entry.getValue().size()).reversed());
+        int evicted = 0;
+        for (Map.Entry<String, RequestLogBuffer> entry : largest.subList(0, Math.min(evictLargestBuffers, largest.size()))) {
+            RequestLogBuffer buffer = entry.getValue();
+            if (!detach(entry.getKey(), buffer)) {
+                continue; // Flushed in the meantime
+            }
+            evicted++;
+            if (dumpEvictedBuffers) {
+                writeEvictedBuffer(entry.getKey(), buffer);
+            }
+        }
+        if (monitor != null) {
+            monitor.recordEvictedBuffers(evicted);
+        }
+        if (evicted > 0) {
+            addStatus(new WarnStatus((dumpEvictedBuffers ? "Dumped " : "Dropped ") + evicted
+                    + " largest request buffers under heap pressure", this));
+        }
     }
 
-    public int getBufferTimeoutMinutes() {
-        return bufferTimeoutMinutes;
+    private void writeEvictedBuffer(String requestId, RequestLogBuffer buffer) {
+        List<ILoggingEvent> bufferedEvents = buffer.getEvents();
+        if (requestLogWriter != null) {
+            writeRequestLog(requestId, RequestLog.Outcome.EVICTED, buffer.getCreatedTime(), bufferedEvents.size(), bufferedEvents,
+                    buffer.flushPolicy());
+        } else if (hasAttachedAppenders()) {
+            appendToAttachedAppenders(bufferedEvents);
+        } else {
+            writeToConsole(requestId, "=== HEAP PRESSURE - Dumping " +
+                    bufferedEvents.size() + " logs for request: " + requestId + " ===",
+                    bufferedEvents, "=== End of request logs for: " + requestId + " ===");
+        }
     }
 
-    public void setBufferTimeoutMinutes(int bufferTimeoutMinutes) {
-        this.bufferTimeoutMinutes = Math.max(1, bufferTimeoutMinutes);
+    private void writeRequestLog(String requestId, RequestLog.Outcome outcome, long startTime,
+                                 int bufferedEvents, List<ILoggingEvent> events, RouteRule.FlushPolicy flushPolicy) {
+        try {
+            requestLogWriter.write(new RequestLog(requestId, outcome, startTime, System.currentTimeMillis(), bufferedEvents,
+                    events, flushPolicy));
+        } catch (Exception e) {
+            addStatus(new ErrorStatus("Failed to write logs of request " + requestId, this, e));
+        }
     }
 
-    public int getCleanupIntervalMinutes() {
+    /**
+     * Hands a batch of selected events to every attached appender. Each appender receives
+     * the whole batch in order before the next one is called, so slow appenders (files,
+     * network) do their I/O in one go instead of interleaving per event.
+     */
+    private void appendToAttachedAppenders(List<ILoggingEvent> events) {
+        Iterator<Appender<ILoggingEvent>> it = attachedAppenders.iteratorForAppenders();
+        while (it.hasNext()) {
+            Appender<ILoggingEvent> child = it.next();
+            for (ILoggingEvent event : events) {
+                child.doAppend(event);
+            }
+        }
+    }
+
+    private boolean hasAttachedAppenders() {
+        return attachedAppenders.iteratorForAppenders().hasNext();
+    }
+
+    private void writeToConsole(ILoggingEvent event) {
+        try {
+            byte[] bytes = encode(event);
+            // One write, atomic under the stream's own lock
+            PrintStream console = System.out;
+            console.write(bytes);
+            console.flush();
+        } catch (Exception e) {
+            addStatus(new ErrorStatus("Failed to write log event", this, e));
+        }
+    }
+
+    /**
+     * Writes events of a request to the console between two banner lines. The lines are
+     * assembled in the staging buffer of the request's shard and written at once, so that
+     * requests flushed concurrently do not interleave.
+     */
+    private void writeToConsole(String requestId, String header, List<ILoggingEvent> events, String footer) {
+        try {
+            shardFor(requestId).writeToConsole(out -> {
+                out.write(bannerLine(header));
+                for (ILoggingEvent event : events) {
+                    try {
+                        out.write(encode(event));
+                    } catch (RuntimeException e) {
+                        addStatus(new ErrorStatus("Failed to write log event", this, e));
+                    }
+                }
+                out.write(bannerLine(footer));
+            });
+        } catch (IOException | RuntimeException e) {
+            addStatus(new ErrorStatus("Failed to write logs of request " + requestId, this, e));
+        }
+    }
+
+    // Like System.out.println, which the banners were written with
+    private static byte[] bannerLine(String banner) {
+        return (banner + System.lineSeparator()).getBytes();
+    }
+
+    /**
+     * Encodes an event. Events carrying a throwable are encoded without it and the stack trace
+     * is appended from the cache, which yields the same bytes as the encoder would produce.
+     */
+    private byte[] encode(ILoggingEvent event) {
+        if (stackTraceCache == null || event.getThrowableProxy() == null) {
+            return encoder.encode(event);
+        }
+        byte[] head = encoder.encode(StackTraceCache.withoutThrowable(event));
+        byte[] stackTrace = stackTraceCache.get(event.getThrowableProxy(), proxy -> toBytes(throwableConverter.convert(event)));
+        byte[] bytes = new byte[head.length + stackTrace.length];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        System.arraycopy(stackTrace, 0, bytes, head.length, stackTrace.length);
+        return bytes;
+    }
+
+    private byte[] toBytes(String text) {
+        return encoderCharset == null ? text.getBytes() : text.getBytes(encoderCharset);
+    }
+
+    /**
+     * Compresses the buffers that have not been written to for compressionIdleSeconds, or that
+     * hold at least compressionThreshold uncompressed events.
+     */
+    public void compressColdBuffers() {
+        long idleMs = compressionIdleSeconds * 1000L;
+        int compressedBuffers = 0;
+        for (RequestLogBuffer buffer : allRequestBuffers.values()) {
+            int uncompressed = buffer.uncompressedSize();
+            boolean cold = uncompressed >= MIN_EVENTS_TO_COMPRESS && buffer.isIdle(idleMs);
+            if (cold || uncompressed >= compressionThreshold) {
+                try {
+                    if (buffer.compress(compressionLevel, symbols, compressionMetrics) > 0) {
+                        compressedBuffers++;
+                    }
+                } catch (RuntimeException e) {
+                    addStatus(new ErrorStatus("Failed to compress request buffer", this, e));
+                }
+            }
+        }
+        // One status per sweep at most, i.e. per compressionIdleSeconds, with the running totals
+        if (compressedBuffers > 0) {
+            addStatus(new InfoStatus("Compressed " + compressedBuffers + " cold buffers, " + compressionMetrics, this));
+        }
+    }
+
+    // Backdates the last access of a request's buffer so that it expires, for tests
+    void backdateLastAccess(String requestId, long millis) {
+        BufferShard shard = shardFor(requestId);
+        RequestLogBuffer buffer = shard.buffers().get(requestId);
+        buffer.lastAccessTime -= millis;
+        shard.expiresNoEarlierThan(buffer.lastAccessTime + buffer.timeoutMs(bufferTimeoutMinutes));
+    }
+
+    public void cleanupRequest(String requestId) {
+        RequestLogBuffer buffer = shardFor(requestId).buffers().get(requestId);
+        if (buffer != null) {
+            detach(requestId, buffer);
+        }
+    }
+
+    /**
+     * Enhanced cleanup method with time-based logic
+     */
+    public void cleanupExpiredRequests() {
+        for (BufferShard shard : shards) {
+            cleanupExpiredRequests(shard);
+        }
+    }
+
+    /**
+     * Removes the expired buffers of one shard. Shards none of whose buffers can have expired
+     * yet are skipped without looking at their buffers.
+     */
+    private void cleanupExpiredRequests(BufferShard shard) {
+        if (!shard.isExpiryDue(System.currentTimeMillis())) {
+            return;
+        }
+        shard.beginExpiryScan();
+        int removedCount = 0;
+
+        for (Map.Entry<String, RequestLogBuffer> entry : shard.buffers().entrySet()) {
+            RequestLogBuffer buffer = entry.getValue();
+            long timeoutMs = buffer.timeoutMs(bufferTimeoutMinutes);
+
+            if (!buffer.isExpired(timeoutMs)) {
+                shard.expiresNoEarlierThan(buffer.getLastAccessTime() + timeoutMs);
+                continue;
+            }
+            if (!detach(entry.getKey(), buffer)) {
+                continue; // Flushed in the meantime
+            }
+            removedCount++;
+            if (checkpointEnabled) {
+                // Do not drop what a checkpoint would have shown
+                synchronized (buffer) {
+                    writeCheckpoint(entry.getKey(), buffer, 0);
+                }
+            }
+        }
+
+        if (removedCount > 0) {
+            addStatus(new InfoStatus("Cleanup completed: removed " + removedCount + " expired buffers", this));
+        }
+    }
+
+    /**
+     * Writes out the buffers of requests still in flight when the appender stops, within
+     * drainTimeoutMillis: errored requests with all their events, the others with their INFO
+     * events as a checkpoint. Errored requests go first and several buffers are written in
+     * parallel; whatever is left when the budget runs out is dropped.
+     */
+    private void drainBuffers(long deadlineNanos) {
+        List<Map.Entry<String, RequestLogBuffer>> pending = new ArrayList<>();
+        for (Map.Entry<String, RequestLogBuffer> entry : allRequestBuffers.entrySet()) {
+            if (detach(entry.getKey(), entry.getValue())) {
+                pending.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (System.nanoTime() >= deadlineNanos) {
+            addStatus(new InfoStatus("Dropped " + pending.size() + " in-flight request buffers on stop", this));
+            return;
+        }
+        pending.sort(Comparator.comparing((Map.Entry<String, RequestLogBuffer> entry) -> !entry.getValue().hasError()));
+
+        long startNanos = System.nanoTime();
+        AtomicInteger drained = new AtomicInteger();
+        ExecutorService drainExecutor = Executors.newFixedThreadPool(
+                Math.min(pending.size(), Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread t = new Thread(r, "ConditionalBufferAppender-Drain");
+                    t.setDaemon(true);
+                    return t;
+                });
+        for (Map.Entry<String, RequestLogBuffer> entry : pending) {
+            drainExecutor.execute(() -> {
+                try {
+                    drainBuffer(entry.getKey(), entry.getValue());
+                    drained.incrementAndGet();
+                } catch (RuntimeException e) {
+                    addStatus(new ErrorStatus("Failed to drain logs of request " + entry.getKey(), this, e));
+                }
+            });
+        }
+        drainExecutor.shutdown();
+        boolean terminated = awaitTermination(drainExecutor, deadlineNanos);
+        // Read before interrupting the stragglers, which may still finish once woken
+        int drainedInTime = drained.get();
+        if (!terminated) {
+            drainExecutor.shutdownNow();
+            stragglers.add(drainExecutor);
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (drainedInTime < pending.size()) {
+            addStatus(new WarnStatus("Drained " + drainedInTime + " of " + pending.size() + " in-flight request buffers within "
+                    + drainTimeoutMillis + " ms, dropped the rest", this));
+        } else {
+            addStatus(new InfoStatus("Drained " + pending.size() + " in-flight request buffers in " + millis + " ms", this));
+        }
+    }
+
+    private void drainBuffer(String requestId, RequestLogBuffer buffer) {
+        if (buffer.hasError()) {
+            writeErroredRequest(requestId, buffer);
+        } else {
+            synchronized (buffer) {
+                writeCheckpoint(requestId, buffer, 0);
+            }
+        }
+    }
+
+    /**
+     * Takes over the buffers of the instance this one replaces after a reconfiguration.
+     */
+    private void takeOver(ConditionalBufferAppender previous) {
+        previous.successor = this;
+        int count = 0;
+        for (BufferShard previousShard : previous.shards) {
+            for (String requestId : new ArrayList<>(previousShard.buffers().keySet())) {
+                RequestLogBuffer buffer = previousShard.buffers().remove(requestId);
+                // The shard counts of the two instances may differ
+                BufferShard shard = shardFor(requestId);
+                if (buffer != null && shard.buffers().putIfAbsent(requestId, buffer) == null) {
+                    shard.expiresNoEarlierThan(buffer.getLastAccessTime() + buffer.timeoutMs(bufferTimeoutMinutes));
+                    count++;
+                }
+            }
+        }
+        previous.finishStop();
+        addStatus(new InfoStatus("Took over " + count + " request buffers from the previous appender instance", this));
+    }
+
+    /**
+     * Force cleanup of all buffers (emergency cleanup)
+     */
+    public void forceCleanupAll() {
+        int buffersRemoved = 0;
+        for (Map.Entry<String, RequestLogBuffer> entry : allRequestBuffers.entrySet()) {
+            if (detach(entry.getKey(), entry.getValue())) {
+                buffersRemoved++;
+            }
+        }
+
+        if (buffersRemoved > 0) {
+            addStatus(new InfoStatus("Force cleanup: removed " + buffersRemoved + " buffers", this));
+        }
+    }
+
+    // Configuration getters and setters
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public void setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = Math.max(1, maxBufferSize);
+    }
+
+    public int getBufferTimeoutMinutes() {
+        return bufferTimeoutMinutes;
+    }
+
+    public void setBufferTimeoutMinutes(int bufferTimeoutMinutes) {
+        this.bufferTimeoutMinutes = Math.max(1, bufferTimeoutMinutes);
+    }
+
+    public int getCleanupIntervalMinutes() {
         return cleanupIntervalMinutes;
     }
 
@@ -227,6 +1336,348 @@ public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
         this.cleanupIntervalMinutes = Math.max(1, cleanupIntervalMinutes);
     }
 
+    public boolean isTurboFilterEnabled() {
+        return turboFilterEnabled;
+    }
+
+    public void setTurboFilterEnabled(boolean turboFilterEnabled) {
+        this.turboFilterEnabled = turboFilterEnabled;
+    }
+
+    public boolean isDeferredFormatting() {
+        return deferredFormatting;
+    }
+
+    public void setDeferredFormatting(boolean deferredFormatting) {
+        this.deferredFormatting = deferredFormatting;
+    }
+
+    public boolean isCompactEvents() {
+        return compactEvents;
+    }
+
+    public void setCompactEvents(boolean compactEvents) {
+        this.compactEvents = compactEvents;
+    }
+
+    public String getMdcKeys() {
+        return mdcKeys == null ? null : String.join(",", mdcKeys);
+    }
+
+    public boolean isIncludeCallerData() {
+        return includeCallerData;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    /**
+     * Sets the MDC keys kept by compact snapshots, as a comma-separated list.
+     * An empty value keeps the whole MDC map.
+     */
+    public void setMdcKeys(String mdcKeys) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (mdcKeys != null) {
+            for (String key : mdcKeys.split(",")) {
+                if (!key.isBlank()) {
+                    keys.add(key.trim());
+                }
+            }
+        }
+        this.mdcKeys = keys.isEmpty() ? null : Collections.unmodifiableSet(keys);
+    }
+
+    public int getStackTraceCacheSize() {
+        return stackTraceCacheSize;
+    }
+
+    public void setStackTraceCacheSize(int stackTraceCacheSize) {
+        this.stackTraceCacheSize = Math.max(0, stackTraceCacheSize);
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionIdleSeconds() {
+        return compressionIdleSeconds;
+    }
+
+    public void setCompressionIdleSeconds(int compressionIdleSeconds) {
+        this.compressionIdleSeconds = Math.max(1, compressionIdleSeconds);
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = Math.max(1, compressionThreshold);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public void setCheckpointEnabled(boolean checkpointEnabled) {
+        this.checkpointEnabled = checkpointEnabled;
+    }
+
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+
+    public void setCheckpointIntervalSeconds(int checkpointIntervalSeconds) {
+        this.checkpointIntervalSeconds = Math.max(1, checkpointIntervalSeconds);
+    }
+
+    public int getCheckpointSize() {
+        return checkpointSize;
+    }
+
+    public void setCheckpointSize(int checkpointSize) {
+        this.checkpointSize = Math.max(1, checkpointSize);
+    }
+
+    public int getCheckpointWindowSize() {
+        return checkpointWindowSize;
+    }
+
+    public void setCheckpointWindowSize(int checkpointWindowSize) {
+        this.checkpointWindowSize = Math.max(0, checkpointWindowSize);
+    }
+
+    public String getFlightRecorderFile() {
+        return flightRecorderFile;
+    }
+
+    public void setFlightRecorderFile(String flightRecorderFile) {
+        this.flightRecorderFile = flightRecorderFile;
+    }
+
+    public int getFlightRecorderSizeMb() {
+        return flightRecorderSizeMb;
+    }
+
+    public void setFlightRecorderSizeMb(int flightRecorderSizeMb) {
+        this.flightRecorderSizeMb = Math.max(1, Math.min(1024, flightRecorderSizeMb));
+    }
+
+    public boolean isAdaptiveBufferSizing() {
+        return adaptiveBufferSizing;
+    }
+
+    public void setAdaptiveBufferSizing(boolean adaptiveBufferSizing) {
+        this.adaptiveBufferSizing = adaptiveBufferSizing;
+    }
+
+    public int getBufferSizePercentile() {
+        return bufferSizePercentile;
+    }
+
+    public void setBufferSizePercentile(int bufferSizePercentile) {
+        this.bufferSizePercentile = Math.max(50, Math.min(100, bufferSizePercentile));
+        routeBufferSizes.setPercentile(this.bufferSizePercentile);
+    }
+
+    /**
+     * Gets the event counts learned per route and the capacities new buffers start with,
+     * e.g. to tune maxBufferSize.
+     *
+     * @return the per-route buffer size statistics
+     */
+    public RouteBufferSizes getRouteBufferSizes() {
+        return routeBufferSizes;
+    }
+
+    public int getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public void setDrainTimeoutMillis(int drainTimeoutMillis) {
+        this.drainTimeoutMillis = Math.max(0, drainTimeoutMillis);
+    }
+
+    public int getFlushQueueSize() {
+        return flushQueueSize;
+    }
+
+    public void setFlushQueueSize(int flushQueueSize) {
+        this.flushQueueSize = Math.max(1, flushQueueSize);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Sets the number of shards the request buffers are split into, rounded up to a power of
+     * two. Only takes effect before the appender starts.
+     */
+    public void setShardCount(int shardCount) {
+        int count = Math.min(MAX_SHARD_COUNT, Math.max(1, shardCount));
+        this.shardCount = Integer.highestOneBit(count) == count ? count : Integer.highestOneBit(count) << 1;
+        if (!isStarted() && allRequestBuffers.isEmpty()) {
+            shards = newShards(this.shardCount);
+        }
+    }
+
+    public boolean isHeapPressureEnabled() {
+        return heapPressureEnabled;
+    }
+
+    public void setHeapPressureEnabled(boolean heapPressureEnabled) {
+        this.heapPressureEnabled = heapPressureEnabled;
+    }
+
+    public int getHeapPressureThresholdPercent() {
+        return heapPressureThresholdPercent;
+    }
+
+    public void setHeapPressureThresholdPercent(int heapPressureThresholdPercent) {
+        this.heapPressureThresholdPercent = Math.max(10, Math.min(99, heapPressureThresholdPercent));
+    }
+
+    public int getHeapRecoveryThresholdPercent() {
+        return heapRecoveryThresholdPercent;
+    }
+
+    public void setHeapRecoveryThresholdPercent(int heapRecoveryThresholdPercent) {
+        this.heapRecoveryThresholdPercent = Math.max(1, Math.min(99, heapRecoveryThresholdPercent));
+    }
+
+    public int getDegradedMaxBufferSize() {
+        return degradedMaxBufferSize;
+    }
+
+    public void setDegradedMaxBufferSize(int degradedMaxBufferSize) {
+        this.degradedMaxBufferSize = Math.max(1, degradedMaxBufferSize);
+    }
+
+    public int getEvictLargestBuffers() {
+        return evictLargestBuffers;
+    }
+
+    public void setEvictLargestBuffers(int evictLargestBuffers) {
+        this.evictLargestBuffers = Math.max(0, evictLargestBuffers);
+    }
+
+    public boolean isDumpEvictedBuffers() {
+        return dumpEvictedBuffers;
+    }
+
+    public void setDumpEvictedBuffers(boolean dumpEvictedBuffers) {
+        this.dumpEvictedBuffers = dumpEvictedBuffers;
+    }
+
+    /**
+     * Gets the heap pressure monitor with the degraded mode state and counters.
+     *
+     * @return the monitor, or null if heap pressure monitoring is disabled or the appender is stopped
+     */
+    public HeapPressureMonitor getHeapPressureMonitor() {
+        return heapPressureMonitor;
+    }
+
+    // Replaces the heap pools as the source of the heap occupancy, for tests
+    void setHeapPressureProbe(DoubleSupplier heapPressureProbe) {
+        this.heapPressureProbe = heapPressureProbe;
+    }
+
+    FlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
+    /**
+     * Adds a route rule. Rules are matched most specific first; of two rules with the same
+     * pattern, the one added first applies.
+     *
+     * @param rule the rule, fully configured
+     */
+    public void addRouteRule(RouteRule rule) {
+        synchronized (routeRules) {
+            List<RouteRule> rules = new ArrayList<>(routeRules);
+            rules.add(rule);
+            try {
+                routeMatcher = RouteMatcher.compile(rules);
+                routeRules.add(rule);
+            } catch (IllegalArgumentException e) {
+                addError("Ignoring invalid route rule " + rule + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public List<RouteRule> getRouteRules() {
+        synchronized (routeRules) {
+            return List.copyOf(routeRules);
+        }
+    }
+
+    /**
+     * Finds the route rule of a request, for the filters.
+     *
+     * @param method the HTTP method, may be null
+     * @param path the request path without query string
+     * @return the matching rule, or null if the appender's configuration applies
+     */
+    public RouteRule matchRouteRule(String method, String path) {
+        return routeMatcher.match(method, path);
+    }
+
+    public CompressionMetrics getCompressionMetrics() {
+        return compressionMetrics;
+    }
+
+    /**
+     * Gets the number of events logged for requests whose logs had been flushed already, by
+     * threads still working for them. Errors among them were written, the rest dropped.
+     */
+    public long getLateEventCount() {
+        return lateEvents.sum();
+    }
+
+    /**
+     * Gets the number of asynchronous flushes written by the calling thread because the
+     * writer's queue held flushQueueSize buffers already.
+     */
+    public long getInlineFlushCount() {
+        return inlineFlushes.sum();
+    }
+
+    /**
+     * Gets the stack trace cache, or null if it is disabled or not applicable to the encoder.
+     *
+     * @return the stack trace cache with its hit/miss counters
+     */
+    public StackTraceCache getStackTraceCache() {
+        return stackTraceCache;
+    }
+
+    public RequestContextTurboFilter getTurboFilter() {
+        return turboFilter;
+    }
+
+    public RequestLogWriter getRequestLogWriter() {
+        return requestLogWriter;
+    }
+
+    public void setRequestLogWriter(RequestLogWriter requestLogWriter) {
+        this.requestLogWriter = requestLogWriter;
+    }
+
     public Encoder<ILoggingEvent> getEncoder() {
         return encoder;
     }
@@ -235,15 +1686,78 @@ public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
         this.encoder = encoder;
     }
 
+    // AppenderAttachable implementation
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        addInfo("Attaching appender named [" + newAppender.getName() + "] to ConditionalBufferAppender.");
+        attachedAppenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return attachedAppenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return attachedAppenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return attachedAppenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        attachedAppenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return attachedAppenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return attachedAppenders.detachAppender(name);
+    }
+
     @Override
     public void start() {
-        if (encoder == null) {
-            addError("No encoder set for the appender named [" + name + "].");
+        if (encoder == null && !hasAttachedAppenders() && requestLogWriter == null) {
+            addError("No encoder, request log writer or attached appender set for the appender named [" + name + "].");
             return;
         }
 
-        // Start the encoder
-        encoder.start();
+        if (requestLogWriter != null && !requestLogWriter.isStarted()) {
+            if (requestLogWriter instanceof ContextAware contextAware && contextAware.getContext() == null) {
+                contextAware.setContext(getContext());
+            }
+            requestLogWriter.start();
+        }
+
+        // Start the encoder (only used when no appenders are attached)
+        if (encoder != null) {
+            encoder.start();
+            setUpStackTraceCache();
+        }
+
+        if (flightRecorderFile != null) {
+            try {
+                flightRecorder = FlightRecorder.open(Paths.get(flightRecorderFile), flightRecorderSizeMb * 1024 * 1024);
+            } catch (IOException | RuntimeException e) {
+                addStatus(new ErrorStatus("Failed to open flight recorder file " + flightRecorderFile, this, e));
+            }
+        }
+
+        // Bounded, each queued task holds a whole request buffer outside the registry
+        flushExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(flushQueueSize), r -> {
+                    Thread t = new Thread(r, "ConditionalBufferAppender-Writer");
+                    t.setDaemon(true);
+                    return t;
+                });
 
         // Start the cleanup executor
         cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -252,44 +1766,280 @@ public class ConditionalBufferAppender extends AppenderBase<ILoggingEvent> {
             return t;
         });
 
-        // Schedule periodic cleanup
-        cleanupExecutor.scheduleWithFixedDelay(
-                this::cleanupExpiredRequests,
-                cleanupIntervalMinutes,
-                cleanupIntervalMinutes,
-                TimeUnit.MINUTES
-        );
+        // Schedule periodic cleanup, one shard at a time spread over the interval
+        long cleanupIntervalMillis = TimeUnit.MINUTES.toMillis(cleanupIntervalMinutes);
+        BufferShard[] current = shards;
+        for (int i = 0; i < current.length; i++) {
+            BufferShard shard = current[i];
+            cleanupExecutor.scheduleWithFixedDelay(
+                    () -> cleanupExpiredRequests(shard),
+                    cleanupIntervalMillis + cleanupIntervalMillis * i / current.length,
+                    cleanupIntervalMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+
+        // Compression sweep, so that idle buffers are compressed within twice the idle threshold
+        if (compressionEnabled) {
+            cleanupExecutor.scheduleWithFixedDelay(
+                    this::compressColdBuffers,
+                    compressionIdleSeconds,
+                    compressionIdleSeconds,
+                    TimeUnit.SECONDS
+            );
+        }
+
+        if (checkpointEnabled) {
+            cleanupExecutor.scheduleWithFixedDelay(
+                    this::checkpointLongRunningRequests,
+                    checkpointIntervalSeconds,
+                    checkpointIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+        }
+
+        if (heapPressureEnabled) {
+            startHeapPressureMonitor();
+        }
+
+        if (turboFilterEnabled) {
+            installTurboFilter();
+        }
+
+        if (getContext() != null) {
+            ConditionalBufferAppender previous = BufferHandover.of(getContext()).claim(getName());
+            if (previous != null && previous != this) {
+                takeOver(previous);
+            }
+        }
 
         addStatus(new InfoStatus("ConditionalBufferAppender started with maxBufferSize=" +
                 maxBufferSize + ", bufferTimeoutMinutes=" + bufferTimeoutMinutes +
-                ", cleanupIntervalMinutes=" + cleanupIntervalMinutes, this));
+                ", cleanupIntervalMinutes=" + cleanupIntervalMinutes +
+                ", shardCount=" + shardCount +
+                ", deferredFormatting=" + deferredFormatting +
+                ", compactEvents=" + compactEvents +
+                ", compressionEnabled=" + compressionEnabled +
+                ", checkpointEnabled=" + checkpointEnabled +
+                ", adaptiveBufferSizing=" + adaptiveBufferSizing +
+                ", routeRules=" + routeRules.size() +
+                ", heapPressureEnabled=" + heapPressureEnabled +
+                ", flushQueueSize=" + flushQueueSize +
+                ", flightRecorder=" + (flightRecorder != null ? flightRecorderFile : "disabled"), this));
 
         super.start();
     }
 
+    /**
+     * Enables the stack trace cache when the encoder is a pattern layout without an explicit
+     * throwable conversion word: such a layout appends the stack trace at the very end, using
+     * the same converter as the one created here.
+     */
+    private void setUpStackTraceCache() {
+        if (stackTraceCacheSize <= 0
+                || !(encoder instanceof LayoutWrappingEncoder<ILoggingEvent> layoutEncoder)
+                || !(layoutEncoder.getLayout() instanceof PatternLayout layout)
+                || layout.getPattern() == null
+                || THROWABLE_CONVERSION_WORD.matcher(layout.getPattern()).find()) {
+            return;
+        }
+        boolean packagingData = getContext() instanceof LoggerContext loggerContext && loggerContext.isPackagingDataEnabled();
+        throwableConverter = packagingData ? new ExtendedThrowableProxyConverter() : new ThrowableProxyConverter();
+        throwableConverter.setContext(getContext());
+        throwableConverter.start();
+        encoderCharset = layoutEncoder.getCharset();
+        stackTraceCache = new StackTraceCache(stackTraceCacheSize);
+    }
+
+    private void tearDownStackTraceCache() {
+        if (throwableConverter != null) {
+            throwableConverter.stop();
+            throwableConverter = null;
+        }
+        stackTraceCache = null;
+    }
+
+    private void startHeapPressureMonitor() {
+        HeapPressureMonitor.Listener listener = new HeapPressureMonitor.Listener() {
+            @Override
+            public void degraded(String reason) {
+                addStatus(new WarnStatus("Heap pressure (" + reason + "), entering degraded mode: buffering WARN and ERROR only, at most "
+                        + degradedMaxBufferSize + " events per request", ConditionalBufferAppender.this));
+                if (evictLargestBuffers > 0) {
+                    // Notifications arrive on a JVM service thread, evict on the cleanup thread
+                    try {
+                        cleanupExecutor.execute(ConditionalBufferAppender.this::evictLargestBuffers);
+                    } catch (RejectedExecutionException e) {
+                        // Stopping
+                    }
+                }
+            }
+
+            @Override
+            public void recovered(String reason) {
+                addStatus(new InfoStatus("Heap pressure relieved (" + reason + "), leaving degraded mode, "
+                        + heapPressureMonitor, ConditionalBufferAppender.this));
+            }
+        };
+        HeapPressureMonitor monitor = new HeapPressureMonitor(heapPressureThresholdPercent, heapRecoveryThresholdPercent,
+                listener, heapPressureProbe);
+        try {
+            monitor.start();
+        } catch (RuntimeException e) {
+            addStatus(new ErrorStatus("Failed to set heap usage thresholds", this, e));
+            return;
+        }
+        heapPressureMonitor = monitor;
+        cleanupExecutor.scheduleWithFixedDelay(
+                monitor::poll,
+                HEAP_PRESSURE_POLL_SECONDS,
+                HEAP_PRESSURE_POLL_SECONDS,
+                TimeUnit.SECONDS
+        );
+    }
+
+    private void installTurboFilter() {
+        if (!(getContext() instanceof LoggerContext loggerContext)) {
+            return;
+        }
+        turboFilter = new RequestContextTurboFilter();
+        turboFilter.setContext(loggerContext);
+        turboFilter.setName(getName() + "-RequestContextTurboFilter");
+        turboFilter.start();
+        loggerContext.addTurboFilter(turboFilter);
+        loggerContext.addListener(turboFilter);
+    }
+
+    private void uninstallTurboFilter() {
+        if (turboFilter == null) {
+            return;
+        }
+        if (getContext() instanceof LoggerContext loggerContext) {
+            if (loggerContext.getTurboFilterList() != null) {
+                loggerContext.getTurboFilterList().remove(turboFilter);
+            }
+            loggerContext.removeListener(turboFilter);
+        }
+        turboFilter.stop();
+        turboFilter = null;
+    }
+
     @Override
     public void stop() {
+        // One budget for the cleanup tasks, the queued flushes and the drain together
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        uninstallTurboFilter();
+
+        HeapPressureMonitor monitor = heapPressureMonitor;
+        if (monitor != null) {
+            monitor.stop();
+            heapPressureMonitor = null;
+        }
+
         // Stop the cleanup executor
         if (cleanupExecutor != null && !cleanupExecutor.isShutdown()) {
             cleanupExecutor.shutdown();
-            try {
-                if (!cleanupExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
-                    cleanupExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
+            if (!awaitTermination(cleanupExecutor, deadlineNanos)) {
                 cleanupExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
+                stragglers.add(cleanupExecutor);
             }
         }
 
-        // Force cleanup all remaining buffers
-        forceCleanupAll();
+        stopFlushExecutor(deadlineNanos);
+
+        // Accept no more events, then deal with the buffers of requests in flight
+        super.stop();
+        BufferHandover handover = getContext() != null ? BufferHandover.of(getContext()) : null;
+        if (handover != null && handover.isReconfiguring() && !allRequestBuffers.isEmpty()) {
+            // The outputs stay open until the replacing instance takes the buffers, see finishStop
+            handover.park(this);
+            addStatus(new InfoStatus("Reconfiguration: keeping " + allRequestBuffers.size()
+                    + " request buffers for the replacing appender", this));
+            return;
+        }
+        finishStop(deadlineNanos);
+    }
+
+    // Finishes the queued asynchronous flushes before the deadline
+    private void stopFlushExecutor(long deadlineNanos) {
+        ExecutorService executor = flushExecutor;
+        if (executor == null) {
+            return;
+        }
+        flushExecutor = null;
+        executor.shutdown();
+        if (!awaitTermination(executor, deadlineNanos)) {
+            int dropped = executor.shutdownNow().size();
+            stragglers.add(executor);
+            addStatus(new WarnStatus("Dropped " + dropped + " queued request flushes after "
+                    + drainTimeoutMillis + " ms", this));
+        }
+    }
+
+    /**
+     * Waits for a shut down executor to finish its tasks until the deadline.
+     *
+     * @return true if it terminated, false if the deadline passed or the wait was interrupted
+     */
+    private static boolean awaitTermination(ExecutorService executor, long deadlineNanos) {
+        try {
+            return executor.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Drains the remaining buffers and stops the outputs. Called by stop, or once a stop
+     * during reconfiguration is resolved by the {@link BufferHandover}.
+     */
+    void finishStop() {
+        finishStop(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis));
+    }
 
-        // Stop the encoder
+    private void finishStop(long deadlineNanos) {
+        drainBuffers(deadlineNanos);
+
+        List<ExecutorService> running;
+        synchronized (stragglers) {
+            running = new ArrayList<>(stragglers);
+            stragglers.clear();
+        }
+        if (running.isEmpty()) {
+            stopOutputs();
+            return;
+        }
+        // Interrupted tasks may still be writing: stopping the outputs under them would lose
+        // their events or hand them to stopped components
+        Thread teardown = new Thread(() -> {
+            for (ExecutorService executor : running) {
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            stopOutputs();
+        }, "ConditionalBufferAppender-Teardown");
+        teardown.setDaemon(true);
+        teardown.start();
+    }
+
+    // Stops the encoder and any attached appenders
+    private void stopOutputs() {
         if (encoder != null) {
             encoder.stop();
         }
-
-        super.stop();
+        tearDownStackTraceCache();
+        if (requestLogWriter != null) {
+            requestLogWriter.stop();
+        }
+        if (flightRecorder != null) {
+            flightRecorder.close();
+            flightRecorder = null;
+        }
+        detachAndStopAllAppenders();
     }
-}
\ No newline at end of file
+}
@@ -2,11 +2,23 @@ package com.mork.cookie.logback;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.slf4j.spi.LoggingEventBuilder;
+
+import java.util.function.Supplier;
 
 /**
  * A wrapper around SLF4J Logger that provides the same logging interface
  * but works seamlessly with the ConditionalBufferAppender for request-scoped
  * conditional log display.
+ * <p>
+ * The one- and two-argument overloads delegate to the matching fixed-arity SLF4J methods,
+ * so they do not allocate a varargs array. As with SLF4J, a {@link Throwable} passed as the
+ * last argument is logged as the exception of the event. The {@code xxxLazy} methods take
+ * {@link Supplier}s, which are evaluated lazily: the supplier is only called if the event is
+ * actually rendered, which for buffered DEBUG events of a successful request means never. They
+ * have names of their own, and only {@code error} has a {@code Throwable} overload, as before:
+ * further overloads would make calls such as {@code debug("value {}", null)} ambiguous.
  */
 public class ConditionalLogger {
     private final Logger logger;
@@ -29,6 +41,98 @@ public class ConditionalLogger {
         this.logger = LoggerFactory.getLogger(name);
     }
 
+    /**
+     * Checks if the underlying logger is enabled for the TRACE level.
+     *
+     * @return true if TRACE events will be passed to the appenders
+     */
+    public boolean isTraceEnabled() {
+        return logger.isTraceEnabled();
+    }
+
+    /**
+     * Logs a trace message.
+     * 
+     * @param message the message to log
+     */
+    public void trace(String message) {
+        logger.trace(message);
+    }
+
+    /**
+     * Logs a trace message with one parameter.
+     *
+     * @param message the message to log
+     * @param arg the argument to substitute in the message
+     */
+    public void trace(String message, Object arg) {
+        logger.trace(message, arg);
+    }
+
+    /**
+     * Logs a trace message with two parameters.
+     *
+     * @param message the message to log
+     * @param arg1 the first argument to substitute in the message
+     * @param arg2 the second argument to substitute in the message
+     */
+    public void trace(String message, Object arg1, Object arg2) {
+        logger.trace(message, arg1, arg2);
+    }
+
+    /**
+     * Logs a trace message with parameters.
+     * 
+     * @param message the message to log
+     * @param args the arguments to substitute in the message
+     */
+    public void trace(String message, Object... args) {
+        logger.trace(message, args);
+    }
+
+    /**
+     * Logs a trace message with a lazily computed parameter.
+     *
+     * @param message the message to log
+     * @param arg supplies the argument, called only if the message is rendered
+     */
+    public void traceLazy(String message, Supplier<?> arg) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(message, new LazyArgument(arg));
+        }
+    }
+
+    /**
+     * Logs a trace message with two lazily computed parameters.
+     *
+     * @param message the message to log
+     * @param arg1 supplies the first argument, called only if the message is rendered
+     * @param arg2 supplies the second argument, called only if the message is rendered
+     */
+    public void traceLazy(String message, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(message, new LazyArgument(arg1), new LazyArgument(arg2));
+        }
+    }
+
+    /**
+     * Starts a fluent TRACE logging event (SLF4J 2 fluent API).
+     *
+     * @return the event builder, a no-op builder if TRACE is disabled
+     */
+    public LoggingEventBuilder atTrace() {
+        return logger.atTrace();
+    }
+
+    /**
+     * Checks if the underlying logger is enabled for the DEBUG level.
+     *
+     * @return true if DEBUG events will be passed to the appenders
+     */
+    public boolean isDebugEnabled() {
+        return logger.isDebugEnabled();
+    }
+
     /**
      * Logs a debug message.
      * 
@@ -38,6 +142,27 @@ public class ConditionalLogger {
         logger.debug(message);
     }
 
+    /**
+     * Logs a debug message with one parameter.
+     *
+     * @param message the message to log
+     * @param arg the argument to substitute in the message
+     */
+    public void debug(String message, Object arg) {
+        logger.debug(message, arg);
+    }
+
+    /**
+     * Logs a debug message with two parameters.
+     *
+     * @param message the message to log
+     * @param arg1 the first argument to substitute in the message
+     * @param arg2 the second argument to substitute in the message
+     */
+    public void debug(String message, Object arg1, Object arg2) {
+        logger.debug(message, arg1, arg2);
+    }
+
     /**
      * Logs a debug message with parameters.
      * 
@@ -48,6 +173,49 @@ public class ConditionalLogger {
         logger.debug(message, args);
     }
 
+    /**
+     * Logs a debug message with a lazily computed parameter.
+     *
+     * @param message the message to log
+     * @param arg supplies the argument, called only if the message is rendered
+     */
+    public void debugLazy(String message, Supplier<?> arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(message, new LazyArgument(arg));
+        }
+    }
+
+    /**
+     * Logs a debug message with two lazily computed parameters.
+     *
+     * @param message the message to log
+     * @param arg1 supplies the first argument, called only if the message is rendered
+     * @param arg2 supplies the second argument, called only if the message is rendered
+     */
+    public void debugLazy(String message, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(message, new LazyArgument(arg1), new LazyArgument(arg2));
+        }
+    }
+
+    /**
+     * Starts a fluent DEBUG logging event (SLF4J 2 fluent API).
+     *
+     * @return the event builder, a no-op builder if DEBUG is disabled
+     */
+    public LoggingEventBuilder atDebug() {
+        return logger.atDebug();
+    }
+
+    /**
+     * Checks if the underlying logger is enabled for the INFO level.
+     *
+     * @return true if INFO events will be passed to the appenders
+     */
+    public boolean isInfoEnabled() {
+        return logger.isInfoEnabled();
+    }
+
     /**
      * Logs an info message.
      * 
@@ -57,6 +225,27 @@ public class ConditionalLogger {
         logger.info(message);
     }
 
+    /**
+     * Logs an info message with one parameter.
+     *
+     * @param message the message to log
+     * @param arg the argument to substitute in the message
+     */
+    public void info(String message, Object arg) {
+        logger.info(message, arg);
+    }
+
+    /**
+     * Logs an info message with two parameters.
+     *
+     * @param message the message to log
+     * @param arg1 the first argument to substitute in the message
+     * @param arg2 the second argument to substitute in the message
+     */
+    public void info(String message, Object arg1, Object arg2) {
+        logger.info(message, arg1, arg2);
+    }
+
     /**
      * Logs an info message with parameters.
      * 
@@ -67,6 +256,49 @@ public class ConditionalLogger {
         logger.info(message, args);
     }
 
+    /**
+     * Logs an info message with a lazily computed parameter.
+     *
+     * @param message the message to log
+     * @param arg supplies the argument, called only if the message is rendered
+     */
+    public void infoLazy(String message, Supplier<?> arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(message, new LazyArgument(arg));
+        }
+    }
+
+    /**
+     * Logs an info message with two lazily computed parameters.
+     *
+     * @param message the message to log
+     * @param arg1 supplies the first argument, called only if the message is rendered
+     * @param arg2 supplies the second argument, called only if the message is rendered
+     */
+    public void infoLazy(String message, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isInfoEnabled()) {
+            logger.info(message, new LazyArgument(arg1), new LazyArgument(arg2));
+        }
+    }
+
+    /**
+     * Starts a fluent INFO logging event (SLF4J 2 fluent API).
+     *
+     * @return the event builder, a no-op builder if INFO is disabled
+     */
+    public LoggingEventBuilder atInfo() {
+        return logger.atInfo();
+    }
+
+    /**
+     * Checks if the underlying logger is enabled for the WARN level.
+     *
+     * @return true if WARN events will be passed to the appenders
+     */
+    public boolean isWarnEnabled() {
+        return logger.isWarnEnabled();
+    }
+
     /**
      * Logs a warning message.
      * 
@@ -76,6 +308,27 @@ public class ConditionalLogger {
         logger.warn(message);
     }
 
+    /**
+     * Logs a warning message with one parameter.
+     *
+     * @param message the message to log
+     * @param arg the argument to substitute in the message
+     */
+    public void warn(String message, Object arg) {
+        logger.warn(message, arg);
+    }
+
+    /**
+     * Logs a warning message with two parameters.
+     *
+     * @param message the message to log
+     * @param arg1 the first argument to substitute in the message
+     * @param arg2 the second argument to substitute in the message
+     */
+    public void warn(String message, Object arg1, Object arg2) {
+        logger.warn(message, arg1, arg2);
+    }
+
     /**
      * Logs a warning message with parameters.
      * 
@@ -86,6 +339,49 @@ public class ConditionalLogger {
         logger.warn(message, args);
     }
 
+    /**
+     * Logs a warning message with a lazily computed parameter.
+     *
+     * @param message the message to log
+     * @param arg supplies the argument, called only if the message is rendered
+     */
+    public void warnLazy(String message, Supplier<?> arg) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(message, new LazyArgument(arg));
+        }
+    }
+
+    /**
+     * Logs a warning message with two lazily computed parameters.
+     *
+     * @param message the message to log
+     * @param arg1 supplies the first argument, called only if the message is rendered
+     * @param arg2 supplies the second argument, called only if the message is rendered
+     */
+    public void warnLazy(String message, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(message, new LazyArgument(arg1), new LazyArgument(arg2));
+        }
+    }
+
+    /**
+     * Starts a fluent WARN logging event (SLF4J 2 fluent API).
+     *
+     * @return the event builder, a no-op builder if WARN is disabled
+     */
+    public LoggingEventBuilder atWarn() {
+        return logger.atWarn();
+    }
+
+    /**
+     * Checks if the underlying logger is enabled for the ERROR level.
+     *
+     * @return true if ERROR events will be passed to the appenders
+     */
+    public boolean isErrorEnabled() {
+        return logger.isErrorEnabled();
+    }
+
     /**
      * Logs an error message.
      * 
@@ -95,6 +391,27 @@ public class ConditionalLogger {
         logger.error(message);
     }
 
+    /**
+     * Logs an error message with one parameter.
+     *
+     * @param message the message to log
+     * @param arg the argument to substitute in the message
+     */
+    public void error(String message, Object arg) {
+        logger.error(message, arg);
+    }
+
+    /**
+     * Logs an error message with two parameters.
+     *
+     * @param message the message to log
+     * @param arg1 the first argument to substitute in the message
+     * @param arg2 the second argument to substitute in the message
+     */
+    public void error(String message, Object arg1, Object arg2) {
+        logger.error(message, arg1, arg2);
+    }
+
     /**
      * Logs an error message with parameters.
      * 
@@ -107,7 +424,7 @@ public class ConditionalLogger {
 
     /**
      * Logs an error message with an exception.
-     * 
+     *
      * @param message the message to log
      * @param throwable the exception to log
      */
@@ -115,6 +432,50 @@ public class ConditionalLogger {
         logger.error(message, throwable);
     }
 
+    /**
+     * Logs an error message with a lazily computed parameter.
+     *
+     * @param message the message to log
+     * @param arg supplies the argument, called only if the message is rendered
+     */
+    public void errorLazy(String message, Supplier<?> arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(message, new LazyArgument(arg));
+        }
+    }
+
+    /**
+     * Logs an error message with two lazily computed parameters.
+     *
+     * @param message the message to log
+     * @param arg1 supplies the first argument, called only if the message is rendered
+     * @param arg2 supplies the second argument, called only if the message is rendered
+     */
+    public void errorLazy(String message, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isErrorEnabled()) {
+            logger.error(message, new LazyArgument(arg1), new LazyArgument(arg2));
+        }
+    }
+
+    /**
+     * Starts a fluent ERROR logging event (SLF4J 2 fluent API).
+     *
+     * @return the event builder, a no-op builder if ERROR is disabled
+     */
+    public LoggingEventBuilder atError() {
+        return logger.atError();
+    }
+
+    /**
+     * Starts a fluent logging event at the given level (SLF4J 2 fluent API).
+     *
+     * @param level the level of the event
+     * @return the event builder, a no-op builder if the level is disabled
+     */
+    public LoggingEventBuilder atLevel(Level level) {
+        return logger.atLevel(level);
+    }
+
     /**
      * Gets the underlying SLF4J logger.
      * 
@@ -123,4 +484,27 @@ public class ConditionalLogger {
     public Logger getLogger() {
         return logger;
     }
-}
\ No newline at end of file
+
+    /**
+     * Wraps a {@link Supplier} so that it is only called when the message is formatted,
+     * i.e. when {@link #toString()} is invoked by the message formatter. The value is
+     * computed at most once.
+     */
+    static final class LazyArgument {
+        private Supplier<?> supplier;
+        private String value;
+
+        LazyArgument(Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (supplier != null) {
+                value = String.valueOf(supplier.get());
+                supplier = null;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.mork.cookie.logback;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor wrapper that runs each task with the request logging context of the thread that
+ * submitted it, so that worker threads log into the request's buffer.
+ * <p>
+ * Typical use: {@code CompletableFuture.supplyAsync(supplier, new ContextPropagatingExecutor(pool))}.
+ */
+public class ContextPropagatingExecutor implements Executor {
+
+    private final Executor delegate;
+
+    /**
+     * Creates a wrapper around an executor.
+     *
+     * @param delegate the executor running the tasks
+     */
+    public ContextPropagatingExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(RequestLoggingContext.wrap(command));
+    }
+
+    public Executor getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,172 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Circular, memory-mapped file holding the most recent buffered events of all requests,
+ * whatever their outcome. The mapped pages belong to the operating system, so everything
+ * recorded up to the moment the JVM dies (OOM kill, crash) is in the file afterwards, and
+ * {@link FlightRecorderReader} can extract the full log of any request that was in it.
+ * <p>
+ * Layout: a 64 byte header (magic, version, capacity, write position, next sequence number)
+ * followed by the ring. Each record is 8-byte aligned: magic, payload length, sequence
+ * number, CRC32C of the payload, then the payload (request ID, timestamp and the event as
+ * written by {@link BinaryEventWriter}, without a dictionary so that every record stands
+ * alone). When the ring wraps, new records overwrite the oldest ones; a record cut in half
+ * fails its checksum and is skipped by the reader, which orders records by sequence number.
+ * Reopening an existing file of the same size carries on where it stopped.
+ */
+final class FlightRecorder implements Closeable {
+
+    static final int FILE_MAGIC = 0x43424652; // "CBFR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int CAPACITY_OFFSET = 8;
+    static final int WRITE_POSITION_OFFSET = 16;
+    static final int NEXT_SEQUENCE_OFFSET = 24;
+    static final int RECORD_MAGIC = 0x52454331; // "REC1"
+    static final int RECORD_HEADER_SIZE = 20;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Larger events (e.g. huge stack traces) would evict too much of the ring
+    private final int maxRecordSize;
+    private final BinaryEventWriter eventWriter = new BinaryEventWriter(null);
+    private final ThreadLocal<ByteOutput> buffers = ThreadLocal.withInitial(ByteOutput::new);
+    private final LongAdder recordedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    // Guarded by this
+    private int writePosition;
+    private long nextSequence;
+    private boolean closed;
+
+    private FlightRecorder(MappedByteBuffer buffer, int capacity, int writePosition, long nextSequence) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.maxRecordSize = Math.max(capacity / 16, Math.min(capacity / 4, 64 * 1024));
+        this.writePosition = writePosition;
+        this.nextSequence = nextSequence;
+    }
+
+    /**
+     * Opens or creates a flight recorder file.
+     *
+     * @param file the file
+     * @param capacity the size of the ring in bytes
+     * @return the recorder
+     * @throws IOException if the file cannot be created or mapped
+     */
+    static FlightRecorder open(Path file, int capacity) throws IOException {
+        capacity = Math.max(64 * 1024, capacity & ~7);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        long fileSize = (long) HEADER_SIZE + capacity;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean resume = channel.size() == fileSize;
+            if (!resume && channel.size() > 0) {
+                // Different size: the old records cannot be located any more
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (resume && buffer.getInt(0) == FILE_MAGIC && buffer.getInt(4) == VERSION
+                    && buffer.getLong(CAPACITY_OFFSET) == capacity) {
+                long position = buffer.getLong(WRITE_POSITION_OFFSET);
+                if (position >= 0 && position <= capacity && (position & 7) == 0) {
+                    return new FlightRecorder(buffer, capacity, (int) position, buffer.getLong(NEXT_SEQUENCE_OFFSET));
+                }
+            }
+            buffer.put(0, new byte[HEADER_SIZE]);
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(CAPACITY_OFFSET, capacity);
+            return new FlightRecorder(buffer, capacity, 0, 0);
+        }
+    }
+
+    /**
+     * Records a buffered event. Encoding happens on the calling thread; only the copy into the
+     * ring is serialized.
+     *
+     * @param requestId the request the event belongs to
+     * @param event the event
+     */
+    void record(String requestId, ILoggingEvent event) {
+        ByteOutput out = buffers.get();
+        out.reset();
+        BinaryEventWriter.writeString(requestId, out);
+        out.writeVarLong(event.getTimeStamp());
+        eventWriter.writeEvent(event, out);
+        int length = out.size();
+        int recordSize = (RECORD_HEADER_SIZE + length + 7) & ~7;
+        if (recordSize > maxRecordSize) {
+            droppedEvents.increment();
+        } else {
+            CRC32C crc = new CRC32C();
+            out.updateChecksum(crc);
+            write(out, length, recordSize, (int) crc.getValue());
+        }
+        if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+    }
+
+    private synchronized void write(ByteOutput payload, int length, int recordSize, int checksum) {
+        if (closed) {
+            return;
+        }
+        if (writePosition + recordSize > capacity) {
+            writePosition = 0;
+        }
+        int base = HEADER_SIZE + writePosition;
+        payload.writeTo(buffer, base + RECORD_HEADER_SIZE);
+        buffer.putInt(base + 4, length);
+        buffer.putLong(base + 8, nextSequence);
+        buffer.putInt(base + 16, checksum);
+        // The magic goes last, so a record is only recognized once complete
+        buffer.putInt(base, RECORD_MAGIC);
+        writePosition += recordSize;
+        nextSequence++;
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+        buffer.putLong(NEXT_SEQUENCE_OFFSET, nextSequence);
+        recordedEvents.increment();
+    }
+
+    long getRecordedEvents() {
+        return recordedEvents.sum();
+    }
+
+    long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Stops recording and writes the mapped pages to disk. The mapping itself is released
+     * when the buffer is garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the flight recorder file of a ConditionalBufferAppender, also after the process that
+ * wrote it died, and extracts the logs of the requests it holds.
+ * <p>
+ * Command line usage:
+ * <pre>
+ * java -cp ... com.mork.cookie.logback.FlightRecorderReader [--list] [--request &lt;id&gt;] [--pattern &lt;pattern&gt;] &lt;file&gt;
+ * </pre>
+ * {@code --list} prints one line per request (ID, event count, first and last timestamp);
+ * {@code --request} prints the events of one request; without either, every request is
+ * printed, oldest first.
+ */
+public final class FlightRecorderReader {
+
+    /**
+     * One recorded event.
+     *
+     * @param sequence the recording order
+     * @param requestId the request the event was buffered for
+     * @param event the event
+     */
+    public record Entry(long sequence, String requestId, ILoggingEvent event) {
+    }
+
+    private FlightRecorderReader() {
+    }
+
+    /**
+     * Reads every intact record of a flight recorder file.
+     *
+     * @param file the file
+     * @return the recorded events, oldest first
+     * @throws IOException if the file cannot be read or is not a flight recorder file
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        return read(file, new LoggerContextVO(new LoggerContext()));
+    }
+
+    private static List<Entry> read(Path file, LoggerContextVO loggerContextVO) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < FlightRecorder.HEADER_SIZE) {
+                throw new IOException("Not a flight recorder file: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != FlightRecorder.FILE_MAGIC) {
+            throw new IOException("Not a flight recorder file: " + file);
+        }
+        if (buffer.getInt(4) != FlightRecorder.VERSION) {
+            throw new IOException("Unsupported flight recorder version " + buffer.getInt(4));
+        }
+        long capacity = Math.min(buffer.getLong(FlightRecorder.CAPACITY_OFFSET), buffer.capacity() - FlightRecorder.HEADER_SIZE);
+
+        // Records are 8-byte aligned: probe each slot, skipping over the records found
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        while (position + FlightRecorder.RECORD_HEADER_SIZE <= capacity) {
+            int recordSize = readRecord(buffer, FlightRecorder.HEADER_SIZE + position, capacity - position, loggerContextVO, entries);
+            position += recordSize > 0 ? recordSize : 8;
+        }
+        entries.sort(Comparator.comparingLong(Entry::sequence));
+        return entries;
+    }
+
+    // Returns the aligned size of the record at base, or 0 if there is no intact record there
+    private static int readRecord(ByteBuffer buffer, int base, long available, LoggerContextVO loggerContextVO,
+                                  List<Entry> entries) {
+        if (buffer.getInt(base) != FlightRecorder.RECORD_MAGIC) {
+            return 0;
+        }
+        int length = buffer.getInt(base + 4);
+        if (length < 0 || FlightRecorder.RECORD_HEADER_SIZE + (long) length > available) {
+            return 0;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(base + FlightRecorder.RECORD_HEADER_SIZE, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(base + 16)) {
+            return 0;
+        }
+        try {
+            BinaryEventReader reader = new BinaryEventReader(new ByteArrayInputStream(payload), false);
+            String requestId = reader.readString();
+            long timeStamp = reader.readVarLong();
+            entries.add(new Entry(buffer.getLong(base + 8), requestId, reader.readEvent(timeStamp, loggerContextVO)));
+        } catch (IOException e) {
+            return 0;
+        }
+        return (FlightRecorder.RECORD_HEADER_SIZE + length + 7) & ~7;
+    }
+
+    /**
+     * Groups entries by request, in the order each request was first seen.
+     *
+     * @param entries the entries, oldest first
+     * @return the events of each request
+     */
+    public static Map<String, List<ILoggingEvent>> byRequest(List<Entry> entries) {
+        Map<String, List<ILoggingEvent>> requests = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            requests.computeIfAbsent(entry.requestId(), k -> new ArrayList<>()).add(entry.event());
+        }
+        return requests;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String pattern = BinaryLogDecoder.DEFAULT_PATTERN;
+        String requestId = null;
+        boolean list = false;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--pattern") && i + 1 < args.length) {
+                pattern = args[++i];
+            } else if (args[i].equals("--request") && i + 1 < args.length) {
+                requestId = args[++i];
+            } else if (args[i].equals("--list")) {
+                list = true;
+            } else {
+                file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: FlightRecorderReader [--list] [--request <id>] [--pattern <pattern>] <file>");
+            System.exit(2);
+        }
+
+        LoggerContext loggerContext = new LoggerContext();
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(loggerContext);
+        layout.setPattern(pattern);
+        layout.start();
+        Map<String, List<ILoggingEvent>> requests = byRequest(read(Paths.get(file), new LoggerContextVO(loggerContext)));
+
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        for (Map.Entry<String, List<ILoggingEvent>> request : requests.entrySet()) {
+            List<ILoggingEvent> events = request.getValue();
+            if (list) {
+                out.println(request.getKey() + "\t" + events.size() + " events\t"
+                        + Instant.ofEpochMilli(events.get(0).getTimeStamp()) + "\t"
+                        + Instant.ofEpochMilli(events.get(events.size() - 1).getTimeStamp()));
+            } else if (requestId == null || requestId.equals(request.getKey())) {
+                out.println("=== FLIGHT RECORDER - " + events.size() + " logs for request: " + request.getKey() + " ===");
+                for (ILoggingEvent event : events) {
+                    out.print(layout.doLayout(event));
+                }
+                out.println("=== End of flight recorder logs for: " + request.getKey() + " ===");
+            }
+        }
+        out.flush();
+        if (requestId != null && !list && !requests.containsKey(requestId)) {
+            System.err.println("Request " + requestId + " is not in " + file);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.mork.cookie.logback;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Watches heap occupancy and tells the appender when to degrade and when to recover.
+ * <p>
+ * Heap pools that support it get a collection usage threshold, which the JVM checks right
+ * after each garbage collection: occupancy after a collection is live data, so garbage
+ * waiting to be collected does not trigger the degraded mode. Pools without collection
+ * thresholds get a plain usage threshold. The JVM notifies as soon as a threshold is
+ * crossed; recovery is detected by polling, once the occupancy of every pool has dropped
+ * below the lower recovery threshold, so the mode does not flap around a single value.
+ * <p>
+ * The thresholds belong to the JVM-wide pool MXBeans, so they are shared: a pool's threshold
+ * is the lowest one wanted by a running monitor or set before the first monitor started, and
+ * notifications below a monitor's own threshold or of pools it does not watch are ignored.
+ * When the last monitor stops, the value found before the first one started is restored.
+ */
+public class HeapPressureMonitor implements NotificationListener {
+
+    /**
+     * Receives the mode changes.
+     */
+    interface Listener {
+        void degraded(String reason);
+
+        void recovered(String reason);
+    }
+
+    private final double threshold;
+    private final double recoveryThreshold;
+    private final Listener listener;
+    // Replaces the heap pools in tests (null = use the pools)
+    private final DoubleSupplier probe;
+    private final List<MonitoredPool> pools = new ArrayList<>();
+    private final AtomicBoolean degraded = new AtomicBoolean();
+    private final LongAdder degradations = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder evictedBuffers = new LongAdder();
+    private NotificationEmitter emitter;
+
+    // Thresholds of the running monitors per pool name, guarded by itself
+    private static final Map<String, SharedThreshold> SHARED_THRESHOLDS = new HashMap<>();
+
+    /**
+     * Creates a monitor of the JVM's heap pools.
+     *
+     * @param thresholdPercent the occupancy at which to degrade
+     * @param recoveryPercent the occupancy below which to recover
+     * @param listener receives the mode changes
+     */
+    HeapPressureMonitor(int thresholdPercent, int recoveryPercent, Listener listener) {
+        this(thresholdPercent, recoveryPercent, listener, null);
+    }
+
+    HeapPressureMonitor(int thresholdPercent, int recoveryPercent, Listener listener, DoubleSupplier probe) {
+        this.threshold = thresholdPercent / 100.0;
+        this.recoveryThreshold = Math.min(recoveryPercent, thresholdPercent) / 100.0;
+        this.listener = listener;
+        this.probe = probe;
+    }
+
+    /**
+     * Sets the thresholds of the heap pools and starts listening to their notifications.
+     * Does nothing for a monitor with an occupancy probe.
+     */
+    void start() {
+        if (probe != null) {
+            return;
+        }
+        synchronized (SHARED_THRESHOLDS) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                long max = pool.getUsage().getMax();
+                if (pool.getType() != MemoryType.HEAP || max <= 0) {
+                    continue;
+                }
+                boolean collection = pool.isCollectionUsageThresholdSupported();
+                if (!collection && !pool.isUsageThresholdSupported()) {
+                    continue;
+                }
+                MonitoredPool monitored = new MonitoredPool(pool, collection, (long) (max * threshold));
+                SharedThreshold shared = SHARED_THRESHOLDS.computeIfAbsent(pool.getName(),
+                        name -> new SharedThreshold(monitored.current()));
+                shared.wanted.add(monitored.threshold());
+                monitored.apply(shared.effective());
+                pools.add(monitored);
+            }
+        }
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter notificationEmitter) {
+            emitter = notificationEmitter;
+            emitter.addNotificationListener(this, null, null);
+        }
+    }
+
+    void stop() {
+        if (emitter != null) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // Already removed
+            }
+            emitter = null;
+        }
+        synchronized (SHARED_THRESHOLDS) {
+            for (MonitoredPool monitored : pools) {
+                SharedThreshold shared = SHARED_THRESHOLDS.get(monitored.pool().getName());
+                shared.wanted.remove(Long.valueOf(monitored.threshold()));
+                if (shared.wanted.isEmpty()) {
+                    SHARED_THRESHOLDS.remove(monitored.pool().getName());
+                    monitored.apply(shared.previous);
+                } else {
+                    monitored.apply(shared.effective());
+                }
+            }
+        }
+        pools.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)
+                || MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)) {
+            if (notification.getUserData() instanceof CompositeData data) {
+                MemoryNotificationInfo info = MemoryNotificationInfo.from(data);
+                if (!isOwnThresholdExceeded(info)) {
+                    return;
+                }
+                degrade("heap pool " + info.getPoolName() + " at " + percent(info.getUsage()) + "% after "
+                        + info.getCount() + " threshold crossings");
+            } else {
+                degrade("heap threshold exceeded");
+            }
+        }
+    }
+
+    // Notifications of other pools, or of a lower threshold another monitor wants, are not ours
+    private boolean isOwnThresholdExceeded(MemoryNotificationInfo info) {
+        for (MonitoredPool monitored : pools) {
+            if (monitored.pool().getName().equals(info.getPoolName())) {
+                return info.getUsage().getUsed() >= monitored.threshold();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the occupancy: degrades if a notification was missed, recovers once the
+     * occupancy is below the recovery threshold.
+     */
+    void poll() {
+        double current = probe != null ? probe.getAsDouble() : heapOccupancy();
+        if (!degraded.get() && current >= threshold) {
+            degrade("heap at " + Math.round(current * 100) + "%");
+        } else if (degraded.get() && current < recoveryThreshold && degraded.compareAndSet(true, false)) {
+            recoveries.increment();
+            listener.recovered("heap at " + Math.round(current * 100) + "%");
+        }
+    }
+
+    private void degrade(String reason) {
+        if (degraded.compareAndSet(false, true)) {
+            degradations.increment();
+            listener.degraded(reason);
+        }
+    }
+
+    // Highest occupancy of the monitored pools, after the last collection where available
+    private double heapOccupancy() {
+        double highest = 0;
+        for (MonitoredPool monitored : pools) {
+            MemoryUsage usage = monitored.collection() ? monitored.pool().getCollectionUsage() : monitored.pool().getUsage();
+            if (usage != null && usage.getMax() > 0) {
+                highest = Math.max(highest, (double) usage.getUsed() / usage.getMax());
+            }
+        }
+        return highest;
+    }
+
+    private static long percent(MemoryUsage usage) {
+        return usage.getMax() > 0 ? Math.round(100.0 * usage.getUsed() / usage.getMax()) : 0;
+    }
+
+    void recordDroppedEvent() {
+        droppedEvents.increment();
+    }
+
+    void recordEvictedBuffers(int count) {
+        evictedBuffers.add(count);
+    }
+
+    /**
+     * Whether the appender is in degraded mode.
+     */
+    public boolean isDegraded() {
+        return degraded.get();
+    }
+
+    /**
+     * Gets the number of times the degraded mode was entered.
+     */
+    public long getDegradations() {
+        return degradations.sum();
+    }
+
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    /**
+     * Gets the number of events below WARN that were not buffered in degraded mode.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Gets the number of buffers dumped or dropped on entering the degraded mode.
+     */
+    public long getEvictedBuffers() {
+        return evictedBuffers.sum();
+    }
+
+    /**
+     * A pool this monitor set a threshold on.
+     */
+    private record MonitoredPool(MemoryPoolMXBean pool, boolean collection, long threshold) {
+
+        long current() {
+            return collection ? pool.getCollectionUsageThreshold() : pool.getUsageThreshold();
+        }
+
+        void apply(long bytes) {
+            if (collection) {
+                pool.setCollectionUsageThreshold(bytes);
+            } else {
+                pool.setUsageThreshold(bytes);
+            }
+        }
+    }
+
+    /**
+     * The threshold of one pool, shared by the monitors of all appenders.
+     */
+    private static final class SharedThreshold {
+        // Set before the first monitor started, 0 if disabled
+        final long previous;
+        final List<Long> wanted = new ArrayList<>();
+
+        SharedThreshold(long previous) {
+            this.previous = previous;
+        }
+
+        long effective() {
+            long lowest = previous > 0 ? previous : Long.MAX_VALUE;
+            for (long bytes : wanted) {
+                lowest = Math.min(lowest, bytes);
+            }
+            return lowest;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HeapPressureMonitor{degraded=" + isDegraded()
+                + ", degradations=" + getDegradations()
+                + ", recoveries=" + getRecoveries()
+                + ", droppedEvents=" + getDroppedEvents()
+                + ", evictedBuffers=" + getEvictedBuffers() + "}";
+    }
+}
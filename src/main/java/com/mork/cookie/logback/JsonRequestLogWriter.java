@@ -0,0 +1,274 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.spi.ContextAwareBase;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes each request as a single line of JSON: request metadata, outcome, event counts and
+ * the array of selected events. Log shippers can then ingest one record per request instead of
+ * stitching multi-line dumps back together.
+ * <p>
+ * The document is written by a streaming writer straight into a reusable per-thread byte
+ * buffer (field names are pre-encoded), then copied to the output stream in one write.
+ * Timestamps are epoch milliseconds. Writes to {@code System.out} unless an output stream is set.
+ * <pre>
+ * {"requestId":"...","outcome":"ERROR","startTime":...,"endTime":...,"durationMs":...,
+ *  "bufferedEvents":3,"writtenEvents":3,"events":[{"timestamp":...,"level":"DEBUG",
+ *  "thread":"...","logger":"...","message":"...","mdc":{...},"stackTrace":"..."}]}
+ * </pre>
+ */
+public class JsonRequestLogWriter extends ContextAwareBase implements RequestLogWriter {
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+
+    private static final byte[] REQUEST_ID = ascii("{\"requestId\":");
+    private static final byte[] OUTCOME = ascii(",\"outcome\":\"");
+    private static final byte[] START_TIME = ascii("\",\"startTime\":");
+    private static final byte[] END_TIME = ascii(",\"endTime\":");
+    private static final byte[] DURATION = ascii(",\"durationMs\":");
+    private static final byte[] BUFFERED_EVENTS = ascii(",\"bufferedEvents\":");
+    private static final byte[] WRITTEN_EVENTS = ascii(",\"writtenEvents\":");
+    private static final byte[] EVENTS = ascii(",\"events\":[");
+    private static final byte[] TIMESTAMP = ascii("{\"timestamp\":");
+    private static final byte[] LEVEL = ascii(",\"level\":");
+    private static final byte[] THREAD = ascii(",\"thread\":");
+    private static final byte[] LOGGER = ascii(",\"logger\":");
+    private static final byte[] MESSAGE = ascii(",\"message\":");
+    private static final byte[] MDC = ascii(",\"mdc\":{");
+    private static final byte[] MARKERS = ascii(",\"markers\":[");
+    private static final byte[] KEY_VALUE_PAIRS = ascii(",\"keyValuePairs\":{");
+    private static final byte[] STACK_TRACE = ascii(",\"stackTrace\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] END_OF_DOCUMENT = ascii("]}\n");
+
+    // Quoted level names, indexed by levelInt / 10000 (TRACE is 5000)
+    private static final byte[][] LEVEL_NAMES = new byte[Level.ERROR_INT / 10000 + 1][];
+
+    static {
+        for (Level level : new Level[]{Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR}) {
+            LEVEL_NAMES[level.toInt() / 10000] = ascii("\"" + level.levelStr + "\"");
+        }
+    }
+
+    private final ThreadLocal<ByteOutput> buffers = ThreadLocal.withInitial(ByteOutput::new);
+    private final Object writeLock = new Object();
+    private OutputStream outputStream;
+    private volatile boolean started;
+
+    @Override
+    public void write(RequestLog requestLog) {
+        ByteOutput out = buffers.get();
+        out.reset();
+        render(requestLog, out);
+        try {
+            synchronized (writeLock) {
+                OutputStream target = outputStream != null ? outputStream : System.out;
+                out.writeTo(target);
+                target.flush();
+            }
+        } catch (IOException e) {
+            addError("Failed to write logs of request " + requestLog.requestId(), e);
+        }
+        if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+    }
+
+    /**
+     * Renders a request as one line of JSON, terminated by a newline.
+     */
+    void render(RequestLog requestLog, ByteOutput out) {
+        out.write(REQUEST_ID);
+        writeString(requestLog.requestId(), out);
+        out.write(OUTCOME);
+        out.writeString(requestLog.outcome().name(), CharsetKind.US_ASCII);
+        out.write(START_TIME);
+        out.writeDecimal(requestLog.startTime());
+        out.write(END_TIME);
+        out.writeDecimal(requestLog.endTime());
+        out.write(DURATION);
+        out.writeDecimal(requestLog.endTime() - requestLog.startTime());
+        out.write(BUFFERED_EVENTS);
+        out.writeDecimal(requestLog.bufferedEvents());
+        out.write(WRITTEN_EVENTS);
+        out.writeDecimal(requestLog.events().size());
+        out.write(EVENTS);
+        boolean first = true;
+        for (ILoggingEvent event : requestLog.events()) {
+            if (!first) {
+                out.write((byte) ',');
+            }
+            first = false;
+            writeEvent(event, out);
+        }
+        out.write(END_OF_DOCUMENT);
+    }
+
+    private void writeEvent(ILoggingEvent event, ByteOutput out) {
+        out.write(TIMESTAMP);
+        out.writeDecimal(event.getTimeStamp());
+        out.write(LEVEL);
+        int levelIndex = event.getLevel().toInt() / 10000;
+        if (levelIndex < LEVEL_NAMES.length && LEVEL_NAMES[levelIndex] != null) {
+            out.write(LEVEL_NAMES[levelIndex]);
+        } else {
+            writeString(event.getLevel().levelStr, out);
+        }
+        out.write(THREAD);
+        BufferedLoggingEvent snapshot = event instanceof BufferedLoggingEvent buffered ? buffered : null;
+        writeName(snapshot == null ? null : snapshot.getThreadSymbol(), event.getThreadName(), out);
+        out.write(LOGGER);
+        writeName(snapshot == null ? null : snapshot.getLoggerSymbol(), event.getLoggerName(), out);
+        out.write(MESSAGE);
+        writeString(event.getFormattedMessage(), out);
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc != null && !mdc.isEmpty()) {
+            out.write(MDC);
+            boolean first = true;
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (!first) {
+                    out.write((byte) ',');
+                }
+                first = false;
+                writeString(entry.getKey(), out);
+                out.write((byte) ':');
+                writeString(entry.getValue(), out);
+            }
+            out.write((byte) '}');
+        }
+
+        List<Marker> markers = event.getMarkerList();
+        if (markers != null && !markers.isEmpty()) {
+            out.write(MARKERS);
+            for (int i = 0; i < markers.size(); i++) {
+                if (i > 0) {
+                    out.write((byte) ',');
+                }
+                writeString(markers.get(i).getName(), out);
+            }
+            out.write((byte) ']');
+        }
+
+        List<KeyValuePair> keyValuePairs = event.getKeyValuePairs();
+        if (keyValuePairs != null && !keyValuePairs.isEmpty()) {
+            out.write(KEY_VALUE_PAIRS);
+            for (int i = 0; i < keyValuePairs.size(); i++) {
+                if (i > 0) {
+                    out.write((byte) ',');
+                }
+                KeyValuePair pair = keyValuePairs.get(i);
+                writeString(pair.key, out);
+                out.write((byte) ':');
+                writeString(pair.value == null ? null : String.valueOf(pair.value), out);
+            }
+            out.write((byte) '}');
+        }
+
+        IThrowableProxy throwableProxy = event.getThrowableProxy();
+        if (throwableProxy != null) {
+            out.write(STACK_TRACE);
+            writeString(ThrowableProxyUtil.asString(throwableProxy), out);
+        }
+        out.write((byte) '}');
+    }
+
+    /**
+     * Writes a logger or thread name, straight from the pre-encoded bytes of its symbol when it
+     * has one that needs no escaping.
+     */
+    private static void writeName(SymbolTable.Symbol symbol, String name, ByteOutput out) {
+        if (symbol != null && symbol.isJsonSafe()) {
+            out.write((byte) '"');
+            out.write(symbol.utf8());
+            out.write((byte) '"');
+        } else {
+            writeString(name, out);
+        }
+    }
+
+    /**
+     * Writes a JSON string literal: runs of plain characters are encoded in one go, quotes,
+     * backslashes and control characters are escaped.
+     */
+    private static void writeString(String s, ByteOutput out) {
+        if (s == null) {
+            out.write(NULL);
+            return;
+        }
+        out.write((byte) '"');
+        int runStart = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            if (i > runStart) {
+                out.writeString(s, runStart, i, CharsetKind.UTF_8);
+            }
+            runStart = i + 1;
+            out.write((byte) '\\');
+            switch (c) {
+                case '"' -> out.write((byte) '"');
+                case '\\' -> out.write((byte) '\\');
+                case '\n' -> out.write((byte) 'n');
+                case '\r' -> out.write((byte) 'r');
+                case '\t' -> out.write((byte) 't');
+                case '\b' -> out.write((byte) 'b');
+                case '\f' -> out.write((byte) 'f');
+                default -> {
+                    out.write((byte) 'u');
+                    out.write((byte) '0');
+                    out.write((byte) '0');
+                    out.write(HEX_DIGITS[c >> 4]);
+                    out.write(HEX_DIGITS[c & 0xF]);
+                }
+            }
+        }
+        if (length > runStart) {
+            out.writeString(s, runStart, length, CharsetKind.UTF_8);
+        }
+        out.write((byte) '"');
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Sets the stream the JSON lines are written to. By default they go to {@code System.out}.
+     *
+     * @param outputStream the output stream
+     */
+    public void setOutputStream(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void start() {
+        started = true;
+    }
+
+    @Override
+    public void stop() {
+        started = false;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started;
+    }
+}
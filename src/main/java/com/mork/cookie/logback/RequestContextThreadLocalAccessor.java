@@ -0,0 +1,38 @@
+package com.mork.cookie.logback;
+
+import io.micrometer.context.ThreadLocalAccessor;
+
+/**
+ * Micrometer context-propagation accessor for the request logging context, so that Reactor
+ * restores it on whichever thread an operator runs when automatic context propagation is
+ * enabled ({@code Hooks.enableAutomaticContextPropagation()}). Registered through
+ * {@code META-INF/services}; the reactive filters keep the context in the Reactor Context
+ * under {@link #KEY}.
+ */
+public class RequestContextThreadLocalAccessor implements ThreadLocalAccessor<RequestLoggingContext.Snapshot> {
+
+    /**
+     * The Reactor Context key of the request logging context.
+     */
+    public static final String KEY = "com.mork.cookie.logback.request-context";
+
+    @Override
+    public Object key() {
+        return KEY;
+    }
+
+    @Override
+    public RequestLoggingContext.Snapshot getValue() {
+        return RequestLoggingContext.capture();
+    }
+
+    @Override
+    public void setValue(RequestLoggingContext.Snapshot value) {
+        RequestLoggingContext.set(value);
+    }
+
+    @Override
+    public void setValue() {
+        RequestLoggingContext.clear();
+    }
+}
@@ -0,0 +1,139 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.classic.util.LoggerNameUtil;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Companion TurboFilter for the ConditionalBufferAppender. Outside a request context the
+ * appender discards every event below ERROR, so this filter denies such events before
+ * Logback creates a LoggingEvent for them.
+ * <p>
+ * An event is only denied when every appender reachable from its logger (following
+ * additivity) is a ConditionalBufferAppender; loggers that also feed other appenders are
+ * left untouched. What is cached per logger is only the chain of its ancestors, which never
+ * changes; their appenders and additivity are checked on every call, so appenders attached
+ * or detached at any time, by a configurator or programmatically, take effect at once.
+ */
+public class RequestContextTurboFilter extends TurboFilter implements LoggerContextListener {
+
+    // The logger followed by its ancestors up to the root
+    private final Map<Logger, Logger[]> ancestors = new ConcurrentHashMap<>();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || level == null || level.isGreaterOrEqual(Level.ERROR)) {
+            return FilterReply.NEUTRAL;
+        }
+        // Disabled by level anyway: let Logback drop it
+        if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (RequestLoggingContext.getRequestId() != null) {
+            return FilterReply.NEUTRAL;
+        }
+        return feedsOnlyConditionalAppenders(logger) ? FilterReply.DENY : FilterReply.NEUTRAL;
+    }
+
+    /**
+     * Checks whether the logger and its additive ancestors only have ConditionalBufferAppenders
+     * attached (and at least one of them).
+     */
+    boolean feedsOnlyConditionalAppenders(Logger logger) {
+        Logger[] chain = ancestors.get(logger);
+        if (chain == null) {
+            chain = ancestorsOf(logger);
+            ancestors.put(logger, chain);
+        }
+        boolean foundConditional = false;
+        for (Logger current : chain) {
+            Iterator<Appender<ch.qos.logback.classic.spi.ILoggingEvent>> it = current.iteratorForAppenders();
+            while (it.hasNext()) {
+                if (!(it.next() instanceof ConditionalBufferAppender)) {
+                    return false;
+                }
+                foundConditional = true;
+            }
+            if (!current.isAdditive()) {
+                break;
+            }
+        }
+        return foundConditional;
+    }
+
+    private static Logger[] ancestorsOf(Logger logger) {
+        LoggerContext loggerContext = logger.getLoggerContext();
+        List<Logger> chain = new ArrayList<>();
+        chain.add(logger);
+        String name = logger.getName();
+        while (!Logger.ROOT_LOGGER_NAME.equals(name)) {
+            name = parentName(name);
+            Logger parent = loggerContext.exists(name);
+            if (parent != null) {
+                chain.add(parent);
+            }
+        }
+        return chain.toArray(new Logger[0]);
+    }
+
+    private static String parentName(String name) {
+        int lastSeparator = -1;
+        int index = LoggerNameUtil.getSeparatorIndexOf(name, 0);
+        while (index != -1) {
+            lastSeparator = index;
+            index = LoggerNameUtil.getSeparatorIndexOf(name, index + 1);
+        }
+        return lastSeparator == -1 ? Logger.ROOT_LOGGER_NAME : name.substring(0, lastSeparator);
+    }
+
+    /**
+     * Forgets the cached ancestors of every logger.
+     */
+    public void clearCache() {
+        ancestors.clear();
+    }
+
+    @Override
+    public void stop() {
+        clearCache();
+        super.stop();
+    }
+
+    // LoggerContextListener implementation
+    @Override
+    public boolean isResetResistant() {
+        return false;
+    }
+
+    @Override
+    public void onStart(LoggerContext context) {
+        clearCache();
+    }
+
+    @Override
+    public void onReset(LoggerContext context) {
+        clearCache();
+    }
+
+    @Override
+    public void onStop(LoggerContext context) {
+        clearCache();
+    }
+
+    @Override
+    public void onLevelChange(Logger logger, Level level) {
+        // Levels are checked on every call, nothing cached depends on them
+    }
+}
@@ -0,0 +1,49 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.List;
+
+/**
+ * The logs of one request as handed to a {@link RequestLogWriter} at flush time.
+ *
+ * @param requestId the request ID, or null for an ERROR event logged outside any request
+ * @param outcome why the logs are written
+ * @param startTime when the request's buffer was created, in epoch milliseconds
+ * @param endTime when the logs were selected for writing, in epoch milliseconds
+ * @param bufferedEvents the number of events the request had buffered
+ * @param events the selected events, in order
+ * @param flushPolicy the flush policy of the request's route, which decides what a success or
+ *                    checkpoint selects: INFO events, or all events with {@code ALWAYS}
+ */
+public record RequestLog(String requestId, Outcome outcome, long startTime, long endTime,
+                         int bufferedEvents, List<ILoggingEvent> events, RouteRule.FlushPolicy flushPolicy) {
+
+    public RequestLog {
+        if (flushPolicy == null) {
+            flushPolicy = RouteRule.FlushPolicy.CONDITIONAL;
+        }
+    }
+
+    /**
+     * Creates the logs of a request of a route with the default flush policy.
+     */
+    public RequestLog(String requestId, Outcome outcome, long startTime, long endTime,
+                      int bufferedEvents, List<ILoggingEvent> events) {
+        this(requestId, outcome, startTime, endTime, bufferedEvents, events, RouteRule.FlushPolicy.CONDITIONAL);
+    }
+
+    /**
+     * Why a request's logs are written.
+     */
+    public enum Outcome {
+        /** The request completed without error: its INFO events are written (all of them with ALWAYS). */
+        SUCCESS,
+        /** The request completed with an error: all its events are written. */
+        ERROR,
+        /** A long-running request wrote its INFO events so far (all of them with ALWAYS). */
+        CHECKPOINT,
+        /** The request's buffer was evicted under heap pressure: all its events so far are written. */
+        EVICTED
+    }
+}
@@ -0,0 +1,21 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.core.spi.LifeCycle;
+
+/**
+ * Writes the selected logs of a request as one unit, in place of the console banners and the
+ * attached appenders. Configured as a nested component of the ConditionalBufferAppender:
+ *
+ * <pre>
+ * &lt;requestLogWriter class="com.mork.cookie.logback.JsonRequestLogWriter"/&gt;
+ * </pre>
+ */
+public interface RequestLogWriter extends LifeCycle {
+
+    /**
+     * Writes the logs of a request. Called concurrently by the threads finishing requests.
+     *
+     * @param requestLog the request and its selected events
+     */
+    void write(RequestLog requestLog);
+}
@@ -1,14 +1,24 @@
 package com.mork.cookie.logback;
 
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Thread-local context for tracking request-scoped logging information.
- * Stores request ID and error state for conditional log display.
+ * Stores request ID, error state and route for conditional log display.
+ * <p>
+ * The error state is shared by every thread the context is propagated to (see
+ * {@link #capture()}), so an error logged by a worker thread is seen by the request thread
+ * when it flushes the request logs. So is the completion of the request: once its logs are
+ * flushed, events logged by threads still working for it are not buffered anymore.
  */
 public class RequestLoggingContext {
     private static final ThreadLocal<String> REQUEST_ID = new ThreadLocal<>();
-    private static final ThreadLocal<Boolean> HAS_ERROR = new ThreadLocal<>();
+    private static final ThreadLocal<RequestState> STATE = new ThreadLocal<>();
+    private static final ThreadLocal<String> ROUTE = new ThreadLocal<>();
+    private static final ThreadLocal<RouteRule> ROUTE_RULE = new ThreadLocal<>();
 
     /**
      * Sets the request ID for the current thread and initializes error state.
@@ -17,7 +27,7 @@ public class RequestLoggingContext {
      */
     public static void setRequestId(String requestId) {
         REQUEST_ID.set(requestId);
-        HAS_ERROR.set(false); // Initialize error flag
+        STATE.set(new RequestState()); // Fresh error and completion state
     }
 
     /**
@@ -29,11 +39,62 @@ public class RequestLoggingContext {
         return REQUEST_ID.get();
     }
 
+    /**
+     * Sets the route of the current request, e.g. {@code GET /orders/{id}}. Buffers of
+     * requests with a route are presized from the event counts of earlier requests of it.
+     *
+     * @param route the route template, or null if unknown
+     */
+    public static void setRoute(String route) {
+        if (route == null) {
+            ROUTE.remove();
+        } else {
+            ROUTE.set(route);
+        }
+    }
+
+    /**
+     * Gets the route of the current request.
+     *
+     * @return the route, or null if not set
+     */
+    public static String getRoute() {
+        return ROUTE.get();
+    }
+
+    /**
+     * Sets the route rule matched by the current request, which overrides the appender's
+     * configuration for its buffer.
+     *
+     * @param rule the rule, or null if none matched
+     */
+    public static void setRouteRule(RouteRule rule) {
+        if (rule == null) {
+            ROUTE_RULE.remove();
+        } else {
+            ROUTE_RULE.set(rule);
+        }
+    }
+
+    /**
+     * Gets the route rule of the current request.
+     *
+     * @return the rule, or null if not set
+     */
+    public static RouteRule getRouteRule() {
+        return ROUTE_RULE.get();
+    }
+
     /**
      * Marks the current request as having an error.
      */
     public static void markError() {
-        HAS_ERROR.set(true);
+        RequestState state = STATE.get();
+        if (state == null) {
+            state = new RequestState();
+            STATE.set(state);
+        }
+        state.markError();
     }
 
     /**
@@ -42,8 +103,17 @@ public class RequestLoggingContext {
      * @return true if the request has an error, false otherwise
      */
     public static boolean hasError() {
-        Boolean error = HAS_ERROR.get();
-        return error != null && error;
+        RequestState state = STATE.get();
+        return state != null && state.hasError();
+    }
+
+    /**
+     * Gets the state shared by the threads working for the current request.
+     *
+     * @return the state, or null if the current thread has no request context
+     */
+    static RequestState currentState() {
+        return STATE.get();
     }
 
     /**
@@ -52,7 +122,9 @@ public class RequestLoggingContext {
      */
     public static void clear() {
         REQUEST_ID.remove();
-        HAS_ERROR.remove();
+        STATE.remove();
+        ROUTE.remove();
+        ROUTE_RULE.remove();
     }
 
     /**
@@ -63,4 +135,282 @@ public class RequestLoggingContext {
     public static String generateRequestId() {
         return UUID.randomUUID().toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds a route from a request path when the framework does not expose the matched
+     * template: path segments that look like identifiers (numbers, UUIDs, hashes, tokens)
+     * are replaced by {@code {id}}, so that {@code /orders/42} and {@code /orders/43} share
+     * the route {@code GET /orders/{id}}.
+     *
+     * @param method the HTTP method, may be null
+     * @param path the request path without query string, may be null
+     * @return the route, or null if there is no path
+     */
+    public static String routeOf(String method, String path) {
+        if (path == null) {
+            return null;
+        }
+        StringBuilder route = new StringBuilder(path.length() + 8);
+        if (method != null) {
+            route.append(method).append(' ');
+        }
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (start > 0) {
+                route.append('/');
+            }
+            if (isIdentifier(path, start, end)) {
+                route.append("{id}");
+            } else {
+                route.append(path, start, end);
+            }
+            start = end + 1;
+        }
+        return route.toString();
+    }
+
+    private static boolean isIdentifier(String path, int start, int end) {
+        int length = end - start;
+        boolean digits = false;
+        boolean hex = true;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (!(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F') && c != '-' && c != '_') {
+                hex = false;
+            }
+        }
+        // Numbers, UUIDs and hashes, or long tokens mixing letters and digits
+        return digits && ((hex && (length >= 8 || onlyDigits(path, start, end))) || length >= 16);
+    }
+
+    private static boolean onlyDigits(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Captures the request context of the current thread, to be installed on worker threads.
+     *
+     * @return the captured context, or null if the current thread has no request context
+     */
+    public static Snapshot capture() {
+        String requestId = REQUEST_ID.get();
+        if (requestId == null) {
+            return null;
+        }
+        RequestState state = STATE.get();
+        if (state == null) {
+            state = new RequestState();
+            STATE.set(state);
+        }
+        return new Snapshot(requestId, state, ROUTE.get(), ROUTE_RULE.get());
+    }
+
+    /**
+     * Creates the context of a new request without installing it on the current thread, for
+     * integrations that carry it themselves, such as the Reactor Context of a WebFlux request.
+     *
+     * @param requestId the request ID
+     * @param route the route, may be null
+     * @param rule the matched route rule, may be null
+     * @return the context
+     */
+    public static Snapshot newRequest(String requestId, String route, RouteRule rule) {
+        return new Snapshot(requestId, new RequestState(), route, rule);
+    }
+
+    /**
+     * Installs a context on the current thread, replacing the one it had, for integrations
+     * that save and restore thread-local state themselves (see
+     * {@link RequestContextThreadLocalAccessor}).
+     *
+     * @param snapshot the context, or null to clear the current one
+     */
+    public static void set(Snapshot snapshot) {
+        if (snapshot == null) {
+            clear();
+        } else {
+            snapshot.apply();
+        }
+    }
+
+    /**
+     * Wraps a task so that it runs with the request context of the current thread.
+     *
+     * @param task the task
+     * @return the wrapped task, or the task itself if there is no request context
+     */
+    public static Runnable wrap(Runnable task) {
+        Snapshot snapshot = capture();
+        return snapshot == null ? task : snapshot.wrap(task);
+    }
+
+    /**
+     * Wraps a task so that it runs with the request context of the current thread.
+     *
+     * @param task the task
+     * @return the wrapped task, or the task itself if there is no request context
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Snapshot snapshot = capture();
+        return snapshot == null ? task : snapshot.wrap(task);
+    }
+
+    /**
+     * Wraps a supplier, e.g. for {@code CompletableFuture.supplyAsync}, so that it runs with
+     * the request context of the current thread.
+     *
+     * @param supplier the supplier
+     * @return the wrapped supplier, or the supplier itself if there is no request context
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        Snapshot snapshot = capture();
+        return snapshot == null ? supplier : snapshot.wrapSupplier(supplier);
+    }
+
+    /**
+     * Wraps a function, e.g. for a parallel stream, so that it runs with the request context
+     * of the current thread.
+     *
+     * @param function the function
+     * @return the wrapped function, or the function itself if there is no request context
+     */
+    public static <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        Snapshot snapshot = capture();
+        return snapshot == null ? function : snapshot.wrapFunction(function);
+    }
+
+    /**
+     * Request context captured on one thread and installed on another. The error flag and
+     * the completion of the request are shared with the capturing thread. Installing a
+     * snapshot saves the context the worker thread had and restores it afterwards, so tasks
+     * run by the calling thread itself (e.g. with a caller-runs policy or a ForkJoinPool)
+     * leave its context untouched.
+     */
+    public static final class Snapshot {
+        private final String requestId;
+        private final RequestState state;
+        private final String route;
+        private final RouteRule rule;
+
+        private Snapshot(String requestId, RequestState state, String route, RouteRule rule) {
+            this.requestId = requestId;
+            this.state = state;
+            this.route = route;
+            this.rule = rule;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public Runnable wrap(Runnable task) {
+            return () -> {
+                Snapshot previous = install();
+                try {
+                    task.run();
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        public <T> Callable<T> wrap(Callable<T> task) {
+            return () -> {
+                Snapshot previous = install();
+                try {
+                    return task.call();
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        public <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+            return () -> {
+                Snapshot previous = install();
+                try {
+                    return supplier.get();
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        public <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+            return value -> {
+                Snapshot previous = install();
+                try {
+                    return function.apply(value);
+                } finally {
+                    restore(previous);
+                }
+            };
+        }
+
+        // Installs this context and returns the one the thread had (null request ID if none)
+        private Snapshot install() {
+            Snapshot previous = new Snapshot(REQUEST_ID.get(), STATE.get(), ROUTE.get(), ROUTE_RULE.get());
+            apply();
+            return previous;
+        }
+
+        private void apply() {
+            REQUEST_ID.set(requestId);
+            STATE.set(state);
+            setRoute(route);
+            setRouteRule(rule);
+        }
+
+        private static void restore(Snapshot previous) {
+            if (previous.requestId == null) {
+                REQUEST_ID.remove();
+            } else {
+                REQUEST_ID.set(previous.requestId);
+            }
+            if (previous.state == null) {
+                STATE.remove();
+            } else {
+                STATE.set(previous.state);
+            }
+            setRoute(previous.route);
+            setRouteRule(previous.rule);
+        }
+    }
+
+    /**
+     * State of a request shared by every thread working for it: whether an error occurred,
+     * and whether its logs have been flushed.
+     */
+    static final class RequestState {
+        private volatile boolean error;
+        private volatile boolean completed;
+
+        void markError() {
+            error = true;
+        }
+
+        boolean hasError() {
+            return error;
+        }
+
+        void markCompleted() {
+            completed = true;
+        }
+
+        boolean isCompleted() {
+            return completed;
+        }
+    }
+}
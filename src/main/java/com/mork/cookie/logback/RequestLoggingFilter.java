@@ -1,5 +1,8 @@
 package com.mork.cookie.logback;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
@@ -12,11 +15,32 @@ import java.io.IOException;
 
 /**
  * Servlet filter that manages request-scoped logging context.
- * Sets up request ID at the beginning of request processing and
+ * Sets up request ID and route at the beginning of request processing and
  * triggers conditional log flushing at the end.
+ * <p>
+ * Requests that go async ({@code DeferredResult}, {@code Callable}, {@code startAsync}) are
+ * flushed by an {@link AsyncListener} once the async processing completes, and async
+ * dispatches run with the context of the original request. Register the filter for the
+ * {@code ASYNC} dispatcher type as well as {@code REQUEST}.
+ * <p>
+ * The route of a request is the URI template of the handler that served it when the framework
+ * exposes one (Spring MVC's best matching pattern), so that requests for slugs, user names or
+ * file names share the route of their handler. Other requests fall back to the normalized path.
  */
 public class RequestLoggingFilter implements Filter {
 
+    /**
+     * Request attribute holding the request's logging context, for async dispatches.
+     */
+    static final String CONTEXT_ATTRIBUTE = RequestLoggingFilter.class.getName() + ".CONTEXT";
+
+    /**
+     * Request attribute in which Spring MVC exposes the URI template of the matched handler
+     * ({@code HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE}), named here so that the filter
+     * does not depend on Spring.
+     */
+    public static final String BEST_MATCHING_PATTERN_ATTRIBUTE = "org.springframework.web.servlet.HandlerMapping.bestMatchingPattern";
+
     private final ConditionalBufferAppender appender;
 
     /**
@@ -32,22 +56,41 @@ public class RequestLoggingFilter implements Filter {
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
 
-        if (request instanceof HttpServletRequest) {
+        if (request instanceof HttpServletRequest httpRequest) {
+            if (httpRequest.getDispatcherType() == DispatcherType.ASYNC
+                    && httpRequest.getAttribute(CONTEXT_ATTRIBUTE) instanceof RequestLoggingContext.Snapshot context) {
+                // Async dispatch of a request started earlier: same context, flushed by its listener
+                dispatchAsync(context, request, response, chain);
+                return;
+            }
+
+            String method = httpRequest.getMethod();
+            String path = httpRequest.getRequestURI();
+            RouteRule rule = appender != null ? appender.matchRouteRule(method, path) : null;
+            if (rule != null && !rule.isBuffering()) {
+                // Excluded route (probes, metrics, static assets): no context, nothing buffered
+                chain.doFilter(request, response);
+                return;
+            }
+
             String requestId = RequestLoggingContext.generateRequestId();
             RequestLoggingContext.setRequestId(requestId);
+            // The handler's template is not known before the chain runs, normalize the path until then
+            RequestLoggingContext.setRoute(RequestLoggingContext.routeOf(method, path));
+            RequestLoggingContext.setRouteRule(rule);
+            RequestLoggingContext.Snapshot context = RequestLoggingContext.capture();
+            httpRequest.setAttribute(CONTEXT_ATTRIBUTE, context);
 
             try {
                 // Process the request normally - errors will be marked but not flushed yet
                 chain.doFilter(request, response);
             } finally {
-                // After request is completely finished, check if there was an error and flush if needed
-                if (appender != null) {
-                    try {
-                        appender.flushRequestLogsIfError(requestId);
-                    } catch (Exception e) {
-                        // Log the exception but don't propagate it
-                        System.err.println("Error flushing request logs: " + e.getMessage());
-                    }
+                if (httpRequest.isAsyncStarted()) {
+                    // The work goes on elsewhere (DeferredResult, Callable, startAsync): flush when it completes
+                    httpRequest.getAsyncContext().addListener(new FlushingListener(requestId, context, httpRequest));
+                } else {
+                    resolveRoute(httpRequest);
+                    flush(requestId);
                 }
 
                 // Clean up the request context
@@ -58,6 +101,92 @@ public class RequestLoggingFilter implements Filter {
         }
     }
 
+    private void dispatchAsync(RequestLoggingContext.Snapshot context, ServletRequest request, ServletResponse response,
+                               FilterChain chain) throws IOException, ServletException {
+        RequestLoggingContext.set(context);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestLoggingContext.clear();
+        }
+    }
+
+    /**
+     * Gets the route of the handler that served a request, e.g. {@code GET /orders/{id}}.
+     *
+     * @return the route, or null if the framework did not expose the handler's URI template
+     */
+    static String templateRouteOf(HttpServletRequest request) {
+        return request.getAttribute(BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern
+                ? request.getMethod() + " " + pattern
+                : null;
+    }
+
+    // Replaces the normalized path by the handler's template, if the chain matched one
+    private static void resolveRoute(HttpServletRequest request) {
+        String route = templateRouteOf(request);
+        if (route != null) {
+            RequestLoggingContext.setRoute(route);
+        }
+    }
+
+    // After request is completely finished, check if there was an error and flush if needed
+    private void flush(String requestId) {
+        if (appender != null) {
+            try {
+                appender.flushRequestLogsIfError(requestId);
+            } catch (Exception e) {
+                // Log the exception but don't propagate it
+                System.err.println("Error flushing request logs: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flushes an async request when it completes, fails or times out, on whichever container
+     * thread reports it. The request context is installed for the flush so that an error
+     * logged on any thread of the request counts.
+     */
+    private final class FlushingListener implements AsyncListener {
+        private final String requestId;
+        private final RequestLoggingContext.Snapshot context;
+        private final HttpServletRequest request;
+
+        FlushingListener(String requestId, RequestLoggingContext.Snapshot context, HttpServletRequest request) {
+            this.requestId = requestId;
+            this.context = context;
+            this.request = request;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            context.wrap(() -> {
+                resolveRoute(request);
+                flush(requestId);
+            }).run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            context.wrap(() -> {
+                RequestLoggingContext.markError();
+                resolveRoute(request);
+                flush(requestId);
+            }).run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onTimeout(event);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Restarting async processing drops the listeners, stay registered
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         // Initialize if needed
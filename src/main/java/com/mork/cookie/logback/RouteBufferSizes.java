@@ -0,0 +1,215 @@
+package com.mork.cookie.logback;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Learns how many events the requests of each route buffer, so that new buffers can be
+ * presized instead of growing from empty: a health check buffering 2 events and a checkout
+ * buffering 400 each get a buffer of about the right size from the first event on.
+ * <p>
+ * Each route keeps a histogram of the event counts of its completed requests in logarithmic
+ * buckets (four per power of two, so within 25% of the actual count). The initial capacity
+ * is the upper bound of the bucket holding the configured percentile; it is recomputed every
+ * {@value #RECOMPUTE_INTERVAL} requests, and the histogram is halved every
+ * {@value #DECAY_INTERVAL} requests so that recent requests weigh more. Routes are capped at
+ * {@value #MAX_ROUTES}, so that paths which were not normalized cannot grow the map forever.
+ */
+public class RouteBufferSizes {
+
+    static final int MAX_ROUTES = 1000;
+    static final int MIN_REQUESTS = 20;
+    static final int RECOMPUTE_INTERVAL = 32;
+    static final int DECAY_INTERVAL = 4096;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final LongAdder untrackedRequests = new LongAdder();
+    private volatile int percentile;
+
+    public RouteBufferSizes(int percentile) {
+        this.percentile = percentile;
+    }
+
+    void setPercentile(int percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Gets the capacity to allocate for a new buffer of a route.
+     *
+     * @param route the route, may be null
+     * @return the learned capacity, or 0 if the route has not been seen often enough
+     */
+    int initialCapacity(String route) {
+        if (route == null) {
+            return 0;
+        }
+        Route stats = routes.get(route);
+        return stats == null ? 0 : stats.initialCapacity;
+    }
+
+    /**
+     * Records the number of events a completed request of a route buffered.
+     *
+     * @param route the route, may be null
+     * @param events the number of buffered events
+     * @param truncated whether events were dropped because the buffer was full
+     */
+    void record(String route, int events, boolean truncated) {
+        if (route == null) {
+            return;
+        }
+        Route stats = routes.get(route);
+        if (stats == null) {
+            if (routes.size() >= MAX_ROUTES) {
+                untrackedRequests.increment();
+                return;
+            }
+            stats = routes.computeIfAbsent(route, k -> new Route());
+        }
+        stats.record(events, truncated, percentile);
+    }
+
+    /**
+     * Gets the statistics of every route seen so far, sorted by route.
+     */
+    public Map<String, Route> getRoutes() {
+        return Collections.unmodifiableMap(new TreeMap<>(routes));
+    }
+
+    /**
+     * Gets the number of requests not tracked because {@value #MAX_ROUTES} routes were already known.
+     */
+    public long getUntrackedRequests() {
+        return untrackedRequests.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RouteBufferSizes{");
+        String separator = "";
+        for (Map.Entry<String, Route> entry : getRoutes().entrySet()) {
+            builder.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+            separator = ", ";
+        }
+        return builder.append('}').toString();
+    }
+
+    // Counts 0-7 get a bucket each, larger ones four buckets per power of two
+    static int bucketOf(int count) {
+        if (count < 8) {
+            return Math.max(0, count);
+        }
+        int exponent = 31 - Integer.numberOfLeadingZeros(count);
+        return 8 + (exponent - 3) * 4 + ((count >>> (exponent - 2)) & 3);
+    }
+
+    static int upperBoundOf(int bucket) {
+        if (bucket < 8) {
+            return bucket;
+        }
+        int exponent = (bucket - 8) / 4 + 3;
+        long bound = ((long) (4 + (bucket - 8) % 4 + 1) << (exponent - 2)) - 1;
+        return (int) Math.min(Integer.MAX_VALUE, bound);
+    }
+
+    /**
+     * Buffered event counts of the requests of one route.
+     */
+    public static final class Route {
+        private static final int BUCKETS = bucketOf(Integer.MAX_VALUE) + 1;
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder truncatedRequests = new LongAdder();
+        private volatile int maxEvents;
+        private volatile int initialCapacity;
+        // Requests since the last recomputation, not synchronized: an occasional miss is harmless
+        private int sinceRecompute;
+        private int sinceDecay;
+
+        private Route() {
+        }
+
+        private void record(int events, boolean truncated, int percentile) {
+            histogram.incrementAndGet(bucketOf(events));
+            requests.increment();
+            if (truncated) {
+                truncatedRequests.increment();
+            }
+            if (events > maxEvents) {
+                maxEvents = events;
+            }
+            if (++sinceDecay >= DECAY_INTERVAL) {
+                sinceDecay = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    histogram.getAndUpdate(i, n -> n - n / 2);
+                }
+            }
+            long seen = requests.sum();
+            if (seen == MIN_REQUESTS || ++sinceRecompute >= RECOMPUTE_INTERVAL && seen > MIN_REQUESTS) {
+                sinceRecompute = 0;
+                initialCapacity = Math.min(getPercentile(percentile), maxEvents);
+            }
+        }
+
+        /**
+         * Gets an upper bound of the given percentile of the buffered event counts.
+         *
+         * @param percentile the percentile, 0-100
+         * @return the upper bound of the bucket holding the percentile
+         */
+        public int getPercentile(double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank && seen > 0) {
+                    return upperBoundOf(i);
+                }
+            }
+            return 0;
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        /**
+         * Gets the number of requests that filled their buffer and dropped events.
+         */
+        public long getTruncatedRequests() {
+            return truncatedRequests.sum();
+        }
+
+        public int getMaxEvents() {
+            return maxEvents;
+        }
+
+        /**
+         * Gets the capacity new buffers of this route start with (0 until enough requests were seen).
+         */
+        public int getInitialCapacity() {
+            return initialCapacity;
+        }
+
+        @Override
+        public String toString() {
+            return "{requests=" + getRequests()
+                    + ", p50=" + getPercentile(50)
+                    + ", p90=" + getPercentile(90)
+                    + ", p99=" + getPercentile(99)
+                    + ", max=" + getMaxEvents()
+                    + ", truncated=" + getTruncatedRequests()
+                    + ", initialCapacity=" + getInitialCapacity() + "}";
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mork.cookie.logback;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Route rules compiled into a trie of path segments, one per HTTP method plus one for rules
+ * without a method. Matching walks the request path in place, without splitting it or
+ * allocating, and a request matching no rule costs a few character comparisons.
+ * <p>
+ * The most specific rule wins: literal segments before {@code *}, {@code *} before
+ * {@code **}, and rules for the request's method before rules for any method. Of two rules
+ * with the same pattern, the first one wins.
+ */
+final class RouteMatcher {
+
+    static final RouteMatcher EMPTY = new RouteMatcher();
+
+    private final Map<String, Node> byMethod = new HashMap<>();
+    private final Node anyMethod = new Node();
+    private boolean empty = true;
+
+    private RouteMatcher() {
+    }
+
+    /**
+     * Compiles route rules.
+     *
+     * @param rules the rules, in order of precedence
+     * @return the matcher
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    static RouteMatcher compile(List<RouteRule> rules) {
+        RouteMatcher matcher = new RouteMatcher();
+        for (RouteRule rule : rules) {
+            matcher.add(rule);
+        }
+        return matcher;
+    }
+
+    private void add(RouteRule rule) {
+        String pattern = rule.getPattern();
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("Route rule without pattern");
+        }
+        String method = null;
+        String path = pattern;
+        int space = pattern.indexOf(' ');
+        if (space > 0) {
+            method = pattern.substring(0, space).toUpperCase();
+            path = pattern.substring(space + 1).trim();
+        }
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+        }
+        Node node = method == null ? anyMethod : byMethod.computeIfAbsent(method, k -> new Node());
+        String[] segments = Arrays.stream(path.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("**")) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'**' must be the last segment: " + pattern);
+                }
+                if (node.rest == null) {
+                    node.rest = rule;
+                }
+                empty = false;
+                return;
+            }
+            node = segment.equals("*") ? node.wildcardChild() : node.child(segment);
+        }
+        if (node.exact == null) {
+            node.exact = rule;
+        }
+        empty = false;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Finds the rule of a request.
+     *
+     * @param method the HTTP method, may be null
+     * @param path the request path without query string, may be null
+     * @return the most specific matching rule, or null if none matches
+     */
+    RouteRule match(String method, String path) {
+        if (empty || path == null) {
+            return null;
+        }
+        if (method != null) {
+            Node node = byMethod.get(method);
+            if (node != null) {
+                RouteRule rule = match(node, path, 0);
+                if (rule != null) {
+                    return rule;
+                }
+            }
+        }
+        return match(anyMethod, path, 0);
+    }
+
+    private static RouteRule match(Node node, String path, int position) {
+        while (position < path.length() && path.charAt(position) == '/') {
+            position++;
+        }
+        if (position == path.length()) {
+            return node.exact != null ? node.exact : node.rest;
+        }
+        int end = path.indexOf('/', position);
+        if (end < 0) {
+            end = path.length();
+        }
+        int length = end - position;
+        for (int i = 0; i < node.segments.length; i++) {
+            String segment = node.segments[i];
+            if (segment.length() == length && path.regionMatches(position, segment, 0, length)) {
+                RouteRule rule = match(node.children[i], path, end);
+                if (rule != null) {
+                    return rule;
+                }
+                break;
+            }
+        }
+        if (node.wildcard != null) {
+            RouteRule rule = match(node.wildcard, path, end);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return node.rest;
+    }
+
+    private static final class Node {
+        private String[] segments = new String[0];
+        private Node[] children = new Node[0];
+        private Node wildcard;
+        private RouteRule exact;
+        private RouteRule rest;
+
+        Node child(String segment) {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].equals(segment)) {
+                    return children[i];
+                }
+            }
+            segments = Arrays.copyOf(segments, segments.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            segments[segments.length - 1] = segment;
+            children[children.length - 1] = new Node();
+            return children[children.length - 1];
+        }
+
+        Node wildcardChild() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mork.cookie.logback;
+
+/**
+ * Buffering policy for the requests matching a path pattern, configured as a nested
+ * {@code <routeRule>} of the appender:
+ * <pre>
+ * &lt;routeRule&gt;
+ *     &lt;pattern&gt;/actuator/**&lt;/pattern&gt;
+ *     &lt;buffering&gt;false&lt;/buffering&gt;
+ * &lt;/routeRule&gt;
+ * &lt;routeRule&gt;
+ *     &lt;pattern&gt;POST /imports/*&lt;/pattern&gt;
+ *     &lt;maxBufferSize&gt;20000&lt;/maxBufferSize&gt;
+ *     &lt;flushPolicy&gt;ERRORS_ONLY&lt;/flushPolicy&gt;
+ * &lt;/routeRule&gt;
+ * </pre>
+ * A pattern is an optional HTTP method followed by a path whose segments are literals,
+ * {@code *} (any one segment) or, as the last segment, {@code **} (any number of segments).
+ * Unset overrides fall back to the appender's configuration.
+ */
+public class RouteRule {
+
+    /**
+     * What is written when a request completes.
+     */
+    public enum FlushPolicy {
+        /** INFO events on success, all events on error (the default) */
+        CONDITIONAL,
+        /** Nothing on success, all events on error */
+        ERRORS_ONLY,
+        /** All events, whatever the outcome */
+        ALWAYS
+    }
+
+    private String pattern;
+    private boolean buffering = true;
+    private int maxBufferSize; // 0 = the appender's
+    private int bufferTimeoutMinutes; // 0 = the appender's
+    private FlushPolicy flushPolicy = FlushPolicy.CONDITIONAL;
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern == null ? null : pattern.trim();
+    }
+
+    /**
+     * Whether matching requests are buffered at all. When false, the filters hand them on
+     * without a request context, so only their ERROR events are written, immediately.
+     */
+    public boolean isBuffering() {
+        return buffering;
+    }
+
+    public void setBuffering(boolean buffering) {
+        this.buffering = buffering;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    public void setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = Math.max(0, maxBufferSize);
+    }
+
+    public int getBufferTimeoutMinutes() {
+        return bufferTimeoutMinutes;
+    }
+
+    public void setBufferTimeoutMinutes(int bufferTimeoutMinutes) {
+        this.bufferTimeoutMinutes = Math.max(0, bufferTimeoutMinutes);
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy == null ? FlushPolicy.CONDITIONAL : flushPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteRule{pattern=" + pattern + ", buffering=" + buffering
+                + ", maxBufferSize=" + maxBufferSize + ", bufferTimeoutMinutes=" + bufferTimeoutMinutes
+                + ", flushPolicy=" + flushPolicy + "}";
+    }
+}
@@ -0,0 +1,294 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import org.slf4j.Marker;
+import org.slf4j.event.KeyValuePair;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of rendered stack traces, keyed by a fingerprint of the throwable
+ * (class name, message, frames, cause chain and suppressed exceptions).
+ * <p>
+ * When many requests fail with the same exception, the flush path renders the stack trace
+ * once and then reuses the encoded bytes for every repeat.
+ */
+public class StackTraceCache {
+
+    private final int maxEntries;
+    private final Map<Fingerprint, byte[]> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache holding at most {@code maxEntries} rendered stack traces.
+     *
+     * @param maxEntries the maximum number of entries
+     */
+    public StackTraceCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, byte[]> eldest) {
+                return size() > StackTraceCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the rendered bytes for a throwable, rendering and caching them on a miss.
+     *
+     * @param throwableProxy the throwable to render
+     * @param renderer renders the throwable to bytes, called on a miss only
+     * @return the rendered bytes (must not be modified by the caller)
+     */
+    public byte[] get(IThrowableProxy throwableProxy, Function<IThrowableProxy, byte[]> renderer) {
+        Fingerprint fingerprint = new Fingerprint(throwableProxy);
+        byte[] rendered;
+        synchronized (entries) {
+            rendered = entries.get(fingerprint);
+        }
+        if (rendered != null) {
+            hits.increment();
+            return rendered;
+        }
+        misses.increment();
+        rendered = renderer.apply(throwableProxy);
+        synchronized (entries) {
+            entries.put(fingerprint, rendered);
+        }
+        return rendered;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Structural key of a throwable. Only the parts that end up in the rendered text are kept,
+     * not the Throwable itself, so cached entries do not retain exception objects.
+     */
+    static final class Fingerprint {
+        private final String className;
+        private final String message;
+        private final int commonFrames;
+        private final StackTraceElementProxy[] frames;
+        private final Fingerprint cause;
+        private final Fingerprint[] suppressed;
+        private final boolean cyclic;
+        private final int hash;
+
+        Fingerprint(IThrowableProxy proxy) {
+            this.className = proxy.getClassName();
+            this.message = proxy.getMessage();
+            this.commonFrames = proxy.getCommonFrames();
+            this.frames = proxy.getStackTraceElementProxyArray();
+            this.cyclic = proxy.isCyclic();
+            this.cause = proxy.getCause() == null ? null : new Fingerprint(proxy.getCause());
+            IThrowableProxy[] suppressedProxies = proxy.getSuppressed();
+            if (suppressedProxies == null || suppressedProxies.length == 0) {
+                this.suppressed = null;
+            } else {
+                this.suppressed = new Fingerprint[suppressedProxies.length];
+                for (int i = 0; i < suppressedProxies.length; i++) {
+                    this.suppressed[i] = new Fingerprint(suppressedProxies[i]);
+                }
+            }
+
+            int h = Objects.hash(className, message, commonFrames, cyclic);
+            if (frames != null) {
+                for (StackTraceElementProxy frame : frames) {
+                    h = 31 * h + frame.getStackTraceElement().hashCode();
+                }
+            }
+            h = 31 * h + (cause == null ? 0 : cause.hash);
+            if (suppressed != null) {
+                for (Fingerprint s : suppressed) {
+                    h = 31 * h + s.hash;
+                }
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint other)) {
+                return false;
+            }
+            return hash == other.hash
+                    && commonFrames == other.commonFrames
+                    && cyclic == other.cyclic
+                    && Objects.equals(className, other.className)
+                    && Objects.equals(message, other.message)
+                    && sameFrames(frames, other.frames)
+                    && Objects.equals(cause, other.cause)
+                    && Arrays.equals(suppressed, other.suppressed);
+        }
+
+        private static boolean sameFrames(StackTraceElementProxy[] a, StackTraceElementProxy[] b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null || a.length != b.length) {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (!a[i].getStackTraceElement().equals(b[i].getStackTraceElement())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Returns a view of the event without its throwable, used to encode everything but the
+     * stack trace.
+     */
+    static ILoggingEvent withoutThrowable(ILoggingEvent event) {
+        return new ThrowableStrippedEvent(event);
+    }
+
+    private static final class ThrowableStrippedEvent implements ILoggingEvent {
+        private final ILoggingEvent delegate;
+
+        ThrowableStrippedEvent(ILoggingEvent delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public IThrowableProxy getThrowableProxy() {
+            return null;
+        }
+
+        @Override
+        public String getThreadName() {
+            return delegate.getThreadName();
+        }
+
+        @Override
+        public Level getLevel() {
+            return delegate.getLevel();
+        }
+
+        @Override
+        public String getMessage() {
+            return delegate.getMessage();
+        }
+
+        @Override
+        public Object[] getArgumentArray() {
+            return delegate.getArgumentArray();
+        }
+
+        @Override
+        public String getFormattedMessage() {
+            return delegate.getFormattedMessage();
+        }
+
+        @Override
+        public String getLoggerName() {
+            return delegate.getLoggerName();
+        }
+
+        @Override
+        public LoggerContextVO getLoggerContextVO() {
+            return delegate.getLoggerContextVO();
+        }
+
+        @Override
+        public StackTraceElement[] getCallerData() {
+            return delegate.getCallerData();
+        }
+
+        @Override
+        public boolean hasCallerData() {
+            return delegate.hasCallerData();
+        }
+
+        @Override
+        public List<Marker> getMarkerList() {
+            return delegate.getMarkerList();
+        }
+
+        @Override
+        public Map<String, String> getMDCPropertyMap() {
+            return delegate.getMDCPropertyMap();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Map<String, String> getMdc() {
+            return delegate.getMdc();
+        }
+
+        @Override
+        public long getTimeStamp() {
+            return delegate.getTimeStamp();
+        }
+
+        @Override
+        public int getNanoseconds() {
+            return delegate.getNanoseconds();
+        }
+
+        @Override
+        public Instant getInstant() {
+            return delegate.getInstant();
+        }
+
+        @Override
+        public long getSequenceNumber() {
+            return delegate.getSequenceNumber();
+        }
+
+        @Override
+        public List<KeyValuePair> getKeyValuePairs() {
+            return delegate.getKeyValuePairs();
+        }
+
+        @Override
+        public void prepareForDeferredProcessing() {
+            delegate.prepareForDeferredProcessing();
+        }
+    }
+}
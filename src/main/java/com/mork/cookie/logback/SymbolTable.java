@@ -0,0 +1,141 @@
+package com.mork.cookie.logback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent table of the logger and thread names seen by an appender. Each distinct name is
+ * stored once as a {@link Symbol}: a small int ID, the canonical String and its UTF-8 bytes.
+ * <p>
+ * Buffered snapshots hold symbols instead of names, so copies of a name (e.g. the Strings
+ * rebuilt when a compressed block is inflated) collapse into one instance, compressed blocks
+ * store the ID alone, and encoders write the pre-encoded bytes instead of encoding the name
+ * for every event. Lookups are lock-free; adding a name takes a lock. Once the table is full,
+ * new names get a symbol without an ID that is not retained by the table.
+ */
+final class SymbolTable {
+
+    static final int DEFAULT_MAX_SYMBOLS = 16384;
+    static final int NO_ID = -1;
+
+    // Used by snapshots taken outside an appender
+    static final SymbolTable SHARED = new SymbolTable(DEFAULT_MAX_SYMBOLS);
+
+    private final int maxSymbols;
+    private final Map<String, Symbol> symbols = new ConcurrentHashMap<>();
+    // Symbols by ID. An ID is only handed out after its slot is written (guarded by this for writes)
+    private volatile Symbol[] byId = new Symbol[64];
+    private int count;
+
+    SymbolTable(int maxSymbols) {
+        this.maxSymbols = maxSymbols;
+    }
+
+    /**
+     * Returns the symbol of a name, adding it if the table is not full.
+     *
+     * @param name the name, may be null
+     * @return the symbol, or null for a null name
+     */
+    Symbol intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        Symbol symbol = symbols.get(name);
+        return symbol != null ? symbol : add(name);
+    }
+
+    private synchronized Symbol add(String name) {
+        Symbol symbol = symbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (count >= maxSymbols) {
+            return new Symbol(NO_ID, name);
+        }
+        symbol = new Symbol(count, name);
+        Symbol[] table = byId;
+        if (count == table.length) {
+            table = Arrays.copyOf(table, Math.min(maxSymbols, table.length * 2));
+        }
+        table[count] = symbol;
+        byId = table;
+        count++;
+        symbols.put(name, symbol);
+        return symbol;
+    }
+
+    /**
+     * Returns the symbol with an ID handed out by this table.
+     */
+    Symbol get(int id) {
+        return byId[id];
+    }
+
+    int size() {
+        return symbols.size();
+    }
+
+    /**
+     * An interned name and its UTF-8 encoding.
+     */
+    static final class Symbol {
+        private final int id;
+        private final String name;
+        private final byte[] utf8;
+        private final boolean ascii;
+        private final boolean jsonSafe;
+
+        private Symbol(int id, String name) {
+            this.id = id;
+            this.name = name;
+            this.utf8 = name.getBytes(StandardCharsets.UTF_8);
+            boolean asciiOnly = utf8.length == name.length();
+            boolean noEscapes = true;
+            for (byte b : utf8) {
+                if ((b >= 0 && b < 0x20) || b == '"' || b == '\\') {
+                    noEscapes = false;
+                    break;
+                }
+            }
+            this.ascii = asciiOnly;
+            this.jsonSafe = noEscapes;
+        }
+
+        int id() {
+            return id;
+        }
+
+        String name() {
+            return name;
+        }
+
+        /**
+         * The UTF-8 bytes of the name (must not be modified).
+         */
+        byte[] utf8() {
+            return utf8;
+        }
+
+        /**
+         * Whether the UTF-8 bytes are also the ISO-8859-1 and US-ASCII encoding of the name.
+         */
+        boolean isAscii() {
+            return ascii;
+        }
+
+        /**
+         * Whether the name can be written in a JSON string literal without escaping.
+         */
+        boolean isJsonSafe() {
+            return jsonSafe;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.mork.cookie.logback.micronaut;
 
+import com.mork.cookie.logback.CompiledPatternLayoutEncoder;
 import com.mork.cookie.logback.ConditionalBufferAppender;
 import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
 import jakarta.inject.Singleton;
@@ -48,7 +48,7 @@ public class ConditionalLoggingConfiguration {
         appender.setCleanupIntervalMinutes(5);
 
         // Create and set encoder
-        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        CompiledPatternLayoutEncoder encoder = new CompiledPatternLayoutEncoder();
         encoder.setContext(loggerContext);
         encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
         encoder.start();
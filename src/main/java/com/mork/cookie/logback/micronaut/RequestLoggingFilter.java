@@ -2,21 +2,30 @@ package com.mork.cookie.logback.micronaut;
 
 import com.mork.cookie.logback.ConditionalBufferAppender;
 import com.mork.cookie.logback.RequestLoggingContext;
+import com.mork.cookie.logback.RouteRule;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.core.util.StringUtils;
+import io.micronaut.http.HttpAttributes;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.Filter;
 import io.micronaut.http.filter.HttpServerFilter;
 import io.micronaut.http.filter.ServerFilterChain;
+import io.micronaut.web.router.UriRouteMatch;
 import jakarta.inject.Inject;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Mono;
 
 /**
  * Micronaut HTTP filter that manages request-scoped logging context.
- * Sets up request ID at the beginning of request processing and
- * triggers conditional log flushing at the end.
+ * Sets up request ID and route at the beginning of request processing and
+ * triggers conditional log flushing at the end. The flush is asynchronous, so the
+ * Netty event loop never waits for log output.
+ * <p>
+ * Set {@code conditional-logging.enabled=false} to leave the filter out.
  */
 @Filter("/**")
+@Requires(property = "conditional-logging.enabled", notEquals = StringUtils.FALSE)
 public class RequestLoggingFilter implements HttpServerFilter {
 
     private final ConditionalBufferAppender appender;
@@ -33,15 +42,24 @@ public class RequestLoggingFilter implements HttpServerFilter {
 
     @Override
     public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request, ServerFilterChain chain) {
+        RouteRule rule = appender != null ? appender.matchRouteRule(request.getMethodName(), request.getPath()) : null;
+        if (rule != null && !rule.isBuffering()) {
+            // Excluded route (probes, metrics, static assets): no context, nothing buffered
+            return chain.proceed(request);
+        }
+
         String requestId = RequestLoggingContext.generateRequestId();
         RequestLoggingContext.setRequestId(requestId);
+        RequestLoggingContext.setRoute(routeOf(request));
+        RequestLoggingContext.setRouteRule(rule);
 
         return Mono.from(chain.proceed(request))
                 .doFinally(signal -> {
-                    // After request is completely finished, check if there was an error and flush if needed
+                    // This runs on the event loop: hand the buffer to the appender's writer thread
+                    // instead of writing it here, so a large error dump cannot stall other connections
                     if (appender != null) {
                         try {
-                            appender.flushRequestLogsIfError(requestId);
+                            appender.flushRequestLogsIfErrorAsync(requestId);
                         } catch (Exception e) {
                             // Log the exception but don't propagate it
                             System.err.println("Error flushing request logs: " + e.getMessage());
@@ -52,4 +70,14 @@ public class RequestLoggingFilter implements HttpServerFilter {
                     RequestLoggingContext.clear();
                 });
     }
+
+    /**
+     * Gets the URI template of the matched route, e.g. {@code GET /orders/{id}}, falling back
+     * to the normalized path when the route is not resolved yet.
+     */
+    static String routeOf(HttpRequest<?> request) {
+        return request.getAttribute(HttpAttributes.ROUTE_MATCH, UriRouteMatch.class)
+                .map(match -> request.getMethodName() + " " + match.getRouteInfo().getUriMatchTemplate())
+                .orElseGet(() -> RequestLoggingContext.routeOf(request.getMethodName(), request.getPath()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.CompiledPatternLayoutEncoder;
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up the appender for the servlet and reactive configurations. Kept apart from both,
+ * so that neither has to load the other's web stack.
+ */
+final class Appenders {
+
+    private Appenders() {
+    }
+
+    /**
+     * Gets the appender from the logback configuration, or creates and starts one if the
+     * configuration has none.
+     *
+     * @return the appender
+     */
+    static ConditionalBufferAppender conditionalBufferAppender() {
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        // Try to get existing appender from logback configuration
+        ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        ConditionalBufferAppender appender = (ConditionalBufferAppender) rootLogger.getAppender("CONDITIONAL_BUFFER");
+
+        if (appender != null) {
+            return appender;
+        }
+
+        // Fallback: create programmatically if not found in config
+        appender = new ConditionalBufferAppender();
+        appender.setName("CONDITIONAL_BUFFER");
+        appender.setContext(loggerContext);
+
+        // Set default configuration
+        appender.setMaxBufferSize(1000);
+        appender.setBufferTimeoutMinutes(10);
+        appender.setCleanupIntervalMinutes(5);
+
+        // Create and set encoder
+        CompiledPatternLayoutEncoder encoder = new CompiledPatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+        appender.setEncoder(encoder);
+
+        appender.start();
+
+        return appender;
+    }
+}
@@ -2,13 +2,14 @@ package com.mork.cookie.logback.spring;
 
 import com.mork.cookie.logback.ConditionalBufferAppender;
 import com.mork.cookie.logback.RequestLoggingFilter;
-import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jakarta.servlet.DispatcherType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  * Spring Boot configuration for the Conditional Buffer Appender.
@@ -27,36 +28,7 @@ public class ConditionalLoggingConfiguration {
      */
     @Bean
     public ConditionalBufferAppender conditionalBufferAppender() {
-        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-
-        // Try to get existing appender from logback configuration
-        ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
-        ConditionalBufferAppender appender = (ConditionalBufferAppender) rootLogger.getAppender("CONDITIONAL_BUFFER");
-
-        if (appender != null) {
-            return appender;
-        }
-
-        // Fallback: create programmatically if not found in config
-        appender = new ConditionalBufferAppender();
-        appender.setName("CONDITIONAL_BUFFER");
-        appender.setContext(loggerContext);
-
-        // Set default configuration
-        appender.setMaxBufferSize(1000);
-        appender.setBufferTimeoutMinutes(10);
-        appender.setCleanupIntervalMinutes(5);
-
-        // Create and set encoder
-        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
-        encoder.setContext(loggerContext);
-        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
-        encoder.start();
-        appender.setEncoder(encoder);
-
-        appender.start();
-
-        return appender;
+        return Appenders.conditionalBufferAppender();
     }
 
     /**
@@ -71,7 +43,38 @@ public class ConditionalLoggingConfiguration {
         FilterRegistrationBean<RequestLoggingFilter> registrationBean = new FilterRegistrationBean<>();
         registrationBean.setFilter(new RequestLoggingFilter(appender));
         registrationBean.addUrlPatterns("/*");
+        // ASYNC: DeferredResult and Callable handlers are dispatched again once their result is ready
+        registrationBean.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
         registrationBean.setOrder(1);
         return registrationBean;
     }
+
+    /**
+     * Registers the RequestRouteInterceptor, which sets the route of each request to the URI
+     * template of its handler.
+     *
+     * @return the MVC configurer adding the interceptor
+     */
+    @Bean
+    public WebMvcConfigurer requestRouteConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new RequestRouteInterceptor());
+            }
+        };
+    }
+
+    /**
+     * Carries the request logging context to {@code @Async} methods. Spring Boot applies a
+     * single TaskDecorator bean to its task executor, so this one steps aside if the
+     * application defines its own.
+     * 
+     * @return the task decorator
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public TaskDecorator requestContextTaskDecorator() {
+        return new RequestContextTaskDecorator();
+    }
 }
\ No newline at end of file
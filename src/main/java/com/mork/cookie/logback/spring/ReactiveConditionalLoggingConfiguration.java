@@ -0,0 +1,81 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.WebFilter;
+import reactor.core.publisher.Hooks;
+
+/**
+ * Spring Boot auto-configuration for the Conditional Buffer Appender in reactive (WebFlux)
+ * applications, the counterpart of {@link ConditionalLoggingConfiguration} for servlet
+ * applications. Applies to reactive web applications with Reactor on the classpath.
+ */
+@AutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnClass({WebFilter.class, Hooks.class})
+public class ReactiveConditionalLoggingConfiguration {
+
+    /**
+     * Creates and configures the ConditionalBufferAppender bean.
+     * First tries to get an existing appender from logback configuration,
+     * then falls back to programmatic creation if not found.
+     *
+     * @return the configured ConditionalBufferAppender
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public ConditionalBufferAppender conditionalBufferAppender() {
+        return Appenders.conditionalBufferAppender();
+    }
+
+    /**
+     * Registers the RequestLoggingWebFilter, which keeps the request context in the Reactor
+     * Context of each request.
+     *
+     * @param appender the ConditionalBufferAppender to use
+     * @return the web filter
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RequestLoggingWebFilter requestLoggingWebFilter(ConditionalBufferAppender appender) {
+        return new RequestLoggingWebFilter(appender);
+    }
+
+    /**
+     * Enables Reactor's automatic context propagation, which installs the request context on
+     * every thread the request runs on. The hook is global to the JVM and affects every
+     * Reactor pipeline of the process, so it can be turned off with
+     * {@code conditional-logging.reactor.automatic-context-propagation=false} by applications
+     * that manage it themselves.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.context.ContextRegistry")
+    @ConditionalOnProperty(prefix = "conditional-logging.reactor", name = "automatic-context-propagation",
+            havingValue = "true", matchIfMissing = true)
+    static class AutomaticContextPropagationConfiguration {
+
+        @Bean
+        AutomaticContextPropagation conditionalLoggingAutomaticContextPropagation() {
+            return new AutomaticContextPropagation();
+        }
+    }
+
+    /**
+     * Turns the Reactor hook on when the application context starts. The hook is idempotent,
+     * so several contexts in one JVM do no harm.
+     */
+    static final class AutomaticContextPropagation implements InitializingBean {
+
+        @Override
+        public void afterPropertiesSet() {
+            Hooks.enableAutomaticContextPropagation();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.RequestLoggingContext;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Spring TaskDecorator that carries the request logging context to the threads running
+ * {@code @Async} methods and other tasks of a decorated TaskExecutor.
+ */
+public class RequestContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return RequestLoggingContext.wrap(runnable);
+    }
+}
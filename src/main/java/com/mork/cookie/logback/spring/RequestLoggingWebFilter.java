@@ -0,0 +1,74 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import com.mork.cookie.logback.RequestContextThreadLocalAccessor;
+import com.mork.cookie.logback.RequestLoggingContext;
+import com.mork.cookie.logback.RouteRule;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Spring WebFlux filter that manages request-scoped logging context.
+ * <p>
+ * A reactive request hops between threads, so its context lives in the Reactor Context
+ * rather than in thread-locals; with automatic context propagation, Reactor installs it on
+ * the thread of each operator through {@link RequestContextThreadLocalAccessor}, which is
+ * where the appender reads it. When the request completes, its buffer is handed to the
+ * appender's writer thread, so the event loop never waits for log output.
+ */
+public class RequestLoggingWebFilter implements WebFilter, Ordered {
+
+    private final ConditionalBufferAppender appender;
+
+    /**
+     * Creates a new RequestLoggingWebFilter with the specified appender.
+     *
+     * @param appender the ConditionalBufferAppender to use for log flushing
+     */
+    public RequestLoggingWebFilter(ConditionalBufferAppender appender) {
+        this.appender = appender;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String method = request.getMethod().name();
+        String path = request.getPath().value();
+        RouteRule rule = appender != null ? appender.matchRouteRule(method, path) : null;
+        if (rule != null && !rule.isBuffering()) {
+            // Excluded route (probes, metrics, static assets): no context, nothing buffered
+            return chain.filter(exchange);
+        }
+
+        String requestId = RequestLoggingContext.generateRequestId();
+        RequestLoggingContext.Snapshot context = RequestLoggingContext.newRequest(
+                requestId, RequestLoggingContext.routeOf(method, path), rule);
+
+        return chain.filter(exchange)
+                // An error reaching the filter was not handled by the application: the request failed
+                .doOnError(e -> context.wrap(RequestLoggingContext::markError).run())
+                .doFinally(signal -> {
+                    if (appender != null) {
+                        try {
+                            context.wrap(() -> appender.flushRequestLogsIfErrorAsync(requestId)).run();
+                        } catch (Exception e) {
+                            // Log the exception but don't propagate it
+                            System.err.println("Error flushing request logs: " + e.getMessage());
+                        }
+                    }
+                })
+                .contextWrite(ctx -> ctx.put(RequestContextThreadLocalAccessor.KEY, context));
+    }
+
+    /**
+     * Runs early, at the position the servlet filter is registered at.
+     */
+    @Override
+    public int getOrder() {
+        return 1;
+    }
+}
@@ -0,0 +1,25 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.RequestLoggingContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Spring MVC interceptor that sets the route of the request to the URI template of the matched
+ * handler, e.g. {@code GET /orders/{id}}, before the handler runs. Buffers created by the
+ * handler are then presized from the requests of the same handler rather than of the same
+ * normalized path.
+ */
+public class RequestRouteInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (RequestLoggingContext.getRequestId() != null
+                && request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern) {
+            RequestLoggingContext.setRoute(request.getMethod() + " " + pattern);
+        }
+        return true;
+    }
+}
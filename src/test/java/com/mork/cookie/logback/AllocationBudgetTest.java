@@ -0,0 +1,198 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Allocation and retained-heap budgets of the appender, recorded in
+ * {@code allocation-budgets.properties}. Allocation is counted by the JVM for the test thread
+ * ({@code ThreadMXBean.getThreadAllocatedBytes}) after warm-up; retained heap is the growth of
+ * the used heap after full collections while the appender holds the buffers.
+ * <p>
+ * A failure means a change allocates or retains more per event or per request than before:
+ * fix it, or raise the budget in the same change and say why.
+ */
+class AllocationBudgetTest {
+
+    private static final int EVENTS = 1000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static Properties budgets;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private ConditionalBufferAppender appender;
+    private LoggingEvent[] events;
+
+    @BeforeAll
+    static void loadBudgets() throws IOException {
+        budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Thread allocation accounting not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("test");
+
+        // An output that does nothing, so a flush measures the appender alone
+        AppenderBase<ILoggingEvent> discard = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+            }
+        };
+        discard.setContext(loggerContext);
+        discard.start();
+        appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.setMaxBufferSize(EVENTS + 1);
+        appender.addAppender(discard);
+
+        events = new LoggingEvent[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = new LoggingEvent("test.class", logger, i % 10 == 0 ? Level.INFO : Level.DEBUG,
+                    "Step {} done", null, new Object[] {i});
+        }
+        RequestLoggingContext.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (appender != null) {
+            appender.stop();
+        }
+        RequestLoggingContext.clear();
+    }
+
+    @Test
+    void testAppendAllocation() {
+        appender.start();
+        assertWithinBudget("append.bytesPerEvent", allocatedPerEvent(false));
+    }
+
+    @Test
+    void testCompactAppendAllocation() {
+        appender.setCompactEvents(true);
+        appender.start();
+        assertWithinBudget("append.compact.bytesPerEvent", allocatedPerEvent(false));
+    }
+
+    @Test
+    void testFlushAllocation() {
+        appender.start();
+        assertWithinBudget("flush.error.bytesPerEvent", allocatedPerEvent(true));
+    }
+
+    @Test
+    void testRetainedHeapPerBufferedEvent() {
+        appender.setMaxBufferSize(500);
+        appender.start();
+        int requests = 400;
+        // Events are created here and only referenced by the buffers
+        long retained = retainedBy(() -> {
+            for (int r = 0; r < requests; r++) {
+                RequestLoggingContext.setRequestId("retained-" + r);
+                for (int i = 0; i < 500; i++) {
+                    appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Step {} done", null, null));
+                }
+            }
+            RequestLoggingContext.clear();
+        });
+        assertThat(appender.getRequestBuffers()).hasSize(requests);
+        assertWithinBudget("retained.bytesPerEvent", (double) retained / (requests * 500));
+    }
+
+    @Test
+    void testRetainedHeapPerIdleRequest() {
+        appender.start();
+        int requests = 20_000;
+        LoggingEvent event = events[1];
+        long retained = retainedBy(() -> {
+            for (int r = 0; r < requests; r++) {
+                RequestLoggingContext.setRequestId("idle-" + r);
+                appender.append(event);
+            }
+            RequestLoggingContext.clear();
+        });
+        assertThat(appender.getRequestBuffers()).hasSize(requests);
+        assertWithinBudget("retained.bytesPerIdleRequest", (double) retained / requests);
+    }
+
+    /**
+     * Bytes allocated per event by appending a request's events, or by flushing them as an
+     * errored request. Takes the least of the measured rounds, since a round can pay for a
+     * recompilation triggered by whatever ran before.
+     */
+    private double allocatedPerEvent(boolean flush) {
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            String requestId = "request-" + round;
+            RequestLoggingContext.setRequestId(requestId);
+            long before = flush ? 0 : threads.getThreadAllocatedBytes(threadId);
+            for (LoggingEvent event : events) {
+                appender.append(event);
+            }
+            if (flush) {
+                RequestLoggingContext.markError();
+                before = threads.getThreadAllocatedBytes(threadId);
+                appender.flushRequestLogsIfError(requestId);
+            }
+            long after = threads.getThreadAllocatedBytes(threadId);
+            if (!flush) {
+                appender.forceCleanupAll();
+            }
+            RequestLoggingContext.clear();
+            if (round >= WARMUP_ROUNDS) {
+                allocated = Math.min(allocated, after - before);
+            }
+        }
+        return (double) allocated / EVENTS;
+    }
+
+    private static long retainedBy(Runnable fill) {
+        long before = usedHeapAfterGc();
+        fill.run();
+        return usedHeapAfterGc() - before;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void assertWithinBudget(String name, double measured) {
+        double budget = Double.parseDouble(budgets.getProperty(name));
+        assertThat(measured)
+                .as("%s measured %.1f bytes, budget in allocation-budgets.properties is %.0f", name, measured, budget)
+                .isLessThanOrEqualTo(budget);
+    }
+}
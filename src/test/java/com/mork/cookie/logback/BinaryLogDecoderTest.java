@@ -0,0 +1,139 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryLogDecoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private Path file;
+    private PrintStream originalOut;
+    private ByteArrayOutputStream outputStream;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("com.example.OrderService");
+        file = tempDir.resolve("requests.bin");
+
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter();
+        writer.setContext(loggerContext);
+        writer.setFile(file.toString());
+        writer.start();
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.ERROR, 0, 10, 2, List.of(
+                new LoggingEvent("test.class", logger, Level.DEBUG, "Loading order 42", null, null),
+                new LoggingEvent("test.class", logger, Level.ERROR, "Payment failed", new IllegalStateException("declined"), null))));
+        writer.write(new RequestLog("req-2", RequestLog.Outcome.SUCCESS, 0, 10, 3, List.of(
+                new LoggingEvent("test.class", logger, Level.INFO, "Order shipped", null, null))));
+        writer.stop();
+
+        originalOut = System.out;
+        outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void testMainRendersRequestsWithBanners() throws Exception {
+        BinaryLogDecoder.main(new String[]{"--pattern", "%-5level %logger - %msg%n", file.toString()});
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output).contains(
+                "=== REQUEST COMPLETED WITH ERROR - Flushing 2 logs for request: req-1 ===",
+                "DEBUG com.example.OrderService - Loading order 42",
+                "ERROR com.example.OrderService - Payment failed",
+                "java.lang.IllegalStateException: declined",
+                "=== REQUEST COMPLETED SUCCESSFULLY - Showing 1 INFO logs for request: req-2 ===",
+                "INFO  com.example.OrderService - Order shipped",
+                "=== End of request logs for: req-2 ===");
+        assertThat(output.indexOf("req-1")).isLessThan(output.indexOf("req-2"));
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        byte[] text = "not a binary log".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> new BinaryLogDecoder(BinaryLogDecoder.DEFAULT_PATTERN)
+                .render(new ByteArrayInputStream(text), new StringWriter()));
+    }
+
+    @Test
+    void testTruncatedFileRendersCompleteRecords() throws Exception {
+        byte[] content = Files.readAllBytes(file);
+        byte[] truncated = Arrays.copyOf(content, content.length - 3);
+        StringWriter output = new StringWriter();
+
+        assertThrows(EOFException.class, () -> new BinaryLogDecoder("%msg%n").render(new ByteArrayInputStream(truncated), output));
+        assertThat(output.toString()).contains("Payment failed").doesNotContain("Order shipped");
+    }
+
+    @Test
+    void testAlwaysRouteBannersDoNotClaimInfoOnly() throws Exception {
+        Path alwaysFile = tempDir.resolve("always.bin");
+        BinaryRequestLogWriter writer = new BinaryRequestLogWriter();
+        writer.setFile(alwaysFile.toString());
+        ConditionalBufferAppender appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.setRequestLogWriter(writer);
+        RouteRule audit = new RouteRule();
+        audit.setPattern("/audit/**");
+        audit.setFlushPolicy(RouteRule.FlushPolicy.ALWAYS);
+        appender.addRouteRule(audit);
+        appender.start();
+        try {
+            RequestLoggingContext.setRequestId("audited");
+            RequestLoggingContext.setRouteRule(appender.matchRouteRule("GET", "/audit/orders"));
+            appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Checking access", null, null));
+            appender.append(new LoggingEvent("test.class", logger, Level.WARN, "Slow query", null, null));
+            appender.flushRequestLogsIfError("audited");
+            writer.write(new RequestLog("long-running", RequestLog.Outcome.CHECKPOINT, 0, 10, 1, List.of(
+                    new LoggingEvent("test.class", logger, Level.DEBUG, "Batch 1", null, null)), RouteRule.FlushPolicy.ALWAYS));
+        } finally {
+            RequestLoggingContext.clear();
+            appender.stop();
+        }
+
+        StringWriter output = new StringWriter();
+        try (InputStream in = Files.newInputStream(alwaysFile)) {
+            new BinaryLogDecoder("%-5level %msg%n").render(in, output);
+        }
+
+        assertThat(output.toString()).contains(
+                "=== REQUEST COMPLETED SUCCESSFULLY - Showing 2 logs for request: audited ===",
+                "DEBUG Checking access",
+                "WARN  Slow query",
+                "=== REQUEST CHECKPOINT - Showing 1 logs for request: long-running ===");
+        assertThat(output.toString()).doesNotContain("INFO logs");
+    }
+}
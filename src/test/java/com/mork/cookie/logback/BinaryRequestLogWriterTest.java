@@ -0,0 +1,233 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.KeyValuePair;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryRequestLogWriterTest {
+
+    private static final String PATTERN =
+            "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} %X{user} %marker %kvp - %msg%n";
+
+    @TempDir
+    Path tempDir;
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private BinaryRequestLogWriter writer;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("com.example.OrderService");
+        file = tempDir.resolve("logs/requests.bin");
+        writer = new BinaryRequestLogWriter();
+        writer.setContext(loggerContext);
+        writer.setFile(file.toString());
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+        MDC.clear();
+    }
+
+    @Test
+    void testRoundTripRendersSameTextAsPatternLayout() throws Exception {
+        MDC.put("user", "alice");
+        LoggingEvent debug = event(Level.DEBUG, "Loading order {}", null, 42);
+        debug.setTimeStamp(1_700_000_000_001L);
+        LoggingEvent info = event(Level.INFO, "Stöck reservé ✓ for order 42", null);
+        info.setTimeStamp(1_700_000_000_004L);
+        info.addMarker(MarkerFactory.getMarker("AUDIT"));
+        info.addKeyValuePair(new KeyValuePair("orderId", 42));
+        IllegalStateException cause = new IllegalStateException("card declined");
+        RuntimeException failure = new RuntimeException("Payment failed", cause);
+        failure.addSuppressed(new IllegalArgumentException("rollback failed"));
+        LoggingEvent error = event(Level.ERROR, "Payment failed", failure);
+        error.setTimeStamp(1_700_000_000_002L);
+        List<ILoggingEvent> events = List.of(debug, info, error);
+
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.ERROR, 1_700_000_000_000L, 1_700_000_000_010L, 5, events));
+
+        List<RequestLog> decoded = decode();
+        assertEquals(1, decoded.size());
+        RequestLog requestLog = decoded.get(0);
+        assertEquals("req-1", requestLog.requestId());
+        assertEquals(RequestLog.Outcome.ERROR, requestLog.outcome());
+        assertEquals(1_700_000_000_000L, requestLog.startTime());
+        assertEquals(1_700_000_000_010L, requestLog.endTime());
+        assertEquals(5, requestLog.bufferedEvents());
+        assertEquals(3, requestLog.events().size());
+
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(loggerContext);
+        layout.setPattern(PATTERN);
+        layout.start();
+        BinaryLogDecoder decoder = new BinaryLogDecoder(PATTERN);
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(layout.doLayout(events.get(i)), decoder.render(new RequestLog(null, RequestLog.Outcome.ERROR,
+                    0, 0, 1, List.of(requestLog.events().get(i)))));
+        }
+    }
+
+    @Test
+    void testDictionaryWritesRepeatedNamesOnce() throws Exception {
+        List<ILoggingEvent> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(event(Level.DEBUG, "Step " + i, null));
+        }
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.ERROR, 0, 1, 100, events));
+        writer.write(new RequestLog("req-2", RequestLog.Outcome.ERROR, 0, 1, 100, events));
+        writer.stop();
+
+        String content = new String(Files.readAllBytes(file), java.nio.charset.StandardCharsets.ISO_8859_1);
+        assertEquals(content.indexOf("com.example.OrderService"), content.lastIndexOf("com.example.OrderService"));
+        assertEquals(2, decode().size());
+    }
+
+    @Test
+    void testConcurrentWritersShareTheDictionary() throws Exception {
+        int threads = 8;
+        int requestsPerThread = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int r = 0; r < requestsPerThread; r++) {
+                    // Names shared by all threads, and names only this request uses
+                    Logger own = loggerContext.getLogger("com.example.Worker" + thread + "." + r);
+                    LoggingEvent shared = event(Level.INFO, "Shared {}", null, r);
+                    LoggingEvent unique = new LoggingEvent("test.class", own, Level.WARN, "Only {}", null, new Object[]{thread});
+                    writer.write(new RequestLog("req-" + thread + "-" + r, RequestLog.Outcome.ERROR, 0, 1, 2,
+                            List.of(shared, unique)));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        List<RequestLog> decoded = decode();
+        assertEquals(threads * requestsPerThread, decoded.size());
+        for (RequestLog requestLog : decoded) {
+            String[] parts = requestLog.requestId().split("-");
+            assertEquals("com.example.OrderService", requestLog.events().get(0).getLoggerName());
+            assertEquals("Shared " + parts[2], requestLog.events().get(0).getFormattedMessage());
+            assertEquals("com.example.Worker" + parts[1] + "." + parts[2], requestLog.events().get(1).getLoggerName());
+            assertEquals("Only " + parts[1], requestLog.events().get(1).getFormattedMessage());
+        }
+    }
+
+    @Test
+    void testUnscopedErrorAndCheckpointOutcomes() throws Exception {
+        writer.write(new RequestLog(null, RequestLog.Outcome.ERROR, 5, 5, 1, List.of(event(Level.ERROR, "Unscoped", null))));
+        writer.write(new RequestLog("req-2", RequestLog.Outcome.CHECKPOINT, 5, 9, 7, List.of(event(Level.INFO, "Progress", null))));
+
+        List<RequestLog> decoded = decode();
+        assertNull(decoded.get(0).requestId());
+        assertEquals("Unscoped", decoded.get(0).events().get(0).getFormattedMessage());
+        assertEquals(RequestLog.Outcome.CHECKPOINT, decoded.get(1).outcome());
+        assertEquals(7, decoded.get(1).bufferedEvents());
+    }
+
+    @Test
+    void testReopeningAppendsWithNewHeader() throws Exception {
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.SUCCESS, 0, 1, 1, List.of(event(Level.INFO, "First", null))));
+        writer.stop();
+        writer.start();
+        writer.write(new RequestLog("req-2", RequestLog.Outcome.SUCCESS, 0, 1, 1, List.of(event(Level.INFO, "Second", null))));
+
+        List<RequestLog> decoded = decode();
+        assertEquals(2, decoded.size());
+        assertEquals("com.example.OrderService", decoded.get(1).events().get(0).getLoggerName());
+        assertEquals("Second", decoded.get(1).events().get(0).getFormattedMessage());
+    }
+
+    @Test
+    void testWritesNothingWhenStopped() throws Exception {
+        writer.stop();
+        long size = Files.size(file);
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.SUCCESS, 0, 1, 1, List.of(event(Level.INFO, "Lost", null))));
+        assertEquals(size, Files.size(file));
+        assertFalse(writer.isStarted());
+    }
+
+    @Test
+    void testStartFailsWithoutFile() {
+        BinaryRequestLogWriter noFile = new BinaryRequestLogWriter();
+        noFile.setContext(loggerContext);
+        noFile.start();
+        assertFalse(noFile.isStarted());
+    }
+
+    @Test
+    void testOutputIsSeveralTimesSmallerThanPatternLayoutEncoder() throws Exception {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(BinaryLogDecoder.DEFAULT_PATTERN);
+        encoder.start();
+
+        long textBytes = 0;
+        for (int request = 0; request < 50; request++) {
+            List<ILoggingEvent> events = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                LoggingEvent event = event(i % 4 == 0 ? Level.INFO : Level.DEBUG, "Processing item {} of request {}", null, i, request);
+                event.setTimeStamp(1_700_000_000_000L + request * 100L + i);
+                events.add(event);
+                textBytes += encoder.encode(event).length;
+            }
+            writer.write(new RequestLog("req-" + request, RequestLog.Outcome.ERROR,
+                    1_700_000_000_000L + request * 100L, 1_700_000_000_050L + request * 100L, 20, events));
+        }
+        writer.stop();
+
+        assertTrue(Files.size(file) * 3 < textBytes, "binary " + Files.size(file) + " bytes vs text " + textBytes);
+        assertThat(decode()).hasSize(50);
+    }
+
+    private List<RequestLog> decode() throws Exception {
+        List<RequestLog> decoded = new ArrayList<>();
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            BinaryLogDecoder.decode(in, decoded::add);
+        }
+        return decoded;
+    }
+
+    private LoggingEvent event(Level level, String message, Throwable throwable, Object... args) {
+        return new LoggingEvent("test.class", logger, level, message, throwable, args.length == 0 ? null : args);
+    }
+}
@@ -0,0 +1,146 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BufferedLoggingEventTest {
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void testCopiesEventFields() {
+        RuntimeException exception = new RuntimeException("boom");
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.WARN, "Value {}", exception, new Object[]{42});
+
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.deferred(event);
+
+        assertEquals(Level.WARN, snapshot.getLevel());
+        assertEquals("test", snapshot.getLoggerName());
+        assertEquals("Value {}", snapshot.getMessage());
+        assertEquals("Value 42", snapshot.getFormattedMessage());
+        assertEquals(event.getTimeStamp(), snapshot.getTimeStamp());
+        assertEquals(event.getInstant(), snapshot.getInstant());
+        assertEquals("boom", snapshot.getThrowableProxy().getMessage());
+        assertSame(event.getLoggerContextVO(), snapshot.getLoggerContextVO());
+        assertFalse(snapshot.hasCallerData());
+    }
+
+    @Test
+    void testMutableArgumentsAreFrozenAtLogTime() {
+        List<String> items = new ArrayList<>(List.of("a"));
+        int[] numbers = {1, 2};
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.DEBUG, "Items {} {}", null, new Object[]{items, numbers});
+
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.deferred(event);
+        items.add("b");
+        numbers[0] = 99;
+
+        assertEquals("Items [a] [1, 2]", snapshot.getFormattedMessage());
+    }
+
+    @Test
+    void testImmutableArgumentsAreKeptAsIs() {
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.DEBUG, "{} {} {}", null, new Object[]{"text", 7L, date});
+
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.deferred(event);
+
+        assertSame(date, snapshot.getArgumentArray()[2]);
+        assertEquals("text 7 2024-01-01", snapshot.getFormattedMessage());
+    }
+
+    @Test
+    void testFormattingIsDeferredUntilRequested() {
+        AtomicInteger calls = new AtomicInteger();
+        Object lazy = new ConditionalLogger.LazyArgument(() -> "computed-" + calls.incrementAndGet());
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.DEBUG, "Lazy {}", null, new Object[]{lazy});
+
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.deferred(event);
+
+        assertEquals(0, calls.get());
+        assertEquals("Lazy computed-1", snapshot.getFormattedMessage());
+        assertEquals("Lazy computed-1", snapshot.getFormattedMessage());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testThreadNameAndMdcCapturedOnLoggingThread() throws Exception {
+        MDC.put("user", "alice");
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.INFO, "Hello", null, null);
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.deferred(event);
+        String loggingThread = Thread.currentThread().getName();
+        MDC.clear();
+
+        String[] seenOnOtherThread = CompletableFuture.supplyAsync(() -> new String[]{
+                snapshot.getThreadName(), snapshot.getMDCPropertyMap().get("user")}).get();
+
+        assertThat(seenOnOtherThread).containsExactly(loggingThread, "alice");
+    }
+
+    @Test
+    void testCompactSnapshotFormatsEagerlyAndDropsArguments() {
+        List<String> items = new ArrayList<>(List.of("a"));
+        LoggingEvent event = new LoggingEvent("test.class", logger, Level.INFO, "Items {}", null, new Object[]{items});
+
+        BufferedLoggingEvent snapshot = BufferedLoggingEvent.of(event, false, null);
+        items.add("b");
+
+        assertNull(snapshot.getArgumentArray());
+        assertEquals("Items [a]", snapshot.getMessage());
+        assertEquals("Items [a]", snapshot.getFormattedMessage());
+        assertEquals(Level.INFO, snapshot.getLevel());
+    }
+
+    @Test
+    void testCompactSnapshotKeepsSelectedMdcKeys() {
+        MDC.put("requestId", "r-1");
+        MDC.put("user", "alice");
+        MDC.put("tenant", "acme");
+        LoggingEvent first = new LoggingEvent("test.class", logger, Level.INFO, "First", null, null);
+        LoggingEvent second = new LoggingEvent("test.class", logger, Level.INFO, "Second", null, null);
+        Set<String> keys = Set.of("requestId", "missing");
+
+        BufferedLoggingEvent firstSnapshot = BufferedLoggingEvent.of(first, false, keys);
+        BufferedLoggingEvent secondSnapshot = BufferedLoggingEvent.of(second, false, keys);
+
+        assertThat(firstSnapshot.getMDCPropertyMap()).containsExactly(java.util.Map.entry("requestId", "r-1"));
+        // Events logged with the same MDC share the selected map
+        assertSame(firstSnapshot.getMDCPropertyMap(), secondSnapshot.getMDCPropertyMap());
+
+        MDC.put("requestId", "r-2");
+        LoggingEvent third = new LoggingEvent("test.class", logger, Level.INFO, "Third", null, null);
+        assertThat(BufferedLoggingEvent.of(third, false, keys).getMDCPropertyMap()).containsEntry("requestId", "r-2");
+    }
+}
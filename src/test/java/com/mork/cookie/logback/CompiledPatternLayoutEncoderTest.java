@@ -0,0 +1,168 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.MDC;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledPatternLayoutEncoderTest {
+
+    private static final String DEFAULT_PATTERN = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+
+    private LoggerContext loggerContext;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            DEFAULT_PATTERN,
+            "%date %level %logger %message%n",
+            "%d %p %c{0} %m%n",
+            "%d{HH:mm:ss} [%t] %5level %.10logger{20} | %-12.-8msg|%n",
+            "%d{ISO8601} %le %lo{1} %20msg%n",
+            "plain text only"
+    })
+    void testSameBytesAsPatternLayoutEncoder(String pattern) {
+        CompiledPatternLayoutEncoder compiled = newCompiledEncoder(pattern);
+        PatternLayoutEncoder reference = newReferenceEncoder(pattern);
+
+        assertTrue(compiled.isCompiled());
+        for (LoggingEvent event : sampleEvents()) {
+            assertArrayEquals(reference.encode(event), compiled.encode(event), () -> "Mismatch for " + event);
+        }
+    }
+
+    @Test
+    void testSameBytesForIso88591Charset() {
+        CompiledPatternLayoutEncoder compiled = new CompiledPatternLayoutEncoder();
+        compiled.setContext(loggerContext);
+        compiled.setPattern(DEFAULT_PATTERN);
+        compiled.setCharset(StandardCharsets.ISO_8859_1);
+        compiled.start();
+        PatternLayoutEncoder reference = new PatternLayoutEncoder();
+        reference.setContext(loggerContext);
+        reference.setPattern(DEFAULT_PATTERN);
+        reference.setCharset(StandardCharsets.ISO_8859_1);
+        reference.start();
+
+        assertTrue(compiled.isCompiled());
+        for (LoggingEvent event : sampleEvents()) {
+            assertArrayEquals(reference.encode(event), compiled.encode(event));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"UTF-8", "ISO-8859-1", "US-ASCII"})
+    void testSameBytesForBufferedSnapshots(String charset) {
+        CompiledPatternLayoutEncoder compiled = newCompiledEncoder("[%thread] %logger - %msg%n");
+        compiled.setCharset(java.nio.charset.Charset.forName(charset));
+        compiled.stop();
+        compiled.start();
+        PatternLayoutEncoder reference = newReferenceEncoder("[%thread] %logger - %msg%n");
+        reference.setCharset(java.nio.charset.Charset.forName(charset));
+        SymbolTable symbols = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+
+        assertTrue(compiled.isCompiled());
+        for (LoggingEvent event : sampleEvents()) {
+            BufferedLoggingEvent snapshot = BufferedLoggingEvent.of(event, false, null, symbols);
+            assertArrayEquals(reference.encode(event), compiled.encode(snapshot), () -> "Mismatch for " + event);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "%d %X{user} %msg%n",
+            "%msg %ex{short}%n",
+            "%highlight(%level) %msg%n",
+            "%d{HH:mm:ss.SSS, UTC} %msg%n",
+            "%relative %msg%n"
+    })
+    void testFallsBackForUnsupportedPatterns(String pattern) {
+        CompiledPatternLayoutEncoder compiled = newCompiledEncoder(pattern);
+        PatternLayoutEncoder reference = newReferenceEncoder(pattern);
+
+        assertFalse(compiled.isCompiled());
+        for (LoggingEvent event : sampleEvents()) {
+            assertArrayEquals(reference.encode(event), compiled.encode(event));
+        }
+    }
+
+    @Test
+    void testFallsBackForNonByteOrientedCharset() {
+        CompiledPatternLayoutEncoder compiled = new CompiledPatternLayoutEncoder();
+        compiled.setContext(loggerContext);
+        compiled.setPattern(DEFAULT_PATTERN);
+        compiled.setCharset(StandardCharsets.UTF_16);
+        compiled.start();
+
+        assertFalse(compiled.isCompiled());
+        assertTrue(compiled.isStarted());
+    }
+
+    @Test
+    void testIsStillAPatternLayoutEncoder() {
+        CompiledPatternLayoutEncoder compiled = newCompiledEncoder(DEFAULT_PATTERN);
+
+        assertThat(compiled).isInstanceOf(PatternLayoutEncoder.class);
+        assertThat(compiled.getPattern()).isEqualTo(DEFAULT_PATTERN);
+
+        compiled.stop();
+        assertFalse(compiled.isCompiled());
+    }
+
+    private List<LoggingEvent> sampleEvents() {
+        Logger shortLogger = loggerContext.getLogger("test");
+        Logger longLogger = loggerContext.getLogger("com.mork.cookie.logback.some.deeply.nested.package.ServiceImplementation");
+        List<LoggingEvent> events = new ArrayList<>();
+        events.add(new LoggingEvent("fqcn", shortLogger, Level.INFO, "Simple message", null, null));
+        events.add(new LoggingEvent("fqcn", longLogger, Level.DEBUG, "Value {} and {}", null, new Object[]{42, "text"}));
+        events.add(new LoggingEvent("fqcn", longLogger, Level.WARN, "Unicode café € 😀 and lone \uD800 surrogate", null, null));
+        events.add(new LoggingEvent("fqcn", shortLogger, Level.TRACE, null, null, null));
+        events.add(new LoggingEvent("fqcn", shortLogger, Level.ERROR, "Failure", new IllegalStateException("boom", new RuntimeException("cause")), null));
+
+        LoggingEvent oldEvent = new LoggingEvent("fqcn", shortLogger, Level.INFO, "Old event", null, null);
+        oldEvent.setTimeStamp(1_000_123L);
+        events.add(oldEvent);
+        LoggingEvent otherThread = new LoggingEvent("fqcn", shortLogger, Level.INFO, "Named thread", null, null);
+        otherThread.setThreadName("worker-é-1");
+        events.add(otherThread);
+        return events;
+    }
+
+    private CompiledPatternLayoutEncoder newCompiledEncoder(String pattern) {
+        CompiledPatternLayoutEncoder encoder = new CompiledPatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(pattern);
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.start();
+        return encoder;
+    }
+
+    private PatternLayoutEncoder newReferenceEncoder(String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(pattern);
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.start();
+        return encoder;
+    }
+}
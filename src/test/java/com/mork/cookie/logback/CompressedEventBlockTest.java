@@ -0,0 +1,126 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.slf4j.MarkerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedEventBlockTest {
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private CompressionMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("com.mork.cookie.logback.CompressedEventBlockTest");
+        metrics = new CompressionMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void testRoundTripKeepsEventData() {
+        MDC.put("user", "alice");
+        MDC.put("tenant", "ünïcode");
+        LoggingEvent withArgs = new LoggingEvent("fqcn", logger, Level.DEBUG, "Value {} and {}", null, new Object[]{42, new int[]{1, 2}});
+        LoggingEvent withThrowable = new LoggingEvent("fqcn", logger, Level.ERROR, "Failure", new IllegalStateException("boom"), null);
+        withThrowable.addMarker(MarkerFactory.getMarker("AUDIT"));
+        MDC.clear();
+        LoggingEvent withoutMdc = new LoggingEvent("fqcn", logger, Level.INFO, null, null, null);
+        List<ILoggingEvent> events = List.of(withArgs, withThrowable, withoutMdc);
+        events.forEach(ILoggingEvent::getThreadName);
+
+        List<ILoggingEvent> inflated = CompressedEventBlock.compress(events, Deflater.BEST_SPEED, new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS), metrics).inflate();
+
+        assertThat(inflated).hasSize(3);
+        for (int i = 0; i < events.size(); i++) {
+            ILoggingEvent original = events.get(i);
+            ILoggingEvent copy = inflated.get(i);
+            assertEquals(original.getTimeStamp(), copy.getTimeStamp());
+            assertEquals(original.getNanoseconds(), copy.getNanoseconds());
+            assertEquals(original.getSequenceNumber(), copy.getSequenceNumber());
+            assertEquals(original.getLevel(), copy.getLevel());
+            assertEquals(original.getLoggerName(), copy.getLoggerName());
+            assertEquals(original.getThreadName(), copy.getThreadName());
+            assertEquals(original.getFormattedMessage(), copy.getFormattedMessage());
+            assertEquals(original.getMDCPropertyMap(), copy.getMDCPropertyMap());
+            assertSame(original.getThrowableProxy(), copy.getThrowableProxy());
+            assertSame(original.getMarkerList(), copy.getMarkerList());
+            assertSame(original.getLoggerContextVO(), copy.getLoggerContextVO());
+        }
+        assertEquals("Value 42 and [1, 2]", inflated.get(0).getFormattedMessage());
+        assertNull(inflated.get(2).getFormattedMessage());
+    }
+
+    @Test
+    void testInflatedEventsShareCanonicalNames() {
+        SymbolTable symbols = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+        LoggingEvent event = new LoggingEvent("fqcn", logger, Level.DEBUG, "First", null, null);
+        event.setThreadName(new String("worker-1"));
+        LoggingEvent other = new LoggingEvent("fqcn", logger, Level.DEBUG, "Second", null, null);
+        other.setThreadName(new String("worker-1"));
+
+        ILoggingEvent first = CompressedEventBlock.compress(List.of(event), Deflater.BEST_SPEED, symbols, metrics).inflate().get(0);
+        ILoggingEvent second = CompressedEventBlock.compress(List.of(other), Deflater.BEST_SPEED, symbols, metrics).inflate().get(0);
+
+        assertEquals("worker-1", first.getThreadName());
+        assertSame(first.getThreadName(), second.getThreadName());
+        assertSame(logger.getName(), first.getLoggerName());
+    }
+
+    @Test
+    void testNamesBeyondSymbolTableCapacity() {
+        SymbolTable symbols = new SymbolTable(1);
+        LoggingEvent event = new LoggingEvent("fqcn", logger, Level.DEBUG, "Message", null, null);
+        event.setThreadName("worker-overflow");
+
+        ILoggingEvent copy = CompressedEventBlock.compress(List.of(event), Deflater.BEST_SPEED, symbols, metrics).inflate().get(0);
+
+        assertEquals(logger.getName(), copy.getLoggerName());
+        assertEquals("worker-overflow", copy.getThreadName());
+        assertEquals(1, symbols.size());
+    }
+
+    @Test
+    void testRepetitiveEventsCompressWell() {
+        MDC.put("requestId", "req-1234");
+        List<ILoggingEvent> events = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            events.add(new LoggingEvent("fqcn", logger, Level.DEBUG, "Processing row {} of batch {}", null, new Object[]{i, "import-7"}));
+        }
+
+        CompressedEventBlock block = CompressedEventBlock.compress(events, Deflater.BEST_SPEED, new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS), metrics);
+
+        assertEquals(500, block.getEventCount());
+        assertEquals(block.getCompressedSize(), metrics.getCompressedBytes());
+        assertTrue(metrics.getCompressionRatio() > 4, "ratio " + metrics.getCompressionRatio());
+        assertTrue(metrics.getCompressionNanos() > 0);
+        assertEquals(0, metrics.getBlocksInflated());
+
+        assertThat(block.inflate()).extracting(ILoggingEvent::getFormattedMessage)
+                .endsWith("Processing row 499 of batch import-7");
+        assertEquals(1, metrics.getBlocksInflated());
+    }
+}
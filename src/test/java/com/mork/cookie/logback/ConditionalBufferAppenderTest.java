@@ -3,18 +3,39 @@ package com.mork.cookie.logback;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.joran.JoranConfigurator;
 import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 import ch.qos.logback.core.encoder.EchoEncoder;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.ConfigurationEvent;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -34,6 +55,7 @@ class ConditionalBufferAppenderTest {
     @BeforeEach
     void setUp() {
         loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
         logger = loggerContext.getLogger("test");
         
         appender = new ConditionalBufferAppender();
@@ -327,4 +349,1066 @@ class ConditionalBufferAppenderTest {
         // Buffer should still exist as it's not expired
         assertThat(appender.getRequestBuffers()).hasSize(1);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testAttachedAppendersReceiveAllEventsOnError() {
+        ListAppender<ILoggingEvent> child = attachListAppender();
+
+        String requestId = "test-attached-error";
+        RequestLoggingContext.setRequestId(requestId);
+
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error occurred", null, null));
+
+        // Nothing is handed to the child before the request finishes
+        assertThat(child.list).isEmpty();
+
+        appender.flushRequestLogsIfError(requestId);
+
+        assertThat(child.list).extracting(ILoggingEvent::getMessage)
+                .containsExactly("Debug message", "Info message", "Error occurred");
+        // The console path is not used when appenders are attached
+        assertThat(outputStream.toString()).isEmpty();
+    }
+
+    @Test
+    void testAttachedAppendersReceiveOnlyInfoOnSuccess() {
+        ListAppender<ILoggingEvent> child = attachListAppender();
+
+        String requestId = "test-attached-success";
+        RequestLoggingContext.setRequestId(requestId);
+
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+
+        appender.flushRequestLogsIfError(requestId);
+
+        assertThat(child.list).extracting(ILoggingEvent::getMessage).containsExactly("Info message");
+        assertThat(outputStream.toString()).isEmpty();
+    }
+
+    @Test
+    void testAttachedAppendersReceiveErrorsWithoutRequestContext() {
+        ListAppender<ILoggingEvent> child = attachListAppender();
+
+        appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error message", null, null));
+
+        assertThat(child.list).extracting(ILoggingEvent::getMessage).containsExactly("Error message");
+        assertThat(outputStream.toString()).isEmpty();
+    }
+
+    @Test
+    void testAppenderStartsWithAttachedAppenderAndNoEncoder() {
+        ConditionalBufferAppender delegating = new ConditionalBufferAppender();
+        delegating.setContext(loggerContext);
+        ListAppender<ILoggingEvent> child = new ListAppender<>();
+        child.setContext(loggerContext);
+        child.start();
+        delegating.addAppender(child);
+
+        delegating.start();
+
+        assertTrue(delegating.isStarted());
+        assertTrue(delegating.isAttached(child));
+
+        delegating.stop();
+
+        // Stopping the appender stops and detaches its children
+        assertFalse(child.isStarted());
+        assertFalse(delegating.iteratorForAppenders().hasNext());
+    }
+
+    private ListAppender<ILoggingEvent> attachListAppender() {
+        ListAppender<ILoggingEvent> child = new ListAppender<>();
+        child.setContext(loggerContext);
+        child.setName("CHILD");
+        child.start();
+        appender.addAppender(child);
+        return child;
+    }
+
+    @Test
+    void testDeferredFormattingBuffersSnapshots() {
+        appender.setDeferredFormatting(true);
+        String requestId = "test-deferred";
+        RequestLoggingContext.setRequestId(requestId);
+
+        StringBuilder state = new StringBuilder("before");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "State {}", null, new Object[]{state}));
+        appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error occurred", null, null));
+        state.append("-after");
+
+        assertThat(appender.getRequestBuffers().get(requestId).getEvents())
+                .allMatch(event -> event instanceof BufferedLoggingEvent);
+
+        appender.flushRequestLogsIfError(requestId);
+
+        String output = outputStream.toString();
+        assertThat(output).contains("State before");
+        assertThat(output).doesNotContain("before-after");
+    }
+
+    @Test
+    void testCompactEventsBuffersSnapshotsWithSelectedMdc() {
+        appender.setCompactEvents(true);
+        appender.setMdcKeys(" requestId , ,userId");
+        assertEquals("requestId,userId", appender.getMdcKeys());
+
+        String requestId = "test-compact";
+        RequestLoggingContext.setRequestId(requestId);
+        MDC.put("requestId", requestId);
+        MDC.put("other", "value");
+        try {
+            appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info {}", null, new Object[]{1}));
+        } finally {
+            MDC.clear();
+        }
+
+        ch.qos.logback.classic.spi.ILoggingEvent buffered = appender.getRequestBuffers().get(requestId).getEvents().get(0);
+        assertThat(buffered).isInstanceOf(BufferedLoggingEvent.class);
+        assertEquals("Info 1", buffered.getFormattedMessage());
+        assertThat(buffered.getMDCPropertyMap()).containsOnlyKeys("requestId");
+
+        appender.setMdcKeys("");
+        assertThat(appender.getMdcKeys()).isNull();
+    }
+
+    @Test
+    void testCompactEventsKeepCallerDataWhenIncluded() {
+        ConditionalBufferAppender callerAppender = new ConditionalBufferAppender();
+        callerAppender.setContext(loggerContext);
+        callerAppender.setCompactEvents(true);
+        callerAppender.setIncludeCallerData(true);
+        callerAppender.setEncoder(newPatternEncoder("%M - %msg%n"));
+        callerAppender.start();
+        Logger callerLogger = loggerContext.getLogger("test.caller");
+        callerLogger.setAdditive(false);
+        callerLogger.addAppender(callerAppender);
+
+        RequestLoggingContext.setRequestId("caller-request");
+        callerLogger.info("Started");
+        callerLogger.error("Failed");
+        callerAppender.flushRequestLogsIfError("caller-request");
+        callerAppender.stop();
+
+        assertThat(outputStream.toString())
+                .contains("testCompactEventsKeepCallerDataWhenIncluded - Started")
+                .contains("testCompactEventsKeepCallerDataWhenIncluded - Failed");
+    }
+
+    @Test
+    void testStackTraceCacheProducesSameBytesAsEncoder() throws Exception {
+        String pattern = "%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+        ConditionalBufferAppender cachingAppender = newPatternAppender(pattern);
+        PatternLayoutEncoder reference = newPatternEncoder(pattern);
+
+        Exception exception = new IllegalStateException("boom", new RuntimeException("root cause"));
+        LoggingEvent first = new LoggingEvent("test.class", logger, Level.ERROR, "Failed", exception, null);
+        LoggingEvent second = new LoggingEvent("test.class", logger, Level.ERROR, "Failed again", exception, null);
+
+        cachingAppender.append(first);
+        cachingAppender.append(second);
+
+        String expected = new String(reference.encode(first)) + new String(reference.encode(second));
+        assertEquals(expected, outputStream.toString());
+        assertThat(outputStream.toString()).contains("Caused by: java.lang.RuntimeException: root cause");
+        assertEquals(1, cachingAppender.getStackTraceCache().getMissCount());
+        assertEquals(1, cachingAppender.getStackTraceCache().getHitCount());
+
+        cachingAppender.stop();
+        reference.stop();
+    }
+
+    @Test
+    void testStackTraceCacheDisabledForExplicitThrowablePattern() {
+        ConditionalBufferAppender explicitAppender = newPatternAppender("%-5level %ex{short} - %msg%n");
+        assertThat(explicitAppender.getStackTraceCache()).isNull();
+        explicitAppender.stop();
+
+        ConditionalBufferAppender disabledAppender = new ConditionalBufferAppender();
+        disabledAppender.setContext(loggerContext);
+        disabledAppender.setStackTraceCacheSize(0);
+        disabledAppender.setEncoder(newPatternEncoder("%msg%n"));
+        disabledAppender.start();
+        assertThat(disabledAppender.getStackTraceCache()).isNull();
+        disabledAppender.stop();
+
+        // The EchoEncoder of the default test appender is not a pattern layout
+        assertThat(appender.getStackTraceCache()).isNull();
+    }
+
+    @Test
+    void testCompressedBufferFlushesSameOutputOnError() {
+        String pattern = "%d [%thread] %-5level %logger{36} %X{user} - %msg%n";
+        ConditionalBufferAppender plain = newPatternAppender(pattern);
+        ConditionalBufferAppender compressing = newPatternAppender(pattern);
+        compressing.setCompressionThreshold(5);
+        String requestId = "test-compressed-error";
+        RequestLoggingContext.setRequestId(requestId);
+        MDC.put("user", "alice");
+
+        for (int i = 0; i < 10; i++) {
+            LoggingEvent event = new LoggingEvent("test.class", logger, i % 3 == 0 ? Level.INFO : Level.DEBUG,
+                    "Step {} of {}", null, new Object[]{i, 10});
+            plain.append(event);
+            compressing.append(event);
+        }
+        compressing.compressColdBuffers();
+        LoggingEvent error = new LoggingEvent("test.class", logger, Level.ERROR, "Failed", new IllegalStateException("boom"), null);
+        plain.append(error);
+        compressing.append(error);
+
+        ConditionalBufferAppender.RequestLogBuffer buffer = compressing.getRequestBuffers().get(requestId);
+        assertEquals(10, buffer.compressedSize());
+        assertEquals(1, buffer.uncompressedSize());
+        assertEquals(11, buffer.size());
+
+        plain.flushRequestLogsIfError(requestId);
+        String expected = outputStream.toString();
+        outputStream.reset();
+        compressing.flushRequestLogsIfError(requestId);
+
+        assertThat(outputStream.toString()).isEqualTo(expected).contains("Step 9 of 10", "alice", "boom");
+        CompressionMetrics metrics = compressing.getCompressionMetrics();
+        assertEquals(1, metrics.getBlocksCompressed());
+        assertEquals(10, metrics.getEventsCompressed());
+        assertEquals(1, metrics.getBlocksInflated());
+        assertTrue(metrics.getCompressionRatio() > 0);
+
+        plain.stop();
+        compressing.stop();
+    }
+
+    @Test
+    void testCompressedBufferShowsInfoOnSuccess() {
+        appender.setCompressionThreshold(1);
+        String requestId = "test-compressed-success";
+        RequestLoggingContext.setRequestId(requestId);
+
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "First info", null, null));
+        appender.compressColdBuffers();
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Second info", null, null));
+
+        appender.flushRequestLogsIfError(requestId);
+
+        String output = outputStream.toString();
+        assertThat(output).contains("Showing 2 INFO logs", "First info", "Second info").doesNotContain("Debug message");
+        // The INFO events are decoded from the block, none is kept alongside it
+        assertEquals(1, appender.getCompressionMetrics().getBlocksInflated());
+    }
+
+    @Test
+    void testCompressionStatusOnEverySweepThatCompresses() {
+        appender.setCompressionThreshold(1);
+        for (int round = 0; round < 3; round++) {
+            RequestLoggingContext.setRequestId("test-compression-status-" + round);
+            appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+            appender.compressColdBuffers();
+        }
+        // Nothing left to compress
+        appender.compressColdBuffers();
+
+        // Steady compression at a constant count is reported on each sweep, with the running totals
+        assertThat(loggerContext.getStatusManager().getCopyOfStatusList()).extracting(status -> status.getMessage())
+                .filteredOn(message -> message.startsWith("Compressed "))
+                .hasSize(3)
+                .allMatch(message -> message.startsWith("Compressed 1 cold buffers"))
+                .last().asString().contains("blocksCompressed=3");
+    }
+
+    @Test
+    void testIdleBuffersBelowThresholdAreNotCompressed() {
+        String requestId = "test-not-cold";
+        RequestLoggingContext.setRequestId(requestId);
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+
+        appender.compressColdBuffers();
+
+        assertEquals(0, appender.getRequestBuffers().get(requestId).compressedSize());
+        assertEquals(0, appender.getCompressionMetrics().getBlocksCompressed());
+    }
+
+    @Test
+    void testCheckpointWritesInfoAndKeepsRecentWindow() {
+        appender.setCheckpointEnabled(true);
+        appender.setCheckpointSize(10);
+        appender.setCheckpointWindowSize(3);
+        String requestId = "test-checkpoint";
+        RequestLoggingContext.setRequestId(requestId);
+
+        for (int i = 0; i < 100; i++) {
+            Level level = i % 2 == 0 ? Level.INFO : Level.DEBUG;
+            appender.append(new LoggingEvent("test.class", logger, level, "Event " + i, null, null));
+            // Memory stays bounded by the checkpoint size
+            assertThat(appender.getRequestBuffers().get(requestId).size()).isLessThan(10);
+        }
+
+        String output = outputStream.toString();
+        assertThat(output).contains("REQUEST CHECKPOINT", "Event 0", "Event 86").doesNotContain("Event 1" + System.lineSeparator(), "Event 87");
+
+        outputStream.reset();
+        appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error occurred", null, null));
+        appender.flushRequestLogsIfError(requestId);
+
+        // The error dump holds the recent window and what followed the last checkpoint
+        assertThat(outputStream.toString())
+                .contains("REQUEST COMPLETED WITH ERROR", "Event 97", "Event 98", "Event 99", "Error occurred")
+                .doesNotContain("Event 0", "Event 86");
+    }
+
+    @Test
+    void testCheckpointFollowsRouteFlushPolicy() {
+        appender.setCheckpointEnabled(true);
+        appender.setCheckpointSize(10);
+        addFlushPolicyRoutes();
+
+        startRouteRequest("import-1", "POST", "/imports/1");
+        appendAlternating("Import event", 20);
+        // Nothing is written on success, so nothing is trimmed away from a possible error dump
+        assertThat(outputStream.toString()).isEmpty();
+        assertEquals(20, appender.getRequestBuffers().get("import-1").size());
+
+        startRouteRequest("audit-1", "GET", "/audit/1");
+        appendAlternating("Audit event", 20);
+        assertThat(outputStream.toString())
+                .contains("REQUEST CHECKPOINT - Showing 10 logs for request: audit-1", "Audit event 0", "Audit event 19");
+        assertEquals(0, appender.getRequestBuffers().get("audit-1").size());
+    }
+
+    @Test
+    void testExpiryFollowsRouteFlushPolicy() {
+        appender.setCheckpointEnabled(true);
+        addFlushPolicyRoutes();
+        startRouteRequest("import-1", "POST", "/imports/1");
+        appendAlternating("Import event", 4);
+        startRouteRequest("audit-1", "GET", "/audit/1");
+        appendAlternating("Audit event", 4);
+
+        appender.backdateLastAccess("import-1", 3_600_000L);
+        appender.backdateLastAccess("audit-1", 3_600_000L);
+        appender.cleanupExpiredRequests();
+
+        assertThat(appender.getRequestBuffers()).isEmpty();
+        assertThat(outputStream.toString())
+                .contains("REQUEST CHECKPOINT - Showing 4 logs for request: audit-1", "Audit event 0", "Audit event 1")
+                .doesNotContain("import-1", "Import event");
+    }
+
+    @Test
+    void testDrainFollowsRouteFlushPolicy() {
+        addFlushPolicyRoutes();
+        startRouteRequest("import-1", "POST", "/imports/1");
+        appendAlternating("Import event", 4);
+        startRouteRequest("audit-1", "GET", "/audit/1");
+        appendAlternating("Audit event", 4);
+
+        appender.stop();
+
+        assertThat(outputStream.toString())
+                .contains("REQUEST CHECKPOINT - Showing 4 logs for request: audit-1", "Audit event 0", "Audit event 1")
+                .doesNotContain("import-1", "Import event");
+    }
+
+    private void addFlushPolicyRoutes() {
+        RouteRule imports = new RouteRule();
+        imports.setPattern("POST /imports/**");
+        imports.setFlushPolicy(RouteRule.FlushPolicy.ERRORS_ONLY);
+        appender.addRouteRule(imports);
+        RouteRule audit = new RouteRule();
+        audit.setPattern("/audit/*");
+        audit.setFlushPolicy(RouteRule.FlushPolicy.ALWAYS);
+        appender.addRouteRule(audit);
+    }
+
+    private void startRouteRequest(String requestId, String method, String path) {
+        RequestLoggingContext.clear();
+        RequestLoggingContext.setRequestId(requestId);
+        RequestLoggingContext.setRouteRule(appender.matchRouteRule(method, path));
+    }
+
+    // Even-numbered events are INFO, odd-numbered ones DEBUG
+    private void appendAlternating(String message, int count) {
+        for (int i = 0; i < count; i++) {
+            Level level = i % 2 == 0 ? Level.INFO : Level.DEBUG;
+            appender.append(new LoggingEvent("test.class", logger, level, message + " " + i, null, null));
+        }
+    }
+
+    @Test
+    void testCheckpointSkipsFlushedRequests() {
+        appender.setCheckpointEnabled(true);
+        appender.setCheckpointIntervalSeconds(1);
+        String requestId = "test-checkpoint-flushed";
+        RequestLoggingContext.setRequestId(requestId);
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+        appender.flushRequestLogsIfError(requestId);
+        outputStream.reset();
+
+        appender.checkpointLongRunningRequests();
+
+        assertThat(outputStream.toString()).isEmpty();
+    }
+
+    @Test
+    void testWorkerThreadsAppendToRequestBuffer() throws Exception {
+        String requestId = "test-workers";
+        RequestLoggingContext.setRequestId(requestId);
+        appender.append(newEventAt(1_000L, Level.INFO, "Request started"));
+
+        ContextPropagatingExecutorService workers = new ContextPropagatingExecutorService(Executors.newFixedThreadPool(2));
+        try {
+            workers.submit(() -> appender.append(newEventAt(1_002L, Level.DEBUG, "Worker step"))).get(5, TimeUnit.SECONDS);
+            workers.submit(() -> appender.append(newEventAt(1_001L, Level.ERROR, "Worker failed"))).get(5, TimeUnit.SECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+        appender.append(newEventAt(1_003L, Level.INFO, "Request finished"));
+
+        assertThat(appender.getRequestBuffers().get(requestId).size()).isEqualTo(4);
+        // The error marked on a worker is visible to the request thread
+        assertTrue(RequestLoggingContext.hasError());
+        assertTrue(appender.getRequestBuffers().get(requestId).hasError());
+
+        appender.flushRequestLogsIfError(requestId);
+
+        // Worker events are merged by timestamp
+        String output = outputStream.toString();
+        assertThat(output).contains("REQUEST COMPLETED WITH ERROR - Flushing 4 logs");
+        assertThat(output.indexOf("Request started")).isLessThan(output.indexOf("Worker failed"));
+        assertThat(output.indexOf("Worker failed")).isLessThan(output.indexOf("Worker step"));
+        assertThat(output.indexOf("Worker step")).isLessThan(output.indexOf("Request finished"));
+    }
+
+    @Test
+    void testEventsAfterFlushDoNotResurrectBuffer() {
+        String requestId = "test-late";
+        RequestLoggingContext.setRequestId(requestId);
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "In time", null, null));
+        Runnable lateDebug = RequestLoggingContext.wrap(() ->
+                appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Late debug", null, null)));
+        Runnable lateError = RequestLoggingContext.wrap(() ->
+                appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Late error", null, null)));
+
+        appender.flushRequestLogsIfError(requestId);
+        RequestLoggingContext.clear();
+        lateDebug.run();
+        lateError.run();
+
+        assertThat(appender.getRequestBuffers()).isEmpty();
+        assertEquals(2, appender.getLateEventCount());
+        // Late errors are written at once, the rest is dropped
+        assertThat(outputStream.toString()).contains("In time", "Late error").doesNotContain("Late debug");
+    }
+
+    @Test
+    void testNewRequestCanReuseRequestIdOfFlushedOne() {
+        RequestLoggingContext.setRequestId("reused-id");
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "First request", null, null));
+        appender.flushRequestLogsIfError("reused-id");
+
+        // A new context, e.g. a retry carrying the same request ID header
+        RequestLoggingContext.setRequestId("reused-id");
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Second request", null, null));
+
+        assertThat(appender.getRequestBuffers()).containsOnlyKeys("reused-id");
+        assertEquals(0, appender.getLateEventCount());
+    }
+
+    @Test
+    void testRequestContinuesInNewBufferAfterCleanup() {
+        RequestLoggingContext.setRequestId("cleaned-up");
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Before cleanup", null, null));
+        ConditionalBufferAppender.RequestLogBuffer removed = appender.getRequestBuffers().get("cleaned-up");
+
+        appender.forceCleanupAll();
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "After cleanup", null, null));
+
+        assertThat(appender.getRequestBuffers().get("cleaned-up")).isNotSameAs(removed);
+        assertEquals(1, appender.getRequestBuffers().get("cleaned-up").size());
+        assertEquals(1, removed.size());
+    }
+
+    private LoggingEvent newEventAt(long timeStamp, Level level, String message) {
+        LoggingEvent event = new LoggingEvent("test.class", logger, level, message, null, null);
+        event.setTimeStamp(timeStamp);
+        return event;
+    }
+
+    @Test
+    void testRequestLogWriterReceivesWholeRequest() {
+        List<RequestLog> written = new ArrayList<>();
+        ConditionalBufferAppender writing = new ConditionalBufferAppender();
+        writing.setContext(loggerContext);
+        writing.setTurboFilterEnabled(false);
+        writing.setRequestLogWriter(new RequestLogWriter() {
+            @Override
+            public void write(RequestLog requestLog) {
+                written.add(requestLog);
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public boolean isStarted() {
+                return true;
+            }
+        });
+        writing.start();
+        assertTrue(writing.isStarted());
+
+        String requestId = "test-writer";
+        RequestLoggingContext.setRequestId(requestId);
+        writing.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+        writing.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+        writing.flushRequestLogsIfError(requestId);
+
+        assertThat(written).hasSize(1);
+        RequestLog requestLog = written.get(0);
+        assertEquals(requestId, requestLog.requestId());
+        assertEquals(RequestLog.Outcome.SUCCESS, requestLog.outcome());
+        assertEquals(2, requestLog.bufferedEvents());
+        assertThat(requestLog.events()).extracting(ILoggingEvent::getMessage).containsExactly("Info message");
+        assertThat(outputStream.toString()).isEmpty();
+
+        writing.stop();
+    }
+
+    @Test
+    void testJsonRequestLogWriterWritesOneLinePerRequest() {
+        ConditionalBufferAppender json = new ConditionalBufferAppender();
+        json.setContext(loggerContext);
+        json.setTurboFilterEnabled(false);
+        json.setRequestLogWriter(new JsonRequestLogWriter());
+        json.start();
+
+        String requestId = "test-json";
+        RequestLoggingContext.setRequestId(requestId);
+        json.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug message", null, null));
+        json.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error occurred", null, null));
+        json.flushRequestLogsIfError(requestId);
+
+        String output = outputStream.toString();
+        assertThat(output).startsWith("{\"requestId\":\"test-json\",\"outcome\":\"ERROR\"")
+                .contains("\"message\":\"Debug message\"", "\"message\":\"Error occurred\"")
+                .doesNotContain("===");
+        assertThat(output.trim().lines()).hasSize(1);
+
+        json.stop();
+    }
+
+    @Test
+    void testFlightRecorderKeepsEventsOfSuccessfulRequests(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("flight.rec");
+        ConditionalBufferAppender recording = newPatternAppender("%msg%n");
+        recording.stop();
+        recording.setFlightRecorderFile(file.toString());
+        recording.setFlightRecorderSizeMb(1);
+        recording.start();
+        assertNotNull(recording.getFlightRecorder());
+
+        String requestId = "test-flight-recorder";
+        RequestLoggingContext.setRequestId(requestId);
+        recording.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug {}", null, new Object[]{1}));
+        recording.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+        recording.flushRequestLogsIfError(requestId);
+
+        // The successful flush only wrote the INFO event, the recorder still has both
+        assertThat(outputStream.toString()).doesNotContain("Debug 1");
+        List<FlightRecorderReader.Entry> entries = FlightRecorderReader.read(file);
+        assertThat(entries).extracting(FlightRecorderReader.Entry::requestId).containsOnly(requestId);
+        assertThat(entries).extracting(entry -> entry.event().getFormattedMessage()).containsExactly("Debug 1", "Info message");
+
+        recording.stop();
+        assertThat(recording.getFlightRecorder()).isNull();
+    }
+
+    private ConditionalBufferAppender newPatternAppender(String pattern) {
+        ConditionalBufferAppender patternAppender = new ConditionalBufferAppender();
+        patternAppender.setContext(loggerContext);
+        patternAppender.setTurboFilterEnabled(false);
+        patternAppender.setEncoder(newPatternEncoder(pattern));
+        patternAppender.start();
+        return patternAppender;
+    }
+
+    private PatternLayoutEncoder newPatternEncoder(String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern(pattern);
+        encoder.start();
+        return encoder;
+    }
+
+    @Test
+    void testNewBuffersArePresizedFromTheirRoute() {
+        appender.setAdaptiveBufferSizing(true);
+        for (int request = 0; request < 40; request++) {
+            String requestId = "checkout-" + request;
+            RequestLoggingContext.setRequestId(requestId);
+            RequestLoggingContext.setRoute("POST /checkout");
+            for (int i = 0; i < 60; i++) {
+                appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Step " + i, null, null));
+            }
+            appender.flushRequestLogsIfError(requestId);
+        }
+
+        RequestLoggingContext.setRequestId("checkout-next");
+        RequestLoggingContext.setRoute("POST /checkout");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Step 0", null, null));
+        RequestLoggingContext.setRequestId("other-route");
+        RequestLoggingContext.setRoute("GET /health");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Up", null, null));
+
+        assertThat(appender.getRequestBuffers().get("checkout-next").getInitialCapacity()).isBetween(60, 75);
+        assertEquals(0, appender.getRequestBuffers().get("other-route").getInitialCapacity());
+        RouteBufferSizes.Route checkout = appender.getRouteBufferSizes().getRoutes().get("POST /checkout");
+        assertEquals(40, checkout.getRequests());
+        assertEquals(60, checkout.getMaxEvents());
+    }
+
+    @Test
+    void testPresizingIsCappedAndRecordsTruncatedRequests() {
+        appender.setAdaptiveBufferSizing(true);
+        appender.setMaxBufferSize(10);
+        for (int request = 0; request < 20; request++) {
+            String requestId = "bulk-" + request;
+            RequestLoggingContext.setRequestId(requestId);
+            RequestLoggingContext.setRoute("POST /import");
+            for (int i = 0; i < 15; i++) {
+                appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Row " + i, null, null));
+            }
+            appender.flushRequestLogsIfError(requestId);
+        }
+        appender.setMaxBufferSize(5);
+        RequestLoggingContext.setRequestId("bulk-next");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Row 0", null, null));
+
+        assertEquals(5, appender.getRequestBuffers().get("bulk-next").getInitialCapacity());
+        assertEquals(20, appender.getRouteBufferSizes().getRoutes().get("POST /import").getTruncatedRequests());
+    }
+
+    @Test
+    void testRouteRuleOverridesBufferSizeAndFlushPolicy() {
+        RouteRule imports = new RouteRule();
+        imports.setPattern("POST /imports/**");
+        imports.setMaxBufferSize(3);
+        imports.setFlushPolicy(RouteRule.FlushPolicy.ERRORS_ONLY);
+        appender.addRouteRule(imports);
+        RouteRule audit = new RouteRule();
+        audit.setPattern("/audit/*");
+        audit.setFlushPolicy(RouteRule.FlushPolicy.ALWAYS);
+        appender.addRouteRule(audit);
+
+        RequestLoggingContext.setRequestId("import-1");
+        RequestLoggingContext.setRouteRule(appender.matchRouteRule("POST", "/imports/42"));
+        for (int i = 0; i < 5; i++) {
+            appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Row " + i, null, null));
+        }
+        assertEquals(3, appender.getRequestBuffers().get("import-1").size());
+        appender.flushRequestLogsIfError("import-1");
+        assertThat(outputStream.toString()).isEmpty();
+
+        RequestLoggingContext.clear();
+        RequestLoggingContext.setRequestId("audit-1");
+        RequestLoggingContext.setRouteRule(appender.matchRouteRule("GET", "/audit/7"));
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Checked permissions", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Audit trail read", null, null));
+        appender.flushRequestLogsIfError("audit-1");
+
+        assertThat(outputStream.toString()).contains(
+                "REQUEST COMPLETED SUCCESSFULLY - Showing 2 logs for request: audit-1", "Checked permissions", "Audit trail read");
+    }
+
+    @Test
+    void testRouteRuleOverridesTimeout() {
+        RouteRule longPolling = new RouteRule();
+        longPolling.setBufferTimeoutMinutes(60);
+
+        assertEquals(60 * 60_000L, new ConditionalBufferAppender.RequestLogBuffer(null, longPolling, 0).timeoutMs(10));
+        assertEquals(10 * 60_000L, new ConditionalBufferAppender.RequestLogBuffer(null, new RouteRule(), 0).timeoutMs(10));
+        assertEquals(10 * 60_000L, new ConditionalBufferAppender.RequestLogBuffer().timeoutMs(10));
+    }
+
+    @Test
+    void testInvalidRouteRuleIsIgnored() {
+        RouteRule invalid = new RouteRule();
+        invalid.setPattern("/a/**/b");
+
+        appender.addRouteRule(invalid);
+
+        assertThat(appender.getRouteRules()).isEmpty();
+        assertThat(appender.matchRouteRule("GET", "/a/x/b")).isNull();
+    }
+
+    @Test
+    void testRouteRulesFromLogbackConfiguration() throws Exception {
+        String xml = """
+                <configuration>
+                    <appender name="CONDITIONAL_BUFFER" class="com.mork.cookie.logback.ConditionalBufferAppender">
+                        <turboFilterEnabled>false</turboFilterEnabled>
+                        <encoder class="ch.qos.logback.classic.encoder.PatternLayoutEncoder">
+                            <pattern>%msg%n</pattern>
+                        </encoder>
+                        <routeRule>
+                            <pattern>/actuator/**</pattern>
+                            <buffering>false</buffering>
+                        </routeRule>
+                        <routeRule>
+                            <pattern>POST /imports/*</pattern>
+                            <maxBufferSize>20000</maxBufferSize>
+                            <flushPolicy>ERRORS_ONLY</flushPolicy>
+                        </routeRule>
+                    </appender>
+                    <root level="DEBUG">
+                        <appender-ref ref="CONDITIONAL_BUFFER"/>
+                    </root>
+                </configuration>
+                """;
+        LoggerContext context = new LoggerContext();
+        context.setMDCAdapter(MDC.getMDCAdapter());
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        ConditionalBufferAppender configured = (ConditionalBufferAppender) context.getLogger(Logger.ROOT_LOGGER_NAME)
+                .getAppender("CONDITIONAL_BUFFER");
+        try {
+            assertFalse(configured.matchRouteRule("GET", "/actuator/health").isBuffering());
+            RouteRule imports = configured.matchRouteRule("POST", "/imports/42");
+            assertEquals(20000, imports.getMaxBufferSize());
+            assertEquals(RouteRule.FlushPolicy.ERRORS_ONLY, imports.getFlushPolicy());
+            assertThat(configured.matchRouteRule("GET", "/imports/42")).isNull();
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Test
+    void testDegradedModeUnderHeapPressure() throws Exception {
+        appender.stop();
+        AtomicReference<Double> occupancy = new AtomicReference<>(0.5);
+        appender.setHeapPressureEnabled(true);
+        appender.setHeapPressureProbe(occupancy::get);
+        appender.setDegradedMaxBufferSize(3);
+        appender.setEvictLargestBuffers(1);
+        appender.setDumpEvictedBuffers(true);
+        appender.start();
+        HeapPressureMonitor monitor = appender.getHeapPressureMonitor();
+
+        RequestLoggingContext.setRequestId("large-request");
+        for (int i = 0; i < 10; i++) {
+            appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Large " + i, null, null));
+        }
+        RequestLoggingContext.setRequestId("small-request");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Small", null, null));
+
+        occupancy.set(0.9);
+        monitor.poll();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (monitor.getEvictedBuffers() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(monitor.isDegraded());
+        assertEquals(1, monitor.getEvictedBuffers());
+        assertThat(appender.getRequestBuffers()).containsOnlyKeys("small-request");
+        assertThat(outputStream.toString()).contains("HEAP PRESSURE - Dumping 10 logs for request: large-request", "Large 9");
+
+        // Below WARN nothing is buffered, and requests are capped at degradedMaxBufferSize
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Dropped", null, null));
+        for (int i = 0; i < 5; i++) {
+            appender.append(new LoggingEvent("test.class", logger, Level.WARN, "Warning " + i, null, null));
+        }
+        assertEquals(3, appender.getRequestBuffers().get("small-request").size());
+        assertEquals(1, monitor.getDroppedEvents());
+
+        occupancy.set(0.6);
+        monitor.poll();
+        assertFalse(monitor.isDegraded());
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Buffered again", null, null));
+        assertEquals(4, appender.getRequestBuffers().get("small-request").size());
+        assertThat(loggerContext.getStatusManager().getCopyOfStatusList()).extracting(status -> status.getMessage())
+                .anyMatch(message -> message.contains("entering degraded mode"))
+                .anyMatch(message -> message.contains("leaving degraded mode"));
+    }
+
+    @Test
+    void testStopDrainsInFlightRequests() {
+        RequestLoggingContext.setRequestId("failed-request");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug before failure", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.ERROR, "Failure", null, null));
+        RequestLoggingContext.setRequestId("running-request");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Debug of running request", null, null));
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info of running request", null, null));
+
+        appender.stop();
+
+        assertThat(appender.getRequestBuffers()).isEmpty();
+        assertThat(outputStream.toString())
+                .contains("REQUEST COMPLETED WITH ERROR - Flushing 2 logs for request: failed-request", "Debug before failure")
+                .contains("REQUEST CHECKPOINT - Showing 1 INFO logs for request: running-request", "Info of running request")
+                .doesNotContain("Debug of running request");
+        assertThat(loggerContext.getStatusManager().getCopyOfStatusList()).extracting(status -> status.getMessage())
+                .anyMatch(message -> message.startsWith("Drained 2 in-flight request buffers"));
+    }
+
+    @Test
+    void testDrainGivesUpAfterTimeout() {
+        appender.stop();
+        ConditionalBufferAppender slow = new ConditionalBufferAppender();
+        slow.setContext(loggerContext);
+        slow.setDrainTimeoutMillis(100);
+        ListAppender<ILoggingEvent> target = new ListAppender<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        target.setContext(loggerContext);
+        target.start();
+        slow.addAppender(target);
+        slow.start();
+        for (int i = 0; i < 2 * Runtime.getRuntime().availableProcessors(); i++) {
+            RequestLoggingContext.setRequestId("request-" + i);
+            slow.append(new LoggingEvent("test.class", logger, Level.INFO, "Info " + i, null, null));
+        }
+
+        long start = System.nanoTime();
+        slow.stop();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5000);
+        assertThat(slow.getRequestBuffers()).isEmpty();
+        assertThat(loggerContext.getStatusManager().getCopyOfStatusList()).extracting(status -> status.getMessage())
+                .anyMatch(message -> message.startsWith("Drained 0 of ") && message.endsWith("dropped the rest"));
+    }
+
+    @Test
+    void testStopSharesOneBudgetAndStopsOutputsAfterStragglers() throws Exception {
+        appender.stop();
+        ConditionalBufferAppender slow = new ConditionalBufferAppender();
+        slow.setContext(loggerContext);
+        slow.setDrainTimeoutMillis(300);
+        CountDownLatch release = new CountDownLatch(1);
+        ListAppender<ILoggingEvent> target = new ListAppender<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                // Ignores interrupts, like a write blocked in I/O
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                super.append(event);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        target.setContext(loggerContext);
+        target.start();
+        slow.addAppender(target);
+        slow.start();
+        RequestLoggingContext.setRequestId("queued-request");
+        slow.append(new LoggingEvent("test.class", logger, Level.ERROR, "Queued", null, null));
+        slow.flushRequestLogsIfErrorAsync("queued-request");
+        RequestLoggingContext.clear();
+        RequestLoggingContext.setRequestId("running-request");
+        slow.append(new LoggingEvent("test.class", logger, Level.INFO, "Running", null, null));
+
+        long start = System.nanoTime();
+        slow.stop();
+
+        // The queued flush and the drain share the 300 ms instead of taking 300 ms each
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(550);
+        assertTrue(target.isStarted());
+
+        release.countDown();
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (target.isStarted() && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertFalse(target.isStarted());
+        assertThat(target.list).extracting(ILoggingEvent::getFormattedMessage).contains("Queued");
+    }
+
+    @Test
+    void testFullWriterQueueWritesOnCallingThread() throws Exception {
+        appender.stop();
+        ConditionalBufferAppender slow = new ConditionalBufferAppender();
+        slow.setContext(loggerContext);
+        slow.setFlushQueueSize(2);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        // Unsynchronized, so that the calling thread is not held up by the writer thread's append
+        UnsynchronizedAppenderBase<ILoggingEvent> target = new UnsynchronizedAppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                // Only the writer thread is slow
+                if (Thread.currentThread().getName().equals("ConditionalBufferAppender-Writer")) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                written.add(event.getFormattedMessage());
+            }
+        };
+        target.setContext(loggerContext);
+        target.start();
+        slow.addAppender(target);
+        slow.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                RequestLoggingContext.setRequestId("storm-" + i);
+                slow.append(new LoggingEvent("test.class", logger, Level.ERROR, "Error " + i, null, null));
+                slow.flushRequestLogsIfErrorAsync("storm-" + i);
+                RequestLoggingContext.clear();
+                if (i == 0) {
+                    assertTrue(writing.await(5, TimeUnit.SECONDS));
+                }
+            }
+
+            // One request on the writer, two queued, the last two written by the caller
+            assertEquals(2, slow.getInlineFlushCount());
+            assertThat(written).containsExactly("Error 3", "Error 4");
+        } finally {
+            release.countDown();
+            slow.stop();
+        }
+        assertThat(written).containsExactlyInAnyOrder("Error 0", "Error 1", "Error 2", "Error 3", "Error 4");
+    }
+
+    @Test
+    void testReconfigurationHandsBuffersToReplacement() {
+        RequestLoggingContext.setRequestId("handed-over");
+        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Before reconfiguration", null, null));
+
+        loggerContext.fireConfigurationEvent(ConfigurationEvent.newConfigurationChangeDetectedEvent(this));
+        appender.stop();
+        assertThat(outputStream.toString()).isEmpty();
+
+        ConditionalBufferAppender replacement = new ConditionalBufferAppender();
+        replacement.setContext(loggerContext);
+        replacement.setName("TEST_APPENDER");
+        replacement.setEncoder(appender.getEncoder());
+        replacement.start();
+        loggerContext.fireConfigurationEvent(ConfigurationEvent.newConfigurationEndedEvent(this));
+        try {
+            assertThat(appender.getRequestBuffers()).isEmpty();
+            assertThat(replacement.getRequestBuffers()).containsOnlyKeys("handed-over");
+
+            replacement.append(new LoggingEvent("test.class", logger, Level.ERROR, "After reconfiguration", null, null));
+            // The filter still holds the old instance, which forwards to the replacement
+            appender.flushRequestLogsIfError("handed-over");
+
+            assertThat(replacement.getRequestBuffers()).isEmpty();
+            assertThat(outputStream.toString())
+                    .contains("REQUEST COMPLETED WITH ERROR - Flushing 2 logs for request: handed-over")
+                    .contains("Before reconfiguration", "After reconfiguration");
+        } finally {
+            replacement.stop();
+        }
+    }
+
+    @Test
+    void testReconfigurationWithoutReplacementDrainsParkedBuffers() {
+        RequestLoggingContext.setRequestId("removed-appender");
+        appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info message", null, null));
+
+        loggerContext.fireConfigurationEvent(ConfigurationEvent.newConfigurationChangeDetectedEvent(this));
+        appender.stop();
+        assertThat(appender.getRequestBuffers()).hasSize(1);
+
+        loggerContext.fireConfigurationEvent(ConfigurationEvent.newConfigurationEndedEvent(this));
+
+        assertThat(appender.getRequestBuffers()).isEmpty();
+        assertThat(outputStream.toString()).contains("REQUEST CHECKPOINT - Showing 1 INFO logs for request: removed-appender");
+    }
+
+    @Test
+    void testShardCountIsRoundedUpToPowerOfTwo() {
+        ConditionalBufferAppender sharded = new ConditionalBufferAppender();
+        sharded.setShardCount(5);
+        assertEquals(8, sharded.getShardCount());
+        sharded.setShardCount(0);
+        assertEquals(1, sharded.getShardCount());
+        sharded.setShardCount(100_000);
+        assertEquals(1024, sharded.getShardCount());
+    }
+
+    @Test
+    void testRequestBuffersViewSpansAllShards() {
+        for (int i = 0; i < 100; i++) {
+            RequestLoggingContext.setRequestId("request-" + i);
+            appender.append(new LoggingEvent("test.class", logger, Level.INFO, "Info " + i, null, null));
+        }
+
+        Map<String, ConditionalBufferAppender.RequestLogBuffer> buffers = appender.getRequestBuffers();
+        assertThat(buffers).hasSize(100).containsKeys("request-0", "request-99");
+        assertThat(buffers.get("request-42").getEvents()).hasSize(1);
+        assertThat(buffers.keySet()).doesNotHaveDuplicates();
+
+        appender.flushRequestLogsIfError("request-42");
+        assertThat(buffers).hasSize(99).doesNotContainKey("request-42");
+    }
+
+    @Test
+    void testConcurrentFlushesDoNotInterleave() throws Exception {
+        int requests = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int r = 0; r < requests; r++) {
+                String requestId = "parallel-" + r;
+                futures.add(pool.submit(() -> {
+                    RequestLoggingContext.setRequestId(requestId);
+                    for (int i = 0; i < 50; i++) {
+                        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, requestId + " line", null, null));
+                    }
+                    appender.append(new LoggingEvent("test.class", logger, Level.ERROR, requestId + " line", null, null));
+                    appender.flushRequestLogsIfError(requestId);
+                    RequestLoggingContext.clear();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Each request's banner is followed by its own 51 lines, nobody else's
+        String[] lines = outputStream.toString().split("\\R");
+        int checked = 0;
+        for (int i = 0; i < lines.length; i++) {
+            Matcher banner = Pattern.compile("Flushing 51 logs for request: (parallel-\\d+)").matcher(lines[i]);
+            if (banner.find()) {
+                String requestId = banner.group(1);
+                for (int j = 1; j <= 51; j++) {
+                    assertThat(lines[i + j]).contains(requestId + " line");
+                }
+                checked++;
+            }
+        }
+        assertEquals(requests, checked);
+        assertThat(appender.getRequestBuffers()).isEmpty();
+    }
+}
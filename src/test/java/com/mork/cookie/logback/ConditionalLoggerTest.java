@@ -1,14 +1,21 @@
 package com.mork.cookie.logback;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ConditionalLoggerTest {
 
@@ -222,4 +229,116 @@ class ConditionalLoggerTest {
         // Should not throw exceptions
         assertNotNull(conditionalLogger.getLogger());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testTraceMethods() {
+        conditionalLogger.trace("Trace message");
+        conditionalLogger.trace("Trace message with param: {}", "param1");
+        conditionalLogger.trace("Trace message with params: {} and {}", "param1", "param2");
+        conditionalLogger.trace("Trace message with varargs: {}, {}, {}", "arg1", "arg2", "arg3");
+        conditionalLogger.trace("Trace with throwable", new RuntimeException("Test exception"));
+
+        assertNotNull(conditionalLogger.getLogger());
+    }
+
+    @Test
+    void testFixedArityOverloadsAndThrowableArgument() {
+        ListAppender<ILoggingEvent> listAppender = attachListAppender("test.fixed.arity");
+        ConditionalLogger fixedLogger = new ConditionalLogger("test.fixed.arity");
+        RuntimeException exception = new RuntimeException("Test exception");
+
+        fixedLogger.info("One: {}", "a");
+        fixedLogger.warn("Two: {} {}", "a", "b");
+        fixedLogger.error("Failed for {}", "user-1", exception);
+
+        assertThat(listAppender.list).extracting(ILoggingEvent::getFormattedMessage)
+                .containsExactly("One: a", "Two: a b", "Failed for user-1");
+        // A trailing Throwable is treated as the exception of the event
+        assertThat(listAppender.list.get(2).getThrowableProxy().getMessage()).isEqualTo("Test exception");
+    }
+
+    @Test
+    void testLevelGuards() {
+        ListAppender<ILoggingEvent> listAppender = attachListAppender("test.level.guards");
+        ch.qos.logback.classic.Logger logbackLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("test.level.guards");
+        ConditionalLogger guardedLogger = new ConditionalLogger("test.level.guards");
+
+        logbackLogger.setLevel(Level.INFO);
+
+        assertFalse(guardedLogger.isTraceEnabled());
+        assertFalse(guardedLogger.isDebugEnabled());
+        assertTrue(guardedLogger.isInfoEnabled());
+        assertTrue(guardedLogger.isWarnEnabled());
+        assertTrue(guardedLogger.isErrorEnabled());
+        assertThat(listAppender.list).isEmpty();
+    }
+
+    @Test
+    void testSupplierArgumentsAreEvaluatedOnlyWhenRendered() {
+        ListAppender<ILoggingEvent> listAppender = attachListAppender("test.lazy.args");
+        ConditionalLogger lazyLogger = new ConditionalLogger("test.lazy.args");
+        AtomicInteger calls = new AtomicInteger();
+
+        lazyLogger.debugLazy("Lazy: {}", () -> "value-" + calls.incrementAndGet());
+        lazyLogger.infoLazy("Lazy: {} {}", () -> "a" + calls.incrementAndGet(), () -> "b" + calls.incrementAndGet());
+
+        // Nothing was computed while logging
+        assertEquals(0, calls.get());
+        assertThat(listAppender.list).hasSize(2);
+
+        assertEquals("Lazy: value-1", listAppender.list.get(0).getFormattedMessage());
+        assertEquals("Lazy: a2 b3", listAppender.list.get(1).getFormattedMessage());
+
+        // Rendering again does not call the suppliers a second time
+        assertEquals("Lazy: value-1", listAppender.list.get(0).getFormattedMessage());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testSupplierArgumentsSkippedWhenLevelDisabled() {
+        ch.qos.logback.classic.Logger logbackLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("test.lazy.disabled");
+        logbackLogger.setLevel(Level.WARN);
+        ConditionalLogger lazyLogger = new ConditionalLogger("test.lazy.disabled");
+        AtomicInteger calls = new AtomicInteger();
+
+        lazyLogger.debugLazy("Lazy: {}", () -> calls.incrementAndGet());
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void testNullArgumentIsNotAmbiguous() {
+        ListAppender<ILoggingEvent> listAppender = attachListAppender("test.null.arg");
+        ConditionalLogger nullLogger = new ConditionalLogger("test.null.arg");
+
+        // The varargs overload with a null array, and two nulls that must not be ambiguous
+        nullLogger.debug("Value {}", (Object[]) null);
+        nullLogger.info("Values {} {}", null, null);
+
+        assertThat(listAppender.list).extracting(ILoggingEvent::getFormattedMessage)
+                .containsExactly("Value {}", "Values null null");
+    }
+
+    @Test
+    void testFluentApi() {
+        ListAppender<ILoggingEvent> listAppender = attachListAppender("test.fluent");
+        ConditionalLogger fluentLogger = new ConditionalLogger("test.fluent");
+
+        fluentLogger.atInfo().setMessage("Fluent {}").addArgument("message").log();
+        fluentLogger.atLevel(org.slf4j.event.Level.WARN).log("Fluent warn");
+
+        assertThat(listAppender.list).extracting(ILoggingEvent::getFormattedMessage)
+                .containsExactly("Fluent message", "Fluent warn");
+    }
+
+    private ListAppender<ILoggingEvent> attachListAppender(String loggerName) {
+        ch.qos.logback.classic.Logger logbackLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(loggerName);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.setContext(logbackLogger.getLoggerContext());
+        listAppender.start();
+        logbackLogger.addAppender(listAppender);
+        logbackLogger.setAdditive(false);
+        logbackLogger.setLevel(Level.DEBUG);
+        return listAppender;
+    }
+}
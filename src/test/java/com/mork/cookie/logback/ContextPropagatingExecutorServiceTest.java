@@ -0,0 +1,85 @@
+package com.mork.cookie.logback;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPropagatingExecutorServiceTest {
+
+    private ContextPropagatingExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        RequestLoggingContext.clear();
+        executor = new ContextPropagatingExecutorService(Executors.newFixedThreadPool(2));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        RequestLoggingContext.clear();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmitPropagatesContext() throws Exception {
+        RequestLoggingContext.setRequestId("submit-request");
+
+        Future<String> callable = executor.submit(RequestLoggingContext::getRequestId);
+        AtomicReference<String> seen = new AtomicReference<>();
+        executor.submit(() -> seen.set(RequestLoggingContext.getRequestId())).get(5, TimeUnit.SECONDS);
+
+        assertThat(callable.get(5, TimeUnit.SECONDS)).isEqualTo("submit-request");
+        assertThat(seen.get()).isEqualTo("submit-request");
+    }
+
+    @Test
+    void testInvokeAllPropagatesContext() throws Exception {
+        RequestLoggingContext.setRequestId("invoke-request");
+        Callable<String> task = RequestLoggingContext::getRequestId;
+
+        List<Future<String>> futures = executor.invokeAll(List.of(task, task, task));
+
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("invoke-request");
+        }
+        assertThat(executor.invokeAny(List.of(task))).isEqualTo("invoke-request");
+    }
+
+    @Test
+    void testCompletableFutureWithExecutorPropagatesContext() {
+        RequestLoggingContext.setRequestId("future-request");
+
+        String seen = CompletableFuture.supplyAsync(RequestLoggingContext::getRequestId, executor).join();
+
+        assertThat(seen).isEqualTo("future-request");
+    }
+
+    @Test
+    void testTasksWithoutContextRunWithoutContext() throws Exception {
+        assertThat(executor.submit(RequestLoggingContext::getRequestId).get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    void testExecutorWrapperPropagatesContext() {
+        RequestLoggingContext.setRequestId("executor-request");
+        ContextPropagatingExecutor commonPool = new ContextPropagatingExecutor(ForkJoinPool.commonPool());
+        AtomicReference<String> seen = new AtomicReference<>();
+
+        CompletableFuture.runAsync(() -> seen.set(RequestLoggingContext.getRequestId()), commonPool).join();
+
+        assertThat(seen.get()).isEqualTo("executor-request");
+    }
+}
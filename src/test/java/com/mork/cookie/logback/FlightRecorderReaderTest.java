@@ -0,0 +1,84 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FlightRecorderReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private PrintStream originalOut;
+    private ByteArrayOutputStream outputStream;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        LoggerContext loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        Logger logger = loggerContext.getLogger("com.example.OrderService");
+        file = tempDir.resolve("flight.rec");
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        recorder.record("req-1", new LoggingEvent("fqcn", logger, Level.DEBUG, "Loading order 42", null, null));
+        recorder.record("req-2", new LoggingEvent("fqcn", logger, Level.INFO, "Order 7 shipped", null, null));
+        recorder.record("req-1", new LoggingEvent("fqcn", logger, Level.INFO, "Order 42 paid", null, null));
+        recorder.close();
+
+        originalOut = System.out;
+        outputStream = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputStream, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Test
+    void testExtractsOneRequest() throws Exception {
+        FlightRecorderReader.main(new String[]{"--request", "req-1", "--pattern", "%-5level %msg%n", file.toString()});
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output).contains(
+                "=== FLIGHT RECORDER - 2 logs for request: req-1 ===",
+                "DEBUG Loading order 42",
+                "INFO  Order 42 paid",
+                "=== End of flight recorder logs for: req-1 ===");
+        assertThat(output).doesNotContain("Order 7 shipped");
+    }
+
+    @Test
+    void testListsRequests() throws Exception {
+        FlightRecorderReader.main(new String[]{"--list", file.toString()});
+
+        assertThat(outputStream.toString(StandardCharsets.UTF_8).lines())
+                .hasSize(2)
+                .anySatisfy(line -> assertThat(line).startsWith("req-1\t2 events\t"))
+                .anySatisfy(line -> assertThat(line).startsWith("req-2\t1 events\t"));
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws Exception {
+        Path other = tempDir.resolve("other.log");
+        Files.writeString(other, "plain text log file, long enough to hold a header...............");
+
+        assertThrows(IOException.class, () -> FlightRecorderReader.read(other));
+    }
+}
@@ -0,0 +1,162 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.MDC;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Logger logger;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        LoggerContext loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("com.example.OrderService");
+        file = tempDir.resolve("recorder/flight.rec");
+    }
+
+    @Test
+    void testRecordsSurviveWithoutClose() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        LoggingEvent event = event(Level.DEBUG, "Loading order {}", 42);
+        event.setTimeStamp(1_700_000_000_123L);
+        recorder.record("req-1", event);
+        recorder.record("req-2", new LoggingEvent("fqcn", logger, Level.ERROR, "Failed", new IllegalStateException("boom"), null));
+
+        // Read while the recorder is still open, as after a crash
+        List<FlightRecorderReader.Entry> entries = FlightRecorderReader.read(file);
+
+        assertEquals(2, entries.size());
+        FlightRecorderReader.Entry first = entries.get(0);
+        assertEquals("req-1", first.requestId());
+        assertEquals(1_700_000_000_123L, first.event().getTimeStamp());
+        assertEquals(Level.DEBUG, first.event().getLevel());
+        assertEquals("com.example.OrderService", first.event().getLoggerName());
+        assertEquals("Loading order 42", first.event().getFormattedMessage());
+        assertEquals("java.lang.IllegalStateException", entries.get(1).event().getThrowableProxy().getClassName());
+        assertEquals(2, recorder.getRecordedEvents());
+    }
+
+    @Test
+    void testRingKeepsMostRecentEvents() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        for (int i = 0; i < 5000; i++) {
+            recorder.record("req-" + (i / 10), event(Level.DEBUG, "Step {} of a long running batch job", i));
+        }
+
+        List<FlightRecorderReader.Entry> entries = FlightRecorderReader.read(file);
+
+        assertThat(entries.size()).isBetween(500, 4999);
+        assertEquals("Step 4999 of a long running batch job", entries.get(entries.size() - 1).event().getFormattedMessage());
+        // Oldest first, without gaps
+        for (int i = 1; i < entries.size(); i++) {
+            assertEquals(entries.get(i - 1).sequence() + 1, entries.get(i).sequence());
+        }
+        assertEquals(5000 - entries.size(), entries.get(0).sequence());
+    }
+
+    @Test
+    void testReopeningContinuesTheRing() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        recorder.record("req-1", event(Level.INFO, "Before restart"));
+        recorder.close();
+
+        FlightRecorder reopened = FlightRecorder.open(file, 64 * 1024);
+        reopened.record("req-2", event(Level.INFO, "After restart"));
+
+        List<FlightRecorderReader.Entry> entries = FlightRecorderReader.read(file);
+        assertThat(entries).extracting(entry -> entry.event().getFormattedMessage()).containsExactly("Before restart", "After restart");
+        assertEquals(1, entries.get(1).sequence());
+    }
+
+    @Test
+    void testReopeningWithOtherSizeStartsOver() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        recorder.record("req-1", event(Level.INFO, "Old"));
+        recorder.close();
+
+        FlightRecorder.open(file, 128 * 1024).record("req-2", event(Level.INFO, "New"));
+
+        assertThat(FlightRecorderReader.read(file)).extracting(FlightRecorderReader.Entry::requestId).containsExactly("req-2");
+    }
+
+    @Test
+    void testCorruptRecordIsSkipped() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        recorder.record("req-1", event(Level.INFO, "First"));
+        recorder.record("req-2", event(Level.INFO, "Second"));
+        recorder.close();
+
+        // Damage the payload of the first record, as a write cut short by a crash would
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF}), FlightRecorder.HEADER_SIZE + FlightRecorder.RECORD_HEADER_SIZE + 2);
+        }
+
+        assertThat(FlightRecorderReader.read(file)).extracting(FlightRecorderReader.Entry::requestId).containsExactly("req-2");
+    }
+
+    @Test
+    void testOversizedEventsAreDropped() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 64 * 1024);
+        recorder.record("req-1", event(Level.INFO, "x".repeat(20_000)));
+
+        assertEquals(1, recorder.getDroppedEvents());
+        assertThat(FlightRecorderReader.read(file)).isEmpty();
+    }
+
+    @Test
+    void testConcurrentRecording() throws Exception {
+        FlightRecorder recorder = FlightRecorder.open(file, 1024 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String requestId = "req-" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        recorder.record(requestId, event(Level.DEBUG, "Event {}", i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<FlightRecorderReader.Entry> entries = FlightRecorderReader.read(file);
+        assertEquals(4000, entries.size());
+        assertThat(FlightRecorderReader.byRequest(entries).values()).allSatisfy(events -> assertEquals(1000, events.size()));
+        assertTrue(Files.size(file) > 1024 * 1024);
+    }
+
+    private LoggingEvent event(Level level, String message, Object... args) {
+        return new LoggingEvent("fqcn", logger, level, message, null, args.length == 0 ? null : args);
+    }
+}
@@ -0,0 +1,171 @@
+package com.mork.cookie.logback;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.Notification;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeapPressureMonitorTest {
+
+    private final List<String> changes = new ArrayList<>();
+    private final HeapPressureMonitor.Listener listener = new HeapPressureMonitor.Listener() {
+        @Override
+        public void degraded(String reason) {
+            changes.add("degraded: " + reason);
+        }
+
+        @Override
+        public void recovered(String reason) {
+            changes.add("recovered: " + reason);
+        }
+    };
+
+    @Test
+    void testRecoversWithHysteresis() {
+        AtomicReference<Double> occupancy = new AtomicReference<>(0.5);
+        HeapPressureMonitor monitor = new HeapPressureMonitor(85, 70, listener, occupancy::get);
+
+        monitor.poll();
+        assertFalse(monitor.isDegraded());
+
+        occupancy.set(0.9);
+        monitor.poll();
+        assertTrue(monitor.isDegraded());
+
+        // Between the two thresholds the mode stays as it is
+        occupancy.set(0.8);
+        monitor.poll();
+        assertTrue(monitor.isDegraded());
+
+        occupancy.set(0.6);
+        monitor.poll();
+        assertFalse(monitor.isDegraded());
+        occupancy.set(0.8);
+        monitor.poll();
+        assertFalse(monitor.isDegraded());
+
+        assertThat(changes).containsExactly("degraded: heap at 90%", "recovered: heap at 60%");
+        assertEquals(1, monitor.getDegradations());
+        assertEquals(1, monitor.getRecoveries());
+    }
+
+    @Test
+    void testThresholdNotificationDegradesOnce() {
+        HeapPressureMonitor monitor = new HeapPressureMonitor(85, 70, listener, () -> 0.9);
+        Notification notification = new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, this, 1);
+
+        monitor.handleNotification(notification, null);
+        monitor.handleNotification(notification, null);
+        monitor.handleNotification(new Notification("other.type", this, 2), null);
+
+        assertTrue(monitor.isDegraded());
+        assertEquals(1, monitor.getDegradations());
+        assertThat(changes).containsExactly("degraded: heap threshold exceeded");
+    }
+
+    @Test
+    void testStartSetsAndStopResetsPoolThresholds() {
+        HeapPressureMonitor monitor = new HeapPressureMonitor(95, 70, listener);
+        monitor.start();
+        try {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getUsage().getMax() > 0 && pool.isCollectionUsageThresholdSupported()) {
+                    assertThat(pool.getCollectionUsageThreshold()).isEqualTo((long) (pool.getUsage().getMax() * 0.95));
+                }
+            }
+        } finally {
+            monitor.stop();
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                assertEquals(0, pool.getCollectionUsageThreshold());
+            }
+        }
+        assertFalse(monitor.isDegraded());
+    }
+
+    @Test
+    void testThresholdsAreSharedAndRestored() {
+        MemoryPoolMXBean pool = collectionThresholdPool();
+        long max = pool.getUsage().getMax();
+        long original = pool.getCollectionUsageThreshold();
+        // Set by someone else before the monitors start
+        pool.setCollectionUsageThreshold((long) (max * 0.99));
+        HeapPressureMonitor first = new HeapPressureMonitor(95, 70, listener);
+        HeapPressureMonitor second = new HeapPressureMonitor(90, 70, listener);
+        try {
+            first.start();
+            assertEquals((long) (max * 0.95), pool.getCollectionUsageThreshold());
+            second.start();
+            assertEquals((long) (max * 0.90), pool.getCollectionUsageThreshold());
+
+            // The first to stop leaves the other's threshold in place
+            first.stop();
+            assertEquals((long) (max * 0.90), pool.getCollectionUsageThreshold());
+            second.stop();
+            assertEquals((long) (max * 0.99), pool.getCollectionUsageThreshold());
+        } finally {
+            first.stop();
+            second.stop();
+            pool.setCollectionUsageThreshold(original);
+        }
+    }
+
+    @Test
+    void testIgnoresNotificationsOfOtherPoolsAndLowerThresholds() throws Exception {
+        MemoryPoolMXBean pool = collectionThresholdPool();
+        long max = pool.getUsage().getMax();
+        HeapPressureMonitor monitor = new HeapPressureMonitor(95, 70, listener);
+        monitor.start();
+        try {
+            monitor.handleNotification(thresholdNotification("Unmonitored Pool", max, max), null);
+            // Crossing a lower threshold wanted by another monitor
+            monitor.handleNotification(thresholdNotification(pool.getName(), (long) (max * 0.9), max), null);
+            assertFalse(monitor.isDegraded());
+
+            monitor.handleNotification(thresholdNotification(pool.getName(), (long) (max * 0.96), max), null);
+            assertTrue(monitor.isDegraded());
+        } finally {
+            monitor.stop();
+        }
+    }
+
+    private static MemoryPoolMXBean collectionThresholdPool() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getUsage().getMax() > 0
+                        && pool.isCollectionUsageThresholdSupported())
+                .findFirst()
+                .orElseThrow();
+    }
+
+    // The notification the JVM sends, with the MemoryNotificationInfo as composite data
+    private Notification thresholdNotification(String poolName, long used, long max) throws Exception {
+        CompositeData usage = (CompositeData) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(ManagementFactory.getMemoryPoolMXBeans().get(0).getObjectName(), "Usage");
+        CompositeData usageData = new CompositeDataSupport(usage.getCompositeType(),
+                new String[]{"init", "used", "committed", "max"}, new Object[]{0L, used, max, max});
+        CompositeType type = new CompositeType(MemoryNotificationInfo.class.getName(), "Memory notification",
+                new String[]{"poolName", "usage", "count"}, new String[]{"poolName", "usage", "count"},
+                new OpenType<?>[]{SimpleType.STRING, usage.getCompositeType(), SimpleType.LONG});
+        Notification notification = new Notification(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED, this, 1);
+        notification.setUserData(new CompositeDataSupport(type, new String[]{"poolName", "usage", "count"},
+                new Object[]{poolName, usageData, 1L}));
+        return notification;
+    }
+}
@@ -0,0 +1,130 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.slf4j.MarkerFactory;
+import org.slf4j.event.KeyValuePair;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonRequestLogWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private JsonRequestLogWriter writer;
+    private ByteArrayOutputStream outputStream;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("com.example.Service");
+        outputStream = new ByteArrayOutputStream();
+        writer = new JsonRequestLogWriter();
+        writer.setContext(loggerContext);
+        writer.setOutputStream(outputStream);
+        writer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void testWritesRequestAsSingleJsonLine() throws Exception {
+        MDC.put("user", "alice");
+        LoggingEvent debug = new LoggingEvent("fqcn", logger, Level.DEBUG, "Loaded {} rows", null, new Object[]{3});
+        debug.setTimeStamp(1_000L);
+        LoggingEvent error = new LoggingEvent("fqcn", logger, Level.ERROR, "Failed", new IllegalStateException("boom"), null);
+        error.setTimeStamp(1_005L);
+        error.addMarker(MarkerFactory.getMarker("AUDIT"));
+        error.addKeyValuePair(new KeyValuePair("orderId", 42));
+
+        writer.write(new RequestLog("req-1", RequestLog.Outcome.ERROR, 990L, 1_010L, 2, List.of(debug, error)));
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output).endsWith("\n");
+        assertThat(output.indexOf('\n')).isEqualTo(output.length() - 1);
+
+        JsonNode json = objectMapper.readTree(output);
+        assertEquals("req-1", json.get("requestId").asText());
+        assertEquals("ERROR", json.get("outcome").asText());
+        assertEquals(990L, json.get("startTime").asLong());
+        assertEquals(20L, json.get("durationMs").asLong());
+        assertEquals(2, json.get("bufferedEvents").asInt());
+        assertEquals(2, json.get("writtenEvents").asInt());
+
+        JsonNode first = json.get("events").get(0);
+        assertEquals(1_000L, first.get("timestamp").asLong());
+        assertEquals("DEBUG", first.get("level").asText());
+        assertEquals("com.example.Service", first.get("logger").asText());
+        assertEquals(Thread.currentThread().getName(), first.get("thread").asText());
+        assertEquals("Loaded 3 rows", first.get("message").asText());
+        assertEquals("alice", first.get("mdc").get("user").asText());
+        assertThat(first.has("stackTrace")).isFalse();
+
+        JsonNode second = json.get("events").get(1);
+        assertEquals("AUDIT", second.get("markers").get(0).asText());
+        assertEquals("42", second.get("keyValuePairs").get("orderId").asText());
+        assertThat(second.get("stackTrace").asText()).startsWith("java.lang.IllegalStateException: boom");
+    }
+
+    @Test
+    void testEscapesStringsAndHandlesNulls() throws Exception {
+        String message = "quote \" backslash \\ newline \n tab \t control \u0001 unicode é 😀";
+        LoggingEvent event = new LoggingEvent("fqcn", logger, Level.INFO, message, null, null);
+        LoggingEvent nullMessage = new LoggingEvent("fqcn", logger, Level.INFO, null, null, null);
+
+        writer.write(new RequestLog(null, RequestLog.Outcome.SUCCESS, 0L, 0L, 2, List.of(event, nullMessage)));
+
+        String output = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(output.indexOf('\n')).isEqualTo(output.length() - 1);
+        JsonNode json = objectMapper.readTree(output);
+        assertTrue(json.get("requestId").isNull());
+        assertEquals(message, json.get("events").get(0).get("message").asText());
+        assertTrue(json.get("events").get(1).get("message").isNull());
+    }
+
+    @Test
+    void testWritesNamesOfBufferedSnapshots() throws Exception {
+        SymbolTable symbols = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+        LoggingEvent plain = new LoggingEvent("fqcn", logger, Level.INFO, "Plain", null, null);
+        plain.setThreadName("worker-é-1");
+        LoggingEvent quoted = new LoggingEvent("fqcn", logger, Level.INFO, "Quoted", null, null);
+        quoted.setThreadName("worker \"2\"");
+
+        writer.write(new RequestLog("req-3", RequestLog.Outcome.SUCCESS, 0L, 0L, 2, List.of(
+                BufferedLoggingEvent.of(plain, false, null, symbols), BufferedLoggingEvent.of(quoted, false, null, symbols))));
+
+        JsonNode events = objectMapper.readTree(outputStream.toString(StandardCharsets.UTF_8)).get("events");
+        assertEquals("worker-é-1", events.get(0).get("thread").asText());
+        assertEquals("com.example.Service", events.get(0).get("logger").asText());
+        assertEquals("worker \"2\"", events.get(1).get("thread").asText());
+    }
+
+    @Test
+    void testWritesEmptyEventArray() throws Exception {
+        writer.write(new RequestLog("req-2", RequestLog.Outcome.CHECKPOINT, 5L, 7L, 0, List.<ILoggingEvent>of()));
+
+        JsonNode json = objectMapper.readTree(outputStream.toString(StandardCharsets.UTF_8));
+        assertEquals("CHECKPOINT", json.get("outcome").asText());
+        assertThat(json.get("events")).isEmpty();
+    }
+}
@@ -0,0 +1,164 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EchoEncoder;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RequestContextTurboFilterTest {
+
+    private LoggerContext loggerContext;
+    private ConditionalBufferAppender appender;
+    private Logger rootLogger;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(Level.DEBUG);
+
+        appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.setName("CONDITIONAL_BUFFER");
+        EchoEncoder<ILoggingEvent> encoder = new EchoEncoder<>();
+        encoder.setContext(loggerContext);
+        appender.setEncoder(encoder);
+        appender.start();
+        rootLogger.addAppender(appender);
+
+        RequestLoggingContext.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+        RequestLoggingContext.clear();
+    }
+
+    @Test
+    void testFilterIsInstalledWithAppender() {
+        assertThat(loggerContext.getTurboFilterList()).contains(appender.getTurboFilter());
+
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        appender.stop();
+
+        assertThat(loggerContext.getTurboFilterList()).doesNotContain(filter);
+        assertNull(appender.getTurboFilter());
+    }
+
+    @Test
+    void testFilterNotInstalledWhenDisabled() {
+        ConditionalBufferAppender withoutFilter = new ConditionalBufferAppender();
+        withoutFilter.setContext(loggerContext);
+        withoutFilter.setEncoder(new EchoEncoder<>());
+        withoutFilter.setTurboFilterEnabled(false);
+        withoutFilter.start();
+
+        assertNull(withoutFilter.getTurboFilter());
+        assertThat(loggerContext.getTurboFilterList()).hasSize(1);
+        withoutFilter.stop();
+    }
+
+    @Test
+    void testDeniesSubErrorEventsOutsideRequest() {
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        Logger logger = loggerContext.getLogger("com.example.Service");
+
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.WARN, "msg", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.ERROR, "msg", null, null));
+    }
+
+    @Test
+    void testNeutralInsideRequest() {
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        Logger logger = loggerContext.getLogger("com.example.Service");
+        RequestLoggingContext.setRequestId("request-1");
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+    }
+
+    @Test
+    void testNeutralWhenLevelAlreadyDisabled() {
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        Logger logger = loggerContext.getLogger("com.example.Quiet");
+        logger.setLevel(Level.WARN);
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+    }
+
+    @Test
+    void testNeutralWhenOtherAppenderIsReachable() {
+        ListAppender<ILoggingEvent> other = new ListAppender<>();
+        other.setContext(loggerContext);
+        other.start();
+        Logger parent = loggerContext.getLogger("com.example");
+        parent.addAppender(other);
+
+        Logger logger = loggerContext.getLogger("com.example.Service");
+        logger.debug("Background work");
+
+        assertEquals(FilterReply.NEUTRAL, appender.getTurboFilter().decide(null, logger, Level.DEBUG, "msg", null, null));
+        assertThat(other.list).extracting(ILoggingEvent::getMessage).containsExactly("Background work");
+    }
+
+    @Test
+    void testNonAdditiveLoggerStopsAtOwnAppenders() {
+        ListAppender<ILoggingEvent> other = new ListAppender<>();
+        other.setContext(loggerContext);
+        other.start();
+        Logger logger = loggerContext.getLogger("com.example.Isolated");
+        logger.addAppender(other);
+        logger.setAdditive(false);
+
+        Logger child = loggerContext.getLogger("com.example.Isolated.Child");
+
+        assertEquals(FilterReply.NEUTRAL, appender.getTurboFilter().decide(null, child, Level.DEBUG, "msg", null, null));
+        assertThat(appender.getTurboFilter().feedsOnlyConditionalAppenders(loggerContext.getLogger("com.example.Other"))).isTrue();
+    }
+
+    @Test
+    void testCacheClearedOnReset() {
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        Logger logger = loggerContext.getLogger("com.example.Service");
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+
+        ListAppender<ILoggingEvent> other = new ListAppender<>();
+        other.setContext(loggerContext);
+        other.start();
+        logger.addAppender(other);
+        filter.onReset(loggerContext);
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+    }
+
+    @Test
+    void testAppenderAttachedAfterFirstDecisionTakesEffect() {
+        RequestContextTurboFilter filter = appender.getTurboFilter();
+        Logger logger = loggerContext.getLogger("com.example.Service");
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+
+        // Like a console appender added by a programmatic configurator after startup
+        ListAppender<ILoggingEvent> console = new ListAppender<>();
+        console.setContext(loggerContext);
+        console.start();
+        rootLogger.addAppender(console);
+        logger.debug("Background work");
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+        assertThat(console.list).extracting(ILoggingEvent::getMessage).containsExactly("Background work");
+
+        rootLogger.detachAppender(console);
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -13,6 +14,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -309,4 +311,113 @@ class RequestLoggingContextTest {
         // All should be unique
         assertThat(generatedIds).hasSize(numberOfIds);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCaptureWithoutContext() {
+        assertNull(RequestLoggingContext.capture());
+
+        Runnable task = () -> { };
+        assertThat(RequestLoggingContext.wrap(task)).isSameAs(task);
+    }
+
+    @Test
+    void testWrappedTaskRunsWithCapturedContext() throws Exception {
+        RequestLoggingContext.setRequestId("propagated-request");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            String seen = executor.submit(RequestLoggingContext.wrap(RequestLoggingContext::getRequestId)).get(5, TimeUnit.SECONDS);
+            assertThat(seen).isEqualTo("propagated-request");
+
+            // The worker thread gets its own (empty) context back afterwards
+            assertNull(executor.submit(RequestLoggingContext::getRequestId).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testErrorMarkedOnWorkerIsSharedWithRequestThread() throws Exception {
+        RequestLoggingContext.setRequestId("shared-error-request");
+
+        CompletableFuture.runAsync(RequestLoggingContext.wrap(RequestLoggingContext::markError)).get(5, TimeUnit.SECONDS);
+
+        assertTrue(RequestLoggingContext.hasError());
+    }
+
+    @Test
+    void testWrappedTaskRestoresContextOfCallingThread() {
+        RequestLoggingContext.setRequestId("inner-request");
+        RequestLoggingContext.Snapshot other = RequestLoggingContext.capture();
+        RequestLoggingContext.setRequestId("outer-request");
+
+        // A task run inline (caller-runs) sees the captured context, then the caller gets its own back
+        AtomicReference<String> seen = new AtomicReference<>();
+        Runnable task = () -> seen.set(RequestLoggingContext.getRequestId());
+        other.wrap(task).run();
+
+        assertThat(seen.get()).isEqualTo("inner-request");
+
+        assertThat(RequestLoggingContext.getRequestId()).isEqualTo("outer-request");
+        assertFalse(RequestLoggingContext.hasError());
+    }
+
+    @Test
+    void testWrapSupplierAndFunction() {
+        RequestLoggingContext.setRequestId("stream-request");
+
+        List<String> seen = List.of(1, 2, 3, 4).parallelStream()
+                .map(RequestLoggingContext.wrapFunction(i -> RequestLoggingContext.getRequestId()))
+                .toList();
+        String supplied = CompletableFuture.supplyAsync(RequestLoggingContext.wrapSupplier(RequestLoggingContext::getRequestId)).join();
+
+        assertThat(seen).containsOnly("stream-request");
+        assertThat(supplied).isEqualTo("stream-request");
+    }
+
+    @Test
+    void testRouteOfReplacesIdentifiers() {
+        assertThat(RequestLoggingContext.routeOf("GET", "/orders/42")).isEqualTo("GET /orders/{id}");
+        assertThat(RequestLoggingContext.routeOf("GET", "/users/3f2a9c1e-8d7b-4e6a-9f10-2b3c4d5e6f70/orders"))
+                .isEqualTo("GET /users/{id}/orders");
+        assertThat(RequestLoggingContext.routeOf("POST", "/api/v2/carts/9c1e8d7b/items/"))
+                .isEqualTo("POST /api/v2/carts/{id}/items/");
+        assertThat(RequestLoggingContext.routeOf("GET", "/files/report2023Q4a8x7bz9k1")).isEqualTo("GET /files/{id}");
+        assertThat(RequestLoggingContext.routeOf("GET", "/health")).isEqualTo("GET /health");
+        assertThat(RequestLoggingContext.routeOf(null, "/")).isEqualTo("/");
+        assertNull(RequestLoggingContext.routeOf("GET", null));
+    }
+
+    @Test
+    void testRouteIsPropagatedAndCleared() {
+        RequestLoggingContext.setRequestId("routed-request");
+        RequestLoggingContext.setRoute("GET /orders/{id}");
+
+        String seen = CompletableFuture.supplyAsync(RequestLoggingContext.wrapSupplier(RequestLoggingContext::getRoute)).join();
+
+        assertThat(seen).isEqualTo("GET /orders/{id}");
+        RequestLoggingContext.clear();
+        assertNull(RequestLoggingContext.getRoute());
+    }
+
+    @Test
+    void testThreadLocalAccessorInstallsAndClearsContext() {
+        RequestContextThreadLocalAccessor accessor = new RequestContextThreadLocalAccessor();
+        RequestLoggingContext.Snapshot context = RequestLoggingContext.newRequest("reactive-request", "GET /orders/{id}", null);
+        assertNull(RequestLoggingContext.getRequestId());
+        assertNull(accessor.getValue());
+
+        accessor.setValue(context);
+        assertThat(RequestLoggingContext.getRequestId()).isEqualTo("reactive-request");
+        assertThat(RequestLoggingContext.getRoute()).isEqualTo("GET /orders/{id}");
+        RequestLoggingContext.markError();
+        assertThat(accessor.getValue().getRequestId()).isEqualTo("reactive-request");
+
+        accessor.setValue();
+        assertNull(RequestLoggingContext.getRequestId());
+        assertFalse(RequestLoggingContext.hasError());
+
+        // The error flag is shared by every thread the context is installed on
+        accessor.setValue(context);
+        assertTrue(RequestLoggingContext.hasError());
+    }
+}
@@ -1,5 +1,14 @@
 package com.mork.cookie.logback;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.encoder.EchoEncoder;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
@@ -11,10 +20,14 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -23,7 +36,10 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -207,6 +223,77 @@ class RequestLoggingFilterTest {
         verify(mockAppender).flushRequestLogsIfError(anyString());
     }
 
+    @Test
+    void testRouteSetDuringFilter() throws IOException, ServletException {
+        when(mockHttpRequest.getMethod()).thenReturn("GET");
+        when(mockHttpRequest.getRequestURI()).thenReturn("/orders/42");
+        String[] route = new String[1];
+
+        filter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) -> route[0] = RequestLoggingContext.getRoute());
+
+        assertThat(route[0]).isEqualTo("GET /orders/{id}");
+        assertNull(RequestLoggingContext.getRoute());
+    }
+
+    @Test
+    void testSlugsShareTheRouteOfTheirHandler() throws IOException, ServletException {
+        LoggerContext loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        ConditionalBufferAppender appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.setAdaptiveBufferSizing(true);
+        appender.setEncoder(new EchoEncoder<>());
+        appender.start();
+        Logger logger = loggerContext.getLogger("test");
+        RequestLoggingFilter routingFilter = new RequestLoggingFilter(appender);
+        when(mockHttpRequest.getMethod()).thenReturn("GET");
+        when(mockHttpRequest.getAttribute(RequestLoggingFilter.BEST_MATCHING_PATTERN_ATTRIBUTE)).thenReturn("/articles/{slug}");
+        try {
+            for (int i = 0; i <= RouteBufferSizes.MAX_ROUTES; i++) {
+                when(mockHttpRequest.getRequestURI()).thenReturn("/articles/post-number-" + Integer.toString(i, 26));
+                routingFilter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) ->
+                        appender.append(new LoggingEvent("test.class", logger, Level.DEBUG, "Rendering", null, null)));
+            }
+        } finally {
+            appender.stop();
+        }
+
+        assertThat(appender.getRouteBufferSizes().getRoutes()).containsOnlyKeys("GET /articles/{slug}");
+        assertThat(appender.getRouteBufferSizes().getUntrackedRequests()).isZero();
+    }
+
+    @Test
+    void testExcludedRouteSkipsBuffering() throws IOException, ServletException {
+        RouteRule probes = new RouteRule();
+        probes.setPattern("/actuator/**");
+        probes.setBuffering(false);
+        when(mockHttpRequest.getMethod()).thenReturn("GET");
+        when(mockHttpRequest.getRequestURI()).thenReturn("/actuator/health");
+        when(mockAppender.matchRouteRule("GET", "/actuator/health")).thenReturn(probes);
+        String[] requestId = {"not called"};
+
+        filter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) -> requestId[0] = RequestLoggingContext.getRequestId());
+
+        assertNull(requestId[0]);
+        verify(mockAppender, never()).flushRequestLogsIfError(anyString());
+    }
+
+    @Test
+    void testRouteRuleSetDuringFilter() throws IOException, ServletException {
+        RouteRule imports = new RouteRule();
+        imports.setPattern("POST /imports/**");
+        when(mockHttpRequest.getMethod()).thenReturn("POST");
+        when(mockHttpRequest.getRequestURI()).thenReturn("/imports/42");
+        when(mockAppender.matchRouteRule("POST", "/imports/42")).thenReturn(imports);
+        RouteRule[] seen = new RouteRule[1];
+
+        filter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) -> seen[0] = RequestLoggingContext.getRouteRule());
+
+        assertThat(seen[0]).isSameAs(imports);
+        assertNull(RequestLoggingContext.getRouteRule());
+        verify(mockAppender).flushRequestLogsIfError(anyString());
+    }
+
     @Test
     void testMultipleRequestsGenerateUniqueIds() throws IOException, ServletException {
         String[] capturedRequestIds = new String[2];
@@ -320,4 +407,70 @@ class RequestLoggingFilterTest {
         assertNull(RequestLoggingContext.getRequestId());
         assertFalse(RequestLoggingContext.hasError());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testAsyncRequestIsFlushedWhenAsyncProcessingCompletes() throws Exception {
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(mockHttpRequest.isAsyncStarted()).thenReturn(true);
+        when(mockHttpRequest.getAsyncContext()).thenReturn(asyncContext);
+        AtomicReference<String> requestId = new AtomicReference<>();
+
+        filter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) -> requestId.set(RequestLoggingContext.getRequestId()));
+
+        // The container thread is released without flushing
+        assertNull(RequestLoggingContext.getRequestId());
+        verify(mockAppender, never()).flushRequestLogsIfError(anyString());
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+        ArgumentCaptor<Object> context = ArgumentCaptor.forClass(Object.class);
+        verify(mockHttpRequest).setAttribute(eq(RequestLoggingFilter.CONTEXT_ATTRIBUTE), context.capture());
+
+        // The async dispatch runs with the context of the request
+        when(mockHttpRequest.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+        when(mockHttpRequest.getAttribute(RequestLoggingFilter.CONTEXT_ATTRIBUTE)).thenReturn(context.getValue());
+        AtomicReference<String> dispatchedId = new AtomicReference<>();
+        filter.doFilter(mockHttpRequest, mockHttpResponse, (request, response) -> {
+            dispatchedId.set(RequestLoggingContext.getRequestId());
+            RequestLoggingContext.markError();
+        });
+        assertThat(dispatchedId.get()).isEqualTo(requestId.get());
+        assertNull(RequestLoggingContext.getRequestId());
+        verify(mockAppender, never()).flushRequestLogsIfError(anyString());
+
+        // Completion flushes, seeing the error logged during the dispatch
+        AtomicBoolean flushedWithError = new AtomicBoolean();
+        doAnswer(invocation -> {
+            flushedWithError.set(RequestLoggingContext.hasError());
+            return null;
+        }).when(mockAppender).flushRequestLogsIfError(requestId.get());
+        listener.getValue().onComplete(new AsyncEvent(asyncContext));
+
+        assertTrue(flushedWithError.get());
+        assertNull(RequestLoggingContext.getRequestId());
+    }
+
+    @Test
+    void testAsyncTimeoutFlushesAsError() throws Exception {
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(mockHttpRequest.isAsyncStarted()).thenReturn(true);
+        when(mockHttpRequest.getAsyncContext()).thenReturn(asyncContext);
+        filter.doFilter(mockHttpRequest, mockHttpResponse, mockFilterChain);
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+
+        // Restarting async processing keeps the listener registered
+        AsyncContext restarted = mock(AsyncContext.class);
+        listener.getValue().onStartAsync(new AsyncEvent(restarted));
+        verify(restarted).addListener(listener.getValue());
+
+        AtomicBoolean flushedWithError = new AtomicBoolean();
+        doAnswer(invocation -> {
+            flushedWithError.set(RequestLoggingContext.hasError());
+            return null;
+        }).when(mockAppender).flushRequestLogsIfError(anyString());
+        listener.getValue().onTimeout(new AsyncEvent(asyncContext));
+
+        assertTrue(flushedWithError.get());
+        assertFalse(RequestLoggingContext.hasError());
+    }
+}
@@ -0,0 +1,62 @@
+package com.mork.cookie.logback;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RouteBufferSizesTest {
+
+    @Test
+    void testBucketsCoverEveryCountWithinAQuarter() {
+        for (int count = 0; count < 100_000; count++) {
+            int bound = RouteBufferSizes.upperBoundOf(RouteBufferSizes.bucketOf(count));
+            assertThat(bound).isGreaterThanOrEqualTo(count).isLessThanOrEqualTo(count + Math.max(1, count / 4));
+        }
+        assertEquals(Integer.MAX_VALUE, RouteBufferSizes.upperBoundOf(RouteBufferSizes.bucketOf(Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void testLearnsPercentileOfEachRoute() {
+        RouteBufferSizes sizes = new RouteBufferSizes(90);
+        for (int i = 0; i < 100; i++) {
+            sizes.record("GET /health", 2, false);
+            sizes.record("POST /checkout", i < 90 ? 380 + i % 20 : 1000, false);
+        }
+
+        assertEquals(2, sizes.initialCapacity("GET /health"));
+        assertThat(sizes.initialCapacity("POST /checkout")).isBetween(399, 500);
+        assertEquals(0, sizes.initialCapacity("GET /unknown"));
+        assertEquals(0, sizes.initialCapacity(null));
+
+        RouteBufferSizes.Route checkout = sizes.getRoutes().get("POST /checkout");
+        assertEquals(100, checkout.getRequests());
+        assertEquals(1000, checkout.getMaxEvents());
+        assertThat(checkout.getPercentile(99)).isGreaterThanOrEqualTo(1000);
+        assertThat(sizes.toString()).contains("GET /health={requests=100", "POST /checkout=");
+    }
+
+    @Test
+    void testNoCapacityBeforeEnoughRequests() {
+        RouteBufferSizes sizes = new RouteBufferSizes(90);
+        for (int i = 1; i < RouteBufferSizes.MIN_REQUESTS; i++) {
+            sizes.record("GET /orders/{id}", 50, false);
+        }
+        assertEquals(0, sizes.initialCapacity("GET /orders/{id}"));
+
+        sizes.record("GET /orders/{id}", 50, true);
+        assertThat(sizes.initialCapacity("GET /orders/{id}")).isEqualTo(50);
+        assertEquals(1, sizes.getRoutes().get("GET /orders/{id}").getTruncatedRequests());
+    }
+
+    @Test
+    void testRoutesAreCapped() {
+        RouteBufferSizes sizes = new RouteBufferSizes(90);
+        for (int i = 0; i < RouteBufferSizes.MAX_ROUTES + 10; i++) {
+            sizes.record("GET /items/" + i, 5, false);
+        }
+
+        assertEquals(RouteBufferSizes.MAX_ROUTES, sizes.getRoutes().size());
+        assertEquals(10, sizes.getUntrackedRequests());
+    }
+}
@@ -0,0 +1,88 @@
+package com.mork.cookie.logback;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteMatcherTest {
+
+    @Test
+    void testMostSpecificRuleWins() {
+        RouteRule actuator = rule("/actuator/**");
+        RouteRule health = rule("/actuator/health");
+        RouteRule anyOrder = rule("/orders/*");
+        RouteRule orderItems = rule("/orders/*/items");
+        RouteRule orderSearch = rule("/orders/search");
+        RouteMatcher matcher = RouteMatcher.compile(List.of(actuator, health, anyOrder, orderItems, orderSearch));
+
+        assertSame(health, matcher.match("GET", "/actuator/health"));
+        assertSame(actuator, matcher.match("GET", "/actuator/metrics/jvm.memory.used"));
+        assertSame(actuator, matcher.match("GET", "/actuator"));
+        assertSame(orderSearch, matcher.match("GET", "/orders/search"));
+        assertSame(anyOrder, matcher.match("GET", "/orders/42"));
+        assertSame(orderItems, matcher.match("GET", "/orders/42/items/"));
+        assertNull(matcher.match("GET", "/orders/42/payments"));
+        assertNull(matcher.match("GET", "/orders"));
+        assertNull(matcher.match("GET", "/actuatorx"));
+        assertNull(matcher.match("GET", null));
+    }
+
+    @Test
+    void testBacktracksFromLiteralToWildcard() {
+        RouteRule literal = rule("/files/report/latest");
+        RouteRule wildcard = rule("/files/*/versions");
+        RouteMatcher matcher = RouteMatcher.compile(List.of(literal, wildcard));
+
+        assertSame(wildcard, matcher.match("GET", "/files/report/versions"));
+        assertSame(literal, matcher.match("GET", "//files//report/latest"));
+    }
+
+    @Test
+    void testMethodRulesTakePrecedence() {
+        RouteRule imports = rule("/imports/**");
+        RouteRule postImports = rule("post /imports/**");
+        RouteMatcher matcher = RouteMatcher.compile(List.of(imports, postImports));
+
+        assertSame(postImports, matcher.match("POST", "/imports/42"));
+        assertSame(imports, matcher.match("GET", "/imports/42"));
+        assertSame(imports, matcher.match(null, "/imports"));
+    }
+
+    @Test
+    void testFirstOfDuplicatePatternsWins() {
+        RouteRule first = rule("/static/**");
+        RouteMatcher matcher = RouteMatcher.compile(List.of(first, rule("/static/**")));
+
+        assertSame(first, matcher.match("GET", "/static/app.js"));
+    }
+
+    @Test
+    void testRootCatchAll() {
+        RouteRule all = rule("/**");
+        RouteMatcher matcher = RouteMatcher.compile(List.of(all));
+
+        assertSame(all, matcher.match("GET", "/"));
+        assertSame(all, matcher.match("GET", "/anything/at/all"));
+    }
+
+    @Test
+    void testInvalidPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> RouteMatcher.compile(List.of(rule("/a/**/b"))));
+        assertThrows(IllegalArgumentException.class, () -> RouteMatcher.compile(List.of(rule("health"))));
+        assertThrows(IllegalArgumentException.class, () -> RouteMatcher.compile(List.of(new RouteRule())));
+        assertTrue(RouteMatcher.compile(List.of()).isEmpty());
+        assertThat(RouteMatcher.EMPTY.match("GET", "/")).isNull();
+    }
+
+    private static RouteRule rule(String pattern) {
+        RouteRule rule = new RouteRule();
+        rule.setPattern(pattern);
+        return rule;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mork.cookie.logback;
+
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StackTraceCacheTest {
+
+    private final AtomicInteger renders = new AtomicInteger();
+    private final Function<IThrowableProxy, byte[]> renderer = proxy -> {
+        renders.incrementAndGet();
+        return (proxy.getClassName() + ": " + proxy.getMessage()).getBytes(StandardCharsets.UTF_8);
+    };
+
+    @Test
+    void testRepeatedThrowableIsRenderedOnce() {
+        StackTraceCache cache = new StackTraceCache(10);
+
+        byte[] first = cache.get(proxyFor("boom"), renderer);
+        byte[] second = cache.get(proxyFor("boom"), renderer);
+
+        assertSame(first, second);
+        assertEquals(1, renders.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testDifferentMessageOrCauseIsADifferentEntry() {
+        StackTraceCache cache = new StackTraceCache(10);
+
+        cache.get(proxyFor("boom"), renderer);
+        cache.get(proxyFor("other"), renderer);
+        IllegalStateException withCause = new IllegalStateException("boom", new RuntimeException("cause"));
+        withCause.setStackTrace(STACK);
+        cache.get(new ThrowableProxy(withCause), renderer);
+
+        assertEquals(3, renders.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void testFingerprintComparesFrames() {
+        StackTraceCache.Fingerprint a = new StackTraceCache.Fingerprint(proxyFor("boom"));
+        StackTraceCache.Fingerprint b = new StackTraceCache.Fingerprint(proxyFor("boom"));
+        StackTraceCache.Fingerprint fromOtherSite = new StackTraceCache.Fingerprint(otherSite("boom"));
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, fromOtherSite);
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        StackTraceCache cache = new StackTraceCache(2);
+
+        cache.get(proxyFor("one"), renderer);
+        cache.get(proxyFor("two"), renderer);
+        cache.get(proxyFor("one"), renderer); // "one" becomes most recently used
+        cache.get(proxyFor("three"), renderer); // evicts "two"
+
+        assertThat(cache.size()).isEqualTo(2);
+        cache.get(proxyFor("one"), renderer);
+        assertEquals(3, renders.get());
+        cache.get(proxyFor("two"), renderer);
+        assertEquals(4, renders.get());
+    }
+
+    // Same frames for every exception, as if thrown from the same code path
+    private static final StackTraceElement[] STACK = {
+            new StackTraceElement("com.example.Service", "process", "Service.java", 42),
+            new StackTraceElement("com.example.Controller", "handle", "Controller.java", 17)
+    };
+
+    private static IThrowableProxy proxyFor(String message) {
+        IllegalStateException exception = new IllegalStateException(message);
+        exception.setStackTrace(STACK);
+        return new ThrowableProxy(exception);
+    }
+
+    private static IThrowableProxy otherSite(String message) {
+        IllegalStateException exception = new IllegalStateException(message);
+        exception.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.example.Service", "process", "Service.java", 43),
+                STACK[1]
+        });
+        return new ThrowableProxy(exception);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mork.cookie.logback;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymbolTableTest {
+
+    @Test
+    void testInternReturnsCanonicalSymbol() {
+        SymbolTable symbols = new SymbolTable(16);
+        SymbolTable.Symbol first = symbols.intern("com.example.OrderService");
+        SymbolTable.Symbol second = symbols.intern(new String("com.example.OrderService"));
+
+        assertSame(first, second);
+        assertSame(first, symbols.get(first.id()));
+        assertEquals("com.example.OrderService", first.name());
+        assertArrayEquals("com.example.OrderService".getBytes(StandardCharsets.UTF_8), first.utf8());
+        assertNull(symbols.intern(null));
+        assertEquals(1, symbols.size());
+    }
+
+    @Test
+    void testEncodingFlags() {
+        SymbolTable symbols = new SymbolTable(16);
+
+        assertTrue(symbols.intern("http-nio-8080-exec-1").isAscii());
+        assertTrue(symbols.intern("http-nio-8080-exec-1").isJsonSafe());
+        assertFalse(symbols.intern("worker-é").isAscii());
+        assertTrue(symbols.intern("worker-é").isJsonSafe());
+        assertFalse(symbols.intern("worker \"1\"").isJsonSafe());
+        assertFalse(symbols.intern("worker\t1").isJsonSafe());
+    }
+
+    @Test
+    void testFullTableHandsOutUninternedSymbols() {
+        SymbolTable symbols = new SymbolTable(2);
+        symbols.intern("a");
+        symbols.intern("b");
+
+        SymbolTable.Symbol overflow = symbols.intern("c");
+
+        assertEquals(SymbolTable.NO_ID, overflow.id());
+        assertEquals("c", overflow.name());
+        assertEquals(2, symbols.size());
+        assertEquals("a", symbols.intern("a").name());
+    }
+
+    @Test
+    void testConcurrentInterningAssignsOneIdPerName() throws Exception {
+        SymbolTable symbols = new SymbolTable(SymbolTable.DEFAULT_MAX_SYMBOLS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<SymbolTable.Symbol> seen = ConcurrentHashMap.newKeySet();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        seen.add(symbols.intern("thread-" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1000, seen.size());
+        assertEquals(1000, symbols.size());
+        for (SymbolTable.Symbol symbol : seen) {
+            assertSame(symbol, symbols.get(symbol.id()));
+        }
+    }
+}
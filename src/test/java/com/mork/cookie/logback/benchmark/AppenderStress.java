@@ -0,0 +1,382 @@
+package com.mork.cookie.logback.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import com.mork.cookie.logback.RequestLoggingContext;
+import org.slf4j.MDC;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Concurrency stress test of the appender. Request threads log from themselves and from
+ * worker threads the request context is propagated to, flush synchronously or through the
+ * writer thread, and leave tasks behind that keep logging while and after the request is
+ * flushed. Meanwhile a maintenance thread runs {@code cleanupExpiredRequests} in a loop, and
+ * optionally {@code forceCleanupAll}.
+ * <p>
+ * Every event carries its request and sequence number, and the output is checked against
+ * what was logged:
+ * <ul>
+ * <li>no event is written twice;</li>
+ * <li>no event is lost: a request writes every event logged before its flush, up to the
+ *     buffer limit, and each event logged during the flush is either written or counted late;</li>
+ * <li>size limits are exact: a request that logged more than the limit writes exactly the limit;</li>
+ * <li>no buffer is resurrected: events logged after the flush are all counted late, none is
+ *     written, and no buffer is left behind once every request is flushed.</li>
+ * </ul>
+ * With {@code forceCleanupAll} running, buffers vanish mid-request, so only the first, third
+ * (as an upper bound) and fourth hold. Nothing expires within a run, since timeouts are whole
+ * minutes: the cleanup iterates the registry concurrently without removing anything.
+ * <p>
+ * Reports the throughput, so that other designs of the registry can be compared:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.mork.cookie.logback.benchmark.AppenderStress \
+ *     -Dbenchmark.args="--threads 16 --duration 30"
+ * </pre>
+ */
+public final class AppenderStress {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        DEFAULTS.put("workers", "4");
+        DEFAULTS.put("duration", "10");
+        DEFAULTS.put("limit", "64");
+        DEFAULTS.put("events", "96");
+        DEFAULTS.put("stragglers", "4");
+        DEFAULTS.put("late", "2");
+        DEFAULTS.put("errors", "20");
+        DEFAULTS.put("async", "50");
+        DEFAULTS.put("forceCleanup", "0");
+    }
+
+    private AppenderStress() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null) {
+            usage(System.out);
+            return;
+        }
+        Config config = new Config(
+                Integer.parseInt(options.get("threads")),
+                Integer.parseInt(options.get("workers")),
+                Duration.ofSeconds(Long.parseLong(options.get("duration"))),
+                Integer.parseInt(options.get("limit")),
+                Integer.parseInt(options.get("events")),
+                Integer.parseInt(options.get("stragglers")),
+                Integer.parseInt(options.get("late")),
+                Integer.parseInt(options.get("errors")),
+                Integer.parseInt(options.get("async")),
+                Long.parseLong(options.get("forceCleanup")));
+        Result result = run(config);
+        System.out.printf(Locale.ROOT, "%d requests, %d events in %.1f s: %.0f requests/s, %.0f events/s, %d late events%n",
+                result.requests(), result.events(), result.elapsedNanos() / 1e9,
+                result.requestsPerSecond(), result.eventsPerSecond(), result.lateEvents());
+        if (result.violations().isEmpty()) {
+            System.out.println("All invariants held");
+        } else {
+            result.violations().forEach(violation -> System.out.println("VIOLATION: " + violation));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the stress test.
+     *
+     * @param config what to run
+     * @return the throughput and the broken invariants, if any
+     */
+    static Result run(Config config) throws InterruptedException {
+        LoggerContext context = new LoggerContext();
+        context.setMDCAdapter(MDC.getMDCAdapter());
+        Logger logger = context.getLogger("stress");
+        Output output = new Output();
+        output.setContext(context);
+        output.start();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.start();
+        ConditionalBufferAppender appender = new ConditionalBufferAppender();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setMaxBufferSize(config.limit());
+        appender.setTurboFilterEnabled(false);
+        // Queued asynchronous flushes are written, however long that takes
+        appender.setDrainTimeoutMillis(60_000);
+        appender.addAppender(output);
+        appender.start();
+
+        ExecutorService workers = Executors.newFixedThreadPool(config.workers(), r -> {
+            Thread t = new Thread(r, "stress-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Map<Integer, Request> requests = new ConcurrentHashMap<>();
+        AtomicInteger nextRequest = new AtomicInteger();
+        LongAdder events = new LongAdder();
+        LongAdder lateEvents = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<String> violations = new ArrayList<>();
+
+        Thread maintenance = new Thread(() -> {
+            long lastForce = System.nanoTime();
+            while (running.get()) {
+                appender.cleanupExpiredRequests();
+                if (config.forceCleanupMillis() > 0 && System.nanoTime() - lastForce >= config.forceCleanupMillis() * 1_000_000) {
+                    appender.forceCleanupAll();
+                    lastForce = System.nanoTime();
+                }
+                LockSupport.parkNanos(100_000);
+            }
+        }, "stress-maintenance");
+        maintenance.start();
+
+        long start = System.nanoTime();
+        long end = start + config.duration().toNanos();
+        List<Thread> requestThreads = new ArrayList<>();
+        for (int i = 0; i < config.threads(); i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        Request request = new Request(nextRequest.getAndIncrement(), config);
+                        requests.put(request.id, request);
+                        request.run(appender, logger, workers, events, lateEvents);
+                    }
+                } catch (Exception e) {
+                    synchronized (violations) {
+                        violations.add("Request thread failed: " + e);
+                    }
+                }
+            }, "stress-request-" + i);
+            requestThreads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : requestThreads) {
+            thread.join();
+        }
+        // Let the tasks left behind finish before looking at the registry
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            violations.add("Worker tasks still running after 60 s");
+        }
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        maintenance.join();
+
+        // Every request has been flushed, whatever is still registered was started afterwards
+        if (!appender.getRequestBuffers().isEmpty()) {
+            violations.add(appender.getRequestBuffers().size() + " buffers left after every request was flushed, e.g. "
+                    + appender.getRequestBuffers().keySet().iterator().next());
+        }
+        // Writes the queued asynchronous flushes
+        appender.stop();
+
+        boolean exact = config.forceCleanupMillis() <= 0;
+        long stragglersLogged = 0;
+        long stragglersWritten = 0;
+        for (Request request : requests.values()) {
+            Output.Tally tally = output.tallies.get(request.id);
+            int written = tally == null ? 0 : tally.written();
+            int duplicates = tally == null ? 0 : tally.duplicates;
+            int expected = Math.min(request.events, config.limit());
+            if (duplicates > 0) {
+                violations.add("Request " + request.id + ": " + duplicates + " events written twice");
+            }
+            if (tally != null && tally.seen.nextSetBit(request.events + request.stragglers) >= 0) {
+                violations.add("Request " + request.id + ": an event logged after the flush was written");
+            }
+            int regular = tally == null ? 0 : tally.seen.get(0, request.events).cardinality();
+            if (exact ? regular != expected : regular > expected) {
+                violations.add("Request " + request.id + ": wrote " + regular + " of " + request.events
+                        + " events with a limit of " + config.limit() + ", expected " + expected);
+            }
+            if (written > config.limit()) {
+                violations.add("Request " + request.id + ": wrote " + written + " events, over the limit of " + config.limit());
+            }
+            stragglersLogged += request.stragglers;
+            stragglersWritten += written - regular;
+        }
+        // Each event logged during or after a flush is either written or late, never both
+        long late = appender.getLateEventCount();
+        if (exact ? stragglersWritten + late != stragglersLogged + lateEvents.sum()
+                : late < lateEvents.sum() || stragglersWritten + late > stragglersLogged + lateEvents.sum()) {
+            violations.add("Of " + stragglersLogged + " events logged during flushes, " + stragglersWritten + " were written; "
+                    + late + " events were counted late, " + lateEvents.sum() + " were logged after flushes");
+        }
+        return new Result(requests.size(), events.sum(), late, elapsed, violations);
+    }
+
+    // Returns null to print the usage
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+            if (name == null || !DEFAULTS.containsKey(name) || i + 1 == args.length) {
+                return null;
+            }
+            options.put(name, args[++i]);
+        }
+        return options;
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: AppenderStress [--option value]...");
+        DEFAULTS.forEach((name, value) -> out.printf("  --%-12s default: %s%n", name, value));
+        out.println("  threads: request threads; workers: threads the requests hand work to;");
+        out.println("  duration: seconds; limit: maxBufferSize; events: at most this many events per request;");
+        out.println("  stragglers: events logged while the request is flushed; late: events logged after it;");
+        out.println("  errors, async: percent of requests that fail, and that are flushed through the writer thread;");
+        out.println("  forceCleanup: milliseconds between forceCleanupAll calls (0 = never, all invariants are exact)");
+    }
+
+    /**
+     * What to run. Durations and intervals are wall-clock time.
+     */
+    record Config(int threads, int workers, Duration duration, int limit, int maxEvents, int stragglers,
+                  int late, int errorPercent, int asyncPercent, long forceCleanupMillis) {
+    }
+
+    /**
+     * Outcome of a run: requests and events logged, and the invariants that did not hold.
+     */
+    record Result(int requests, long events, long lateEvents, long elapsedNanos, List<String> violations) {
+
+        double requestsPerSecond() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        double eventsPerSecond() {
+            return events * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * One request: events {@code [0, events)} are logged before the flush, by the request
+     * thread and by worker tasks it waits for; {@code [events, events + stragglers)} by a task
+     * still running while it is flushed; the rest by tasks started after the flush.
+     */
+    private static final class Request {
+        final int id;
+        final int events;
+        final int stragglers;
+        final int late;
+        final boolean error;
+        final boolean async;
+
+        Request(int id, Config config) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            this.id = id;
+            this.events = 1 + random.nextInt(config.maxEvents());
+            this.error = random.nextInt(100) < config.errorPercent();
+            this.async = random.nextInt(100) < config.asyncPercent();
+            // Stragglers only where they cannot be dropped by the limit, which would make them unaccountable
+            this.stragglers = events + config.stragglers() <= config.limit() ? config.stragglers() : 0;
+            this.late = config.late();
+        }
+
+        void run(ConditionalBufferAppender appender, Logger logger, ExecutorService workers,
+                 LongAdder loggedEvents, LongAdder lateEvents) throws Exception {
+            RequestLoggingContext.setRequestId("request-" + id);
+            try {
+                // Split the events between this thread and up to two workers, logging concurrently
+                int parts = 1 + ThreadLocalRandom.current().nextInt(3);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int part = 1; part < parts; part++) {
+                    int from = events * part / parts;
+                    int to = events * (part + 1) / parts;
+                    futures.add(workers.submit(RequestLoggingContext.wrap(() -> log(appender, logger, from, to))));
+                }
+                log(appender, logger, 0, events / parts);
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                if (stragglers > 0) {
+                    workers.execute(RequestLoggingContext.wrap(() -> log(appender, logger, events, events + stragglers)));
+                }
+                if (error) {
+                    RequestLoggingContext.markError();
+                }
+                if (async) {
+                    appender.flushRequestLogsIfErrorAsync("request-" + id);
+                } else {
+                    appender.flushRequestLogsIfError("request-" + id);
+                }
+                for (int i = 0; i < late; i++) {
+                    int sequence = events + stragglers + i;
+                    workers.execute(RequestLoggingContext.wrap(() -> log(appender, logger, sequence, sequence + 1)));
+                }
+                loggedEvents.add(events + stragglers + late);
+                lateEvents.add(late);
+            } finally {
+                RequestLoggingContext.clear();
+            }
+        }
+
+        private void log(ConditionalBufferAppender appender, Logger logger, int from, int to) {
+            for (int sequence = from; sequence < to; sequence++) {
+                // Only errored requests write DEBUG events, so every buffered event is written
+                Level level = error && sequence % 2 == 1 ? Level.DEBUG : Level.INFO;
+                appender.doAppend(new LoggingEvent("stress", logger, level, "{} {}", null, new Object[] {id, sequence}));
+            }
+        }
+    }
+
+    /**
+     * Records which events of each request were written.
+     */
+    private static final class Output extends UnsynchronizedAppenderBase<ILoggingEvent> {
+        final Map<Integer, Tally> tallies = new ConcurrentHashMap<>();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            Object[] arguments = event.getArgumentArray();
+            Tally tally = tallies.computeIfAbsent((Integer) arguments[0], id -> new Tally());
+            synchronized (tally) {
+                int sequence = (Integer) arguments[1];
+                if (tally.seen.get(sequence)) {
+                    tally.duplicates++;
+                } else {
+                    tally.seen.set(sequence);
+                }
+            }
+        }
+
+        static final class Tally {
+            final BitSet seen = new BitSet();
+            int duplicates;
+
+            synchronized int written() {
+                return seen.cardinality();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mork.cookie.logback.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Short runs of the stress harness, long enough to catch the races it was written for on most
+ * runs. Longer runs: see {@link AppenderStress}.
+ */
+class AppenderStressTest {
+
+    @Test
+    void testInvariantsHoldUnderConcurrentAppendFlushAndCleanup() throws InterruptedException {
+        AppenderStress.Result result = AppenderStress.run(new AppenderStress.Config(
+                8, 4, Duration.ofSeconds(2), 64, 96, 4, 2, 20, 50, 0));
+
+        assertThat(result.violations()).isEmpty();
+        assertThat(result.requests()).isPositive();
+        // Events logged during flushes may be late too
+        assertThat(result.lateEvents()).isGreaterThanOrEqualTo(result.requests() * 2L);
+    }
+
+    @Test
+    void testInvariantsHoldWithForcedCleanups() throws InterruptedException {
+        AppenderStress.Result result = AppenderStress.run(new AppenderStress.Config(
+                8, 4, Duration.ofSeconds(1), 64, 96, 4, 2, 20, 50, 5));
+
+        assertThat(result.violations()).isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package com.mork.cookie.logback.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.mork.cookie.logback.CompiledPatternLayoutEncoder;
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+
+/**
+ * Logback setups compared by the benchmark. Both encode every event they output with the
+ * same pattern and write it to a null stream, so the difference is the cost of buffering,
+ * not of the disk or the console.
+ */
+final class BenchmarkLogging {
+
+    enum Mode {
+        /** Root at INFO straight to the output, no filter: what the application would do without the appender */
+        BASELINE,
+        /** Root at DEBUG into the ConditionalBufferAppender, with the request filter */
+        CONDITIONAL
+    }
+
+    private BenchmarkLogging() {
+    }
+
+    static void configure(Mode mode) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+
+        CompiledPatternLayoutEncoder encoder = new CompiledPatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> output = new OutputStreamAppender<>();
+        output.setContext(context);
+        output.setName("NULL_OUTPUT");
+        output.setEncoder(encoder);
+        output.setOutputStream(OutputStream.nullOutputStream());
+        output.start();
+
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        if (mode == Mode.BASELINE) {
+            root.setLevel(Level.INFO);
+            root.addAppender(output);
+        } else {
+            // Named like the appender the Spring and Micronaut configurations look up
+            ConditionalBufferAppender appender = new ConditionalBufferAppender();
+            appender.setContext(context);
+            appender.setName("CONDITIONAL_BUFFER");
+            appender.addAppender(output);
+            appender.start();
+            root.setLevel(Level.DEBUG);
+            root.addAppender(appender);
+        }
+        // Framework and client internals are not part of the workload
+        for (String name : new String[] {"org", "io", "jdk", "reactor"}) {
+            context.getLogger(name).setLevel(Level.WARN);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.mork.cookie.logback.benchmark;
+
+/**
+ * An embedded server running the benchmark endpoint {@code GET /orders/{id}?events=N&error=B}.
+ */
+interface BenchmarkServer extends AutoCloseable {
+
+    int port();
+
+    /**
+     * Names of the server's threads, for the allocation measurement.
+     */
+    boolean isServerThread(String threadName);
+
+    @Override
+    void close();
+}
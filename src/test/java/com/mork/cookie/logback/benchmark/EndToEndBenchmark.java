@@ -0,0 +1,215 @@
+package com.mork.cookie.logback.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * End-to-end overhead of the request filter plus the appender: boots embedded Tomcat (Spring
+ * MVC) and Netty (Micronaut) servers with and without conditional buffering, drives them
+ * with an open-loop load generator in the same JVM at fixed rates, and reports throughput,
+ * latency percentiles, the allocation rate of the server threads and GC time for each mix
+ * of error rate and log volume.
+ * <p>
+ * Runs offline once the dependencies are in the local repository:
+ * <pre>
+ * mvn -o -Pbenchmark test-compile exec:exec -Dbenchmark.args="--servers tomcat,netty --rates 1000,4000"
+ * </pre>
+ * Allocation is counted per thread on the server's threads (request threads or event loops,
+ * and the appender's own threads), so the load generator does not show up in it; GC time is
+ * for the whole JVM, load generator included, and is the same for both modes at equal rates.
+ */
+public final class EndToEndBenchmark {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("servers", "tomcat,netty");
+        DEFAULTS.put("modes", "baseline,conditional");
+        DEFAULTS.put("rates", "1000");
+        DEFAULTS.put("errors", "0,5");
+        DEFAULTS.put("events", "10,100");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("duration", "20");
+        DEFAULTS.put("csv", "");
+    }
+
+    private EndToEndBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null) {
+            usage(System.out);
+            return;
+        }
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.get("duration")));
+
+        List<String> rows = new ArrayList<>();
+        rows.add("server,mode,rate,error_percent,events,throughput,p50_ms,p99_ms,p999_ms,failed,alloc_mb_s,alloc_kb_req,gc_ms,gc_count");
+        System.out.printf("%-7s %-11s %6s %5s %6s | %8s %8s %8s %8s %6s | %9s %9s | %7s %5s%n",
+                "server", "mode", "rate", "err%", "events", "req/s", "p50 ms", "p99 ms", "p999 ms", "failed",
+                "alloc MB/s", "KB/req", "GC ms", "GCs");
+        for (String serverName : list(options.get("servers"))) {
+            for (String modeName : list(options.get("modes"))) {
+                BenchmarkLogging.Mode mode = BenchmarkLogging.Mode.valueOf(modeName.toUpperCase(Locale.ROOT));
+                BenchmarkLogging.configure(mode);
+                try (BenchmarkServer server = start(serverName, mode); LoadGenerator generator = new LoadGenerator(server.port())) {
+                    for (String rate : list(options.get("rates"))) {
+                        for (String errors : list(options.get("errors"))) {
+                            for (String events : list(options.get("events"))) {
+                                int requestRate = Integer.parseInt(rate);
+                                double errorPercent = Double.parseDouble(errors);
+                                int eventCount = Integer.parseInt(events);
+                                generator.run(requestRate, warmup, errorPercent, eventCount);
+                                System.gc();
+
+                                Measurement measurement = Measurement.start(server::isServerThread);
+                                LoadGenerator.Result result = generator.run(requestRate, duration, errorPercent, eventCount);
+                                Measurement.Delta delta = measurement.stop();
+
+                                double seconds = result.elapsedNanos() / 1e9;
+                                double allocMbPerSecond = delta.allocatedBytes() / seconds / (1024 * 1024);
+                                double allocKbPerRequest = result.completed() == 0 ? 0
+                                        : delta.allocatedBytes() / 1024.0 / result.completed();
+                                System.out.printf(Locale.ROOT, "%-7s %-11s %6d %5.1f %6d | %8.0f %8.2f %8.2f %8.2f %6d | %9.1f %9.1f | %7d %5d%n",
+                                        serverName, modeName, requestRate, errorPercent, eventCount,
+                                        result.throughput(), result.percentileMillis(50), result.percentileMillis(99),
+                                        result.percentileMillis(99.9), result.failed(),
+                                        allocMbPerSecond, allocKbPerRequest, delta.gcMillis(), delta.gcCount());
+                                rows.add(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%d,%.1f,%.3f,%.3f,%.3f,%d,%.2f,%.2f,%d,%d",
+                                        serverName, modeName, requestRate, errorPercent, eventCount,
+                                        result.throughput(), result.percentileMillis(50), result.percentileMillis(99),
+                                        result.percentileMillis(99.9), result.failed(),
+                                        allocMbPerSecond, allocKbPerRequest, delta.gcMillis(), delta.gcCount()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        String csv = options.get("csv");
+        if (!csv.isEmpty()) {
+            Files.write(Path.of(csv), rows, StandardCharsets.UTF_8);
+            System.out.println("Results written to " + csv);
+        }
+    }
+
+    private static BenchmarkServer start(String name, BenchmarkLogging.Mode mode) {
+        return switch (name) {
+            case "tomcat" -> TomcatServer.start(mode);
+            case "netty" -> NettyServer.start(mode);
+            default -> throw new IllegalArgumentException("Unknown server: " + name + " (tomcat or netty)");
+        };
+    }
+
+    // Returns null to print the usage
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+            if (name == null || !DEFAULTS.containsKey(name) || i + 1 == args.length) {
+                return null;
+            }
+            options.put(name, args[++i]);
+        }
+        return options;
+    }
+
+    private static List<String> list(String value) {
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: EndToEndBenchmark [--option value]...");
+        out.println("Options (comma-separated lists run every combination):");
+        DEFAULTS.forEach((name, value) -> out.printf("  --%-9s default: %s%n", name, value.isEmpty() ? "(none)" : value));
+        out.println("  servers: tomcat, netty; modes: baseline, conditional; rates in requests/s;");
+        out.println("  errors: percent of requests logging an ERROR; events: log events per request;");
+        out.println("  warmup, duration: seconds per combination; csv: file to write the results to");
+    }
+
+    /**
+     * Allocation of the server's threads and JVM-wide GC activity over a run.
+     */
+    private static final class Measurement {
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final Predicate<String> serverThread;
+        private final Map<Long, Long> allocatedAtStart = new HashMap<>();
+        private long gcMillisAtStart;
+        private long gcCountAtStart;
+
+        private Measurement(Predicate<String> serverThread) {
+            this.serverThread = serverThread;
+        }
+
+        static Measurement start(Predicate<String> serverThread) {
+            Measurement measurement = new Measurement(serverThread);
+            measurement.allocatedAtStart.putAll(measurement.allocatedByServerThreads());
+            measurement.gcMillisAtStart = gcMillis();
+            measurement.gcCountAtStart = gcCount();
+            return measurement;
+        }
+
+        Delta stop() {
+            long allocated = 0;
+            for (Map.Entry<Long, Long> entry : allocatedByServerThreads().entrySet()) {
+                allocated += entry.getValue() - allocatedAtStart.getOrDefault(entry.getKey(), 0L);
+            }
+            return new Delta(allocated, gcMillis() - gcMillisAtStart, gcCount() - gcCountAtStart);
+        }
+
+        private Map<Long, Long> allocatedByServerThreads() {
+            Map<Long, Long> allocated = new HashMap<>();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (serverThread.test(thread.getName())) {
+                    long bytes = threads.getThreadAllocatedBytes(thread.getId());
+                    if (bytes >= 0) {
+                        allocated.put(thread.getId(), bytes);
+                    }
+                }
+            }
+            return allocated;
+        }
+
+        private static long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, gc.getCollectionTime());
+            }
+            return total;
+        }
+
+        private static long gcCount() {
+            long total = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(0, gc.getCollectionCount());
+            }
+            return total;
+        }
+
+        record Delta(long allocatedBytes, long gcMillis, long gcCount) {
+        }
+    }
+}
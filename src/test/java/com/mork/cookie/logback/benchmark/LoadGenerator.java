@@ -0,0 +1,124 @@
+package com.mork.cookie.logback.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load generator: sends requests at a fixed rate whatever the server's
+ * response times, and measures each latency from the time the request was due rather than
+ * from the time it was sent, so a stalled server shows up in the percentiles instead of
+ * slowing the generator down (coordinated omission).
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "load-generator-client");
+        t.setDaemon(true);
+        return t;
+    });
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(clientExecutor)
+            .build();
+    private final String baseUrl;
+
+    LoadGenerator(int port) {
+        this.baseUrl = "http://localhost:" + port + "/orders/";
+    }
+
+    /**
+     * Sends requests at a fixed rate and waits for the responses.
+     *
+     * @param rate requests per second
+     * @param duration how long to send requests for
+     * @param errorPercent share of requests that log an error, in percent
+     * @param events events each request logs
+     * @return the latencies and counts
+     */
+    Result run(int rate, Duration duration, double errorPercent, int events) throws InterruptedException {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        int requests = (int) (duration.toNanos() / periodNanos);
+        long[] latencies = new long[requests];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicLong failed = new AtomicLong();
+        Phaser outstanding = new Phaser(1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long due = start + i * periodNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean error = ThreadLocalRandom.current().nextDouble(100) < errorPercent;
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + i + "?events=" + events + "&error=" + error))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            int index = i;
+            outstanding.register();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                latencies[index] = System.nanoTime() - due;
+                if (e != null || response.statusCode() != 200) {
+                    failed.incrementAndGet();
+                }
+                completed.incrementAndGet();
+                outstanding.arriveAndDeregister();
+            });
+        }
+        try {
+            outstanding.awaitAdvanceInterruptibly(outstanding.arrive(), 60, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // Reported as failed below
+        }
+        long end = System.nanoTime();
+        long elapsed = end - start;
+        int done = completed.get();
+        long[] sorted = Arrays.copyOf(latencies, requests);
+        for (int i = 0; i < requests; i++) {
+            if (sorted[i] == 0) {
+                // Unanswered: at least as slow as the whole wait
+                sorted[i] = end - (start + i * periodNanos);
+            }
+        }
+        Arrays.sort(sorted);
+        return new Result(requests, done, failed.get() + (requests - done), elapsed, sorted);
+    }
+
+    @Override
+    public void close() {
+        clientExecutor.shutdownNow();
+    }
+
+    /**
+     * Outcome of a run. Latencies are sorted, in nanoseconds.
+     */
+    record Result(int sent, int completed, long failed, long elapsedNanos, long[] latencies) {
+
+        double throughput() {
+            return completed * 1e9 / elapsedNanos;
+        }
+
+        double percentileMillis(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mork.cookie.logback.benchmark;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.runtime.server.EmbeddedServer;
+
+import java.util.Map;
+
+/**
+ * Micronaut on its embedded Netty server. The library's filter is left out in baseline
+ * mode ({@code conditional-logging.enabled=false}). The controller runs on the event loop,
+ * which is what the filter's asynchronous flush is for.
+ */
+final class NettyServer implements BenchmarkServer {
+
+    private final EmbeddedServer server;
+
+    private NettyServer(EmbeddedServer server) {
+        this.server = server;
+    }
+
+    static NettyServer start(BenchmarkLogging.Mode mode) {
+        EmbeddedServer server = ApplicationContext.run(EmbeddedServer.class, Map.of(
+                "micronaut.server.port", -1,
+                "micronaut.banner.enabled", false,
+                "conditional-logging.enabled", mode == BenchmarkLogging.Mode.CONDITIONAL));
+        return new NettyServer(server);
+    }
+
+    @Override
+    public int port() {
+        return server.getPort();
+    }
+
+    @Override
+    public boolean isServerThread(String threadName) {
+        return threadName.startsWith("default-nioEventLoopGroup") || threadName.startsWith("default-epollEventLoopGroup")
+                || threadName.startsWith("ConditionalBufferAppender-");
+    }
+
+    @Override
+    public void close() {
+        server.getApplicationContext().close();
+    }
+
+    @Controller("/orders")
+    static class OrderController {
+
+        @Get(uri = "/{id}", produces = MediaType.TEXT_PLAIN)
+        String order(String id, @QueryValue int events, @QueryValue boolean error) {
+            return Workload.handle(id, events, error);
+        }
+    }
+}
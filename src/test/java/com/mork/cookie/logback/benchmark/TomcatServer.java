@@ -0,0 +1,77 @@
+package com.mork.cookie.logback.benchmark;
+
+import com.mork.cookie.logback.spring.ConditionalLoggingConfiguration;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Spring MVC on embedded Tomcat, with {@link ConditionalLoggingConfiguration} imported in
+ * conditional mode.
+ */
+final class TomcatServer implements BenchmarkServer {
+
+    private final ConfigurableApplicationContext context;
+
+    private TomcatServer(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    static TomcatServer start(BenchmarkLogging.Mode mode) {
+        // Keep the logback setup of the benchmark instead of Boot's
+        System.setProperty("org.springframework.boot.logging.LoggingSystem", "none");
+        SpringApplication application = mode == BenchmarkLogging.Mode.CONDITIONAL
+                ? new SpringApplication(Application.class, ConditionalLoggingConfiguration.class)
+                : new SpringApplication(Application.class);
+        application.setDefaultProperties(Map.of(
+                "server.port", "0",
+                "spring.main.banner-mode", "off",
+                "server.tomcat.threads.max", "200"));
+        return new TomcatServer(application.run());
+    }
+
+    @Override
+    public int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @Override
+    public boolean isServerThread(String threadName) {
+        return threadName.startsWith("http-nio-") || threadName.startsWith("ConditionalBufferAppender-");
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ImportAutoConfiguration({
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class})
+    @Import(OrderController.class)
+    static class Application {
+    }
+
+    @RestController
+    static class OrderController {
+
+        @GetMapping("/orders/{id}")
+        String order(@PathVariable("id") String id, @RequestParam("events") int events, @RequestParam("error") boolean error) {
+            return Workload.handle(id, events, error);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mork.cookie.logback.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What a benchmark request does: logs a given number of events, one in ten at INFO and the
+ * rest at DEBUG, and an ERROR with a stack trace if asked to fail. The same for both servers.
+ */
+final class Workload {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Workload.class);
+
+    private Workload() {
+    }
+
+    static String handle(String orderId, int events, boolean error) {
+        for (int i = 0; i < events; i++) {
+            if (i % 10 == 0) {
+                LOG.info("Processing step {} of order {}", i, orderId);
+            } else {
+                LOG.debug("Step {} of order {} took {} ms", i, orderId, i % 7);
+            }
+        }
+        if (error) {
+            LOG.error("Payment failed for order {}", orderId, new IllegalStateException("Simulated payment failure"));
+        }
+        return "ok";
+    }
+}
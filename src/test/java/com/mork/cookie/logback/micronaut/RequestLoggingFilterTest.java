@@ -0,0 +1,156 @@
+package com.mork.cookie.logback.micronaut;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import com.mork.cookie.logback.RequestLoggingContext;
+import io.micronaut.http.HttpAttributes;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.micronaut.web.router.UriRouteMatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the Micronaut request logging filter.
+ */
+class RequestLoggingFilterTest {
+
+    private static final int REQUESTS = 5;
+    private static final long DUMP_MILLIS = 100;
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private ConditionalBufferAppender appender;
+    private final List<ILoggingEvent> written = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> writerThreads = ConcurrentHashMap.newKeySet();
+    private ExecutorService eventLoop;
+
+    @BeforeEach
+    void setUp() {
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("test");
+
+        // An output that takes DUMP_MILLIS to write the error of a request
+        AppenderBase<ILoggingEvent> slowOutput = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                writerThreads.add(Thread.currentThread().getName());
+                if (event.getLevel() == Level.ERROR) {
+                    try {
+                        Thread.sleep(DUMP_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                written.add(event);
+            }
+        };
+        slowOutput.setContext(loggerContext);
+        slowOutput.start();
+
+        appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.addAppender(slowOutput);
+        appender.start();
+
+        eventLoop = Executors.newSingleThreadExecutor(r -> new Thread(r, "event-loop"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventLoop.shutdownNow();
+        appender.stop();
+        RequestLoggingContext.clear();
+    }
+
+    @Test
+    void testErrorDumpDoesNotBlockEventLoop() throws Exception {
+        RequestLoggingFilter filter = new RequestLoggingFilter(appender);
+        HttpRequest<?> request = request();
+        // Warm-up: a successful request with nothing to write
+        ServerFilterChain warmUp = chain(false);
+        eventLoop.submit(() -> Mono.from(filter.doFilter(request, warmUp)).block()).get(10, TimeUnit.SECONDS);
+
+        long slowest = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            ServerFilterChain chain = chain(true);
+            long busyNanos = eventLoop.submit(() -> {
+                long start = System.nanoTime();
+                Mono.from(filter.doFilter(request, chain)).block();
+                return System.nanoTime() - start;
+            }).get(10, TimeUnit.SECONDS);
+            slowest = Math.max(slowest, busyNanos);
+        }
+
+        // Writing the dumps takes REQUESTS * DUMP_MILLIS, none of it on the event loop
+        assertThat(TimeUnit.NANOSECONDS.toMillis(slowest)).isLessThan(DUMP_MILLIS / 2);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (written.size() < REQUESTS * 101 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(written).hasSize(REQUESTS * 101);
+        assertThat(writerThreads).containsExactly("ConditionalBufferAppender-Writer");
+    }
+
+    @Test
+    void testStopWritesQueuedFlushes() throws Exception {
+        RequestLoggingFilter filter = new RequestLoggingFilter(appender);
+        HttpRequest<?> request = request();
+        for (int i = 0; i < 3; i++) {
+            ServerFilterChain chain = chain(true);
+            eventLoop.submit(() -> Mono.from(filter.doFilter(request, chain)).block()).get(10, TimeUnit.SECONDS);
+        }
+
+        appender.stop();
+
+        assertThat(written).hasSize(3 * 101);
+    }
+
+    private static HttpRequest<?> request() {
+        HttpRequest<?> request = mock(HttpRequest.class);
+        when(request.getMethodName()).thenReturn("GET");
+        when(request.getPath()).thenReturn("/orders/42");
+        when(request.getAttribute(HttpAttributes.ROUTE_MATCH, UriRouteMatch.class)).thenReturn(Optional.empty());
+        return request;
+    }
+
+    // A handler that logs 100 DEBUG events, and an ERROR if it fails
+    private ServerFilterChain chain(boolean fail) {
+        ServerFilterChain chain = mock(ServerFilterChain.class);
+        when(chain.proceed(any())).thenReturn(Mono.fromCallable(() -> {
+            for (int i = 0; i < 100; i++) {
+                appender.doAppend(new LoggingEvent("test.class", logger, Level.DEBUG, "Step " + i, null, null));
+            }
+            if (fail) {
+                appender.doAppend(new LoggingEvent("test.class", logger, Level.ERROR, "Failure", null, null));
+            }
+            return mock(MutableHttpResponse.class);
+        }));
+        return chain;
+    }
+}
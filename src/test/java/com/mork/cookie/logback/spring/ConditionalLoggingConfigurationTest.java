@@ -4,6 +4,7 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import com.mork.cookie.logback.ConditionalBufferAppender;
+import com.mork.cookie.logback.RequestLoggingContext;
 import com.mork.cookie.logback.RequestLoggingFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,6 +14,9 @@ import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -269,4 +273,19 @@ class ConditionalLoggingConfigurationTest {
         // Test that filter is enabled by default
         assertTrue(filterBean.isEnabled());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRouteInterceptorSetsHandlerTemplate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/articles/hello-world");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/articles/{slug}");
+
+        RequestLoggingContext.setRequestId("request");
+        RequestLoggingContext.setRoute(RequestLoggingContext.routeOf("GET", "/articles/hello-world"));
+        try {
+            assertTrue(new RequestRouteInterceptor().preHandle(request, new MockHttpServletResponse(), new Object()));
+            assertEquals("GET /articles/{slug}", RequestLoggingContext.getRoute());
+        } finally {
+            RequestLoggingContext.clear();
+        }
+    }
+}
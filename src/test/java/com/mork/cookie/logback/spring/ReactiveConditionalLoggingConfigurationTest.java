@@ -0,0 +1,57 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.context.annotation.ImportCandidates;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import reactor.core.publisher.Hooks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveConditionalLoggingConfigurationTest {
+
+    // The application's own appender, so that the tests leave the logback configuration alone
+    private final ConditionalBufferAppender appender = new ConditionalBufferAppender();
+
+    private final ReactiveWebApplicationContextRunner reactiveRunner = new ReactiveWebApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ReactiveConditionalLoggingConfiguration.class))
+            .withBean(ConditionalBufferAppender.class, () -> appender);
+
+    @Test
+    void testRegisteredAsAutoConfiguration() {
+        assertThat(ImportCandidates.load(AutoConfiguration.class, getClass().getClassLoader()))
+                .contains(ReactiveConditionalLoggingConfiguration.class.getName());
+    }
+
+    @Test
+    void testReactiveApplicationGetsWebFilterAndContextPropagation() {
+        try {
+            reactiveRunner.run(context -> {
+                assertThat(context).hasSingleBean(RequestLoggingWebFilter.class);
+                assertThat(context).hasSingleBean(ReactiveConditionalLoggingConfiguration.AutomaticContextPropagation.class);
+                assertThat(context.getBean(ConditionalBufferAppender.class)).isSameAs(appender);
+            });
+        } finally {
+            Hooks.disableAutomaticContextPropagation();
+        }
+    }
+
+    @Test
+    void testContextPropagationCanBeTurnedOff() {
+        reactiveRunner.withPropertyValues("conditional-logging.reactor.automatic-context-propagation=false")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(RequestLoggingWebFilter.class);
+                    assertThat(context).doesNotHaveBean(ReactiveConditionalLoggingConfiguration.AutomaticContextPropagation.class);
+                });
+    }
+
+    @Test
+    void testServletApplicationIsLeftAlone() {
+        new WebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ReactiveConditionalLoggingConfiguration.class))
+                .run(context -> assertThat(context).doesNotHaveBean(RequestLoggingWebFilter.class));
+    }
+}
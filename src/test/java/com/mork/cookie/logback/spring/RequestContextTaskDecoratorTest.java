@@ -0,0 +1,40 @@
+package com.mork.cookie.logback.spring;
+
+import com.mork.cookie.logback.RequestLoggingContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestContextTaskDecoratorTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestLoggingContext.clear();
+    }
+
+    @Test
+    void testDecoratedExecutorPropagatesContext() throws Exception {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setTaskDecorator(new RequestContextTaskDecorator());
+        executor.initialize();
+        try {
+            RequestLoggingContext.setRequestId("async-request");
+
+            String seen = executor.submit(RequestLoggingContext::getRequestId).get(5, TimeUnit.SECONDS);
+
+            assertThat(seen).isEqualTo("async-request");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testConfigurationProvidesDecorator() {
+        assertThat(new ConditionalLoggingConfiguration().requestContextTaskDecorator())
+                .isInstanceOf(RequestContextTaskDecorator.class);
+    }
+}
@@ -0,0 +1,153 @@
+package com.mork.cookie.logback.spring;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.mork.cookie.logback.ConditionalBufferAppender;
+import com.mork.cookie.logback.RequestLoggingContext;
+import com.mork.cookie.logback.RouteRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestLoggingWebFilterTest {
+
+    private LoggerContext loggerContext;
+    private Logger logger;
+    private ConditionalBufferAppender appender;
+    private ListAppender<ILoggingEvent> output;
+    private final List<String> requestIds = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        Hooks.enableAutomaticContextPropagation();
+        loggerContext = new LoggerContext();
+        loggerContext.setMDCAdapter(MDC.getMDCAdapter());
+        logger = loggerContext.getLogger("test");
+
+        output = new ListAppender<>();
+        output.setContext(loggerContext);
+        output.start();
+        appender = new ConditionalBufferAppender();
+        appender.setContext(loggerContext);
+        appender.addAppender(output);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+        Hooks.disableAutomaticContextPropagation();
+        RequestLoggingContext.clear();
+    }
+
+    @Test
+    void testContextFollowsRequestAcrossThreads() throws InterruptedException {
+        appender.start();
+        WebFilterChain chain = exchange -> Mono.fromRunnable(() -> log(Level.DEBUG, "Parsing request"))
+                .subscribeOn(Schedulers.parallel())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(value -> log(Level.DEBUG, "Never called for an empty Mono"))
+                .then(Mono.fromRunnable(() -> log(Level.INFO, "Loaded order")).subscribeOn(Schedulers.boundedElastic()))
+                .then(Mono.fromRunnable(() -> log(Level.ERROR, "Payment failed")))
+                .then();
+
+        new RequestLoggingWebFilter(appender).filter(exchange("/orders/42"), chain).block();
+        awaitFlush();
+
+        // One request ID on every thread, and the error flushed every event of the request
+        assertThat(requestIds).hasSize(3).doesNotContainNull();
+        assertThat(Set.copyOf(requestIds)).hasSize(1);
+        assertThat(messages()).containsExactly("Parsing request", "Loaded order", "Payment failed");
+        assertThat(RequestLoggingContext.getRequestId()).isNull();
+    }
+
+    @Test
+    void testSuccessfulRequestShowsOnlyInfo() throws InterruptedException {
+        appender.start();
+        WebFilterChain chain = exchange -> Mono.fromRunnable(() -> {
+            log(Level.DEBUG, "Debug message");
+            log(Level.INFO, "Info message");
+        }).subscribeOn(Schedulers.parallel()).then();
+
+        new RequestLoggingWebFilter(appender).filter(exchange("/orders/42"), chain).block();
+        awaitFlush();
+
+        assertThat(messages()).containsExactly("Info message");
+    }
+
+    @Test
+    void testErrorSignalMarksRequestAsFailed() throws InterruptedException {
+        appender.start();
+        WebFilterChain chain = exchange -> Mono.fromRunnable(() -> log(Level.DEBUG, "Debug message"))
+                .subscribeOn(Schedulers.parallel())
+                .then(Mono.error(new IllegalStateException("Unhandled")));
+
+        assertThrows(IllegalStateException.class,
+                () -> new RequestLoggingWebFilter(appender).filter(exchange("/orders/42"), chain).block());
+        awaitFlush();
+
+        assertThat(messages()).containsExactly("Debug message");
+    }
+
+    @Test
+    void testExcludedRouteGetsNoContext() {
+        RouteRule rule = new RouteRule();
+        rule.setPattern("/actuator/**");
+        rule.setBuffering(false);
+        appender.addRouteRule(rule);
+        appender.start();
+        WebFilterChain chain = exchange -> Mono.fromRunnable(() -> log(Level.INFO, "Health check"))
+                .subscribeOn(Schedulers.parallel()).then();
+
+        new RequestLoggingWebFilter(appender).filter(exchange("/actuator/health"), chain).block();
+
+        assertThat(requestIds).containsOnlyNulls();
+        assertThat(appender.getRequestBuffers()).isEmpty();
+    }
+
+    // block() returns on the terminal signal, doFinally hands the buffer over right after it
+    private void awaitFlush() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!appender.getRequestBuffers().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        // Waits for the writer thread
+        appender.stop();
+    }
+
+    // Logs as the appender sees it: with the request context of the current thread
+    private void log(Level level, String message) {
+        requestIds.add(RequestLoggingContext.getRequestId());
+        appender.doAppend(new LoggingEvent("test.class", logger, level, message, null, null));
+    }
+
+    private List<String> messages() {
+        List<String> messages = new ArrayList<>();
+        for (ILoggingEvent event : output.list) {
+            messages.add(event.getFormattedMessage());
+        }
+        return messages;
+    }
+
+    private static MockServerWebExchange exchange(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path));
+    }
+}